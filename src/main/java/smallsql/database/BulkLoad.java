@@ -0,0 +1,280 @@
+/* =============================================================
+ * SmallSQL : a free Java DBMS library for the Java(tm) platform
+ * =============================================================
+ *
+ * (C) Copyright 2004-2011, by Volker Berlin.
+ *
+ * Project Info:  http://www.smallsql.de/
+ *
+ * This library is free software; you can redistribute it and/or modify it 
+ * under the terms of the GNU Lesser General Public License as published by 
+ * the Free Software Foundation; either version 2.1 of the License, or 
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but 
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY 
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public 
+ * License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, 
+ * USA.  
+ *
+ * [Java is a trademark or registered trademark of Sun Microsystems, Inc. 
+ * in the United States and other countries.]
+ *
+ * ---------------
+ * BulkLoad.java
+ * ---------------
+ * Author: Volker Berlin
+ * 
+ */
+package smallsql.database;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import smallsql.tools.language.Language;
+
+
+/**
+ * A bulk load of rows into a table. It is used from COPY and SSConnection.copy(). 
+ * 
+ * The loader hold a table lock for the whole load. The rows are written without page locks and without the commit 
+ * list of the connection. Many rows are collected and written with one write as a contiguous extent at the end of 
+ * the table file. The indexes of the table are build at the end from the new rows. The keys of the unique indexes 
+ * are checked for every row before it is written.
+ * 
+ * The rows are not part of the transaction and can not be rolled back. If a row fails, for example with a duplicate 
+ * key, then the load stops. The rows before are loaded and indexed, finish() must be called also in this case.
+ */
+final class BulkLoad {
+	
+	/** the size of the rows that are collected before they are written */
+	private static final int EXTENT_SIZE = 1 << 20;
+
+	private final SSConnection con;
+	private final Table table;
+	private final int[] matrix; // mapping of the columns of the Table to the values of a row; -1 default value
+	private final int valueCount;
+	private final ExpressionValue value = new ExpressionValue();
+	private final StoreImpl store;
+	/** the rows that are not written, byte[] */
+	private final ArrayList records = new ArrayList();
+	private int recordsSize;
+	/** the end of the table before the load, the new rows are after it */
+	private final long startPos;
+	private TableStorePage tableLock;
+	private long rowCount;
+	/**
+	 * The temporary row offsets of every row in the unique indexes, see IndexDescription.reserveRow(). 
+	 * The entry of an index that is not unique is null. The value is null if there is no unique index.
+	 */
+	private final LongList[] reservedRows;
+	
+	
+	/**
+	 * Create a loader and lock the table.
+	 * @param columnNames the columns of the values in a row or null for all columns of the table in table order
+	 */
+	BulkLoad(SSConnection con, Table table, Strings columnNames) throws Exception{
+		this.con = con;
+		this.table = table;
+		Columns columns = table.columns;
+		matrix = new int[columns.size()];
+		if(columnNames == null){
+			for(int i=0; i<matrix.length; i++){
+				matrix[i] = i;
+			}
+			valueCount = matrix.length;
+		}else{
+			for(int i=0; i<matrix.length; i++){
+				matrix[i] = -1;
+			}
+			for(int c=0; c<columnNames.size(); c++){
+				String columnName = columnNames.get(c);
+				int idx = table.findColumnIdx( columnName );
+				if(idx < 0){
+					throw SmallSQLException.create(Language.COL_MISSING, columnName);
+				}
+				if(matrix[idx] >= 0){
+					throw SmallSQLException.create(Language.COL_DUPLICATE, columnName);
+				}
+				matrix[idx] = c;
+			}
+			valueCount = columnNames.size();
+		}
+		
+		tableLock = table.requestLock( con, SQLTokenizer.ALTER, -1 );
+		startPos = table.getEndPos();
+		store = table.getStoreTemp( con );
+		
+		IndexDescriptions indexes = table.indexes;
+		LongList[] reserved = null;
+		for(int i=0; i<indexes.size(); i++){
+			if(indexes.get(i).isUnique()){
+				if(reserved == null){
+					reserved = new LongList[indexes.size()];
+				}
+				reserved[i] = new LongList();
+			}
+		}
+		reservedRows = reserved;
+	}
+	
+	
+	/**
+	 * Add a row.
+	 * @param values the values of the row in the order of the column names. The values are converted to the data 
+	 * types of the columns.
+	 */
+	void addRow(Object[] values) throws Exception{
+		if(values.length != valueCount){
+			throw SmallSQLException.create(Language.COL_VAL_UNMATCH);
+		}
+		Columns columns = table.columns;
+		for(int c=0; c<matrix.length; c++){
+			Column column = columns.get(c);
+			int idx = matrix[c];
+			Expression valueExpress;
+			if(idx >= 0){
+				value.set( values[idx], -1 );
+				valueExpress = value;
+			}else{
+				valueExpress = column.getDefaultValue(con);
+			}
+			store.writeExpression( valueExpress, column );
+		}
+		reserveKeys();
+		byte[] record = store.writeBulkFinish( table.slottedPages != null );
+		records.add( record );
+		recordsSize += record.length;
+		rowCount++;
+		if(recordsSize >= EXTENT_SIZE){
+			flush();
+		}
+	}
+	
+	
+	/**
+	 * Add the keys of the current row to the unique indexes. A duplicate key is found before the row is written.
+	 */
+	private void reserveKeys() throws Exception{
+		if(reservedRows == null){
+			return;
+		}
+		IndexDescriptions indexes = table.indexes;
+		int offset = store.getCurrentOffsetInPage();
+		Expressions[] keys = indexes.getKeys( table, store );
+		store.setCurrentOffsetInPage( offset );
+		long[] rows = new long[reservedRows.length];
+		for(int i=0; i<rows.length; i++){
+			if(reservedRows[i] == null){
+				continue;
+			}
+			try{
+				rows[i] = indexes.get(i).reserveRow( keys[i] );
+			}catch(Exception e){
+				// remove the keys of this row from the other unique indexes
+				for(int k=0; k<i; k++){
+					if(reservedRows[k] != null){
+						indexes.get(k).replaceReservedRow( rows[k], -1, keys[k] );
+					}
+				}
+				throw e;
+			}
+		}
+		for(int i=0; i<rows.length; i++){
+			if(reservedRows[i] != null){
+				reservedRows[i].add( rows[i] );
+			}
+		}
+	}
+	
+	
+	/**
+	 * Write the collected rows.
+	 */
+	private void flush() throws Exception{
+		if(records.size() == 0){
+			return;
+		}
+		if(table.slottedPages != null){
+			table.slottedPages.append( records );
+		}else{
+			// the old format with one page per row, the pages are written one after the other
+			byte[] extent = new byte[recordsSize];
+			int offset = 0;
+			for(int i=0; i<records.size(); i++){
+				byte[] page = (byte[])records.get(i);
+				System.arraycopy( page, 0, extent, offset, page.length );
+				offset += page.length;
+			}
+			FileChannel raFile = table.raFile;
+			// the size of the file and the write must be atomic
+			synchronized(raFile){
+				Utils.writeFully( raFile, ByteBuffer.wrap( extent ), raFile.size() );
+			}
+		}
+		table.modCount++;
+		records.clear();
+		recordsSize = 0;
+	}
+	
+	
+	/**
+	 * Write the last rows, build the indexes and release the table lock. This must be called also if addRow() has
+	 * failed, else the written rows are not in the indexes.
+	 * @return the count of loaded rows
+	 */
+	long finish() throws Exception{
+		try{
+			flush();
+			buildIndexes();
+		}finally{
+			close();
+		}
+		return rowCount;
+	}
+	
+	
+	/**
+	 * Release the table lock.
+	 */
+	private void close(){
+		if(tableLock != null){
+			tableLock.freeLock();
+			tableLock = null;
+		}
+	}
+	
+	
+	/**
+	 * Add all new rows to the indexes of the table.
+	 */
+	private void buildIndexes() throws Exception{
+		IndexDescriptions indexes = table.indexes;
+		if(indexes.size() == 0 || rowCount == 0){
+			return;
+		}
+		TableResult result = new TableResult( table );
+		result.init( con );
+		result.execute();
+		result.setRowPosition( startPos );
+		boolean isRow = !result.rowDeleted() || result.next();
+		for(int row = 0; isRow; row++){
+			long rowOffset = result.getRowPosition();
+			Expressions[] keys = result.getIndexKeys();
+			for(int i=0; i<indexes.size(); i++){
+				if(reservedRows != null && reservedRows[i] != null){
+					// the key is already checked on addRow()
+					indexes.get(i).replaceReservedRow( reservedRows[i].get(row), rowOffset, keys[i] );
+				}else{
+					indexes.get(i).addRow( rowOffset, keys[i] );
+				}
+			}
+			isRow = result.next();
+		}
+	}
+}
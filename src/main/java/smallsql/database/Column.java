@@ -103,6 +103,16 @@ class Column implements Cloneable{
 			counter.setNextValue(obj);
 		}
     }
+    
+    /**
+     * Take over the identity counter of a column of another table, for example if the table was rewritten.
+     * The counter is never decrement.
+     */
+    void copyAutoIncrementValue(Column column) throws Exception{
+    	if(identity && column.identity){
+    		counter.setNextValue( new ExpressionValue( new Long( column.counter.longValue() ), SQLTokenizer.BIGINT ) );
+    	}
+    }
 
     boolean isCaseSensitive(){
         return caseSensitive;
@@ -0,0 +1,171 @@
+/* =============================================================
+ * SmallSQL : a free Java DBMS library for the Java(tm) platform
+ * =============================================================
+ *
+ * (C) Copyright 2004-2011, by Volker Berlin.
+ *
+ * Project Info:  http://www.smallsql.de/
+ *
+ * This library is free software; you can redistribute it and/or modify it 
+ * under the terms of the GNU Lesser General Public License as published by 
+ * the Free Software Foundation; either version 2.1 of the License, or 
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but 
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY 
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public 
+ * License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, 
+ * USA.  
+ *
+ * [Java is a trademark or registered trademark of Sun Microsystems, Inc. 
+ * in the United States and other countries.]
+ *
+ * ---------------
+ * CommandCompact.java
+ * ---------------
+ * Author: Volker Berlin
+ * 
+ */
+package smallsql.database;
+
+import java.sql.ResultSet;
+import smallsql.tools.language.Language;
+
+
+/**
+ * COMPACT TABLE and VACUUM. The rows of a table are copied in a new table file without deleted pages and without
+ * UPDATE_POINTER indirections. The copy run without a table lock that other connections can read and write. Only 
+ * for the swap of the files a short table lock is needed. If the table was modified while copying then the copy is
+ * repeated without the table lock. Only if the table is still modified after MAX_UNLOCKED_COPIES then the last copy 
+ * is done with the table lock.
+ */
+final class CommandCompact extends Command {
+
+	/** The count of copies without a table lock if other connections write to the table. */
+	private static final int MAX_UNLOCKED_COPIES = 3;
+
+	CommandCompact( Logger log, String catalog, String name ){
+		super(log);
+		this.type = SQLTokenizer.COMPACT;
+		this.catalog = catalog;
+		this.name = name;
+	}
+	
+	
+	void executeImpl(SSConnection con, SSStatement st) throws Exception{
+		Database database = catalog == null ? 
+				con.getDatabase(false) : 
+				Database.getDatabase( catalog, con, false );
+		if(name != null){
+			TableView tableView = database.getTableView( con, name );
+			if(!(tableView instanceof Table)){
+				throw SmallSQLException.create(Language.FK_NOT_TABLE, name);
+			}
+			compact( con, database, (Table)tableView );
+		}else{
+			// VACUUM without a table name
+			Strings tables = database.getTables( null );
+			for(int i=0; i<tables.size(); i++){
+				String tableName = tables.get(i);
+				if(tableName.startsWith("#")){
+					continue; // temporary file of a running ALTER TABLE or COMPACT
+				}
+				TableView tableView = database.getTableView( con, tableName );
+				if(tableView instanceof Table){
+					compact( con, database, (Table)tableView );
+				}
+			}
+		}
+	}
+	
+	
+	private void compact(SSConnection con, Database database, Table oldTable) throws Exception{
+		con = new SSConnection(con);
+		String tableName = oldTable.name;
+		SSStatement st = (SSStatement)con.createStatement();
+		ResultSet rs = st.executeQuery( "SELECT COUNT(*) FROM " + getSqlName( tableName ) );
+		rs.next();
+		CompactStatus status = new CompactStatus( tableName, rs.getLong(1) );
+		rs.close();
+		database.setCompactStatus( status );
+		
+		String newName = "#" + System.currentTimeMillis() + this.hashCode();
+		long modCount = oldTable.modCount;
+		Table newTable = copy( con, st, database, oldTable, newName, status );
+		for(int i=1; i<MAX_UNLOCKED_COPIES && modCount != oldTable.modCount; i++){
+			// there were writes while copying, repeat it that other connections are not blocked
+			database.dropTable( con, newName );
+			modCount = oldTable.modCount;
+			newTable = copy( con, st, database, oldTable, newName, status );
+		}
+		
+		// Request a TableLock only for the last catch-up and the swap of the files
+		TableStorePage tableLock = oldTable.requestLock( con, SQLTokenizer.ALTER, -1);
+		try{
+			if(modCount != oldTable.modCount){
+				// the table is written permanently, the last copy must be done while the table is locked
+				database.dropTable( con, newName );
+				newTable = copy( con, st, database, oldTable, newName, status );
+			}
+			long rowsCopied = status.getRowsCopied();
+			long oldSize = oldTable.getFileSize();
+			long newSize = newTable.getFileSize();
+			database.replaceTable( oldTable, newTable );
+			status.setFinished( rowsCopied, oldSize - newSize );
+		}catch(Exception ex){
+			//Remove all from the new table
+			try {
+				database.dropTable(con, newName);
+			} catch (Exception ex1) {/* ignore it */}
+			throw ex;
+		}finally{
+			tableLock.freeLock();
+		}
+	}
+	
+	
+	/**
+	 * Create a new table with the same structure and copy all rows with an INSERT INTO ... SELECT.
+	 */
+	private Table copy(SSConnection con, SSStatement st, Database database, Table oldTable, String newName, CompactStatus status) throws Exception{
+		Columns columns = oldTable.columns;
+		Table newTable = database.createTable( con, newName, columns.copy(), oldTable.indexes, new IndexDescriptions(), new ForeignKeys(), oldTable.compression );
+		try{
+			StringBuffer buffer = new StringBuffer(256);
+			buffer.append("INSERT INTO ").append( getSqlName( newName ) ).append( '(' );
+			for(int c=0; c<columns.size(); c++){
+				if(c != 0){
+					buffer.append( ',' );
+				}
+				buffer.append( columns.get(c).getName() );
+			}
+			buffer.append( ")  SELECT * FROM " ).append( getSqlName( oldTable.name ) );
+			CommandInsert cmd = (CommandInsert)new SQLParser().parse( con, buffer.toString() );
+			status.setCopy( cmd );
+			cmd.execute( con, st );
+			
+			// the identity counter must not restart on the largest remaining value
+			for(int c=0; c<columns.size(); c++){
+				newTable.columns.get(c).copyAutoIncrementValue( columns.get(c) );
+			}
+		}catch(Exception ex){
+			try {
+				database.dropTable(con, newName);
+			} catch (Exception ex1) {/* ignore it */}
+			throw ex;
+		}
+		return newTable;
+	}
+	
+	
+	/**
+	 * The table name for the internal SQL statements, with the catalog if the table is not in the current database.
+	 */
+	private String getSqlName(String tableName){
+		return catalog == null ? tableName : catalog + '.' + tableName;
+	}
+}
@@ -0,0 +1,96 @@
+/* =============================================================
+ * SmallSQL : a free Java DBMS library for the Java(tm) platform
+ * =============================================================
+ *
+ * (C) Copyright 2004-2011, by Volker Berlin.
+ *
+ * Project Info:  http://www.smallsql.de/
+ *
+ * This library is free software; you can redistribute it and/or modify it 
+ * under the terms of the GNU Lesser General Public License as published by 
+ * the Free Software Foundation; either version 2.1 of the License, or 
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but 
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY 
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public 
+ * License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, 
+ * USA.  
+ *
+ * [Java is a trademark or registered trademark of Sun Microsystems, Inc. 
+ * in the United States and other countries.]
+ *
+ * ---------------
+ * CommandCopy.java
+ * ---------------
+ * Author: Volker Berlin
+ * 
+ */
+package smallsql.database;
+
+import java.io.BufferedReader;
+import java.io.FileInputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import smallsql.tools.language.Language;
+
+
+/**
+ * COPY [catalog.]table [(column, ...)] FROM 'file' [DELIMITER 'char'] [HEADER]
+ * 
+ * Load the rows of a CSV file with a BulkLoad into a table. The file must be UTF-8 encoded. With HEADER the first line
+ * of the file is skipped. The loaded rows are not part of the transaction.
+ */
+final class CommandCopy extends Command {
+
+	/** the columns of the values in the file or null for all columns */
+	Strings columnNames;
+	String fileName;
+	char delimiter = ',';
+	boolean header;
+	
+	
+	CommandCopy( Logger log, String catalog, String name ){
+		super(log);
+		this.type = SQLTokenizer.COPY;
+		this.catalog = catalog;
+		this.name = name;
+	}
+	
+	
+	void executeImpl(SSConnection con, SSStatement st) throws Exception{
+		TableView tableView = Database.getTableView( con, catalog, name );
+		if(!(tableView instanceof Table)){
+			throw SmallSQLException.create(Language.VIEW_INSERT);
+		}
+		Reader reader = new BufferedReader( new InputStreamReader( new FileInputStream( fileName ), "UTF-8" ) );
+		try{
+			CsvReader csv = new CsvReader( reader, delimiter );
+			if(header){
+				csv.readRow();
+			}
+			BulkLoad load = new BulkLoad( con, (Table)tableView, columnNames );
+			try{
+				Object[] values;
+				while((values = csv.readRow()) != null){
+					load.addRow( values );
+				}
+			}catch(Throwable e){
+				// also after an error, the rows before are loaded and need the indexes
+				try{
+					load.finish();
+				}catch(Throwable e2){
+					e.addSuppressed( e2 );
+				}
+				throw e;
+			}
+			updateCount = (int)load.finish();
+		}finally{
+			reader.close();
+		}
+	}
+}
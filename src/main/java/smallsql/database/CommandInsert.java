@@ -171,14 +171,9 @@ public class CommandInsert extends Command {
                     }
                 }
 	            store.writeExpression( valueExpress, column );
-				for(int i=0; i<indexes.size(); i++){
-					indexes.get(i).writeExpression( c, valueExpress );
-				}
 	        }
 	        store.writeFinsh( con );
-			for(int i=0; i<indexes.size(); i++){
-				indexes.get(i).writeFinish( con );
-			}
+	        indexes.insertRow( con, table, store );
 	        updateCount++;
             if(needGeneratedKeys){
                 Object[][] data = new Object[1][keys.size()];
@@ -45,8 +45,12 @@ class CommandSelect extends Command{
     private Expressions orderBy;
     private boolean isAggregateFunction;
     private int maxRows = -1;
+    /** The count of rows that are skip with the OFFSET of the LIMIT clause. */
+    private int offset;
     /** is set if the keyword DISTINCT is used */
     private boolean isDistinct; 
+    /** The IndexScan of the FROM clause or null. */
+    private IndexScan indexScan;
 
     CommandSelect(Logger log){
 		super(log);
@@ -135,6 +139,23 @@ class CommandSelect extends Command{
             compileJoin( (Join)from );
         }
         
+        boolean isSorted = false;
+        indexScan = null;
+        if(from instanceof TableResult){
+            TableResult result = (TableResult)from;
+            if(where != null){
+                from = IndexScan.create( result, where );
+            }
+            if(from instanceof IndexScan){
+                indexScan = (IndexScan)from;
+                indexScan.setColumns( getColumns( result ) );
+            }
+            if(from == result && orderBy != null && !isGroupResult() && !isDistinct){
+                // read the rows in the order of an index if there is no index for the WHERE
+                from = IndexOrderScan.create( result, orderBy );
+                isSorted = from != result;
+            }
+        }
         if(where != null){
         	from = new Where( from, where );
         }
@@ -150,8 +171,15 @@ class CommandSelect extends Command{
 			from = new Distinct( from, columnExpressions );
 		}
 		
-		if(orderBy != null){
-			from = new SortedResult( from, orderBy );
+		if(orderBy != null && !isSorted){
+			if(maxRows >= 0 || offset > 0){
+				// only the first rows are needed, that a full sort is not necessary
+				from = new TopResult( this, from, orderBy );
+			}else{
+				from = new SortedResult( from, orderBy );
+			}
+		}else if(offset > 0){
+			from = new TopResult( this, from, null );
 		}
 		
 		return true;
@@ -167,6 +195,47 @@ class CommandSelect extends Command{
     }
     
     
+    /**
+     * Returns the columns of the table that are used in any clause of this SELECT.
+     * @return a flag for every column of the table or null if the used columns are unknown, for example 
+     * with a sub query.
+     */
+    private boolean[] getColumns(TableResult result){
+    	boolean[] used = new boolean[result.getTableView().columns.size()];
+    	if(!addColumns( result, columnExpressions, used )) return null;
+    	if(where != null && !addColumns( result, where, used )) return null;
+    	if(having != null && !addColumns( result, having, used )) return null;
+    	if(orderBy != null && !addColumns( result, orderBy, used )) return null;
+    	if(groupBy != null && !addColumns( result, groupBy, used )) return null;
+    	return used;
+    }
+    
+    
+    private static boolean addColumns(TableResult result, Expressions exprs, boolean[] used){
+    	for(int i=0; i<exprs.size(); i++){
+    		if(!addColumns( result, exprs.get(i), used )) return false;
+    	}
+    	return true;
+    }
+    
+    
+    private static boolean addColumns(TableResult result, Expression expr, boolean[] used){
+    	if(expr instanceof ExpressionInSelect){
+    		return false;
+    	}
+    	if(expr.getType() == Expression.NAME && ((ExpressionName)expr).getDataSource() == result){
+    		used[ ((ExpressionName)expr).getColumnIndex() ] = true;
+    	}
+    	Expression[] params = expr.getParams();
+    	if(params != null){
+    		for(int i=0; i<params.length; i++){
+    			if(!addColumns( result, params[i], used )) return false;
+    		}
+    	}
+    	return true;
+    }
+    
+    
 	/**
 	 * Set the link between the Named Expression and the Table object
 	 * in the condition.
@@ -275,6 +344,9 @@ class CommandSelect extends Command{
         	!from.isScrollable()){
         	from = new Scrollable(from);
         }
+        if(indexScan != null){
+        	indexScan.setReadOnly( st.rsConcurrency != ResultSet.CONCUR_UPDATABLE || isGroupResult() );
+        }
         from.execute();
         rs =  new SSResultSet( st, this );
     }
@@ -567,4 +639,14 @@ class CommandSelect extends Command{
     final int getMaxRows(){
         return maxRows;
     }
+
+
+	final void setOffset(int offset){
+		this.offset = offset;
+	}
+
+
+	final int getOffset(){
+		return offset;
+	}
 }
@@ -42,6 +42,8 @@ final class CommandTable extends Command{
 	final private IndexDescriptions indexes = new IndexDescriptions();
     final private ForeignKeys foreignKeys = new ForeignKeys();
     final private int tableCommandType;
+    /** the codec of the WITH (COMPRESSION=...) option */
+    int compression = Table.COMPRESSION_NONE;
     
 	
     CommandTable( Logger log, String catalog, String name, int tableCommandType ){
@@ -81,9 +83,11 @@ final class CommandTable extends Command{
                 Database.getDatabase( catalog, con, false );
         switch(tableCommandType){
         case SQLTokenizer.CREATE:
-            database.createTable( con, name, columns, indexes, foreignKeys );
+            database.createTable( con, name, columns, indexes, foreignKeys, compression );
             break;
         case SQLTokenizer.ADD:
+        case SQLTokenizer.INDEX:
+            // the table is copied with the new columns and indexes
             con = new SSConnection(con);
             //TODO disable the transaction to reduce memory use.
             Table oldTable = (Table)database.getTableView( con, name);
@@ -98,7 +102,7 @@ final class CommandTable extends Command{
                     addColumn(newColumns, columns.get(i));
                 }
                 
-                Table newTable = database.createTable( con, newName, newColumns, oldTable.indexes, indexes, foreignKeys );
+                Table newTable = database.createTable( con, newName, newColumns, oldTable.indexes, indexes, foreignKeys, oldTable.compression );
                 StringBuffer buffer = new StringBuffer(256);
                 buffer.append("INSERT INTO ").append( newName ).append( '(' );
                 for(int c=0; c<oldColumns.size(); c++){
@@ -0,0 +1,117 @@
+/* =============================================================
+ * SmallSQL : a free Java DBMS library for the Java(tm) platform
+ * =============================================================
+ *
+ * (C) Copyright 2004-2011, by Volker Berlin.
+ *
+ * Project Info:  http://www.smallsql.de/
+ *
+ * This library is free software; you can redistribute it and/or modify it 
+ * under the terms of the GNU Lesser General Public License as published by 
+ * the Free Software Foundation; either version 2.1 of the License, or 
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but 
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY 
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public 
+ * License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, 
+ * USA.  
+ *
+ * [Java is a trademark or registered trademark of Sun Microsystems, Inc. 
+ * in the United States and other countries.]
+ *
+ * ---------------
+ * CompactStatus.java
+ * ---------------
+ * Author: Volker Berlin
+ * 
+ */
+package smallsql.database;
+
+
+/**
+ * The progress of a COMPACT TABLE or VACUUM command for a single table. It is read from other threads with
+ * SSConnection.getStatistics() while the command is running.
+ */
+final class CompactStatus {
+
+	private final String tableName;
+	private final long rowCount;
+	private volatile CommandInsert copy;
+	private volatile long rowsCopied;
+	private volatile long reclaimedBytes;
+	private volatile boolean finished;
+	
+	
+	CompactStatus(String tableName, long rowCount){
+		this.tableName = tableName;
+		this.rowCount = rowCount;
+	}
+	
+	
+	String getTableName(){
+		return tableName;
+	}
+	
+	
+	long getRowCount(){
+		return rowCount;
+	}
+	
+	
+	/**
+	 * Set the running INSERT command that copy the rows to the new table file.
+	 */
+	void setCopy(CommandInsert copy){
+		this.copy = copy;
+	}
+	
+	
+	long getRowsCopied(){
+		CommandInsert cmd = copy;
+		if(cmd != null){
+			return Math.max( 0, cmd.getUpdateCount() );
+		}
+		return rowsCopied;
+	}
+	
+	
+	/**
+	 * The progress in percent. The row count is only an estimate if there are concurrent inserts.
+	 */
+	long getProgress(){
+		if(isFinished()){
+			return 100;
+		}
+		if(rowCount <= 0){
+			return 0;
+		}
+		return Math.min( 99, getRowsCopied() * 100 / rowCount );
+	}
+	
+	
+	void setFinished(long rowsCopied, long reclaimedBytes){
+		this.rowsCopied = rowsCopied;
+		this.copy = null;
+		this.reclaimedBytes = reclaimedBytes;
+		this.finished = true;
+	}
+	
+	
+	boolean isFinished(){
+		return finished;
+	}
+	
+	
+	/**
+	 * The difference of the file sizes before and after the compaction. It can be negative if the
+	 * table has grown while it was compacted.
+	 */
+	long getReclaimedBytes(){
+		return reclaimedBytes;
+	}
+}
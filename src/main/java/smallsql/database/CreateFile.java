@@ -53,6 +53,15 @@ public class CreateFile extends TransactionStep{
     }
 
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    boolean hasWrites(){
+        return false;
+    }
+
+
     /**
      * {@inheritDoc}
      */
@@ -0,0 +1,152 @@
+/* =============================================================
+ * SmallSQL : a free Java DBMS library for the Java(tm) platform
+ * =============================================================
+ *
+ * (C) Copyright 2004-2011, by Volker Berlin.
+ *
+ * Project Info:  http://www.smallsql.de/
+ *
+ * This library is free software; you can redistribute it and/or modify it 
+ * under the terms of the GNU Lesser General Public License as published by 
+ * the Free Software Foundation; either version 2.1 of the License, or 
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but 
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY 
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public 
+ * License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, 
+ * USA.  
+ *
+ * [Java is a trademark or registered trademark of Sun Microsystems, Inc. 
+ * in the United States and other countries.]
+ *
+ * ---------------
+ * CsvReader.java
+ * ---------------
+ * Author: Volker Berlin
+ * 
+ */
+package smallsql.database;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import smallsql.tools.language.Language;
+
+
+/**
+ * A reader for CSV files. The values are separated with a delimiter and the rows with a line break. A value can be
+ * quoted with double quotes, then it can include delimiters, line breaks and double quotes that are doubled.
+ * An empty value without quotes is a NULL value.
+ */
+final class CsvReader {
+
+	private final Reader reader;
+	private final char delimiter;
+	private final char[] chars = new char[8192];
+	/** the position of the next character in chars */
+	private int pos;
+	/** the count of valid characters in chars */
+	private int end;
+	/** the count of read rows, for error messages */
+	private long row = 1;
+	private final StringBuffer buffer = new StringBuffer();
+	private final ArrayList values = new ArrayList();
+	
+	
+	CsvReader(Reader reader, char delimiter){
+		this.reader = reader;
+		this.delimiter = delimiter;
+	}
+	
+	
+	/**
+	 * Read the values of the next row. Empty lines are skipped.
+	 * @return the values as String or null for NULL values; null at the end of the file
+	 */
+	Object[] readRow() throws IOException, SQLException{
+		int c;
+		do{
+			c = read();
+		}while(c == '\r' || c == '\n');
+		if(c < 0){
+			return null;
+		}
+		values.clear();
+		while(true){
+			boolean quoted = false;
+			buffer.setLength( 0 );
+			if(c == '"'){
+				quoted = true;
+				while(true){
+					c = read();
+					if(c < 0){
+						throw SmallSQLException.create(Language.CUSTOM_MESSAGE, "Missing end quote in row " + row);
+					}
+					if(c == '"'){
+						c = read();
+						if(c != '"'){
+							break;
+						}
+					}
+					buffer.append( (char)c );
+				}
+			}
+			if(c >= 0 && c != delimiter && c != '\r' && c != '\n'){
+				// read the characters of a not quoted value or after the end quote block wise
+				pos--;
+				while(true){
+					int start = pos;
+					while(pos < end){
+						char ch = chars[pos];
+						if(ch == delimiter || ch == '\r' || ch == '\n'){
+							break;
+						}
+						pos++;
+					}
+					buffer.append( chars, start, pos - start );
+					if(pos < end){
+						c = chars[pos++];
+						break;
+					}
+					if(!fill()){
+						c = -1;
+						break;
+					}
+				}
+			}
+			values.add( (buffer.length() == 0 && !quoted) ? null : buffer.toString() );
+			if(c != delimiter){
+				break;
+			}
+			c = read();
+		}
+		row++;
+		return values.toArray();
+	}
+	
+	
+	private int read() throws IOException{
+		if(pos >= end && !fill()){
+			return -1;
+		}
+		return chars[pos++];
+	}
+	
+	
+	/**
+	 * Read the next characters from the reader.
+	 * @return false at the end of the file
+	 */
+	private boolean fill() throws IOException{
+		int count = reader.read( chars, 0, chars.length );
+		pos = 0;
+		end = Math.max( count, 0 );
+		return count > 0;
+	}
+}
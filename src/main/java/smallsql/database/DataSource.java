@@ -70,6 +70,14 @@ abstract class DataSource extends RowSource{
 
 	abstract byte[] getBytes( int colIdx ) throws Exception;
 
+	/**
+	 * Get a LOB value for streaming. Only a table can return it.
+	 * @return the value or null if the column is not a LOB column of a table or the value is SQL NULL.
+	 */
+	Lob getLob( int colIdx ) throws Exception{
+		return null;
+	}
+
 	abstract int getDataType( int colIdx );
 
 
@@ -54,6 +54,11 @@ final class Database{
 	private final File directory;
 	private final FileChannel master;
 	private final WeakHashMap connections = new WeakHashMap();
+	private final PageCache pageCache;
+	/** the write-ahead log or null if the changes are written directly to the table files */
+	private final WriteAheadLog writeAheadLog;
+	/** The progress of running and finished COMPACT commands; key is the table name, value a CompactStatus */
+	private final HashMap compactions = new HashMap();
 
 
 	/**
@@ -85,7 +90,7 @@ final class Database{
                     CommandCreateDatabase command = new CommandCreateDatabase(con.log, name);
                     command.execute(con, null);
                 }
-                db = new Database( name, file, con.isReadOnly() );
+                db = new Database( name, file, con.isReadOnly(), con.getPageCacheSize(), con.isWriteAheadLog() ? con.getSyncInterval() : -1 );
                 databases.put(dbKey, db);
             }
             db.connections.put(con, null);
@@ -106,12 +111,15 @@ final class Database{
      * @param name is used for getCatalog()
      * @param canonicalFile the directory that is already canonical
      * @param readonly open database in read only mode
+     * @param pageCacheSize the memory budget of the page cache in bytes, 0 disable the cache
+     * @param syncInterval the sync interval of the write-ahead log in milliseconds, -1 if there should be no log
      * @throws SQLException If can't open
      */
-    private Database( String name, File canonicalFile, boolean readonly ) throws SQLException{
+    private Database( String name, File canonicalFile, boolean readonly, long pageCacheSize, int syncInterval ) throws SQLException{
         try{
 	        this.name = name;
 	        this.readonly = readonly;
+	        this.pageCache = new PageCache( pageCacheSize );
 			directory = canonicalFile;
 			if(!directory.isDirectory()){
                 throw SmallSQLException.create(Language.DB_NONEXISTENT, name);
@@ -120,6 +128,11 @@ final class Database{
 			if(!file.exists())
 				throw SmallSQLException.create(Language.DB_NOT_DIRECTORY, name);
 			master = Utils.openRaFile( file, readonly );
+			if(!readonly){
+				// replay the changes of a crashed process before any table is opened
+				WriteAheadLog.recover( directory );
+			}
+			writeAheadLog = (readonly || syncInterval < 0) ? null : new WriteAheadLog( directory, syncInterval );
         }catch(Exception e){
         	throw SmallSQLException.createFromException(e);
         }
@@ -133,6 +146,35 @@ final class Database{
 	    return readonly;
 	}
 	
+	
+	/**
+	 * Get the cache of committed pages that is shared by all tables of this database.
+	 */
+	PageCache getPageCache(){
+	    return pageCache;
+	}
+	
+
+	/**
+	 * Get the write-ahead log of this database.
+	 * @return the log or null if the changes are written directly to the table files
+	 */
+	WriteAheadLog getWriteAheadLog(){
+	    return writeAheadLog;
+	}
+	
+	
+	/**
+	 * Open a table or lob file. If the database has a write-ahead log then all writes to the file are logged.
+	 */
+	FileChannel openFile(File file) throws Exception{
+	    FileChannel raFile = Utils.openRaFile( file, readonly );
+	    if(writeAheadLog != null){
+	        raFile = writeAheadLog.wrap( raFile, file );
+	    }
+	    return raFile;
+	}
+	
 
 	/**
 	 * Remove a connection from this database.
@@ -169,6 +211,9 @@ final class Database{
 				iterator.remove();
 			}
 		}
+		if(writeAheadLog != null){
+			writeAheadLog.close();
+		}
 		master.close();
 	}
 	
@@ -211,6 +256,7 @@ final class Database{
             }else{
             	Table.drop( this, tableName );
             }
+            removeCompactStatus( tableName );
         }
     }
     
@@ -243,10 +289,29 @@ final class Database{
                 throw SmallSQLException.create(Language.TABLE_CANT_RENAME, oldTable.name);
             }
             tmpFile.delete();
+            replaceLobFile( oldTable, newTable );
+            // the free space maps are only hints for the old files
+            FreeSpaceMap.drop( this, oldTable.name );
+            FreeSpaceMap.drop( this, newTable.name );
         }
     }
     
 
+	/**
+	 * Move the lob file of the new table to the name of the old table. The table files are already swapped.
+	 */
+	private void replaceLobFile( Table oldTable, Table newTable) throws Exception{
+        File oldFile = new File(Utils.createLobFileName( this, oldTable.name ));
+        File newFile = new File(Utils.createLobFileName( this, newTable.name ));
+        if(oldFile.exists() && !oldFile.delete()){
+            throw SmallSQLException.create(Language.TABLE_CANT_RENAME, oldTable.name);
+        }
+        if(newFile.exists() && !newFile.renameTo(oldFile)){
+            throw SmallSQLException.create(Language.TABLE_CANT_RENAME, oldTable.name);
+        }
+	}
+    
+
 	static void dropView(SSConnection con, String catalog, String tableName) throws Exception{
 		getDatabase( con, catalog).dropView(tableName);
 	}
@@ -280,13 +345,14 @@ final class Database{
      * @param columns the column descriptions of the table
      * @param indexes the indexes of the new table
      * @param foreignKeys 
+     * @param compression the codec of the rows, Table.COMPRESSION_NONE or Table.COMPRESSION_LZ
      * @throws Exception
      */
-	void createTable(SSConnection con, String name, Columns columns, IndexDescriptions indexes, ForeignKeys foreignKeys) throws Exception{
+	void createTable(SSConnection con, String name, Columns columns, IndexDescriptions indexes, ForeignKeys foreignKeys, int compression) throws Exception{
         checkForeignKeys( con, foreignKeys );
         // createFile() can run only one Thread success (it is atomic)
         // Thats the create of the Table does not need in the Synchronized.
-        Table table = new Table( this, con, name, columns, indexes, foreignKeys);
+        Table table = new Table( this, con, name, columns, indexes, foreignKeys, compression);
         synchronized(tableViews){
             tableViews.put( name, table);
         }
@@ -296,9 +362,9 @@ final class Database{
     /**
      * It is used to create temp Table for ALTER TABLE and co.
      */
-    Table createTable(SSConnection con, String tableName, Columns columns, IndexDescriptions oldIndexes, IndexDescriptions newIndexes, ForeignKeys foreignKeys) throws Exception{
+    Table createTable(SSConnection con, String tableName, Columns columns, IndexDescriptions oldIndexes, IndexDescriptions newIndexes, ForeignKeys foreignKeys, int compression) throws Exception{
         checkForeignKeys( con, foreignKeys );
-        Table table = new Table( this, con, tableName, columns, oldIndexes, newIndexes, foreignKeys);
+        Table table = new Table( this, con, tableName, columns, oldIndexes, newIndexes, foreignKeys, compression);
         synchronized(tableViews){
             tableViews.put( tableName, table);
         }
@@ -512,6 +578,7 @@ final class Database{
 		List rows = new ArrayList();
 		Strings tables = getTables(table);
 		Short type = Utils.getShort( DatabaseMetaData.tableIndexOther );
+		Short hashType = Utils.getShort( DatabaseMetaData.tableIndexHashed );
 		for(int t=0; t<tables.size(); t++){
     		String tableName = tables.get(t);
     		TableView tab = getTableView( con, tableName);
@@ -528,7 +595,7 @@ final class Database{
 					row[3] = Boolean.valueOf(!index.isUnique());//NON_UNIQUE
 													//INDEX_QUALIFIER
 					row[5] = index.getName();		//INDEX_NAME
-					row[6] = type;					//TYPE
+					row[6] = index.isHash() ? hashType : type;	//TYPE
 					row[7] = Utils.getShort(c+1);	//ORDINAL_POSITION
 					row[8] = columns.get(c);		//COLUMN_NAME
 													//ASC_OR_DESC
@@ -543,4 +610,63 @@ final class Database{
 		rows.toArray(result);
 		return result;
 	}
+	
+	
+	/**
+	 * Get runtime statistics of this database. Every row include the columns TABLE_NAME, STATISTIC and VALUE.
+	 * The TABLE_NAME is null for values of the whole database.
+	 */
+	Object[][] getStatistics(){
+		List rows = new ArrayList();
+		addStatistic( rows, null, "PAGE_CACHE_HITS", pageCache.getHitCount() );
+		addStatistic( rows, null, "PAGE_CACHE_MISSES", pageCache.getMissCount() );
+		addStatistic( rows, null, "PAGE_CACHE_SIZE", pageCache.getSize() );
+		addStatistic( rows, null, "PAGE_CACHE_MAX_SIZE", pageCache.getMaxSize() );
+		if(writeAheadLog != null){
+			addStatistic( rows, null, "LOG_SIZE", writeAheadLog.getSize() );
+			addStatistic( rows, null, "LOG_UNITS", writeAheadLog.getUnitCount() );
+			addStatistic( rows, null, "LOG_WRITES", writeAheadLog.getWriteCount() );
+			addStatistic( rows, null, "LOG_SYNCS", writeAheadLog.getSyncCount() );
+			addStatistic( rows, null, "LOG_CHECKPOINTS", writeAheadLog.getCheckpointCount() );
+		}
+		synchronized(compactions){
+			Iterator iterator = compactions.values().iterator();
+			while(iterator.hasNext()){
+				CompactStatus status = (CompactStatus)iterator.next();
+				String tableName = status.getTableName();
+				addStatistic( rows, tableName, "COMPACT_ROWS_TOTAL", status.getRowCount() );
+				addStatistic( rows, tableName, "COMPACT_ROWS_COPIED", status.getRowsCopied() );
+				addStatistic( rows, tableName, "COMPACT_PROGRESS", status.getProgress() );
+				if(status.isFinished()){
+					addStatistic( rows, tableName, "COMPACT_RECLAIMED_BYTES", status.getReclaimedBytes() );
+				}
+			}
+		}
+		Object[][] result = new Object[rows.size()][];
+		rows.toArray(result);
+		return result;
+	}
+	
+	
+	/**
+	 * Register the status of a COMPACT command that it can be requested with getStatistics().
+	 * A previous status of the same table is replaced.
+	 */
+	void setCompactStatus(CompactStatus status){
+		synchronized(compactions){
+			compactions.put( status.getTableName(), status );
+		}
+	}
+	
+	
+	private void removeCompactStatus(String tableName){
+		synchronized(compactions){
+			compactions.remove( tableName );
+		}
+	}
+	
+	
+	private static void addStatistic(List rows, String tableName, String statistic, long value){
+		rows.add( new Object[]{ tableName, statistic, new Long(value) } );
+	}
 }
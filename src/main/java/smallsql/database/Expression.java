@@ -158,6 +158,14 @@ abstract class Expression implements Cloneable{
 
     abstract byte[] getBytes() throws Exception;
 
+	/**
+	 * Get a LOB value for streaming without reading the complete value.
+	 * @return the value or null if the expression does not reference a LOB column or the value is SQL NULL.
+	 */
+	Lob getLob() throws Exception{
+		return null;
+	}
+
     abstract int getDataType();
 
     final int getType(){return type;}
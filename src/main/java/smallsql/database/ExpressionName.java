@@ -115,6 +115,11 @@ public class ExpressionName extends Expression {
         return fromEntry.getBytes(colIdx);
     }
 
+    @Override
+    Lob getLob() throws Exception{
+        return (getType() == NAME) ? fromEntry.getLob(colIdx) : null;
+    }
+
     int getDataType(){
 		switch(getType()){
 			case NAME:
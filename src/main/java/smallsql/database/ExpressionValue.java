@@ -107,6 +107,50 @@ methods for Grouping
     void accumulate(Expression expr) throws Exception{
 		int type = getType();
 		if(type != GROUP_BY) expr = expr.getParams()[0];
+		accumulateValue( type, expr );
+	}
+	
+	
+	/**
+	 * Combine the partial aggregate value of the same group from another row source into this value. 
+	 * It is used to merge the results of the workers of a parallel aggregation. The values of other
+	 * must be from rows that follow the rows of this value.
+	 */
+	void combine(ExpressionValue other) throws Exception{
+		int type = getType();
+		switch(type){
+			case GROUP_BY:
+			case FIRST:
+				if(isEmpty()){
+					value = other.value;
+					dataType = other.dataType;
+				}
+				break;
+			case LAST:
+				if(!other.isEmpty()){
+					value = other.value;
+					dataType = other.dataType;
+				}
+				break;
+			case COUNT:
+				((MutableInteger)value).value += ((MutableInteger)other.value).value;
+				break;
+			case SUM:
+				if(!other.isEmpty()) accumulateValue( type, other );
+				break;
+			case MAX:
+			case MIN:
+				accumulateValue( type, other );
+				break;
+			default: throw new Error();
+		}
+	}
+	
+	
+	/**
+	 * Accumulate a single value of the parameter of the aggregate function. 
+	 */
+	private void accumulateValue(int type, Expression expr) throws Exception{
 		switch(type){
 			case GROUP_BY:
 			case FIRST:
@@ -626,6 +670,7 @@ overriden abstact methods extends from expression
 			case SQLTokenizer.BINARY:
 			case SQLTokenizer.VARBINARY:
             case SQLTokenizer.LONGVARBINARY:
+            case SQLTokenizer.BLOB:
 				return (byte[])obj;
 			case SQLTokenizer.VARCHAR:
 			case SQLTokenizer.CHAR:
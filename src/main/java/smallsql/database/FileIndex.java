@@ -36,34 +36,42 @@ package smallsql.database;
 import java.io.*;
 import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+import smallsql.tools.language.Language;
 
 
 /**
+ * An Index that is saved in an index file. The file is a B+tree of fixed size pages, see FileIndexPage. 
+ * The file has the follow structure:
+ * <pre>
+ *  0: magic and version, written from the IndexDescription
+ *  8: state, STATE_CLEAN if the file is valid
+ * 12: the unique flag
+ * 16: the count of index columns and included columns
+ * 20: the position of the root page or -1 if the index is empty
+ * 28: the height of the tree
+ * 32: the count of included columns
+ * PAGE_SIZE: the pages of the tree
+ * </pre>
+ * If the state is not clean, for example after a crash, then the index must be rebuild from the table.
+ * <p>
+ * The values are loaded on demand. A search reads only the pages of the path from the root to the leaf pages 
+ * with the page cache of the database. A change is written in place to its leaf page. A page that is too small 
+ * for a new entry is split and the new page is appended at the end of the file. Pages are never merged, a 
+ * page can be empty after removes. On closing only the header is written.
+ * <p>
+ * A new or rebuild index and an index that is read in the order of its keys, see IndexDescription.getRootPage(),
+ * has all values in the memory tree. Such an index is written completely on closing.
+ * <p>
+ * The values of included columns are not part of the key. They are saved after the key columns of an entry
+ * in the file and in a map of the row offsets in the memory.
+ * 
  * @author Volker Berlin
  */
 class FileIndex extends Index {
 
-//static public void main(String args[]) throws Exception{
-//    File file = File.createTempFile("test", "idx");
-//    RandomAccessFile raFile = Utils.openRaFile(file, true );
-//    FileIndex index = new FileIndex(false, raFile);
-//    Expressions expressions = new Expressions();
-//    ExpressionValue value = new ExpressionValue();
-//    expressions.add(value);
-//    value.set( "150", SQLTokenizer.VARCHAR);
-//    index.addValues(1, expressions);
-//    value.set( "15", SQLTokenizer.VARCHAR);
-//    index.addValues(2, expressions);
-//    print(index,expressions);
-//    index.save();
-//    index.close();
-//    
-//    System.out.println("Idx size:"+file.length());
-//    raFile = Utils.openRaFile(file, true );
-//    index = FileIndex.load(raFile);
-//    print(index,expressions);
-//}
-
 static void print(Index index, Expressions expressions){
     IndexScrollStatus scroll = index.createScrollStatus(expressions);
     long l;
@@ -73,42 +81,536 @@ static void print(Index index, Expressions expressions){
     System.out.println("============================");
 }
 
+    static final private int STATE_OFFSET = 8;
+    static final private int DATA_OFFSET = 12;
+    static final private int HEADER_SIZE = 28;
+    static final private int STATE_CLEAN = 1;
+    static final private int STATE_DIRTY = 0;
+    
+    /** If the file is equals to the values in memory. */
+    private boolean clean;
+    /** If the values are loaded in the memory tree. If false then all values are only in the file. */
+    private boolean loaded;
     
-    private final FileChannel raFile;
+    private FileChannel raFile;
+    private PageCache cache;
+    /** The count of the index columns and the included columns. */
+    final private int columnCount;
+    final private int includeCount;
+    /** The digits of the included columns in memory, row offset (Long) --> char[][] */
+    final private HashMap includes = new HashMap();
+    private long rootPos = -1;
+    private int height;
     
     
-    FileIndex( boolean unique, FileChannel raFile ) {
-        this(new FileIndexNode( unique, (char)-1, raFile), raFile);
+    /**
+     * @param columnCount the count of the index columns and the included columns
+     * @param includeCount the count of included columns
+     */
+    FileIndex( boolean unique, int columnCount, int includeCount ) {
+        super(unique);
+        this.columnCount = columnCount;
+        this.includeCount = includeCount;
+        loaded = true;
     }
     
     
-    FileIndex( FileIndexNode root, FileChannel raFile ) {
-        super(root);
-        this.raFile = raFile;
+    /**
+     * Open the index values of the file.
+     * @param cache the page cache of the database
+     * @return the index or null if the file does not include valid values and the index must be rebuild.
+     */
+    static FileIndex load( FileChannel raFile, PageCache cache, int columnCount, int includeCount ) throws Exception{
+        if(raFile.size() < DATA_OFFSET + HEADER_SIZE){
+            return null;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(4 + HEADER_SIZE);
+        Utils.readFully( raFile, buffer, STATE_OFFSET );
+        if(buffer.getInt(0) != STATE_CLEAN || buffer.getInt(8) != columnCount || buffer.getInt(24) != includeCount){
+            return null;
+        }
+        FileIndex index = new FileIndex( buffer.getInt(4) != 0, columnCount, includeCount );
+        index.rootPos = buffer.getLong(12);
+        index.height = buffer.getInt(20);
+        index.raFile = raFile;
+        index.cache = cache;
+        index.loaded = false;
+        index.clean = true;
+        return index;
     }
     
     
-    static FileIndex load( FileChannel raFile ) throws Exception{
-        ByteBuffer buffer = ByteBuffer.allocate(1);
-        raFile.read(buffer);
-        buffer.position(0);
-        boolean unique = buffer.get() != 0;
-        FileIndexNode root = FileIndexNode.loadRootNode( unique, raFile, raFile.position() );
-        return new FileIndex( root, raFile );
+    /**
+     * Load all values from the file in the memory tree. This is needed for a reading of the tree. Later
+     * changes are only done in memory.
+     */
+    void loadValues() throws Exception{
+        if(loaded){
+            return;
+        }
+        if(rootPos < 0){
+            loaded = true;
+            return;
+        }
+        // the pages are not added to the page cache because every page is read only once
+        FileIndexPage page = FileIndexPage.read( raFile, null, rootPos, columnCount );
+        while(!page.isLeaf()){
+            page = FileIndexPage.read( raFile, null, page.getChild(0), columnCount );
+        }
+        int keyCount = columnCount - includeCount;
+        while(true){
+            for(int i=0; i<page.getCount(); i++){
+                long rowOffset = page.getRowOffset(i);
+                char[][] key = page.getKey(i);
+                if(includeCount > 0){
+                    char[][] include = new char[includeCount][];
+                    System.arraycopy( key, keyCount, include, 0, includeCount );
+                    includes.put( new Long(rowOffset), include );
+                    char[][] temp = new char[keyCount][];
+                    System.arraycopy( key, 0, temp, 0, keyCount );
+                    key = temp;
+                }
+                addKey( rowOffset, key );
+            }
+            long next = page.getNext();
+            if(next < 0){
+                break;
+            }
+            page = FileIndexPage.read( raFile, null, next, columnCount );
+        }
+        loaded = true;
+    }
+    
+    
+    /**
+     * If the values are in the memory tree. If not then the file must be searched with findFileRange().
+     */
+    boolean isLoaded(){
+        return loaded;
+    }
+    
+    
+    /**
+     * Add a row with the values of the index columns followed by the values of the included columns.
+     */
+    void addRow(long rowOffset, Expressions values) throws Exception{
+        if(!loaded){
+            int keyCount = columnCount - includeCount;
+            char[][] entry = new char[columnCount][];
+            for(int i = 0; i < columnCount; i++){
+                entry[i] = (i < keyCount) ? createKey( values.get(i) ) : createIncludeValue( values.get(i) );
+            }
+            insertEntry( entry, rowOffset );
+            return;
+        }
+        if(includeCount == 0){
+            addValues( rowOffset, values );
+            return;
+        }
+        int keyCount = columnCount - includeCount;
+        Expressions key = new Expressions(keyCount);
+        for(int i = 0; i < keyCount; i++){
+            key.add( values.get(i) );
+        }
+        addValues( rowOffset, key );
+        char[][] include = new char[includeCount][];
+        for(int i = 0; i < includeCount; i++){
+            include[i] = createIncludeValue( values.get( keyCount + i ) );
+        }
+        includes.put( new Long(rowOffset), include );
+    }
+    
+    
+    /**
+     * Remove a row that was added with addRow().
+     */
+    void removeRow(long rowOffset, Expressions values) throws Exception{
+        if(!loaded){
+            char[][] key = new char[columnCount - includeCount][];
+            for(int i = 0; i < key.length; i++){
+                key[i] = createKey( values.get(i) );
+            }
+            deleteEntry( key, rowOffset );
+            return;
+        }
+        if(includeCount == 0){
+            removeValue( rowOffset, values );
+            return;
+        }
+        int keyCount = columnCount - includeCount;
+        Expressions key = new Expressions(keyCount);
+        for(int i = 0; i < keyCount; i++){
+            key.add( values.get(i) );
+        }
+        removeValue( rowOffset, key );
+        includes.remove( new Long(rowOffset) );
+    }
+    
+    
+    /**
+     * Search a range of values in the file. The arguments are equals to Index.findRange().
+     */
+    void findFileRange(Expression[] expressions, Expression low, Expression high, boolean highIsPrefix, LongList rows) throws Exception{
+        char[] lowKey  = (low  == null) ? null : createKey(low);
+        char[] highKey = (high == null) ? null : createKey(high);
+        findFileRange( createKeys( expressions ), lowKey, highKey, highIsPrefix, rows, null );
+    }
+    
+    
+    /**
+     * Search the rows with equals values of all columns in the file.
+     */
+    void findFileRows(Expressions expressions, LongList rows) throws Exception{
+        char[][] key = new char[expressions.size()][];
+        for(int i = 0; i < key.length; i++){
+            key[i] = createKey( expressions.get(i) );
+        }
+        findFileRange( key, null, null, false, rows, null );
+    }
+    
+    
+    /**
+     * Search a range of values like Index.findRange() in the memory or in the file and receive also the 
+     * digits of the columns for every row. The expressions can include all index columns.
+     * @param entries receive for every row a char[][] with the digits of the index columns and of the 
+     * included columns. If the values are in memory then only the digits of the columns of the expressions,
+     * of the range column and of the included columns are set, the other digits are null.
+     */
+    void findEntries(Expression[] expressions, Expression low, Expression high, boolean highIsPrefix, LongList rows, ArrayList entries) throws Exception{
+        char[][] prefix = createKeys( expressions );
+        if(!loaded){
+            char[] lowKey  = (low  == null) ? null : createKey(low);
+            char[] highKey = (high == null) ? null : createKey(high);
+            findFileRange( prefix, lowKey, highKey, highIsPrefix, rows, entries );
+            return;
+        }
+        ArrayList keys = new ArrayList();
+        findRange( expressions, low, high, highIsPrefix, rows, keys );
+        int keyCount = columnCount - includeCount;
+        for(int i = 0; i < rows.size(); i++){
+            char[][] entry = new char[columnCount][];
+            System.arraycopy( prefix, 0, entry, 0, prefix.length );
+            if(prefix.length < keyCount){
+                entry[prefix.length] = (char[])keys.get(i);
+            }
+            if(includeCount > 0){
+                char[][] include = (char[][])includes.get( new Long( rows.get(i) ) );
+                System.arraycopy( include, 0, entry, keyCount, includeCount );
+            }
+            entries.add( entry );
+        }
     }
     
     
-    void save() throws Exception{
-        ByteBuffer buffer = ByteBuffer.allocate(1);
-        buffer.put(rootPage.getUnique() ? (byte)1 : (byte)0 );
+    private static char[][] createKeys(Expression[] expressions) throws Exception{
+        char[][] keys = new char[expressions.length][];
+        for(int i = 0; i < expressions.length; i++){
+            keys[i] = createKey( expressions[i] );
+        }
+        return keys;
+    }
+    
+    
+    /**
+     * Descend from the root to the first leaf entry that can be in the range and read the leaf pages 
+     * until the end of the range.
+     * @param prefix the digits of the first columns
+     * @param low the digits of the lower bound of the next column or null
+     * @param high the digits of the upper bound of the next column or null
+     * @param entries optional, receive the digits of all columns of every row
+     */
+    private void findFileRange(char[][] prefix, char[] low, char[] high, boolean highIsPrefix, LongList rows, ArrayList entries) throws Exception{
+        if(rootPos < 0){
+            return;
+        }
+        char[][] search = prefix;
+        if(low != null){
+            search = new char[prefix.length + 1][];
+            System.arraycopy( prefix, 0, search, 0, prefix.length );
+            search[prefix.length] = low;
+        }
+        FileIndexPage page = FileIndexPage.read( raFile, cache, rootPos, columnCount );
+        while(!page.isLeaf()){
+            page = FileIndexPage.read( raFile, cache, page.getChild( page.findChild( search ) ), columnCount );
+        }
+        boolean isRange = prefix.length < columnCount - includeCount;
+        int i = page.findFirst( search );
+        while(true){
+            for(; i<page.getCount(); i++){
+                if(page.compare( i, prefix ) != 0){
+                    // all following keys are greater
+                    return;
+                }
+                if(isRange && (low != null || high != null)){
+                    char[] key = page.getColumn( i, prefix.length );
+                    if(low != null && compare( key, key.length, low ) < 0){
+                        continue;
+                    }
+                    if(high != null && compare( key, key.length, high ) > 0 && !(highIsPrefix && startsWith( key, key.length, high ))){
+                        return;
+                    }
+                }
+                rows.add( page.getRowOffset(i) );
+                if(entries != null){
+                    entries.add( page.getKey(i) );
+                }
+            }
+            long next = page.getNext();
+            if(next < 0){
+                return;
+            }
+            page = FileIndexPage.read( raFile, cache, next, columnCount );
+            i = 0;
+        }
+    }
+    
+    
+    /**
+     * Insert an entry in its leaf page in the file. 
+     * @param entry the digits of the index columns and the included columns
+     * @throws SQLException if it is a unique index and the key already exists
+     */
+    private void insertEntry(char[][] entry, long rowOffset) throws Exception{
+        char[][] key = entry;
+        if(includeCount > 0){
+            key = new char[columnCount - includeCount][];
+            System.arraycopy( entry, 0, key, 0, key.length );
+        }
+        if(rootPage.getUnique()){
+            LongList rows = new LongList();
+            findFileRange( key, null, null, false, rows, null );
+            if(rows.size() > 0){
+                throw SmallSQLException.create(Language.KEY_DUPLICATE);
+            }
+        }
+        byte[] data = FileIndexPage.createEntry( entry, rowOffset );
+        if(rootPos < 0){
+            ArrayList entries = new ArrayList();
+            entries.add( data );
+            rootPos = appendPage( true, entries, -1 );
+            height = 1;
+            return;
+        }
+        long[] path = new long[height];
+        int[] childIdx = new int[height];
+        FileIndexPage page = readPath( key, rowOffset, path, childIdx );
+        ArrayList entries = page.getEntries();
+        entries.add( page.findGreater( key, rowOffset ), data );
+        int level = height - 1;
+        byte[] separator = writeEntries( path[level], page, entries );
+        while(separator != null){
+            if(level == 0){
+                // the root was split, the first entry of the old root is not used for searching
+                ArrayList root = new ArrayList();
+                root.add( FileIndexPage.createInnerEntry( rootPos, (byte[])entries.get(0), page.isLeaf() ) );
+                root.add( separator );
+                rootPos = appendPage( false, root, -1 );
+                height++;
+                return;
+            }
+            level--;
+            page = FileIndexPage.read( raFile, cache, path[level], columnCount );
+            entries = page.getEntries();
+            entries.add( childIdx[level] + 1, separator );
+            separator = writeEntries( path[level], page, entries );
+        }
+    }
+    
+    
+    /**
+     * Remove an entry from its leaf page in the file. 
+     * @param key the digits of the index columns without the included columns
+     */
+    private void deleteEntry(char[][] key, long rowOffset) throws Exception{
+        if(rootPos < 0){
+            return;
+        }
+        long[] path = new long[height];
+        FileIndexPage page = readPath( key, rowOffset, path, new int[height] );
+        int idx = page.findGreater( key, rowOffset ) - 1;
+        if(idx < 0 || page.compare( idx, key, rowOffset ) != 0){
+            return;
+        }
+        ArrayList entries = page.getEntries();
+        entries.remove( idx );
+        writeEntries( path[height-1], page, entries );
+    }
+    
+    
+    /**
+     * Descend from the root to the leaf page of an entry. Every child includes the entries from its entry in 
+     * the parent page to the next entry in the parent page.
+     * @param path receive the position of the page of every level
+     * @param childIdx receive the index of the child in the inner page of every level
+     * @return the leaf page
+     */
+    private FileIndexPage readPath(char[][] key, long rowOffset, long[] path, int[] childIdx) throws Exception{
+        long filePos = rootPos;
+        FileIndexPage page = FileIndexPage.read( raFile, cache, filePos, columnCount );
+        for(int level = 0; !page.isLeaf(); level++){
+            path[level] = filePos;
+            childIdx[level] = Math.max( 0, page.findGreater( key, rowOffset ) - 1 );
+            filePos = page.getChild( childIdx[level] );
+            page = FileIndexPage.read( raFile, cache, filePos, columnCount );
+        }
+        path[height-1] = filePos;
+        return page;
+    }
+    
+    
+    /**
+     * Rewrite a changed page in place. If the entries are too large for the page then the page is split.
+     * @param filePos the position of the page
+     * @param page the old page
+     * @param entries the new entries of the page
+     * @return the entry for the parent page of the new page or null if the page was not split
+     */
+    private byte[] writeEntries(long filePos, FileIndexPage page, ArrayList entries) throws Exception{
+        boolean isLeaf = page.isLeaf();
+        int length = page.getLength();
+        if(FileIndexPage.getLength( entries ) <= length){
+            writePage( filePos, FileIndexPage.createPage( isLeaf, entries, isLeaf ? page.getNext() : -1, length ) );
+            return null;
+        }
+        int split = FileIndexPage.getSplit( entries, isLeaf, length );
+        ArrayList left = new ArrayList( entries.subList( 0, split ) );
+        ArrayList right = new ArrayList( entries.subList( split, entries.size() ) );
+        long rightPos = appendPage( isLeaf, right, isLeaf ? page.getNext() : -1 );
+        writePage( filePos, FileIndexPage.createPage( isLeaf, left, isLeaf ? rightPos : -1, length ) );
+        return FileIndexPage.createInnerEntry( rightPos, (byte[])right.get(0), isLeaf );
+    }
+    
+    
+    /**
+     * Write a new page at the end of the file.
+     * @return the position of the page
+     */
+    private long appendPage(boolean isLeaf, ArrayList entries, long next) throws Exception{
+        long filePos = Math.max( FileIndexPage.PAGE_SIZE, raFile.size() );
+        writePage( filePos, FileIndexPage.createPage( isLeaf, entries, next, FileIndexPage.getLength( entries ) ) );
+        return filePos;
+    }
+    
+    
+    private void writePage(long filePos, byte[] page) throws Exception{
+        Utils.writeFully( raFile, ByteBuffer.wrap( page ), filePos );
+        cache.update( raFile, filePos, page, page.length );
+    }
+    
+    
+    /**
+     * Mark the file as invalid before the first change of the values. If the values are not saved
+     * because the database is not closed correctly then the index is rebuild on the next loading.
+     */
+    void setDirty(FileChannel raFile) throws Exception{
+        if(clean){
+            writeState( raFile, STATE_DIRTY );
+            clean = false;
+        }
+    }
+    
+    
+    boolean isClean(){
+        return clean;
+    }
+    
+    
+    /**
+     * Write all values to the file if there are changes. If the values are not loaded then the pages are 
+     * already written and only the header is written. The pages of the file must be removed from the 
+     * page cache before.
+     */
+    void save(FileChannel raFile) throws Exception{
+        if(clean){
+            return;
+        }
+        if(loaded){
+            raFile.truncate( DATA_OFFSET );
+            FileIndexPage.Writer writer = new FileIndexPage.Writer( raFile, FileIndexPage.PAGE_SIZE );
+            save( writer, rootPage, new char[16], 0, new ArrayList() );
+            rootPos = writer.finish();
+            height = writer.getHeight();
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE);
+        buffer.putInt( rootPage.getUnique() ? 1 : 0 );
+        buffer.putInt( columnCount );
+        buffer.putLong( rootPos );
+        buffer.putInt( height );
+        buffer.putInt( includeCount );
         buffer.position(0);
-        raFile.write( buffer );
-        ((FileIndexNode)rootPage).save();
+        Utils.writeFully( raFile, buffer, DATA_OFFSET );
+        writeState( raFile, STATE_CLEAN );
+        clean = true;
+    }
+    
+    
+    /**
+     * Add all values of a node and its sub nodes in the order of the keys to the writer.
+     * @param path the digits from the root of the column to this node
+     * @param columns the digits of the previous columns
+     */
+    private void save(FileIndexPage.Writer writer, IndexNode node, char[] path, int length, ArrayList columns) throws Exception{
+        Object value = node.getValue();
+        if(value != null){
+            char[] remainder = node.getRemainderValue();
+            int remainderLength = (remainder == null) ? 0 : remainder.length;
+            char[] digits = new char[length + remainderLength];
+            System.arraycopy( path, 0, digits, 0, length );
+            if(remainder != null){
+                System.arraycopy( remainder, 0, digits, length, remainderLength );
+            }
+            columns.add( digits );
+            if(value instanceof IndexNode){
+                // the root of the next column
+                save( writer, (IndexNode)value, new char[16], 0, columns );
+            }else{
+                char[][] key = (char[][])columns.toArray( new char[columns.size()][] );
+                if(value instanceof Long){
+                    long rowOffset = ((Long)value).longValue();
+                    writer.add( getEntry( key, rowOffset ), rowOffset );
+                }else{
+                    RowBitmap list = (RowBitmap)value;
+                    long rowOffset = -1;
+                    while((rowOffset = list.getNext(rowOffset)) >= 0){
+                        writer.add( getEntry( key, rowOffset ), rowOffset );
+                    }
+                }
+            }
+            columns.remove( columns.size()-1 );
+        }
+        IndexNode[] nodes = node.getChildNodes();
+        if(nodes.length == 0) return;
+        if(length == path.length){
+            char[] temp = new char[length*2];
+            System.arraycopy(path, 0, temp, 0, length);
+            path = temp;
+        }
+        for(int i=0; i<nodes.length; i++){
+            IndexNode child = nodes[i];
+            path[length] = child.getDigit();
+            save( writer, child, path, length+1, columns );
+        }
+    }
+    
+    
+    /**
+     * Returns the digits of the key followed by the digits of the included columns of the row.
+     */
+    private char[][] getEntry(char[][] key, long rowOffset){
+        if(includeCount == 0){
+            return key;
+        }
+        char[][] entry = new char[columnCount][];
+        System.arraycopy( key, 0, entry, 0, key.length );
+        System.arraycopy( (char[][])includes.get( new Long(rowOffset) ), 0, entry, key.length, includeCount );
+        return entry;
     }
     
     
-    void close() throws IOException{
-        raFile.close();
+    private static void writeState(FileChannel raFile, int state) throws IOException{
+        ByteBuffer buffer = ByteBuffer.allocate(4);
+        buffer.putInt( 0, state );
+        Utils.writeFully( raFile, buffer, STATE_OFFSET );
     }
 
 }
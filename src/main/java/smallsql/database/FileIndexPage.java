@@ -0,0 +1,577 @@
+/* =============================================================
+ * SmallSQL : a free Java DBMS library for the Java(tm) platform
+ * =============================================================
+ *
+ * (C) Copyright 2004-2011, by Volker Berlin.
+ *
+ * Project Info:  http://www.smallsql.de/
+ *
+ * This library is free software; you can redistribute it and/or modify it 
+ * under the terms of the GNU Lesser General Public License as published by 
+ * the Free Software Foundation; either version 2.1 of the License, or 
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but 
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY 
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public 
+ * License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, 
+ * USA.  
+ *
+ * [Java is a trademark or registered trademark of Sun Microsystems, Inc. 
+ * in the United States and other countries.]
+ *
+ * ---------------
+ * FileIndexPage.java
+ * ---------------
+ * Author: Volker Berlin
+ * 
+ */
+package smallsql.database;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.sql.SQLException;
+import java.util.ArrayList;
+
+import smallsql.tools.language.Language;
+
+
+/**
+ * A page of the B+tree in an index file. The pages have a fixed size. A page with a very large key is a multiple 
+ * of the page size. The structure of a page is:
+ * <pre>
+ *  0: length of the page
+ *  4: type, LEAF or INNER
+ *  8: count of entries
+ * 12: position of the next leaf page or -1; the leaf pages are linked in the order of the keys
+ * 20: the offsets of the entries, 4 byte per entry
+ *     the entries
+ * </pre>
+ * An entry of a leaf page is the key and the row offset. An entry of an inner page is the position of a 
+ * child page and the first entry of the child page. A key is saved with the count of digits and the digits 
+ * for every column of the index, see Index.createKey(). The entries are sorted by the key and the row offset.
+ * 
+ * @author Volker Berlin
+ */
+final class FileIndexPage {
+
+	static final int PAGE_SIZE = 8192;
+	
+	static final private int LEAF = 1;
+	static final private int INNER = 2;
+	static final private int HEADER_SIZE = 20;
+	
+	final private ByteBuffer data;
+	final private boolean leaf;
+	final private int count;
+	final private int columnCount;
+	
+	
+	private FileIndexPage(byte[] page, int columnCount) throws SQLException{
+		data = ByteBuffer.wrap( page );
+		int type = data.getInt( 4 );
+		if(type != LEAF && type != INNER){
+			throw SmallSQLException.create(Language.INDEX_CORRUPT, String.valueOf(type));
+		}
+		leaf = type == LEAF;
+		count = data.getInt( 8 );
+		this.columnCount = columnCount;
+	}
+	
+	
+	/**
+	 * Read a page from the index file.
+	 * @param cache the page cache or null if the page should not be added to the cache, for example on a 
+	 * sequential read of all pages.
+	 */
+	static FileIndexPage read(FileChannel raFile, PageCache cache, long filePos, int columnCount) throws SQLException, IOException{
+		byte[] page = (cache == null) ? null : cache.get( raFile, filePos );
+		if(page == null){
+			long stamp = (cache == null) ? 0 : cache.getWriteStamp();
+			page = new byte[PAGE_SIZE];
+			Utils.readFully( raFile, ByteBuffer.wrap(page), filePos );
+			int length = ByteBuffer.wrap(page).getInt( 0 );
+			if(length > PAGE_SIZE){
+				// a page with a large key
+				byte[] largePage = new byte[length];
+				System.arraycopy( page, 0, largePage, 0, PAGE_SIZE );
+				ByteBuffer buffer = ByteBuffer.wrap(largePage);
+				buffer.position( PAGE_SIZE );
+				Utils.readFully( raFile, buffer, filePos );
+				page = largePage;
+			}
+			if(cache != null){
+				cache.put( raFile, filePos, page, stamp );
+			}
+		}
+		return new FileIndexPage( page, columnCount );
+	}
+	
+	
+	final boolean isLeaf(){
+		return leaf;
+	}
+	
+	
+	/**
+	 * Returns the size of the page in the file. A changed page can be rewritten in place if it is not larger.
+	 */
+	final int getLength(){
+		return data.getInt( 0 );
+	}
+	
+	
+	final int getCount(){
+		return count;
+	}
+	
+	
+	/**
+	 * Returns the position of the next leaf page or -1 if this is the last leaf page.
+	 */
+	final long getNext(){
+		return data.getLong( 12 );
+	}
+	
+	
+	/**
+	 * Returns the position of a child page of an inner page.
+	 */
+	final long getChild(int idx){
+		return data.getLong( data.getInt( HEADER_SIZE + 4*idx ) );
+	}
+	
+	
+	final long getRowOffset(int idx){
+		int offset = getKeyOffset( idx );
+		for(int c=0; c<columnCount; c++){
+			offset += 4 + 2*data.getInt( offset );
+		}
+		return data.getLong( offset );
+	}
+	
+	
+	/**
+	 * Returns the digits of all columns of an entry.
+	 */
+	final char[][] getKey(int idx){
+		char[][] key = new char[columnCount][];
+		int offset = getKeyOffset( idx );
+		for(int c=0; c<columnCount; c++){
+			char[] digits = key[c] = new char[ data.getInt( offset ) ];
+			offset += 4;
+			for(int i=0; i<digits.length; i++){
+				digits[i] = data.getChar( offset );
+				offset += 2;
+			}
+		}
+		return key;
+	}
+	
+	
+	/**
+	 * Returns the digits of a single column of an entry.
+	 */
+	final char[] getColumn(int idx, int column){
+		int offset = getKeyOffset( idx );
+		for(int c=0; c<column; c++){
+			offset += 4 + 2*data.getInt( offset );
+		}
+		char[] digits = new char[ data.getInt( offset ) ];
+		offset += 4;
+		for(int i=0; i<digits.length; i++){
+			digits[i] = data.getChar( offset );
+			offset += 2;
+		}
+		return digits;
+	}
+	
+	
+	/**
+	 * Compare the first columns of an entry with a key. A key that is a prefix of another key is lesser.
+	 * @param idx the entry
+	 * @param key the digits of the compared columns
+	 * @return a negative value if the entry is lesser, 0 if the columns are equals or a positive value
+	 */
+	final int compare(int idx, char[][] key){
+		int offset = getKeyOffset( idx );
+		for(int c=0; c<key.length; c++){
+			char[] digits = key[c];
+			int length = data.getInt( offset );
+			offset += 4;
+			int count = Math.min( length, digits.length );
+			for(int i=0; i<count; i++){
+				char digit = data.getChar( offset + 2*i );
+				if(digit != digits[i]){
+					return digit < digits[i] ? -1 : 1;
+				}
+			}
+			if(length != digits.length){
+				return length - digits.length;
+			}
+			offset += 2*length;
+		}
+		return 0;
+	}
+	
+	
+	/**
+	 * Returns the first entry that is not lesser as the key or the count of entries if there is no such entry.
+	 */
+	final int findFirst(char[][] key){
+		int low = 0;
+		int high = count;
+		while(low < high){
+			int mid = (low + high) >>> 1;
+			if(compare( mid, key ) < 0){
+				low = mid + 1;
+			}else{
+				high = mid;
+			}
+		}
+		return low;
+	}
+	
+	
+	/**
+	 * Returns the child of an inner page that can include the first entry that is not lesser as the key.
+	 */
+	final int findChild(char[][] key){
+		return Math.max( 0, findFirst( key ) - 1 );
+	}
+	
+	
+	/**
+	 * Compare an entry with a key and a row offset in the sort order of the entries.
+	 * @param key the digits of the index columns without the included columns
+	 */
+	final int compare(int idx, char[][] key, long rowOffset){
+		int result = compare( idx, key );
+		if(result != 0){
+			return result;
+		}
+		long value = getRowOffset( idx );
+		return value < rowOffset ? -1 : (value == rowOffset ? 0 : 1);
+	}
+	
+	
+	/**
+	 * Returns the first entry that is greater as the key and the row offset or the count of entries if 
+	 * there is no such entry.
+	 */
+	final int findGreater(char[][] key, long rowOffset){
+		int low = 0;
+		int high = count;
+		while(low < high){
+			int mid = (low + high) >>> 1;
+			if(compare( mid, key, rowOffset ) <= 0){
+				low = mid + 1;
+			}else{
+				high = mid;
+			}
+		}
+		return low;
+	}
+	
+	
+	/**
+	 * Returns a copy of all entries of the page in the order of the page. An entry is a byte[] like it 
+	 * is saved in the page, see createEntry() and createInnerEntry().
+	 */
+	final ArrayList getEntries(){
+		ArrayList entries = new ArrayList( count + 1 );
+		for(int idx=0; idx<count; idx++){
+			int start = data.getInt( HEADER_SIZE + 4*idx );
+			int offset = getKeyOffset( idx );
+			for(int c=0; c<columnCount; c++){
+				offset += 4 + 2*data.getInt( offset );
+			}
+			byte[] entry = new byte[offset + 8 - start];
+			System.arraycopy( data.array(), start, entry, 0, entry.length );
+			entries.add( entry );
+		}
+		return entries;
+	}
+	
+	
+	/**
+	 * Create the entry of a leaf page.
+	 */
+	static byte[] createEntry(char[][] key, long rowOffset){
+		int size = 8;
+		for(int c=0; c<key.length; c++){
+			size += 4 + 2*key[c].length;
+		}
+		ByteBuffer entry = ByteBuffer.allocate( size );
+		for(int c=0; c<key.length; c++){
+			char[] digits = key[c];
+			entry.putInt( digits.length );
+			for(int i=0; i<digits.length; i++){
+				entry.putChar( digits[i] );
+			}
+		}
+		entry.putLong( rowOffset );
+		return entry.array();
+	}
+	
+	
+	/**
+	 * Create the entry of an inner page from the first entry of a child page.
+	 * @param child the position of the child page
+	 * @param first the first entry of the child page
+	 * @param isLeaf if the child page is a leaf page
+	 */
+	static byte[] createInnerEntry(long child, byte[] first, boolean isLeaf){
+		int offset = isLeaf ? 0 : 8;
+		ByteBuffer entry = ByteBuffer.allocate( 8 + first.length - offset );
+		entry.putLong( child );
+		entry.put( first, offset, first.length - offset );
+		return entry.array();
+	}
+	
+	
+	/**
+	 * Returns the size of a page with the entries, it is a multiple of PAGE_SIZE.
+	 */
+	static int getLength(ArrayList entries){
+		int length = HEADER_SIZE + 4*entries.size();
+		for(int i=0; i<entries.size(); i++){
+			length += ((byte[])entries.get(i)).length;
+		}
+		return ((length + PAGE_SIZE - 1) / PAGE_SIZE) * PAGE_SIZE;
+	}
+	
+	
+	/**
+	 * Returns the count of entries of the first page if the entries are split into two pages. The first page 
+	 * receive about the half of the entries but it must fit in the old size of the page because it is rewritten
+	 * in place. An inner page keeps one entry at least, a leaf page can be empty.
+	 * @param length the size of the page in the file
+	 */
+	static int getSplit(ArrayList entries, boolean isLeaf, int length){
+		int total = getLength( entries );
+		int count = entries.size();
+		int split = isLeaf ? 0 : 1;
+		int size = HEADER_SIZE;
+		for(int i=0; i<split; i++){
+			size += 4 + ((byte[])entries.get(i)).length;
+		}
+		while(split < count - 1 && size < total / 2){
+			int next = size + 4 + ((byte[])entries.get(split)).length;
+			if(next > length){
+				break;
+			}
+			size = next;
+			split++;
+		}
+		return split;
+	}
+	
+	
+	/**
+	 * Create the data of a page.
+	 * @param entries the entries of the page, see getEntries()
+	 * @param next the position of the next leaf page or -1
+	 * @param length the size of the page in the file, it must be large enough for the entries
+	 */
+	static byte[] createPage(boolean isLeaf, ArrayList entries, long next, int length){
+		ByteBuffer page = ByteBuffer.allocate( length );
+		page.putInt( length );
+		page.putInt( isLeaf ? LEAF : INNER );
+		page.putInt( entries.size() );
+		page.putLong( next );
+		int offset = HEADER_SIZE + 4*entries.size();
+		for(int i=0; i<entries.size(); i++){
+			page.putInt( offset );
+			offset += ((byte[])entries.get(i)).length;
+		}
+		for(int i=0; i<entries.size(); i++){
+			page.put( (byte[])entries.get(i) );
+		}
+		return page.array();
+	}
+	
+	
+	private int getKeyOffset(int idx){
+		int offset = data.getInt( HEADER_SIZE + 4*idx );
+		return leaf ? offset : offset + 8;
+	}
+	
+	
+	/**
+	 * Write the pages of a B+tree. The entries must be added in the sort order. The leaf pages are written 
+	 * first in the order of the keys, this means a range scan is a sequential read. Then the inner pages are 
+	 * written level by level from the bottom to the root.
+	 */
+	static final class Writer{
+		
+		final private FileChannel raFile;
+		/** The position of the next page in the file. */
+		private long filePos;
+		private int columnCount;
+		private int height;
+		
+		/** The entries of the current page. */
+		private ByteBuffer entries = ByteBuffer.allocate( PAGE_SIZE );
+		private int[] offsets = new int[256];
+		private int count;
+		/** The first entry of the current page, it is the separator in the parent page. */
+		private char[][] firstKey;
+		private long firstRowOffset;
+		
+		/** The first entries of the written pages of the current level, Separator objects. */
+		private ArrayList separators = new ArrayList();
+		
+		
+		/**
+		 * @param filePos the position of the first page
+		 */
+		Writer(FileChannel raFile, long filePos){
+			this.raFile = raFile;
+			this.filePos = filePos;
+		}
+		
+		
+		/**
+		 * Add an entry to the leaf pages.
+		 */
+		final void add(char[][] key, long rowOffset) throws IOException{
+			columnCount = key.length;
+			if(count > 0 && HEADER_SIZE + 4*(count+1) + entries.position() + getSize( key ) > PAGE_SIZE){
+				writePage( LEAF, true );
+			}
+			addEntry( -1, key, rowOffset );
+		}
+		
+		
+		/**
+		 * Write the last leaf page and all inner pages.
+		 * @return the position of the root page or -1 if there are no entries
+		 */
+		final long finish() throws IOException{
+			if(count == 0){
+				return -1;
+			}
+			writePage( LEAF, false );
+			height = 1;
+			while(separators.size() > 1){
+				ArrayList level = separators;
+				separators = new ArrayList();
+				for(int i=0; i<level.size(); i++){
+					Separator separator = (Separator)level.get(i);
+					// an inner page needs 2 entries at least, else the tree is not getting smaller with large keys
+					if(count > 1 && HEADER_SIZE + 4*(count+1) + entries.position() + 8 + getSize( separator.key ) > PAGE_SIZE){
+						writePage( INNER, false );
+					}
+					addEntry( separator.filePos, separator.key, separator.rowOffset );
+				}
+				writePage( INNER, false );
+				height++;
+			}
+			return ((Separator)separators.get(0)).filePos;
+		}
+		
+		
+		/**
+		 * The count of levels of the tree. 1 if the root is a leaf page.
+		 */
+		final int getHeight(){
+			return height;
+		}
+		
+		
+		final int getColumnCount(){
+			return columnCount;
+		}
+		
+		
+		private int getSize(char[][] key){
+			int size = 8;
+			for(int c=0; c<key.length; c++){
+				size += 4 + 2*key[c].length;
+			}
+			return size;
+		}
+		
+		
+		private void addEntry(long child, char[][] key, long rowOffset){
+			int size = (child >= 0 ? 8 : 0) + getSize( key );
+			if(entries.remaining() < size){
+				ByteBuffer temp = ByteBuffer.allocate( Math.max( 2*entries.capacity(), entries.position() + size ) );
+				entries.flip();
+				temp.put( entries );
+				entries = temp;
+			}
+			if(count == offsets.length){
+				int[] temp = new int[2*count];
+				System.arraycopy( offsets, 0, temp, 0, count );
+				offsets = temp;
+			}
+			if(count == 0){
+				firstKey = key;
+				firstRowOffset = rowOffset;
+			}
+			offsets[count++] = entries.position();
+			if(child >= 0){
+				entries.putLong( child );
+			}
+			for(int c=0; c<key.length; c++){
+				char[] digits = key[c];
+				entries.putInt( digits.length );
+				for(int i=0; i<digits.length; i++){
+					entries.putChar( digits[i] );
+				}
+			}
+			entries.putLong( rowOffset );
+		}
+		
+		
+		/**
+		 * Write the current page and add its first entry to the separators of the next level.
+		 * @param hasNext true if there is a following leaf page. It is written directly after this page.
+		 */
+		private void writePage(int type, boolean hasNext) throws IOException{
+			int entriesOffset = HEADER_SIZE + 4*count;
+			int length = entriesOffset + entries.position();
+			length = ((length + PAGE_SIZE - 1) / PAGE_SIZE) * PAGE_SIZE;
+			ByteBuffer page = ByteBuffer.allocate( length );
+			page.putInt( length );
+			page.putInt( type );
+			page.putInt( count );
+			page.putLong( hasNext ? filePos + length : -1 );
+			for(int i=0; i<count; i++){
+				page.putInt( entriesOffset + offsets[i] );
+			}
+			entries.flip();
+			page.put( entries );
+			page.position( 0 );
+			Utils.writeFully( raFile, page, filePos );
+			
+			separators.add( new Separator( firstKey, firstRowOffset, filePos ) );
+			filePos += length;
+			entries.clear();
+			count = 0;
+		}
+	}
+	
+	
+	/**
+	 * The first entry of a page and the position of the page.
+	 */
+	private static final class Separator{
+		final char[][] key;
+		final long rowOffset;
+		final long filePos;
+		
+		Separator(char[][] key, long rowOffset, long filePos){
+			this.key = key;
+			this.rowOffset = rowOffset;
+			this.filePos = filePos;
+		}
+	}
+}
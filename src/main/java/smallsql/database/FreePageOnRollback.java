@@ -0,0 +1,92 @@
+/* =============================================================
+ * SmallSQL : a free Java DBMS library for the Java(tm) platform
+ * =============================================================
+ *
+ * (C) Copyright 2004-2011, by Volker Berlin.
+ *
+ * Project Info:  http://www.smallsql.de/
+ *
+ * This library is free software; you can redistribute it and/or modify it 
+ * under the terms of the GNU Lesser General Public License as published by 
+ * the Free Software Foundation; either version 2.1 of the License, or 
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but 
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY 
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public 
+ * License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, 
+ * USA.  
+ *
+ * [Java is a trademark or registered trademark of Sun Microsystems, Inc. 
+ * in the United States and other countries.]
+ *
+ * ---------------
+ * FreePageOnRollback.java
+ * ---------------
+ * Author: Volker Berlin
+ * 
+ */
+package smallsql.database;
+
+import java.sql.SQLException;
+
+/**
+ * A page that was written immediately without a transaction, for example the new location of an updated row. If the
+ * transaction is rolled back then nothing point to this page anymore. It is marked as deleted that the slot can be
+ * reused.
+ */
+class FreePageOnRollback extends TransactionStep{
+
+    private final Table table;
+    private final long filePos;
+
+
+    FreePageOnRollback(Table table, long filePos){
+        super(table.raFile);
+        this.table = table;
+        this.filePos = filePos;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    boolean hasWrites(){
+        return false;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    long commit(){
+        raFile = null;
+        return filePos;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    void rollback() throws SQLException{
+        if(raFile == null || raFile != table.raFile){
+            // already committed or the table was closed
+            return;
+        }
+        raFile = null;
+        try{
+            table.slottedPages.write( filePos, new byte[]{ (byte)StoreImpl.DELETED } );
+            // the page was never referenced by a committed row
+            table.slottedPages.free( filePos );
+        }catch(Exception e){
+            throw SmallSQLException.createFromException(e);
+        }
+    }
+}
@@ -0,0 +1,190 @@
+/* =============================================================
+ * SmallSQL : a free Java DBMS library for the Java(tm) platform
+ * =============================================================
+ *
+ * (C) Copyright 2004-2011, by Volker Berlin.
+ *
+ * Project Info:  http://www.smallsql.de/
+ *
+ * This library is free software; you can redistribute it and/or modify it 
+ * under the terms of the GNU Lesser General Public License as published by 
+ * the Free Software Foundation; either version 2.1 of the License, or 
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but 
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY 
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public 
+ * License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, 
+ * USA.  
+ *
+ * [Java is a trademark or registered trademark of Sun Microsystems, Inc. 
+ * in the United States and other countries.]
+ *
+ * ---------------
+ * FreeSpaceMap.java
+ * ---------------
+ * Author: Volker Berlin
+ * 
+ */
+package smallsql.database;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.sql.SQLException;
+
+/**
+ * The free space map of a table with slotted pages. It save for every block 2 bytes with the size of the largest
+ * reusable slot. A slot is reusable if the row was deleted and the deletion was committed.
+ * 
+ * The values are only hints. Before a slot is reused the block must be verified. If the file is missing then the map
+ * starts empty and only new deletions are used.
+ */
+final class FreeSpaceMap {
+
+	/** count of blocks that are summarized in one value of chunkMax */
+	private static final int CHUNK_SIZE = 256;
+	
+	private final File file;
+	private final boolean readonly;
+	
+	private FileChannel raFile;
+	private boolean loaded;
+	/** one value per block */
+	private char[] values = new char[0];
+	/** the max value of every chunk, is used to skip chunks without free space */
+	private char[] chunkMax = new char[0];
+	
+	
+	FreeSpaceMap(File file, boolean readonly){
+		this.file = file;
+		this.readonly = readonly;
+	}
+	
+	
+	/**
+	 * Search a block with a reusable slot.
+	 * @param space the needed size in bytes
+	 * @return the block number or -1 if there is no block with enough free space
+	 */
+	int find(int space) throws IOException{
+		load();
+		if(space > Character.MAX_VALUE){
+			return -1;
+		}
+		for(int c=0; c<chunkMax.length; c++){
+			if(chunkMax[c] >= space){
+				int end = Math.min( values.length, (c+1) * CHUNK_SIZE );
+				for(int i=c * CHUNK_SIZE; i<end; i++){
+					if(values[i] >= space){
+						return i;
+					}
+				}
+			}
+		}
+		return -1;
+	}
+	
+	
+	/**
+	 * Set the size of the largest reusable slot of a block.
+	 * @param blockIdx the block number
+	 * @param space the size in bytes
+	 */
+	void set(int blockIdx, int space) throws SQLException, IOException{
+		load();
+		char value = (char)Math.min( Character.MAX_VALUE, space );
+		if(blockIdx >= values.length){
+			if(value == 0){
+				return;
+			}
+			char[] newValues = new char[Math.max( blockIdx + 1, values.length * 2 )];
+			System.arraycopy( values, 0, newValues, 0, values.length );
+			values = newValues;
+			char[] newChunkMax = new char[(values.length + CHUNK_SIZE - 1) / CHUNK_SIZE];
+			System.arraycopy( chunkMax, 0, newChunkMax, 0, chunkMax.length );
+			chunkMax = newChunkMax;
+		}
+		if(values[blockIdx] == value){
+			return;
+		}
+		values[blockIdx] = value;
+		updateChunk( blockIdx / CHUNK_SIZE );
+		if(!readonly){
+			if(raFile == null){
+				raFile = Utils.openRaFile( file, false );
+			}
+			ByteBuffer buffer = ByteBuffer.allocate(2);
+			buffer.putChar( 0, value );
+			Utils.writeFully( raFile, buffer, blockIdx * 2L );
+		}
+	}
+	
+	
+	private void updateChunk(int chunk){
+		char max = 0;
+		int end = Math.min( values.length, (chunk+1) * CHUNK_SIZE );
+		for(int i=chunk * CHUNK_SIZE; i<end; i++){
+			if(values[i] > max){
+				max = values[i];
+			}
+		}
+		chunkMax[chunk] = max;
+	}
+	
+	
+	/**
+	 * Read the map from the file on first use.
+	 */
+	private void load() throws IOException{
+		if(loaded){
+			return;
+		}
+		loaded = true;
+		if(!file.exists()){
+			return;
+		}
+		FileChannel channel;
+		try{
+			channel = Utils.openRaFile( file, readonly );
+		}catch(Exception e){
+			// the map is only a hint, without it the free space is not reused
+			return;
+		}
+		ByteBuffer buffer = ByteBuffer.allocate( (int)channel.size() / 2 * 2 );
+		Utils.readFully( channel, buffer, 0 );
+		buffer.flip();
+		values = new char[buffer.capacity() / 2];
+		buffer.asCharBuffer().get( values );
+		chunkMax = new char[(values.length + CHUNK_SIZE - 1) / CHUNK_SIZE];
+		for(int c=0; c<chunkMax.length; c++){
+			updateChunk( c );
+		}
+		if(readonly){
+			channel.close();
+		}else{
+			raFile = channel;
+		}
+	}
+	
+	
+	void close() throws IOException{
+		if(raFile != null){
+			raFile.close();
+			raFile = null;
+		}
+	}
+	
+	
+	/**
+	 * Delete the file of a free space map. The map is only a hint that it can be deleted if the table file is replaced.
+	 */
+	static void drop(Database database, String name){
+		new File( Utils.createFsmFileName( database, name ) ).delete();
+	}
+}
@@ -33,6 +33,10 @@
 package smallsql.database;
 
 import java.sql.*;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
 import smallsql.tools.language.Language;
 
 /**
@@ -202,6 +206,33 @@ class GroupResult extends MemoryResult{
 	final void execute() throws Exception{
         super.execute();
 		from.execute();
+		if(groupBy != null && !isKeyType()){
+			executeLinear();
+		}else
+		if(!executeParallel()){
+			if(groupBy == null){
+				executeLinear();
+			}else{
+				executeHash();
+			}
+		}
+		
+		if(getRowCount() == 0 && groupBy == null){
+			//special handling for SELECT count(*) FROM table
+			//without GROUP BY and without any rows
+			addGroupRow();
+		}
+		// reset the row counter
+		beforeFirst();
+	}
+	
+	
+	
+	/**
+	 * Compare every row with all existing groups. This is used without GROUP BY (only one group) 
+	 * and for data types that can not be used in a key.
+	 */
+	final private void executeLinear() throws Exception{
 		NextRow:
 		while(from.next()){
 			beforeFirst();
@@ -215,17 +246,142 @@ class GroupResult extends MemoryResult{
 			addGroupRow();
 			accumulateRow();
 		}
+	}
+	
+	
+	/**
+	 * Find the group of every row with a hash table of the GROUP BY values. The key is created like
+	 * the key of a hash index that NULL values, -0.0 and strings are compared like with EQUALS_NULL.
+	 * The rows of all groups are hold in the memory like with executeLinear(), the hash table needs only
+	 * an additional entry for every group.
+	 */
+	final private void executeHash() throws Exception{
+		HashMap groups = new HashMap();
+		while(from.next()){
+			HashIndex.Key key = HashIndex.createKey( groupBy );
+			ExpressionValue[] row = (ExpressionValue[])groups.get( key );
+			if(row == null){
+				// add a new row to the GroupResult
+				addGroupRow();
+				groups.put( key, currentRow );
+			}else{
+				currentRow = row;
+			}
+			accumulateRow();
+		}
+	}
+	
+	
+	/**
+	 * Scan a large table with multiple threads of a ForkJoinPool. Every GroupWorker accumulate the rows of 
+	 * its ranges in partial groups. The partial groups are merged after the scan. The count of threads is 
+	 * set with the connection property "parallel".
+	 * @return false if a parallel aggregation is not possible or the memory is short for the partial groups 
+	 * of all workers, nothing was done in this case
+	 */
+	final private boolean executeParallel() throws Exception{
+		RowSource source = from;
+		Expression where = null;
+		if(source instanceof Where){
+			where = ((Where)source).getWhere();
+			source = ((Where)source).getFrom();
+		}
+		if(!(source instanceof TableResult)){
+			return false;
+		}
+		TableResult result = (TableResult)source;
+		Table table = (Table)result.getTableView();
+		int threads = result.con.getParallelThreads();
+		SlottedPages pages = table.slottedPages;
+		if(threads <= 1 || pages == null){
+			return false;
+		}
+		long endPos = table.getEndPos();
+		if(endPos - table.getFirstPage() < (long)threads * GroupWorker.CHUNK_BLOCKS * pages.getBlockSize()){
+			// the table is too small
+			return false;
+		}
 		
-		if(getRowCount() == 0 && groupBy == null){
-			//special handling for SELECT count(*) FROM table
-			//without GROUP BY and without any rows
-			addGroupRow();
+		GroupWorker.Chunks chunks = new GroupWorker.Chunks( pages, table.getFirstPage(), endPos );
+		GroupWorker[] workers = new GroupWorker[threads];
+		for(int i=0; i<threads; i++){
+			workers[i] = GroupWorker.create( chunks, result, where, groupBy, expressions );
+			if(workers[i] == null){
+				return false;
+			}
 		}
-		// reset the row counter
-		beforeFirst();
+		ForkJoinPool pool = new ForkJoinPool( threads );
+		try{
+			for(int i=0; i<threads; i++){
+				pool.execute( workers[i] );
+			}
+			for(int i=0; i<threads; i++){
+				workers[i].join();
+			}
+		}finally{
+			pool.shutdown();
+		}
+		for(int i=0; i<threads; i++){
+			if(workers[i].error != null){
+				throw workers[i].error;
+			}
+		}
+		for(int i=0; i<threads; i++){
+			if(workers[i].isMemoryShort){
+				// every worker holds its own copy of the groups, a single thread needs only one
+				return false;
+			}
+		}
+		
+		// merge the partial groups of the workers
+		HashMap groups = new HashMap();
+		for(int w=0; w<threads; w++){
+			Iterator iterator = workers[w].groups.entrySet().iterator();
+			while(iterator.hasNext()){
+				Map.Entry entry = (Map.Entry)iterator.next();
+				ExpressionValue[] row = (ExpressionValue[])entry.getValue();
+				ExpressionValue[] groupRow = (ExpressionValue[])groups.get( entry.getKey() );
+				if(groupRow == null){
+					addRow( row );
+					groups.put( entry.getKey(), row );
+				}else{
+					for(int i=0; i<row.length; i++){
+						groupRow[i].combine( row[i] );
+					}
+				}
+			}
+			workers[w] = null;
+		}
+		
+		// the inserts of the connection are not saved in the blocks of the table
+		for(int idx=0; idx<result.getInsertCount(); idx++){
+			if(!result.moveToInsertRow( idx ) || (where != null && !where.getBoolean())){
+				continue;
+			}
+			Object key = (groupBy == null) ? null : HashIndex.createKey( groupBy );
+			currentRow = (ExpressionValue[])groups.get( key );
+			if(currentRow == null){
+				addGroupRow();
+				groups.put( key, currentRow );
+			}
+			accumulateRow();
+		}
+		return true;
 	}
 	
 	
+	/**
+	 * If all GROUP BY values can be converted to a key of the hash table and the sort order.
+	 */
+	final private boolean isKeyType(){
+		for(int i=0; i<groupBy.size(); i++){
+			if(!Index.isKeyType( groupBy.get(i).getDataType() )){
+				return false;
+			}
+		}
+		return true;
+	}
+	
 	
 	/**
 	 * Add a new Row to the MemoryResult. This occur because the 
@@ -234,14 +390,22 @@ class GroupResult extends MemoryResult{
 	 */
 	final private void addGroupRow(){
 		// add a new row to the GroupResult
-		ExpressionValue[] newRow = currentRow = new ExpressionValue[ expressions.size()];
+		addRow( currentRow = createGroupRow( expressions ) );
+	}
+	
+	
+	/**
+	 * Create the empty aggregate values of a new group.
+	 */
+	static ExpressionValue[] createGroupRow(Expressions expressions){
+		ExpressionValue[] newRow = new ExpressionValue[ expressions.size()];
 		for(int i=0; i<newRow.length; i++){
 			Expression expr = expressions.get(i);
 			int type = expr.getType();
 			if(type < Expression.GROUP_BEGIN) type = Expression.GROUP_BY; 
 			newRow[i] = new ExpressionValue( type );
 		}
-		addRow(newRow);
+		return newRow;
 	}
 	
 	
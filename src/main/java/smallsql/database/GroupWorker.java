@@ -0,0 +1,278 @@
+/* =============================================================
+ * SmallSQL : a free Java DBMS library for the Java(tm) platform
+ * =============================================================
+ *
+ * (C) Copyright 2004-2011, by Volker Berlin.
+ *
+ * Project Info:  http://www.smallsql.de/
+ *
+ * This library is free software; you can redistribute it and/or modify it 
+ * under the terms of the GNU Lesser General Public License as published by 
+ * the Free Software Foundation; either version 2.1 of the License, or 
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but 
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY 
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public 
+ * License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, 
+ * USA.  
+ *
+ * [Java is a trademark or registered trademark of Sun Microsystems, Inc. 
+ * in the United States and other countries.]
+ *
+ * ---------------
+ * GroupWorker.java
+ * ---------------
+ * Author: Volker Berlin
+ * 
+ */
+package smallsql.database;
+
+import java.util.HashMap;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * A worker of a parallel aggregation (GROUP BY or aggregate functions) over a large table. Every worker has its own
+ * TableResult and its own copy of the expressions. The workers request ranges of blocks from the shared Chunks
+ * until the table is scanned and accumulate the rows in its own partial groups. The GroupResult merge the partial
+ * groups with ExpressionValue.combine() after all workers are finished.
+ */
+final class GroupWorker extends RecursiveAction{
+
+	/** The count of blocks that a worker scan with one request of a range. */
+	static final int CHUNK_BLOCKS = 16;
+	/** The count of new groups between two checks of the free memory, must be a power of 2. */
+	static final private int MEMORY_CHECK_INTERVAL = 1024;
+
+	final private Chunks chunks;
+	final private TableResult result;
+	final private Expression where;
+	final private Expressions groupBy;
+	final private Expressions expressions;
+	/** The partial groups of this worker. The key is a HashIndex.Key or null if there is no GROUP BY. */
+	final HashMap groups = new HashMap();
+	/** The exception of the scan or null */
+	Exception error;
+	/** If the worker has stopped because the memory is short */
+	boolean isMemoryShort;
+	
+	
+	private GroupWorker(Chunks chunks, TableResult result, Expression where, Expressions groupBy, Expressions expressions){
+		this.chunks = chunks;
+		this.result = result;
+		this.where = where;
+		this.groupBy = groupBy;
+		this.expressions = expressions;
+	}
+	
+	
+	/**
+	 * Create a worker with its own TableResult and a copy of the expressions.
+	 * @param source the TableResult of the GroupResult, the expressions must refer to it
+	 * @param where the WHERE condition or null
+	 * @param groupBy the GROUP BY expressions or null
+	 * @param expressions the expressions of the group rows
+	 * @return the worker or null if an expression can not be copied or must see the rows in the order of the table
+	 */
+	static GroupWorker create(Chunks chunks, TableResult source, Expression where, Expressions groupBy, Expressions expressions) throws Exception{
+		TableResult result = new TableResult( (Table)source.getTableView() );
+		result.init( source.con );
+		
+		Expression whereCopy = null;
+		if(where != null){
+			whereCopy = copy( where, source, result );
+			if(whereCopy == null) return null;
+		}
+		Expressions groupByCopy = null;
+		if(groupBy != null){
+			groupByCopy = copy( groupBy, source, result );
+			if(groupByCopy == null) return null;
+		}
+		for(int i=0; i<expressions.size(); i++){
+			switch(expressions.get(i).getType()){
+				case Expression.FIRST:
+				case Expression.LAST:
+					// the ranges of a worker are not contiguous
+					return null;
+			}
+		}
+		Expressions expressionsCopy = copy( expressions, source, result );
+		if(expressionsCopy == null) return null;
+		
+		result.execute();
+		return new GroupWorker( chunks, result, whereCopy, groupByCopy, expressionsCopy );
+	}
+	
+	
+	/**
+	 * Check if less as 1/8 of the maximum heap is free. It is checked only all MEMORY_CHECK_INTERVAL
+	 * new groups that it does not slow down the grouping.
+	 */
+	private static boolean isMemoryShort(){
+		Runtime runtime = Runtime.getRuntime();
+		long maxMemory = runtime.maxMemory();
+		long freeMemory = maxMemory - runtime.totalMemory() + runtime.freeMemory();
+		return freeMemory < maxMemory / 8;
+	}
+	
+	
+	protected void compute(){
+		try{
+			long[] range;
+			while((range = chunks.next()) != null){
+				result.setRange( range[0], range[1] );
+				while(result.next()){
+					if(where != null && !where.getBoolean()){
+						continue;
+					}
+					Object key = (groupBy == null) ? null : HashIndex.createKey( groupBy );
+					ExpressionValue[] row = (ExpressionValue[])groups.get( key );
+					if(row == null){
+						if(groupBy != null && (groups.size() & (MEMORY_CHECK_INTERVAL-1)) == 0 && isMemoryShort()){
+							isMemoryShort = true;
+							chunks.cancel();
+							return;
+						}
+						row = GroupResult.createGroupRow( expressions );
+						groups.put( key, row );
+					}
+					for(int i=0; i<row.length; i++){
+						row[i].accumulate( expressions.get(i) );
+					}
+				}
+			}
+		}catch(Exception e){
+			error = e;
+			chunks.cancel();
+		}
+	}
+	
+	
+	private static Expressions copy(Expressions exprs, DataSource source, DataSource target) throws Exception{
+		Expressions copies = new Expressions();
+		for(int i=0; i<exprs.size(); i++){
+			Expression copy = copy( exprs.get(i), source, target );
+			if(copy == null) return null;
+			copies.add( copy );
+		}
+		return copies;
+	}
+	
+	
+	/**
+	 * Create a copy of an expression for another thread. Columns of the source are replaced with the same 
+	 * columns of the target. Constant values are shared because they are not changed while the scan.
+	 * @return the copy or null if the expression can not be copied, for example a sub query
+	 */
+	static Expression copy(Expression expr, DataSource source, DataSource target) throws Exception{
+		if(expr instanceof ExpressionValue){
+			return (expr.getType() == Expression.VALUE) ? expr : null;
+		}
+		Expression[] params = expr.getParams();
+		Expression[] copies = null;
+		if(params != null){
+			copies = new Expression[params.length];
+			for(int i=0; i<params.length; i++){
+				copies[i] = copy( params[i], source, target );
+				if(copies[i] == null) return null;
+			}
+		}
+		if(expr instanceof ExpressionName){
+			ExpressionName name = (ExpressionName)expr;
+			ExpressionName copy = (ExpressionName)name.clone();
+			if(name.getType() == Expression.NAME){
+				if(name.getDataSource() != source) return null;
+				copy.setFrom( target, name.getColumnIndex(), name.getColumn() );
+			}else{
+				// aggregate function
+				copy.setParams( copies );
+			}
+			return copy;
+		}
+		if(expr.getClass() == ExpressionArithmetic.class){
+			int operation = ((ExpressionArithmetic)expr).getOperation();
+			ExpressionArithmetic copy;
+			if(operation == ExpressionArithmetic.IN){
+				Expressions inList = new Expressions();
+				for(int i=1; i<copies.length; i++){
+					inList.add( copies[i] );
+				}
+				copy = new ExpressionArithmetic( copies[0], inList, operation );
+			}else{
+				switch(copies.length){
+					case 1:
+						copy = new ExpressionArithmetic( copies[0], operation );
+						break;
+					case 2:
+						copy = new ExpressionArithmetic( copies[0], copies[1], operation );
+						break;
+					default:
+						copy = new ExpressionArithmetic( copies[0], copies[1], copies[2], operation );
+				}
+			}
+			copy.setAlias( expr.getAlias() );
+			return copy;
+		}
+		if(expr instanceof ExpressionFunction && !(expr instanceof ExpressionFunctionCase)){
+			ExpressionFunction copy = (ExpressionFunction)expr.clone();
+			if(copies != null) copy.setParams( copies );
+			return copy;
+		}
+		return null;
+	}
+	
+	
+	/**
+	 * The ranges of the table that are not scanned yet. A range include CHUNK_BLOCKS blocks. The blocks are 
+	 * read to find the start of the next block because a large row can have a block with a multiple of the block 
+	 * size. The blocks are in the page cache if the worker read it.
+	 */
+	static final class Chunks{
+		final private SlottedPages pages;
+		final private long endPos;
+		private long nextPos;
+		
+		/**
+		 * @param startPos the position of the first block
+		 * @param endPos the position after the last row
+		 */
+		Chunks(SlottedPages pages, long startPos, long endPos){
+			this.pages = pages;
+			this.nextPos = startPos;
+			this.endPos = endPos;
+		}
+		
+		
+		/**
+		 * Get the next range.
+		 * @return the start and the end position or null if there are no more ranges
+		 */
+		synchronized long[] next() throws Exception{
+			if(nextPos >= endPos){
+				return null;
+			}
+			long startPos = nextPos;
+			for(int i=0; i<CHUNK_BLOCKS && nextPos < endPos; i++){
+				byte[] block = pages.readBlock( nextPos );
+				if(block == null){
+					nextPos = endPos;
+					break;
+				}
+				nextPos += SlottedPages.getBlockLength( block );
+			}
+			return new long[]{ startPos, Math.min( nextPos, endPos ) };
+		}
+		
+		
+		/**
+		 * Stop all workers after its current range.
+		 */
+		synchronized void cancel(){
+			nextPos = endPos;
+		}
+	}
+}
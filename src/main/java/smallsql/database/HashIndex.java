@@ -0,0 +1,660 @@
+/* =============================================================
+ * SmallSQL : a free Java DBMS library for the Java(tm) platform
+ * =============================================================
+ *
+ * (C) Copyright 2004-2011, by Volker Berlin.
+ *
+ * Project Info:  http://www.smallsql.de/
+ *
+ * This library is free software; you can redistribute it and/or modify it 
+ * under the terms of the GNU Lesser General Public License as published by 
+ * the Free Software Foundation; either version 2.1 of the License, or 
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but 
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY 
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public 
+ * License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, 
+ * USA.  
+ *
+ * [Java is a trademark or registered trademark of Sun Microsystems, Inc. 
+ * in the United States and other countries.]
+ *
+ * ---------------
+ * HashIndex.java
+ * ---------------
+ * Author: Volker Berlin
+ * 
+ */
+package smallsql.database;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+import smallsql.tools.language.Language;
+/**
+ * An index for equals searches of all index columns (CREATE INDEX ... USING HASH). The key of a row is the 
+ * combination of the digits of all columns like in the index tree, see Index.createKey(). A search need only 
+ * one hash lookup and no walk over the digits of the key. A range or a sort order is not possible.
+ * <p>
+ * The file has the follow structure:
+ * <pre>
+ *  0: magic and version, written from the IndexDescription
+ *  8: state, STATE_CLEAN if the file is valid
+ * 12: the unique flag
+ * 16: the count of index columns
+ * 20: the level of the linear hashing
+ * 24: the next bucket to split, the count of buckets is 2^level + split
+ * 28: the size of all entries
+ * 36: the position of the directory
+ * 44: the size of the space of the directory
+ * 48: the directory, the file position of every bucket or 0 if the bucket is empty
+ *     the buckets
+ * </pre>
+ * A bucket is a list of entries with the key and the row offset of every row that has the hash of the bucket. 
+ * The space of a bucket is a multiple of BUCKET_SIZE. The directory is read on opening, a search reads only one 
+ * bucket with the page cache of the database.
+ * <p>
+ * The buckets are changed in place. If a bucket is too small for a new entry then it is moved to the end of the 
+ * file, the old space is not reused. If the average size of the buckets is larger as the half of BUCKET_SIZE
+ * then the next bucket is split with the next bit of the hash (linear hashing). On closing only the directory
+ * and the header are written. Only a new or rebuild index has its values in memory and is written completely 
+ * on closing.
+ * 
+ * @author Volker Berlin
+ */
+final class HashIndex {
+
+	/** The space of a bucket in the file is a multiple of it. */
+	static final private int BUCKET_SIZE = 4096;
+	static final private int STATE_OFFSET = 8;
+	static final private int DATA_OFFSET = 12;
+	static final private int HEADER_SIZE = 36;
+	static final private int STATE_CLEAN = 1;
+	static final private int STATE_DIRTY = 0;
+	
+	final private boolean unique;
+	final private int columnCount;
+	/** The values in memory, Key --> Long or RowBitmap */
+	final private HashMap values = new HashMap();
+	/** If the file is equals to the values in memory. */
+	private boolean clean;
+	/** If the values are in memory. If false then all values are only in the file. */
+	private boolean loaded;
+	
+	private FileChannel raFile;
+	private PageCache cache;
+	/** The level of the linear hashing, the buckets before the next split use level bits of the hash. */
+	private int level;
+	/** The next bucket that is split, the buckets before it use level + 1 bits of the hash. */
+	private int split;
+	/** The size of all entries in the file. */
+	private long entrySize;
+	/** The file positions of the buckets, it can be larger as the count of buckets. */
+	private long[] directory;
+	private long directoryPos;
+	private int directoryLength;
+	
+	
+	HashIndex(boolean unique, int columnCount){
+		this.unique = unique;
+		this.columnCount = columnCount;
+		loaded = true;
+	}
+	
+	
+	/**
+	 * Open the index values of the file.
+	 * @param cache the page cache of the database
+	 * @return the index or null if the file does not include valid values and the index must be rebuild.
+	 */
+	static HashIndex load(FileChannel raFile, PageCache cache, boolean unique, int columnCount) throws Exception{
+		if(raFile.size() < DATA_OFFSET + HEADER_SIZE){
+			return null;
+		}
+		ByteBuffer buffer = ByteBuffer.allocate(4 + HEADER_SIZE);
+		Utils.readFully( raFile, buffer, STATE_OFFSET );
+		if(buffer.getInt(0) != STATE_CLEAN || (buffer.getInt(4) != 0) != unique || buffer.getInt(8) != columnCount){
+			return null;
+		}
+		HashIndex index = new HashIndex( unique, columnCount );
+		index.level = buffer.getInt(12);
+		index.split = buffer.getInt(16);
+		index.entrySize = buffer.getLong(20);
+		index.directoryPos = buffer.getLong(28);
+		index.directoryLength = buffer.getInt(36);
+		index.directory = new long[index.getBucketCount()];
+		buffer = ByteBuffer.allocate( 8 * index.directory.length );
+		Utils.readFully( raFile, buffer, index.directoryPos );
+		buffer.position(0);
+		buffer.asLongBuffer().get( index.directory );
+		index.raFile = raFile;
+		index.cache = cache;
+		index.loaded = false;
+		index.clean = true;
+		return index;
+	}
+	
+	
+	private int getBucketCount(){
+		return (1 << level) + split;
+	}
+	
+	
+	/**
+	 * Returns the bucket of a hash. The buckets that are already split on the current level use one bit more.
+	 */
+	private int getBucket(int hash){
+		int b = hash & ((1 << level) - 1);
+		if(b < split){
+			b = hash & ((2 << level) - 1);
+		}
+		return b;
+	}
+	
+	
+	/**
+	 * Read a bucket from the file.
+	 * @return the data of the bucket or null if the bucket is empty
+	 */
+	private ByteBuffer readBucket(int b) throws IOException{
+		long filePos = directory[b];
+		if(filePos == 0){
+			return null;
+		}
+		byte[] data = cache.get( raFile, filePos );
+		if(data == null){
+			long stamp = cache.getWriteStamp();
+			data = new byte[BUCKET_SIZE];
+			Utils.readFully( raFile, ByteBuffer.wrap(data), filePos );
+			int length = ByteBuffer.wrap(data).getInt( 0 );
+			if(length > BUCKET_SIZE){
+				byte[] large = new byte[length];
+				System.arraycopy( data, 0, large, 0, BUCKET_SIZE );
+				ByteBuffer buffer = ByteBuffer.wrap(large);
+				buffer.position( BUCKET_SIZE );
+				Utils.readFully( raFile, buffer, filePos );
+				data = large;
+			}
+			cache.put( raFile, filePos, data, stamp );
+		}
+		return ByteBuffer.wrap( data );
+	}
+	
+	
+	/**
+	 * Returns a copy of the entries of a bucket. An entry is a byte[] like it is saved in the bucket,
+	 * see createEntry().
+	 * @param bucket the bucket or null
+	 */
+	private static ArrayList getEntries(ByteBuffer bucket){
+		ArrayList entries = new ArrayList();
+		if(bucket == null){
+			return entries;
+		}
+		int count = bucket.getInt(4);
+		int offset = 8;
+		for(int i=0; i<count; i++){
+			byte[] entry = new byte[ 4 + 2 * bucket.getInt(offset) + 8 ];
+			System.arraycopy( bucket.array(), offset, entry, 0, entry.length );
+			entries.add( entry );
+			offset += entry.length;
+		}
+		return entries;
+	}
+	
+	
+	private static byte[] createEntry(Key key, long rowOffset){
+		ByteBuffer buffer = ByteBuffer.allocate( 4 + 2 * key.digits.length + 8 );
+		writeEntry( buffer, key, rowOffset );
+		return buffer.array();
+	}
+	
+	
+	/**
+	 * Returns the key of an entry.
+	 */
+	private static Key getKey(byte[] entry){
+		ByteBuffer buffer = ByteBuffer.wrap( entry );
+		char[] digits = new char[ buffer.getInt() ];
+		buffer.asCharBuffer().get( digits );
+		return new Key( digits );
+	}
+	
+	
+	/**
+	 * If the entry has the digits of the key.
+	 */
+	private static boolean isKey(byte[] entry, Key key){
+		ByteBuffer buffer = ByteBuffer.wrap( entry );
+		char[] digits = key.digits;
+		if(buffer.getInt(0) != digits.length){
+			return false;
+		}
+		for(int d=0; d<digits.length; d++){
+			if(buffer.getChar( 4 + 2 * d ) != digits[d]){
+				return false;
+			}
+		}
+		return true;
+	}
+	
+	
+	private static long getRowOffset(byte[] entry){
+		return ByteBuffer.wrap( entry ).getLong( entry.length - 8 );
+	}
+	
+	
+	/**
+	 * Add a row to the index.
+	 * @param key the values of the index columns
+	 * @throws SQLException if it is a unique index and the key already exists
+	 */
+	void addRow(long rowOffset, Expressions key) throws Exception{
+		if(!loaded){
+			addEntry( createKey( key ), rowOffset );
+			return;
+		}
+		add( createKey( key ), rowOffset );
+	}
+	
+	
+	private void add(Key key, long rowOffset) throws SQLException{
+		Object value = values.get( key );
+		if(value == null){
+			values.put( key, new Long( rowOffset ) );
+		}else if(unique){
+			throw SmallSQLException.create(Language.KEY_DUPLICATE);
+		}else if(value instanceof Long){
+			RowBitmap list = new RowBitmap( ((Long)value).longValue() );
+			list.add( rowOffset );
+			values.put( key, list );
+		}else{
+			((RowBitmap)value).add( rowOffset );
+		}
+	}
+	
+	
+	/**
+	 * Add an entry to its bucket in the file and split the next bucket if the buckets are too full.
+	 */
+	private void addEntry(Key key, long rowOffset) throws Exception{
+		int b = getBucket( key.hash );
+		ByteBuffer bucket = readBucket( b );
+		ArrayList entries = getEntries( bucket );
+		if(unique){
+			for(int i=0; i<entries.size(); i++){
+				if(isKey( (byte[])entries.get(i), key )){
+					throw SmallSQLException.create(Language.KEY_DUPLICATE);
+				}
+			}
+		}
+		byte[] entry = createEntry( key, rowOffset );
+		entries.add( entry );
+		writeBucket( b, bucket, entries );
+		entrySize += entry.length;
+		if(entrySize > (long)getBucketCount() * BUCKET_SIZE / 2){
+			splitBucket();
+		}
+	}
+	
+	
+	/**
+	 * Remove a row from the index.
+	 * @param key the values of the index columns like on adding
+	 */
+	void removeRow(long rowOffset, Expressions key) throws Exception{
+		Key hashKey = createKey( key );
+		if(!loaded){
+			removeEntry( hashKey, rowOffset );
+			return;
+		}
+		Object value = values.get( hashKey );
+		if(value instanceof Long){
+			if(((Long)value).longValue() == rowOffset){
+				values.remove( hashKey );
+			}
+		}else if(value != null){
+			RowBitmap list = (RowBitmap)value;
+			list.remove( rowOffset );
+			if(list.getSize() == 0){
+				values.remove( hashKey );
+			}
+		}
+	}
+	
+	
+	/**
+	 * Remove an entry from its bucket in the file. The buckets are not merged.
+	 */
+	private void removeEntry(Key key, long rowOffset) throws Exception{
+		int b = getBucket( key.hash );
+		ByteBuffer bucket = readBucket( b );
+		ArrayList entries = getEntries( bucket );
+		for(int i=0; i<entries.size(); i++){
+			byte[] entry = (byte[])entries.get(i);
+			if(getRowOffset( entry ) == rowOffset && isKey( entry, key )){
+				entries.remove( i );
+				writeBucket( b, bucket, entries );
+				entrySize -= entry.length;
+				return;
+			}
+		}
+	}
+	
+	
+	/**
+	 * Split the next bucket. The entries with the next bit of the hash are moved to a new bucket at the 
+	 * end of the directory.
+	 */
+	private void splitBucket() throws Exception{
+		int count = getBucketCount();
+		if(count == directory.length){
+			long[] temp = new long[2 * count];
+			System.arraycopy( directory, 0, temp, 0, count );
+			directory = temp;
+		}
+		int bit = 1 << level;
+		ByteBuffer bucket = readBucket( split );
+		ArrayList entries = getEntries( bucket );
+		ArrayList moved = new ArrayList();
+		for(int i=entries.size()-1; i>=0; i--){
+			if((getKey( (byte[])entries.get(i) ).hash & bit) != 0){
+				moved.add( entries.remove( i ) );
+			}
+		}
+		if(moved.size() > 0){
+			writeBucket( split, bucket, entries );
+			writeBucket( count, null, moved );
+		}
+		if(++split == bit){
+			level++;
+			split = 0;
+		}
+	}
+	
+	
+	/**
+	 * Rewrite a changed bucket in place. If the entries are too large for the space of the bucket then 
+	 * the bucket is moved to the end of the file.
+	 * @param bucket the old data of the bucket or null if it was empty
+	 */
+	private void writeBucket(int b, ByteBuffer bucket, ArrayList entries) throws Exception{
+		int length = (bucket == null) ? 0 : bucket.getInt(0);
+		long filePos = directory[b];
+		if(getLength( entries ) > length){
+			length = getLength( entries );
+			filePos = raFile.size();
+			directory[b] = filePos;
+		}
+		byte[] data = createBucket( entries, length );
+		Utils.writeFully( raFile, ByteBuffer.wrap( data ), filePos );
+		cache.update( raFile, filePos, data, length );
+	}
+	
+	
+	/**
+	 * Returns the space of a bucket with the entries, it is a multiple of BUCKET_SIZE.
+	 */
+	private static int getLength(ArrayList entries){
+		int size = 8;
+		for(int i=0; i<entries.size(); i++){
+			size += ((byte[])entries.get(i)).length;
+		}
+		return ((size + BUCKET_SIZE - 1) / BUCKET_SIZE) * BUCKET_SIZE;
+	}
+	
+	
+	private static byte[] createBucket(ArrayList entries, int length){
+		ByteBuffer buffer = ByteBuffer.allocate( length );
+		buffer.putInt( length );
+		buffer.putInt( entries.size() );
+		for(int i=0; i<entries.size(); i++){
+			buffer.put( (byte[])entries.get(i) );
+		}
+		return buffer.array();
+	}
+	
+	
+	/**
+	 * Search the rows with equals values of all columns in the memory or in the file.
+	 * @param rows receive the row offsets
+	 */
+	void findRows(Expressions key, LongList rows) throws Exception{
+		Key hashKey = createKey( key );
+		if(loaded){
+			Object value = values.get( hashKey );
+			if(value instanceof Long){
+				rows.add( ((Long)value).longValue() );
+			}else if(value != null){
+				((RowBitmap)value).addTo( rows );
+			}
+			return;
+		}
+		ByteBuffer bucket = readBucket( getBucket( hashKey.hash ) );
+		if(bucket == null){
+			return;
+		}
+		char[] digits = hashKey.digits;
+		int count = bucket.getInt(4);
+		bucket.position(8);
+		nextEntry:
+		for(int i=0; i<count; i++){
+			int length = bucket.getInt();
+			int offset = bucket.position();
+			bucket.position( offset + 2 * length + 8 );
+			if(length != digits.length){
+				continue;
+			}
+			for(int d=0; d<length; d++){
+				if(bucket.getChar( offset + 2 * d ) != digits[d]){
+					continue nextEntry;
+				}
+			}
+			rows.add( bucket.getLong( offset + 2 * length ) );
+		}
+	}
+	
+	
+	/**
+	 * Create the key of the values. If there are multiple columns then the digits of every column start 
+	 * with the length of the digits. Values that are equals like -0.0 and 0.0 get the same key.
+	 */
+	static Key createKey(Expressions key) throws Exception{
+		return createKey( key, null );
+	}
+	
+	
+	/**
+	 * Create the key of the values converted to the data types.
+	 * @param dataTypes the data type of every column or null for the data types of the expressions
+	 * @see Index#createKey(Expression, int)
+	 */
+	static Key createKey(Expressions key, int[] dataTypes) throws Exception{
+		if(key.size() == 1){
+			Expression expr = key.get(0);
+			return new Key( Index.createKey( expr, dataTypes == null ? expr.getDataType() : dataTypes[0] ) );
+		}
+		char[][] columns = new char[key.size()][];
+		int length = 0;
+		for(int i=0; i<columns.length; i++){
+			Expression expr = key.get(i);
+			columns[i] = Index.createKey( expr, dataTypes == null ? expr.getDataType() : dataTypes[i] );
+			length += 2 + columns[i].length;
+		}
+		char[] digits = new char[length];
+		int offset = 0;
+		for(int i=0; i<columns.length; i++){
+			char[] column = columns[i];
+			digits[offset++] = (char)(column.length >> 16);
+			digits[offset++] = (char)column.length;
+			System.arraycopy( column, 0, digits, offset, column.length );
+			offset += column.length;
+		}
+		return new Key( digits );
+	}
+	
+	
+	/**
+	 * Mark the file as invalid before the first change of the values. If the values are not saved
+	 * because the database is not closed correctly then the index is rebuild on the next loading.
+	 */
+	void setDirty(FileChannel raFile) throws Exception{
+		if(clean){
+			writeState( raFile, STATE_DIRTY );
+			clean = false;
+		}
+	}
+	
+	
+	boolean isClean(){
+		return clean;
+	}
+	
+	
+	/**
+	 * Write the values to the file if there are changes. If the values are not in memory then the buckets are
+	 * already written and only the directory and the header are written. The buckets of the file must be removed 
+	 * from the page cache before.
+	 */
+	void save(FileChannel raFile) throws Exception{
+		if(clean){
+			return;
+		}
+		if(loaded){
+			saveValues( raFile );
+		}
+		int count = getBucketCount();
+		if(8 * count > directoryLength){
+			directoryPos = raFile.size();
+			directoryLength = 16 * count;
+		}
+		// the complete space is written, new buckets are appended after it
+		ByteBuffer buffer = ByteBuffer.allocate( directoryLength );
+		buffer.asLongBuffer().put( directory, 0, count );
+		Utils.writeFully( raFile, buffer, directoryPos );
+		buffer = ByteBuffer.allocate( HEADER_SIZE );
+		buffer.putInt( unique ? 1 : 0 );
+		buffer.putInt( columnCount );
+		buffer.putInt( level );
+		buffer.putInt( split );
+		buffer.putLong( entrySize );
+		buffer.putLong( directoryPos );
+		buffer.putInt( directoryLength );
+		buffer.position(0);
+		Utils.writeFully( raFile, buffer, DATA_OFFSET );
+		writeState( raFile, STATE_CLEAN );
+		clean = true;
+	}
+	
+	
+	/**
+	 * Write all buckets of the values in memory. The count of buckets is calculated from the size of the entries.
+	 */
+	private void saveValues(FileChannel raFile) throws Exception{
+		// distribute the entries to the buckets
+		entrySize = 0;
+		Iterator iterator = values.entrySet().iterator();
+		while(iterator.hasNext()){
+			Map.Entry entry = (Map.Entry)iterator.next();
+			Object value = entry.getValue();
+			int count = (value instanceof Long) ? 1 : ((RowBitmap)value).getSize();
+			entrySize += count * (12 + 2 * ((Key)entry.getKey()).digits.length);
+		}
+		level = 0;
+		split = 0;
+		while(entrySize > (long)getBucketCount() * BUCKET_SIZE / 2){
+			level++;
+		}
+		int count = getBucketCount();
+		ArrayList[] buckets = new ArrayList[count];
+		iterator = values.entrySet().iterator();
+		while(iterator.hasNext()){
+			Map.Entry entry = (Map.Entry)iterator.next();
+			Key key = (Key)entry.getKey();
+			int b = getBucket( key.hash );
+			if(buckets[b] == null){
+				buckets[b] = new ArrayList();
+			}
+			Object value = entry.getValue();
+			if(value instanceof Long){
+				buckets[b].add( createEntry( key, ((Long)value).longValue() ) );
+			}else{
+				RowBitmap list = (RowBitmap)value;
+				long rowOffset = -1;
+				while((rowOffset = list.getNext( rowOffset )) >= 0){
+					buckets[b].add( createEntry( key, rowOffset ) );
+				}
+			}
+		}
+		
+		// write the buckets after the space of the directory
+		raFile.truncate( DATA_OFFSET );
+		directory = new long[count];
+		directoryPos = DATA_OFFSET + HEADER_SIZE;
+		directoryLength = 16 * count;
+		long filePos = directoryPos + directoryLength;
+		for(int b=0; b<count; b++){
+			if(buckets[b] != null){
+				int length = getLength( buckets[b] );
+				Utils.writeFully( raFile, ByteBuffer.wrap( createBucket( buckets[b], length ) ), filePos );
+				directory[b] = filePos;
+				filePos += length;
+			}
+		}
+	}
+	
+	
+	private static void writeEntry(ByteBuffer buffer, Key key, long rowOffset){
+		buffer.putInt( key.digits.length );
+		for(int d=0; d<key.digits.length; d++){
+			buffer.putChar( key.digits[d] );
+		}
+		buffer.putLong( rowOffset );
+	}
+	
+	
+	private static void writeState(FileChannel raFile, int state) throws IOException{
+		ByteBuffer buffer = ByteBuffer.allocate(4);
+		buffer.putInt( 0, state );
+		Utils.writeFully( raFile, buffer, STATE_OFFSET );
+	}
+	
+	
+	/**
+	 * The key of a row in the memory. The hash is also used for the bucket in the file and must not 
+	 * depend on the Java version.
+	 */
+	static final class Key{
+		final char[] digits;
+		final int hash;
+		
+		Key(char[] digits){
+			this.digits = digits;
+			int h = 0;
+			for(int i=0; i<digits.length; i++){
+				h = 31 * h + digits[i];
+			}
+			hash = h ^ (h >>> 16);
+		}
+		
+		public int hashCode(){
+			return hash;
+		}
+		
+		public boolean equals(Object obj){
+			return obj instanceof Key && Arrays.equals( digits, ((Key)obj).digits );
+		}
+	}
+}
@@ -45,7 +45,7 @@ import java.util.ArrayList;
  * - the data need to save fast.
  * - the size of the index should be small (also with a small count of values)
  * - It should use for unique index and nor unique. The unique index can save only one rowOffset.
- *   The non unique can save multiple rowOffsets in a LongTreeList.
+ *   The non unique can save multiple rowOffsets in a RowBitmap.
  * - Problem ORDER BY with Joins? There are more as one rowOffset per row.
  * 
  * 
@@ -83,7 +83,7 @@ class Index{
 	}
 	
 	/**
-     * Returns a Long (unique) or a LongTreeList with rowOffsets. If the value in expressions does not exist then it
+     * Returns a Long (unique or a single row) or a RowBitmap with rowOffsets. If the value in expressions does not exist then it
      * return a null.
      * 
      * @param expressions
@@ -102,15 +102,19 @@ class Index{
                 return null;
             if(i + 1 == count)
                 return page.getValue();
-            else
+            else{
                 page = (IndexNode)page.getValue();
+                if(page == null)
+                    return null;
+                if(nodeList != null) nodeList.add(page);
+            }
         }
         throw new Error();
     }
 	
 	
 	/**
-     * Returns a Long (unique) or a LongTreeList with rowOffsets. If the value in expressions does not exist then it
+     * Returns a Long (unique or a single row) or a RowBitmap with rowOffsets. If the value in expressions does not exist then it
      * return a null.
      * 
      * @param expressions
@@ -129,8 +133,12 @@ class Index{
                 return null;
             if(i + 1 == count)
                 return page.getValue();
-            else
+            else{
                 page = (IndexNode)page.getValue();
+                if(page == null)
+                    return null;
+                if(nodeList != null) nodeList.add(page);
+            }
         }
         throw new Error();
     }
@@ -155,6 +163,7 @@ class Index{
                     return null;
                 }
 				page = findNull(page);
+				if(page != null && nodeList != null) nodeList.add(page);
 			}else{
 				switch(expr.getDataType()){
 					case SQLTokenizer.REAL:
@@ -261,6 +270,7 @@ class Index{
 					case SQLTokenizer.NVARCHAR:
 					case SQLTokenizer.LONGVARCHAR:
 					case SQLTokenizer.LONGNVARCHAR:
+					case SQLTokenizer.CLOB:
 						page = add( page, rowOffset, stringToBinarySortOrder( expr.getString(), false ), isLastValues );
 						break;
 					case SQLTokenizer.NCHAR:
@@ -293,9 +303,16 @@ class Index{
 	
 	final void removeValue( long rowOffset, Expressions expressions ) throws Exception{
 		ArrayList nodeList = new ArrayList();
+		nodeList.add(rootPage);
 		Object obj = findRows(expressions, true, nodeList);
-		if(!rootPage.getUnique()){
-			LongTreeList list = (LongTreeList)obj;
+		if(obj == null){
+			return;
+		}
+		if(obj instanceof Long){
+			// a unique index or a key with only one row
+			if(((Long)obj).longValue() != rowOffset) return;
+		}else{
+			RowBitmap list = (RowBitmap)obj;
 			list.remove(rowOffset);
 			if(list.getSize() > 0) return;
 		}
@@ -305,7 +322,12 @@ class Index{
 			if(!node.isEmpty())
 				break;
 			IndexNode parent = (IndexNode)nodeList.get(i);
-			parent.removeNode( node.getDigit() );
+			if(parent.getValue() == node){
+				// the root of the next column
+				parent.clearValue();
+			}else{
+				parent.removeNode( node.getDigit() );
+			}
 			node = parent;
 		}
 	}
@@ -433,12 +455,394 @@ class Index{
 	}
 	
 	
+	/**
+	 * Add a value with the digits of all columns like they are saved in the index tree, see createKey().
+	 * It is used to load the values from a file.
+	 * @param rowOffset the value that is saved in the index
+	 * @param key the digits of every column
+	 */
+	final void addKey( long rowOffset, char[][] key ) throws SQLException{
+		IndexNode page = this.rootPage;
+		for(int i=0; i<key.length; i++){
+			page = addDigits( page, rowOffset, key[i], i == key.length-1 );
+		}
+	}
+	
+	
+	/**
+	 * Add the digits of a single column. The digits are not converted.
+	 */
+	final private IndexNode addDigits(IndexNode node, long rowOffset, char[] digits, boolean isLast) throws SQLException{
+		int length = digits.length;
+		int i=0;
+		while(true){
+			char digit = digits[i];
+			if(++i == length){
+				if(isLast){
+					node.addNode( digit, rowOffset );
+					return null;
+				}
+				return node.addRoot(digit);
+			}
+			node = node.addNode(digit);
+			if(node.isEmpty()){
+				if(isLast){
+					node.addRemainderKey( rowOffset, digits, i );
+					return null;
+				}
+				return node.addRootValue( digits, i );
+			}else
+			if(equals(node.getRemainderValue(), digits, i)){
+				if(isLast){
+					node.saveValue(rowOffset);
+					return null;
+				}
+				return node.addRoot();
+			}
+		}
+	}
+	
+	
 	/**
 	 * Remove all entries
 	 */
 	final void clear(){
 		rootPage.clear();
 	}
+	
+	
+	/**
+	 * Add all rowOffsets of a range of key values to the list. The first columns of the index are
+	 * compared for equality with the expressions. The range is on the next column, the values of all 
+	 * following columns are not considered. The bounds are inclusive.
+	 * 
+	 * @param expressions
+	 *            the values of the first columns, can be empty
+	 * @param low
+	 *            the lowest value of the range column or null if there is no lower bound
+	 * @param high
+	 *            the highest value of the range column or null if there is no upper bound
+	 * @param highIsPrefix
+	 *            true if also all values that start with the high value are in the range, for LIKE 'abc%'
+	 * @param rows
+	 *            the list that receive the rowOffsets
+	 * @param keys
+	 *            optional, can be null. Receive for every row the digits of the range column or null if the
+	 *            expressions include all columns.
+	 */
+	final void findRange(Expression[] expressions, Expression low, Expression high, boolean highIsPrefix, LongList rows, ArrayList keys) throws Exception{
+		IndexNode page = rootPage;
+		for(int i = 0; i < expressions.length; i++){
+			page = findRows(page, expressions[i], false, null);
+			if(page == null)
+				return;
+			Object value = page.getValue();
+			if(!(value instanceof IndexNode)){
+				// there is no column after the expressions
+				if(value != null)
+					addValue(value, rows, null, keys);
+				return;
+			}
+			page = (IndexNode)value;
+		}
+		char[] lowKey  = (low  == null) ? null : createKey(low);
+		char[] highKey = (high == null) ? null : createKey(high);
+		addRange(page, new char[16], 0, lowKey, highKey, highIsPrefix, rows, keys);
+	}
+	
+	
+	/**
+	 * Walk the child nodes in sort order. Sub trees that are completely inside of the range are added
+	 * without any further compare. Sub trees that are completely outside are skipped.
+	 * @param path the digits from the root of the column to this node
+	 */
+	private void addRange(IndexNode node, char[] path, int length, char[] low, char[] high, boolean highIsPrefix, LongList rows, ArrayList keys) throws Exception{
+		Object value = node.getValue();
+		if(value != null){
+			char[] key = path;
+			int keyLength = length;
+			if(keys != null || node.getRemainderValue() != null){
+				key = getDigits(node, path, length);
+				keyLength = key.length;
+			}
+			if((low == null || compare(key, keyLength, low) >= 0) &&
+			   (high == null || compare(key, keyLength, high) <= 0 || (highIsPrefix && startsWith(key, keyLength, high)))){
+				addValue(value, rows, (keys == null) ? null : key, keys);
+			}
+		}
+		IndexNode[] nodes = node.getChildNodes();
+		if(nodes.length == 0) return;
+		if(length == path.length){
+			char[] temp = new char[length*2];
+			System.arraycopy(path, 0, temp, 0, length);
+			path = temp;
+		}
+		int childLength = length+1;
+		for(int i=0; i<nodes.length; i++){
+			IndexNode child = nodes[i];
+			path[length] = child.getDigit();
+			boolean aboveLow = true;
+			if(low != null && compare(path, childLength, low) < 0){
+				if(!startsWith(low, low.length, path, childLength)){
+					// all keys of this sub tree are lesser as low
+					continue;
+				}
+				aboveLow = false;
+			}
+			boolean belowHigh = true;
+			if(high != null){
+				boolean isPrefixOfHigh = startsWith(high, high.length, path, childLength);
+				if(highIsPrefix && startsWith(path, childLength, high)){
+					// all keys of this sub tree start with high
+				}else if(compare(path, childLength, high) > 0){
+					// all following keys are greater as high
+					return;
+				}else if(isPrefixOfHigh){
+					belowHigh = false;
+				}
+			}
+			if(aboveLow && belowHigh){
+				if(keys == null){
+					addAll(child, rows, null, null);
+				}else{
+					addAll(child, path, childLength, rows, keys);
+				}
+			}else{
+				addRange(child, path, childLength, low, high, highIsPrefix, rows, keys);
+			}
+		}
+	}
+	
+	
+	/**
+	 * Add all rowOffsets of the node and its sub nodes with the digits of the current column.
+	 * @param path the digits from the root of the column to this node
+	 */
+	private static void addAll(IndexNode node, char[] path, int length, LongList rows, ArrayList keys) throws Exception{
+		Object value = node.getValue();
+		if(value != null){
+			addValue(value, rows, getDigits(node, path, length), keys);
+		}
+		IndexNode[] nodes = node.getChildNodes();
+		if(nodes.length == 0) return;
+		if(length == path.length){
+			char[] temp = new char[length*2];
+			System.arraycopy(path, 0, temp, 0, length);
+			path = temp;
+		}
+		for(int i=0; i<nodes.length; i++){
+			IndexNode child = nodes[i];
+			path[length] = child.getDigit();
+			addAll(child, path, length+1, rows, keys);
+		}
+	}
+	
+	
+	/**
+	 * Add all rowOffsets of the node and its sub nodes.
+	 * @param key the digits of the range column for all rows or null
+	 * @param keys optional, receive the key for every row
+	 */
+	private static void addAll(IndexNode node, LongList rows, char[] key, ArrayList keys) throws Exception{
+		Object value = node.getValue();
+		if(value != null){
+			addValue(value, rows, key, keys);
+		}
+		IndexNode[] nodes = node.getChildNodes();
+		for(int i=0; i<nodes.length; i++){
+			addAll(nodes[i], rows, key, keys);
+		}
+	}
+	
+	
+	/**
+	 * Add the value of a node. This can be a Long, a RowBitmap or the root of the next column.
+	 * @param key the digits of the range column for all rows or null
+	 * @param keys optional, receive the key for every row
+	 */
+	private static void addValue(Object value, LongList rows, char[] key, ArrayList keys) throws Exception{
+		if(value instanceof Long){
+			rows.add(((Long)value).longValue());
+			if(keys != null) keys.add(key);
+		}else if(value instanceof RowBitmap){
+			RowBitmap list = (RowBitmap)value;
+			long rowOffset = -1;
+			while((rowOffset = list.getNext(rowOffset)) >= 0){
+				rows.add(rowOffset);
+				if(keys != null) keys.add(key);
+			}
+		}else{
+			addAll((IndexNode)value, rows, key, keys);
+		}
+	}
+	
+	
+	/**
+	 * Returns the digits of the key of a node with a value.
+	 * @param path the digits from the root of the column to this node
+	 */
+	private static char[] getDigits(IndexNode node, char[] path, int length){
+		char[] remainder = node.getRemainderValue();
+		int remainderLength = (remainder == null) ? 0 : remainder.length;
+		char[] key = new char[length + remainderLength];
+		System.arraycopy(path, 0, key, 0, length);
+		if(remainder != null){
+			System.arraycopy(remainder, 0, key, length, remainderLength);
+		}
+		return key;
+	}
+	
+	
+	/**
+	 * Compare the first length digits of the key with the other key. A key that is a prefix of another key is lesser.
+	 */
+	static int compare(char[] key, int length, char[] other){
+		int count = Math.min(length, other.length);
+		for(int i=0; i<count; i++){
+			if(key[i] != other[i]){
+				return key[i] < other[i] ? -1 : 1;
+			}
+		}
+		return length - other.length;
+	}
+	
+	
+	static boolean startsWith(char[] key, int length, char[] prefix){
+		return startsWith(key, length, prefix, prefix.length);
+	}
+	
+	
+	private static boolean startsWith(char[] key, int length, char[] prefix, int prefixLength){
+		if(prefixLength > length) return false;
+		for(int i=0; i<prefixLength; i++){
+			if(key[i] != prefix[i]) return false;
+		}
+		return true;
+	}
+	
+	
+	/**
+	 * Create the digits of a single value like they are saved in the index tree.
+	 */
+	static char[] createKey(Expression expr) throws Exception{
+		return createKey( expr, expr.getDataType() );
+	}
+	
+	
+	/**
+	 * Create the digits of a single value converted to the data type. Values of different data types 
+	 * that are equals after the conversion produce the same digits.
+	 * @param dataType the data type of the digits, must be a type of isKeyType()
+	 */
+	static char[] createKey(Expression expr, int dataType) throws Exception{
+		if(expr.isNull()){
+			return new char[]{ 0 };
+		}
+		switch(dataType){
+			case SQLTokenizer.REAL:
+				return createKey( floatToBinarySortOrder( expr.getFloat()), 2 );
+			case SQLTokenizer.DOUBLE:
+			case SQLTokenizer.FLOAT:
+				return createKey( doubleToBinarySortOrder( expr.getDouble()), 4 );
+			case SQLTokenizer.TINYINT:
+				return createKey( expr.getInt(), 1 );
+			case SQLTokenizer.SMALLINT:
+				return createKey( shortToBinarySortOrder( expr.getInt()), 1 );
+			case SQLTokenizer.INT:
+				return createKey( intToBinarySortOrder( expr.getInt()), 2 );
+			case SQLTokenizer.BIGINT:
+			case SQLTokenizer.DATE:
+			case SQLTokenizer.TIME:
+			case SQLTokenizer.TIMESTAMP:
+			case SQLTokenizer.SMALLDATETIME:
+			case SQLTokenizer.MONEY:
+			case SQLTokenizer.SMALLMONEY:
+				return createKey( longToBinarySortOrder( expr.getLong()), 4 );
+			case SQLTokenizer.VARCHAR:
+			case SQLTokenizer.NVARCHAR:
+			case SQLTokenizer.LONGVARCHAR:
+			case SQLTokenizer.LONGNVARCHAR:
+			case SQLTokenizer.CLOB:
+				return createKey( stringToBinarySortOrder( expr.getString(), false ) );
+			case SQLTokenizer.NCHAR:
+			case SQLTokenizer.CHAR:
+				return createKey( stringToBinarySortOrder( expr.getString(), true ) );
+			case SQLTokenizer.VARBINARY:
+			case SQLTokenizer.BINARY:
+			case SQLTokenizer.LONGVARBINARY:
+			case SQLTokenizer.BLOB:
+			case SQLTokenizer.UNIQUEIDENTIFIER:
+				return createKey( bytesToBinarySortOrder( expr.getBytes()) );
+			case SQLTokenizer.BIT:
+			case SQLTokenizer.BOOLEAN:
+				return createKey( expr.getBoolean() ? 2 : 1, 1 );
+			case SQLTokenizer.NUMERIC:
+			case SQLTokenizer.DECIMAL:
+				return createKey( numericToBinarySortOrder( expr.getNumeric() ) );
+			default: 
+				throw new Error(String.valueOf(dataType));
+		}
+	}
+	
+	
+	/**
+	 * If values of the data type can be converted to digits with createKey(Expression).
+	 */
+	static boolean isKeyType(int dataType){
+		switch(dataType){
+			case SQLTokenizer.NULL:
+			case SQLTokenizer.REAL:
+			case SQLTokenizer.DOUBLE:
+			case SQLTokenizer.FLOAT:
+			case SQLTokenizer.TINYINT:
+			case SQLTokenizer.SMALLINT:
+			case SQLTokenizer.INT:
+			case SQLTokenizer.BIGINT:
+			case SQLTokenizer.DATE:
+			case SQLTokenizer.TIME:
+			case SQLTokenizer.TIMESTAMP:
+			case SQLTokenizer.SMALLDATETIME:
+			case SQLTokenizer.MONEY:
+			case SQLTokenizer.SMALLMONEY:
+			case SQLTokenizer.VARCHAR:
+			case SQLTokenizer.NVARCHAR:
+			case SQLTokenizer.LONGVARCHAR:
+			case SQLTokenizer.LONGNVARCHAR:
+			case SQLTokenizer.CLOB:
+			case SQLTokenizer.NCHAR:
+			case SQLTokenizer.CHAR:
+			case SQLTokenizer.VARBINARY:
+			case SQLTokenizer.BINARY:
+			case SQLTokenizer.LONGVARBINARY:
+			case SQLTokenizer.BLOB:
+			case SQLTokenizer.UNIQUEIDENTIFIER:
+			case SQLTokenizer.BIT:
+			case SQLTokenizer.BOOLEAN:
+			case SQLTokenizer.NUMERIC:
+			case SQLTokenizer.DECIMAL:
+				return true;
+			default:
+				return false;
+		}
+	}
+	
+	
+	private static char[] createKey(long key, int digitCount){
+		char[] digits = new char[digitCount];
+		for(int i=digitCount-1, d=0; i>=0; i--){
+			digits[d++] = (char)(key >> (i<<4));
+		}
+		return digits;
+	}
+	
+	
+	private static char[] createKey(char[] key){
+		// the first digit include 0-null; 1-empty; 2 another value
+		char[] digits = new char[key.length+1];
+		digits[0] = (key.length == 0) ? (char)1 : 2;
+		System.arraycopy(key, 0, digits, 1, key.length);
+		return digits;
+	}
 	/*================================================================
 	 * Normalize functions
 	 * convert the value to a binary with identical sort order 
@@ -447,6 +851,10 @@ class Index{
 	
 	
 	final static private int floatToBinarySortOrder(float value){
+		if(value == 0){
+			// -0.0 is equals to 0.0 and gets the same key, else a unique index accept both values
+			value = 0.0f;
+		}
 		int intValue = Float.floatToIntBits(value);
 		return (intValue<0) ?
 			~intValue :
@@ -454,6 +862,9 @@ class Index{
 	}
 	
 	final static private long doubleToBinarySortOrder(double value){
+		if(value == 0){
+			value = 0.0;
+		}
 		long intValue = Double.doubleToLongBits(value);
 		return (intValue<0) ?
 			~intValue :
@@ -516,6 +927,183 @@ class Index{
 	}
 	
 	
+	/**
+	 * If the value of a column can be restored from the digits of the index. The digits of other data 
+	 * types lose information like the case of strings or the scale of numbers. For TINYINT and SMALLINT 
+	 * the digits of the lowest value are equals to NULL. The digits of -0.0 are equals to 0.0.
+	 */
+	static boolean isRestorable(int dataType){
+		switch(dataType){
+			case SQLTokenizer.BIT:
+			case SQLTokenizer.BOOLEAN:
+			case SQLTokenizer.INT:
+			case SQLTokenizer.BIGINT:
+				return true;
+		}
+		return false;
+	}
+	
+	
+	/**
+	 * Restore a value from its digits, this is the reverse of createKey().
+	 * @param dataType the data type of the column, isRestorable() must be true
+	 * @return the value or null for SQL NULL
+	 */
+	static Object restoreValue(char[] digits, int dataType){
+		if(digits.length == 1 && digits[0] == 0){
+			return null;
+		}
+		long key = 0;
+		for(int i=0; i<digits.length; i++){
+			key = (key << 16) | digits[i];
+		}
+		switch(dataType){
+			case SQLTokenizer.BIT:
+			case SQLTokenizer.BOOLEAN:
+				return (key == 2) ? Boolean.TRUE : Boolean.FALSE;
+			case SQLTokenizer.INT:
+				return new Integer( (int)key ^ 0x80000000 );
+			default:
+				return new Long( key ^ 0x8000000000000000L );
+		}
+	}
+	
+	
+	/**
+	 * If a column with the data type can be an included column of an index.
+	 */
+	static boolean isIncludable(int dataType){
+		switch(dataType){
+			case SQLTokenizer.BIT:
+			case SQLTokenizer.BOOLEAN:
+			case SQLTokenizer.TINYINT:
+			case SQLTokenizer.SMALLINT:
+			case SQLTokenizer.INT:
+			case SQLTokenizer.BIGINT:
+			case SQLTokenizer.REAL:
+			case SQLTokenizer.FLOAT:
+			case SQLTokenizer.DOUBLE:
+			case SQLTokenizer.MONEY:
+			case SQLTokenizer.SMALLMONEY:
+			case SQLTokenizer.NUMERIC:
+			case SQLTokenizer.DECIMAL:
+			case SQLTokenizer.CHAR:
+			case SQLTokenizer.NCHAR:
+			case SQLTokenizer.VARCHAR:
+			case SQLTokenizer.NVARCHAR:
+			case SQLTokenizer.DATE:
+			case SQLTokenizer.TIME:
+			case SQLTokenizer.TIMESTAMP:
+			case SQLTokenizer.SMALLDATETIME:
+				return true;
+		}
+		return false;
+	}
+	
+	
+	/**
+	 * Create the digits of the value of an included column. Other as createKey() the digits save the complete 
+	 * value and have not the sort order of the value. The first digit is 0 for NULL and 1 for any other value.
+	 * @param expr a value with a data type of isIncludable()
+	 */
+	static char[] createIncludeValue(Expression expr) throws Exception{
+		if(expr.isNull()){
+			return new char[]{ 0 };
+		}
+		switch(expr.getDataType()){
+			case SQLTokenizer.BIT:
+			case SQLTokenizer.BOOLEAN:
+				return new char[]{ 1, expr.getBoolean() ? (char)1 : 0 };
+			case SQLTokenizer.TINYINT:
+			case SQLTokenizer.SMALLINT:
+			case SQLTokenizer.INT:
+				return createIncludeValue( expr.getInt(), 2 );
+			case SQLTokenizer.REAL:
+				return createIncludeValue( Float.floatToIntBits( expr.getFloat() ), 2 );
+			case SQLTokenizer.FLOAT:
+			case SQLTokenizer.DOUBLE:
+				return createIncludeValue( Double.doubleToLongBits( expr.getDouble() ), 4 );
+			case SQLTokenizer.MONEY:
+			case SQLTokenizer.SMALLMONEY:
+				return createIncludeValue( expr.getMoney(), 4 );
+			case SQLTokenizer.NUMERIC:
+			case SQLTokenizer.DECIMAL:
+				return createIncludeValue( expr.getNumeric().toString().toCharArray() );
+			case SQLTokenizer.CHAR:
+			case SQLTokenizer.NCHAR:
+			case SQLTokenizer.VARCHAR:
+			case SQLTokenizer.NVARCHAR:
+				return createIncludeValue( expr.getString().toCharArray() );
+			default:
+				// BIGINT and the date and time types
+				return createIncludeValue( expr.getLong(), 4 );
+		}
+	}
+	
+	
+	private static char[] createIncludeValue(long value, int digitCount){
+		char[] digits = new char[digitCount+1];
+		digits[0] = 1;
+		for(int i=digitCount-1, d=1; i>=0; i--){
+			digits[d++] = (char)(value >> (i<<4));
+		}
+		return digits;
+	}
+	
+	
+	private static char[] createIncludeValue(char[] value){
+		char[] digits = new char[value.length+1];
+		digits[0] = 1;
+		System.arraycopy(value, 0, digits, 1, value.length);
+		return digits;
+	}
+	
+	
+	/**
+	 * Get the value of an included column from its digits, this is the reverse of createIncludeValue().
+	 * @return the value like it is returned from the table or null for SQL NULL
+	 */
+	static Object getIncludeValue(char[] digits, int dataType){
+		if(digits[0] == 0){
+			return null;
+		}
+		long value = 0;
+		for(int i=1; i<digits.length && i<=4; i++){
+			value = (value << 16) | digits[i];
+		}
+		switch(dataType){
+			case SQLTokenizer.BIT:
+			case SQLTokenizer.BOOLEAN:
+				return (value != 0) ? Boolean.TRUE : Boolean.FALSE;
+			case SQLTokenizer.TINYINT:
+			case SQLTokenizer.SMALLINT:
+			case SQLTokenizer.INT:
+				return new Integer( (int)value );
+			case SQLTokenizer.BIGINT:
+				return new Long( value );
+			case SQLTokenizer.REAL:
+				return new Float( Float.intBitsToFloat( (int)value ) );
+			case SQLTokenizer.FLOAT:
+			case SQLTokenizer.DOUBLE:
+				return new Double( Double.longBitsToDouble( value ) );
+			case SQLTokenizer.MONEY:
+			case SQLTokenizer.SMALLMONEY:
+				return Money.createFromUnscaledValue( value );
+			case SQLTokenizer.NUMERIC:
+			case SQLTokenizer.DECIMAL:
+				return new MutableNumeric( new String( digits, 1, digits.length-1 ) );
+			case SQLTokenizer.SMALLDATETIME:
+				return new DateTime( value, SQLTokenizer.TIMESTAMP );
+			case SQLTokenizer.DATE:
+			case SQLTokenizer.TIME:
+			case SQLTokenizer.TIMESTAMP:
+				return new DateTime( value, dataType );
+			default:
+				return new String( digits, 1, digits.length-1 );
+		}
+	}
+	
+	
 	/*================================================================
 	 * 
 	 * Functions  for reading the index.
@@ -0,0 +1,108 @@
+/* =============================================================
+ * SmallSQL : a free Java DBMS library for the Java(tm) platform
+ * =============================================================
+ *
+ * (C) Copyright 2004-2011, by Volker Berlin.
+ *
+ * Project Info:  http://www.smallsql.de/
+ *
+ * This library is free software; you can redistribute it and/or modify it 
+ * under the terms of the GNU Lesser General Public License as published by 
+ * the Free Software Foundation; either version 2.1 of the License, or 
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but 
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY 
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public 
+ * License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, 
+ * USA.  
+ *
+ * [Java is a trademark or registered trademark of Sun Microsystems, Inc. 
+ * in the United States and other countries.]
+ *
+ * ---------------
+ * IndexChange.java
+ * ---------------
+ * Author: Volker Berlin
+ * 
+ */
+package smallsql.database;
+
+import java.sql.SQLException;
+
+/**
+ * A change of the values of an index that is part of a transaction. The change is applied on the
+ * index immediately and undone on a rollback. A not committed insert is saved with a temporary row
+ * offset because the final position of the row is known only after the commit of the row.
+ * 
+ * @author Volker Berlin
+ */
+final class IndexChange extends TransactionStep{
+
+	final IndexDescription index;
+	/** The connection of the change. */
+	final SSConnection con;
+	/** The link to the new row if this is an insert, else null. */
+	final StorePageLink link;
+	/** The insert of the row if the changed row is not committed, else null. */
+	final IndexChange insert;
+	/** The row offset in the index. A temporary value for not committed inserts. */
+	final long rowOffset;
+	/** The key before the change or null if the row was not part of the index. */
+	final Expressions oldKey;
+	/** The key after the change or null. For an insert it is updated with later changes of the row. */
+	Expressions key;
+	/** The reserved old key of a unique index until the commit or rollback, see IndexDescription.reserveKey(). */
+	HashIndex.Key reservedKey;
+	private boolean finish;
+	
+	
+	IndexChange(IndexDescription index, SSConnection con, StorePageLink link, IndexChange insert, long rowOffset, Expressions oldKey, Expressions key){
+		super(null);
+		this.index = index;
+		this.con = con;
+		this.link = link;
+		this.insert = insert;
+		this.rowOffset = rowOffset;
+		this.oldKey = oldKey;
+		this.key = key;
+	}
+
+
+	/**
+	 * The index is only in memory.
+	 */
+	@Override
+	boolean hasWrites(){
+		return false;
+	}
+
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	long commit() throws SQLException{
+		if(!finish){
+			finish = true;
+			index.commit(this);
+		}
+		return rowOffset;
+	}
+
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	void rollback() throws SQLException{
+		if(!finish){
+			finish = true;
+			index.rollback(this);
+		}
+	}
+}
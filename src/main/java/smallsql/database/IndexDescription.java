@@ -38,21 +38,60 @@ import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
 import java.sql.DriverManager;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import smallsql.tools.language.Language;
 
 
 final class IndexDescription {
 
 	static final int MAGIC_INDEX = 'S' << 24 | 'Q' << 16 | 'L' << 8 | 'I';
-	static final int INDEX_VERSION = 1;
+	static final int INDEX_VERSION = 5;
+	/** The first temporary row offset of not committed inserts. */
+	static final long PENDING_ROW = 0x4000000000000000L;
 	
 	private final String name;
 	final private int constraintType; //PRIMARY, UNIQUE, FOREIGIN, INDEX
 	final private Strings columns;
+	/** The columns that are saved in the index without being part of the key. */
+	final private Strings includes;
+	/** The column positions in the table of the index columns followed by the included columns. */
 	private int[] matrix;
+	/** The data types of the index columns followed by the included columns. */
+	private int[] dataTypes;
 	final private Expressions expressions;
-	private Index index;
+	/** If the index is a hash index for equals searches only. */
+	final private boolean isHash;
+	/** The values of the index. It is null if it must be rebuild from the table or if it is a hash index. */
+	private FileIndex index;
+	/** The values of a hash index. It is null if it must be rebuild from the table or if it is not a hash index. */
+	private HashIndex hashIndex;
+	/** If the rows of the table include duplicate keys of this unique index, see setUnusable(). */
+	private boolean unusable;
     private FileChannel raFile;
+    private PageCache cache;
+    private boolean readOnly;
+    /** 
+     * The file of the index of a table that is replaced with ALTER TABLE or COMPACT. It is opened 
+     * on closing after the old table has closed it.
+     */
+    private File sharedFile;
+    /** The not committed inserts of all connections. StorePageLink --> IndexChange */
+    final private HashMap pendingInserts = new HashMap();
+    private long nextPendingRow = PENDING_ROW;
+    /** The count of not committed changes of all connections. */
+    private int changeCount;
+    /** 
+     * The count of not committed changes of committed rows per connection. SSConnection --> int[1] 
+     * The old keys of this rows are removed from the index until the commit.
+     */
+    final private HashMap changedRows = new HashMap();
+    /**
+     * The old keys of not committed changes of a unique index. HashIndex.Key --> ArrayList of IndexChange 
+     * Other connections can not add such a key until the commit that a rollback can add it again.
+     */
+    final private HashMap reservedKeys = new HashMap();
     
 	
 	/**
@@ -61,9 +100,29 @@ final class IndexDescription {
 	 * @param columns the Expressions that build the index. For example one or more database columns.
 	 */
 	IndexDescription( String name, String tableName, int constraintType, Expressions expressions, Strings columns){
+		this( name, tableName, constraintType, expressions, columns, new Strings() );
+	}
+	
+	
+	/**
+	 * 
+	 * @param includes the columns of the INCLUDE clause. Its values are saved in the index but are not part of the key.
+	 */
+	IndexDescription( String name, String tableName, int constraintType, Expressions expressions, Strings columns, Strings includes){
+		this( name, tableName, constraintType, expressions, columns, includes, false );
+	}
+	
+	
+	/**
+	 * 
+	 * @param isHash true for a hash index (USING HASH) that can only be used for equals searches
+	 */
+	IndexDescription( String name, String tableName, int constraintType, Expressions expressions, Strings columns, Strings includes, boolean isHash){
 		this.constraintType = constraintType;
 		this.expressions = expressions;
 		this.columns = columns;
+		this.includes = includes;
+		this.isHash = isHash;
         this.name = createName(name, tableName);
 	}
     
@@ -96,6 +155,15 @@ final class IndexDescription {
 	}
 	
 	
+	/**
+	 * If it is a hash index. A hash index can only be used for equals searches of all index columns and not 
+	 * for ranges or a sort order.
+	 */
+	final boolean isHash(){
+		return isHash;
+	}
+	
+	
 	/**
 	 * Described how well the index match to the column list.
 	 * @param strings a list of columns that should match
@@ -125,14 +193,15 @@ final class IndexDescription {
 	 * @see IndexDescriptions#setTableView
 	 */
 	final void init(Database database, TableView tableView)/* throws Exception*/{
-		int size = tableView.columns.size();
-		matrix = new int[size];
+		cache = database.getPageCache();
+		matrix = new int[columns.size() + includes.size()];
+		dataTypes = new int[matrix.length];
 		for(int i=0; i<matrix.length; i++){
-			matrix[i] = -1;
-		}
-		
-		for(int i=0; i<columns.size(); i++){
-			matrix[tableView.findColumnIdx(columns.get(i))] = i;
+			String colName = (i < columns.size()) ? columns.get(i) : includes.get(i - columns.size());
+			matrix[i] = tableView.findColumnIdx(colName);
+			if(matrix[i] >= 0 || i < columns.size()){
+				dataTypes[i] = tableView.columns.get(matrix[i]).getDataType();
+			}
 		}
 	}
 	
@@ -142,7 +211,46 @@ final class IndexDescription {
 	 */
 	final void create(SSConnection con, Database database, TableView tableView) throws Exception{
 		init( database, tableView );
+		if(isHash && includes.size() > 0){
+			throw SmallSQLException.create(Language.UNSUPPORTED_OPERATION, "INCLUDE with USING HASH");
+		}
+		for(int i=columns.size(); i<matrix.length; i++){
+			String colName = includes.get(i - columns.size());
+			if(matrix[i] < 0){
+				throw SmallSQLException.create(Language.COL_INVALID_NAME, colName);
+			}
+			if(!Index.isIncludable( dataTypes[i] )){
+				throw SmallSQLException.create(Language.UNSUPPORTED_DATATYPE_OPER, new Object[]{ SQLTokenizer.getKeyWord( dataTypes[i] ), "INCLUDE" });
+			}
+		}
 		raFile = createFile( con, database );
+		createValues();
+	}
+	
+	
+	/**
+	 * Create empty values for the index.
+	 */
+	private void createValues(){
+		if(isHash){
+			hashIndex = new HashIndex( isUnique(), matrix.length );
+		}else{
+			index = new FileIndex( isUnique(), matrix.length, includes.size() );
+		}
+	}
+	
+	
+	/**
+	 * Create a copy for a new table that replaces the table of this index, for example on ALTER TABLE.
+	 * The copy uses the same index file but starts with empty values.
+	 */
+	final IndexDescription copy(Database database, TableView tableView) throws Exception{
+		IndexDescription copy = new IndexDescription( name, tableView.name, constraintType, expressions, columns, includes, isHash );
+		copy.init( database, tableView );
+		copy.readOnly = database.isReadOnly();
+		copy.createValues();
+		copy.sharedFile = getFile( database, name );
+		return copy;
 	}
 	
 	
@@ -183,6 +291,15 @@ final class IndexDescription {
             	Object[] params = { new Integer(version), file.getName() };
                 throw SmallSQLException.create(Language.FILE_TOONEW, params);
             }
+            readOnly = database.isReadOnly();
+            // files of an older version include no values, the index is rebuild
+            if(version != INDEX_VERSION){
+                index = null;
+            }else if(isHash){
+                hashIndex = HashIndex.load( raFile, cache, isUnique(), matrix.length );
+            }else{
+                index = FileIndex.load( raFile, cache, matrix.length, includes.size() );
+            }
         }catch(Throwable e){
             if(raFile != null)
                 try{
@@ -196,16 +313,45 @@ final class IndexDescription {
 	
 
 	void drop(Database database) throws Exception {
-        close();
+        if(raFile != null){
+            cache.remove( raFile );
+            raFile.close();
+            raFile = null;
+        }
+        if(sharedFile != null){
+            // the file is used from the table that should be replaced
+            return;
+        }
 		boolean ok = getFile( database, name).delete();
 		if(!ok) throw SmallSQLException.create(Language.TABLE_CANT_DROP, name);
 	}
     
     
-    void close() throws Exception{
+    /**
+     * Save the values of the index if there are changes and close the file. If there are not committed 
+     * inserts then the values are not saved and the index is rebuild on the next loading.
+     */
+    synchronized void close() throws Exception{
+        boolean save = !needRebuild() && !(isHash ? hashIndex.isClean() : index.isClean()) && !readOnly && pendingInserts.size() == 0;
+        if(raFile == null && sharedFile != null && save){
+            // the replaced table is already closed
+            raFile = Utils.openRaFile( sharedFile, false );
+        }
         if(raFile != null){
-            raFile.close();
-            raFile = null;
+            cache.remove( raFile );
+            try{
+                if(save && raFile.isOpen()){
+                    writeMagic( raFile );
+                    if(isHash){
+                        hashIndex.save( raFile );
+                    }else{
+                        index.save( raFile );
+                    }
+                }
+            }finally{
+                raFile.close();
+                raFile = null;
+            }
         }
     }
     
@@ -215,29 +361,821 @@ final class IndexDescription {
 	    buffer.putInt(MAGIC_INDEX);
 	    buffer.putInt(INDEX_VERSION);
 	    buffer.position(0);
-	    raFile.write(buffer);
+	    Utils.writeFully( raFile, buffer, 0 );
+	}
+	
+	
+	/**
+	 * If the values could not be loaded from the index file and must be build from the rows of the table.
+	 */
+	final boolean needRebuild(){
+		return isHash ? hashIndex == null : index == null;
+	}
+	
+	
+	/**
+	 * Start a rebuild of the values. The rows are added with addRow().
+	 */
+	final synchronized void clearValues(){
+		createValues();
+	}
+
+
+	/**
+	 * Mark the index as not usable because the rebuild has found duplicate keys of this unique index. Such rows are 
+	 * from a time without a maintained index. The index is not used for searches and not changed. It is rebuild 
+	 * again on the next loading of the table.
+	 */
+	final synchronized void setUnusable(){
+		unusable = true;
+		index = null;
+		hashIndex = null;
+	}
+
+
+	/**
+	 * If the index can be used to find rows, see setUnusable().
+	 */
+	final boolean isUsable(){
+		return !unusable;
+	}
+
+
+	/**
+	 * Read the values of this index from a row of the table.
+	 * @param store the row
+	 * @param offsets the offsets of all table columns in the row, see Store.scanObjectOffsets()
+	 * @param dataTypes the data types of all table columns
+	 * @return the key followed by the values of the included columns or null if the row is not part of the 
+	 * index. Rows with a NULL value are not part of a unique index because NULL is never equal to another value.
+	 * No row is part of an unusable index.
+	 */
+	final Expressions getKey(Store store, int[] offsets, int[] dataTypes) throws Exception{
+		if(unusable){
+			return null;
+		}
+		Expressions key = new Expressions(matrix.length);
+		for(int i=0; i<matrix.length; i++){
+			int c = matrix[i];
+			Object value = store.getObject( offsets[c], dataTypes[c] );
+			if(value == null && isUnique() && i < columns.size()){
+				return null;
+			}
+			key.add( new ExpressionValue( value, dataTypes[c] ) );
+		}
+		return key;
+	}
+	
+	
+	/**
+	 * Add a committed row to the index without a transaction. It is used to build the index.
+	 * @param rowOffset the position of the row in the table
+	 * @param key the values of the row, see getKey()
+	 * @throws SQLException if it is a unique index and the key already exists
+	 */
+	final synchronized void addRow(long rowOffset, Expressions key) throws Exception{
+		if(key != null){
+			setDirty();
+			add( rowOffset, key );
+		}
+	}
+
+
+	/**
+	 * Add the key of a row of a bulk load before the row is written. A unique index throws the exception of a 
+	 * duplicate key before the row exists in the table.
+	 * @param key the values of the row, see getKey()
+	 * @return the temporary row offset of the key, see replaceReservedRow()
+	 * @throws SQLException if it is a unique index and the key already exists
+	 */
+	final synchronized long reserveRow(Expressions key) throws Exception{
+		long rowOffset = nextPendingRow++;
+		if(key != null){
+			checkReservedKey( null, key );
+			setDirty();
+			add( rowOffset, key );
+		}
+		return rowOffset;
+	}
+	
+	
+	/**
+	 * Replace the temporary row offset of a key from reserveRow() with the position of the written row.
+	 * @param reservedRow the value of reserveRow()
+	 * @param rowOffset the position of the row in the table or -1 to remove the key
+	 * @param key the same key like on reserveRow()
+	 */
+	final synchronized void replaceReservedRow(long reservedRow, long rowOffset, Expressions key) throws Exception{
+		if(key != null){
+			remove( reservedRow, key );
+			if(rowOffset >= 0){
+				add( rowOffset, key );
+			}
+		}
 	}
 
 
 	/**
-	 * This is call if a single colum of the table is changed.
-	 * @param columnIdx The column position in the table
-	 * @param valueExpression the new value of the current row.
+	 * Add a new not committed row to the index. The row is saved with a temporary row offset until the commit.
+	 * @param con the connection for a later commit or rollback.
+	 * @param link the link to the new row
+	 * @param key the values of the row, see getKey()
+	 * @throws SQLException if it is a unique index and the key already exists
 	 */
-	final void writeExpression( int columnIdx, Expression valueExpression) {
-		int idx = matrix[columnIdx];
-		if(idx >= 0) //set only if the column part of this index
-			expressions.set(idx, valueExpression);
+	final void insertRow(SSConnection con, StorePageLink link, Expressions key) throws Exception{
+		IndexChange insert;
+		synchronized(this){
+			long rowOffset = nextPendingRow++;
+			if(key != null){
+				checkReservedKey( con, key );
+				setDirty();
+				add( rowOffset, key );
+			}
+			insert = new IndexChange( this, con, link, null, rowOffset, null, key );
+			pendingInserts.put( link, insert );
+			changeCount++;
+		}
+		con.add( insert );
 	}
 
 
 	/**
-	 * This is call if the row is finish written.
+	 * Change the key of a row that was updated or deleted.
 	 * @param con the connection for a later commit or rollback.
+	 * @param rowOffset the position of a committed row
+	 * @param link the link if the row is from the list of inserts, else null
+	 * @param oldKey the values before the change
+	 * @param newKey the values after the change or null if the row was deleted
+	 * @throws SQLException if it is a unique index and the new key already exists
+	 */
+	final void changeRow(SSConnection con, long rowOffset, StorePageLink link, Expressions oldKey, Expressions newKey) throws Exception{
+		IndexChange change;
+		synchronized(this){
+			IndexChange insert = null;
+			if(link != null){
+				if(link.page == null){
+					rowOffset = link.filePos;
+				}else{
+					insert = (IndexChange)pendingInserts.get( link );
+					if(insert == null){
+						// the row was inserted before this index was created
+						return;
+					}
+					rowOffset = insert.rowOffset;
+					oldKey = insert.key;
+				}
+			}
+			if(equals( oldKey, newKey )){
+				return;
+			}
+			checkReservedKey( con, newKey );
+			setDirty();
+			replace( rowOffset, oldKey, newKey );
+			if(insert != null){
+				insert.key = newKey;
+			}
+			change = new IndexChange( this, con, null, insert, rowOffset, oldKey, newKey );
+			reserveKey( change );
+			changeCount++;
+			if(insert == null){
+				countChangedRow( con, 1 );
+			}
+		}
+		con.add( change );
+	}
+	
+	
+	/**
+	 * If there are not committed changes of any connection. Not committed values in the index can not be 
+	 * read without the row.
+	 */
+	final synchronized boolean hasChanges(){
+		return changeCount > 0;
+	}
+	
+	
+	/**
+	 * If another connection has changed or deleted committed rows and has not committed it. The old keys of 
+	 * this rows are not in the index until the commit, the index can not find the committed rows.
+	 * @param con the connection of the reader
+	 */
+	final synchronized boolean hasChangedRows(SSConnection con){
+		int size = changedRows.size();
+		return size > 1 || (size == 1 && !changedRows.containsKey( con ));
+	}
+	
+	
+	private void countChangedRow(SSConnection con, int diff){
+		int[] count = (int[])changedRows.get( con );
+		if(count == null){
+			count = new int[1];
+			changedRows.put( con, count );
+		}
+		count[0] += diff;
+		if(count[0] == 0){
+			changedRows.remove( con );
+		}
+	}
+	
+	
+	/**
+	 * Is called from the commit of an IndexChange. A new row get its final row offset.
+	 */
+	final synchronized void commit(IndexChange change) throws SQLException{
+		changeCount--;
+		if(change.link == null){
+			releaseKey( change );
+			if(change.insert == null){
+				countChangedRow( change.con, -1 );
+			}
+			return;
+		}
+		pendingInserts.remove( change.link );
+		try{
+			if(change.key != null){
+				remove( change.rowOffset, change.key );
+				add( change.link.filePos, change.key );
+			}
+		}catch(Exception e){
+			throw SmallSQLException.createFromException(e);
+		}
+	}
+	
+	
+	/**
+	 * Is called from the rollback of an IndexChange. The change is undone.
+	 */
+	final synchronized void rollback(IndexChange change) throws SQLException{
+		changeCount--;
+		try{
+			if(change.link != null){
+				pendingInserts.remove( change.link );
+				if(change.key != null){
+					remove( change.rowOffset, change.key );
+				}
+			}else{
+				// the old key is reserved, no other connection can have added it
+				replace( change.rowOffset, change.key, change.oldKey );
+				releaseKey( change );
+				if(change.insert != null){
+					change.insert.key = change.oldKey;
+				}else{
+					countChangedRow( change.con, -1 );
+				}
+			}
+		}catch(Exception e){
+			throw SmallSQLException.createFromException(e);
+		}
+	}
+	
+	
+	/**
+	 * Search the rows with the values of all index columns. The index includes the not committed changes
+	 * of all connections, the caller must check hasChangedRows() before. The found rows can be 
+	 * more as the matching rows, the caller must verify the values of every row. Not committed inserts are 
+	 * not included. 
+	 * @param values the searched values in the order of the index columns
+	 * @param rows receive the row offsets of the found rows
+	 * @return false if a value can not be converted to the data type of its column without changing the 
+	 * result of a compare. In this case the index can not be used.
+	 */
+	final boolean findRows(Expression[] values, RowBitmap rows) throws Exception{
+		Expression[] key = new Expression[values.length];
+		for(int i=0; i<values.length; i++){
+			Expression value = values[i];
+			if(value.isNull()){
+				// NULL is never equals to another value
+				return true;
+			}
+			key[i] = createKeyValue( value, dataTypes[i] );
+			if(key[i] == null){
+				return false;
+			}
+		}
+		Expressions expressions = new Expressions(key.length);
+		for(int i=0; i<key.length; i++){
+			expressions.add( key[i] );
+		}
+		findRows( expressions, rows );
+		return true;
+	}
+	
+	
+	/**
+	 * Search the rows of a single key.
+	 */
+	private synchronized void findRows(Expressions key, RowBitmap rows) throws Exception{
+		if(isHash){
+			LongList found = new LongList();
+			hashIndex.findRows( key, found );
+			for(int i=0; i<found.size(); i++){
+				if(found.get(i) < PENDING_ROW){
+					rows.add( found.get(i) );
+				}
+			}
+		}else
+		if(index.isLoaded()){
+			addRows( index.findRows( key, false, null ), rows );
+		}else{
+			LongList found = new LongList();
+			index.findFileRows( key, found );
+			for(int i=0; i<found.size(); i++){
+				if(found.get(i) < PENDING_ROW){
+					rows.add( found.get(i) );
+				}
+			}
+		}
+	}
+	
+	
+	/**
+	 * Search the rows of a range of values. The first columns of the index must be equals to the values, 
+	 * the range is on the next column. The found rows are a superset of the rows in the range, they must 
+	 * be verified with the condition.
+	 * @param values the searched values of the first columns, can be empty. If entries is not null then 
+	 * it can be the values of all index columns.
+	 * @param low the lower bound or null
+	 * @param high the upper bound or null. If isLike is true then it is the pattern of a LIKE.
+	 * @param isLike true if high is the pattern of a LIKE
+	 * @param rows the list that receive the row positions, the list is not sorted
+	 * @param entries optional, receive for every row the digits of the columns, see getEntryValue()
+	 * @return false if the index can not be used for the values
+	 */
+	final boolean findRange(Expression[] values, Expression low, Expression high, boolean isLike, LongList rows, ArrayList entries) throws Exception{
+		if(isHash){
+			return false;
+		}
+		Expression[] key = new Expression[values.length];
+		for(int i=0; i<values.length; i++){
+			Expression value = values[i];
+			if(value.isNull()){
+				// NULL is never equals to another value
+				return true;
+			}
+			key[i] = createKeyValue( value, dataTypes[i] );
+			if(key[i] == null){
+				return false;
+			}
+		}
+		int dataType = (values.length < columns.size()) ? dataTypes[values.length] : -1;
+		Expression lowKey = null;
+		Expression highKey = null;
+		if(dataType < 0){
+			// all columns are equals to the values
+		}else
+		if(isLike){
+			if(high.isNull()){
+				return true;
+			}
+			String prefix = getLikePrefix( high.getString(), dataType );
+			if(prefix.length() > 0){
+				lowKey = highKey = new ExpressionValue( prefix, SQLTokenizer.VARCHAR );
+			}
+		}else{
+			if(low != null && high != null && 
+			   ExpressionArithmetic.getDataType( dataType, low.getDataType() ) != ExpressionArithmetic.getDataType( dataType, high.getDataType() )){
+				// BETWEEN compare both bounds with the data type of the lower bound 
+				return false;
+			}
+			if(low != null){
+				if(low.isNull()){
+					return true;
+				}
+				lowKey = createBoundValue( low, dataType, true );
+			}
+			if(high != null){
+				if(high.isNull()){
+					return true;
+				}
+				highKey = createBoundValue( high, dataType, false );
+			}
+		}
+		if(lowKey == null && highKey == null && values.length == 0){
+			return false;
+		}
+		synchronized(this){
+			if(entries != null){
+				index.findEntries( key, lowKey, highKey, isLike && highKey != null, rows, entries );
+			}else
+			if(index.isLoaded()){
+				index.findRange( key, lowKey, highKey, isLike && highKey != null, rows, null );
+			}else{
+				index.findFileRange( key, lowKey, highKey, isLike && highKey != null, rows );
+			}
+		}
+		return true;
+	}
+	
+	
+	/**
+	 * Returns the position of a table column in the entries of findRange().
+	 * @param colIdx the position of the column in the table
+	 * @param valueCount the count of values of findRange(), the entries include the digits of this columns
+	 * and of the following range column
+	 * @return the position or -1 if the value of the column can not be read from the entries
+	 */
+	final int getEntryIdx(int colIdx, int valueCount){
+		if(isHash){
+			return -1;
+		}
+		for(int i=0; i<matrix.length; i++){
+			if(matrix[i] != colIdx){
+				continue;
+			}
+			if(i >= columns.size()){
+				return i;
+			}
+			if(i <= valueCount && Index.isRestorable( dataTypes[i] )){
+				return i;
+			}
+		}
+		return -1;
+	}
+	
+	
+	/**
+	 * Returns the value of a column from an entry of findRange().
+	 * @param entry the digits of the columns of a row
+	 * @param entryIdx the position of the column, see getEntryIdx()
+	 */
+	final Expression getEntryValue(char[][] entry, int entryIdx){
+		int dataType = dataTypes[entryIdx];
+		Object value;
+		if(entryIdx < columns.size()){
+			value = Index.restoreValue( entry[entryIdx], dataType );
+		}else{
+			value = Index.getIncludeValue( entry[entryIdx], dataType );
+		}
+		return new ExpressionValue( value, dataType );
+	}
+	
+	
+	/**
+	 * Returns the constant start of a LIKE pattern. For CHAR columns the prefix ends before the first 
+	 * whitespace because the index value of CHAR is trimmed.
+	 */
+	private static String getLikePrefix(String pattern, int dataType){
+		boolean isChar = dataType == SQLTokenizer.CHAR || dataType == SQLTokenizer.NCHAR;
+		int length = 0;
+		while(length < pattern.length()){
+			char c = pattern.charAt(length);
+			if(c == '%' || c == '_' || (isChar && c <= ' ')){
+				break;
+			}
+			length++;
+		}
+		return pattern.substring( 0, length );
+	}
+	
+	
+	/**
+	 * Convert a bound of a range to the data type of an index column. The bound can be wider as the 
+	 * value but all values of the range must be inside of the converted bound.
+	 * @param value the bound
+	 * @param dataType the data type of the index column
+	 * @param isLow true for the lower bound, false for the upper bound
+	 * @return the bound or null if the range can not be mapped to the sort order of the index.
+	 */
+	private static Expression createBoundValue(Expression value, int dataType, boolean isLow) throws Exception{
+		int compareType = ExpressionArithmetic.getDataType( dataType, value.getDataType() );
+		switch(dataType){
+			case SQLTokenizer.TINYINT:
+			case SQLTokenizer.SMALLINT:
+			case SQLTokenizer.INT:
+			case SQLTokenizer.BIGINT:
+			case SQLTokenizer.DATE:
+			case SQLTokenizer.TIME:
+			case SQLTokenizer.TIMESTAMP:
+			case SQLTokenizer.SMALLDATETIME:
+			case SQLTokenizer.MONEY:
+			case SQLTokenizer.SMALLMONEY:
+				long bound;
+				switch(compareType){
+					case SQLTokenizer.REAL:
+					case SQLTokenizer.FLOAT:
+					case SQLTokenizer.DOUBLE:
+					case SQLTokenizer.DECIMAL:
+					case SQLTokenizer.NUMERIC:
+					case SQLTokenizer.MONEY:
+					case SQLTokenizer.SMALLMONEY:
+						// the compare of large values as floating point numbers is not exact
+						double number = value.getDouble();
+						double tolerance = Math.abs( number ) * 1e-6 + 1;
+						bound = (long)(isLow ? number - tolerance : number + tolerance);
+						break;
+					default:
+						bound = value.getLong();
+				}
+				switch(dataType){
+					case SQLTokenizer.TINYINT:
+						return new ExpressionValue( new Integer( (int)Math.max( 0, Math.min( 255, bound ) ) ), dataType );
+					case SQLTokenizer.SMALLINT:
+						return new ExpressionValue( new Integer( (int)Math.max( Short.MIN_VALUE, Math.min( Short.MAX_VALUE, bound ) ) ), dataType );
+					case SQLTokenizer.INT:
+						return new ExpressionValue( new Integer( (int)Math.max( Integer.MIN_VALUE, Math.min( Integer.MAX_VALUE, bound ) ) ), dataType );
+				}
+				return new ExpressionValue( new Long( bound ), SQLTokenizer.BIGINT );
+			case SQLTokenizer.REAL:
+			case SQLTokenizer.FLOAT:
+			case SQLTokenizer.DOUBLE:
+				switch(compareType){
+					case SQLTokenizer.DATE:
+					case SQLTokenizer.TIME:
+					case SQLTokenizer.TIMESTAMP:
+					case SQLTokenizer.SMALLDATETIME:
+						return null;
+				}
+				double number = value.getDouble();
+				if(dataType == SQLTokenizer.REAL){
+					return new ExpressionValue( new Float( (float)number ), SQLTokenizer.REAL );
+				}
+				return new ExpressionValue( new Double( number ), SQLTokenizer.DOUBLE );
+			case SQLTokenizer.CHAR:
+			case SQLTokenizer.NCHAR:
+			case SQLTokenizer.VARCHAR:
+			case SQLTokenizer.NVARCHAR:
+			case SQLTokenizer.LONGVARCHAR:
+			case SQLTokenizer.LONGNVARCHAR:
+			case SQLTokenizer.CLOB:
+				switch(compareType){
+					case SQLTokenizer.CHAR:
+					case SQLTokenizer.NCHAR:
+					case SQLTokenizer.VARCHAR:
+					case SQLTokenizer.NVARCHAR:
+					case SQLTokenizer.LONGVARCHAR:
+					case SQLTokenizer.LONGNVARCHAR:
+					case SQLTokenizer.CLOB:
+						String str = value.getString();
+						if(isLow && (dataType == SQLTokenizer.CHAR || dataType == SQLTokenizer.NCHAR)){
+							// the index value of CHAR is trimmed, the padded value can be greater
+							int length = 0;
+							while(length < str.length() && str.charAt(length) > ' ') length++;
+							str = str.substring( 0, length );
+						}
+						// the bound is not trimmed
+						return new ExpressionValue( str, SQLTokenizer.VARCHAR );
+				}
+				// a number compare of strings
+				return null;
+			default:
+				// the byte order of binary keys is unsigned but the compare is signed,
+				// BIT, DECIMAL and NUMERIC have no useful range
+				return null;
+		}
+	}
+	
+	
+	/**
+	 * Returns the root of the index tree. The caller must hold the lock of this IndexDescription 
+	 * while it read the tree.
+	 */
+	final IndexNode getRootPage() throws Exception{
+		index.loadValues();
+		return index.rootPage;
+	}
+	
+	
+	/**
+	 * Returns the temporary row offset of a not committed insert or -1 if the row is not in this index.
+	 */
+	final synchronized long getPendingRow(StorePageLink link){
+		IndexChange insert = (IndexChange)pendingInserts.get( link );
+		return (insert == null || insert.key == null) ? -1 : insert.rowOffset;
+	}
+	
+	
+	/**
+	 * Add the result of Index.findRows() to the list of rows.
+	 */
+	private static void addRows(Object found, RowBitmap rows){
+		if(found instanceof Long){
+			long rowOffset = ((Long)found).longValue();
+			if(rowOffset < PENDING_ROW){
+				rows.add( rowOffset );
+			}
+		}else
+		if(found != null){
+			RowBitmap list = (RowBitmap)found;
+			long rowOffset = -1;
+			while((rowOffset = list.getNext( rowOffset )) >= 0 && rowOffset < PENDING_ROW){
+				rows.add( rowOffset );
+			}
+		}
+	}
+	
+	
+	/**
+	 * Convert a searched value to the data type of an index column. The rows that are equals to the value 
+	 * have then the same index key.
+	 * @param value the searched value
+	 * @param dataType the data type of the index column
+	 * @return the key value or null if the compare of the value and the column is not compatible with the 
+	 * index key.
+	 */
+	private static Expression createKeyValue(Expression value, int dataType) throws Exception{
+		int compareType = ExpressionArithmetic.getDataType( dataType, value.getDataType() );
+		switch(dataType){
+			case SQLTokenizer.BIT:
+			case SQLTokenizer.BOOLEAN:
+				if(compareType != SQLTokenizer.BIT && compareType != SQLTokenizer.BOOLEAN){
+					return null;
+				}
+				return new ExpressionValue( value.getBoolean() ? Boolean.TRUE : Boolean.FALSE, SQLTokenizer.BOOLEAN );
+			case SQLTokenizer.TINYINT:
+			case SQLTokenizer.SMALLINT:
+			case SQLTokenizer.INT:
+				return new ExpressionValue( new Integer( value.getInt() ), dataType );
+			case SQLTokenizer.BIGINT:
+			case SQLTokenizer.DATE:
+			case SQLTokenizer.TIME:
+			case SQLTokenizer.TIMESTAMP:
+			case SQLTokenizer.SMALLDATETIME:
+			case SQLTokenizer.MONEY:
+			case SQLTokenizer.SMALLMONEY:
+				// the same key like a BIGINT, for money it is the truncated value
+				return new ExpressionValue( new Long( value.getLong() ), SQLTokenizer.BIGINT );
+			case SQLTokenizer.REAL:
+				return new ExpressionValue( new Float( value.getFloat() ), SQLTokenizer.REAL );
+			case SQLTokenizer.FLOAT:
+			case SQLTokenizer.DOUBLE:
+				return new ExpressionValue( new Double( value.getDouble() ), SQLTokenizer.DOUBLE );
+			case SQLTokenizer.CHAR:
+			case SQLTokenizer.NCHAR:
+			case SQLTokenizer.VARCHAR:
+			case SQLTokenizer.NVARCHAR:
+			case SQLTokenizer.LONGVARCHAR:
+			case SQLTokenizer.LONGNVARCHAR:
+			case SQLTokenizer.CLOB:
+				switch(compareType){
+					case SQLTokenizer.CHAR:
+					case SQLTokenizer.NCHAR:
+					case SQLTokenizer.VARCHAR:
+					case SQLTokenizer.NVARCHAR:
+					case SQLTokenizer.LONGVARCHAR:
+					case SQLTokenizer.LONGNVARCHAR:
+					case SQLTokenizer.CLOB:
+						return new ExpressionValue( value.getString(), dataType );
+				}
+				// a number compare of strings
+				return null;
+			case SQLTokenizer.BINARY:
+			case SQLTokenizer.VARBINARY:
+			case SQLTokenizer.LONGVARBINARY:
+			case SQLTokenizer.BLOB:
+			case SQLTokenizer.UNIQUEIDENTIFIER:
+				if(compareType != dataType && !SSResultSetMetaData.isBinaryDataType( compareType )){
+					return null;
+				}
+				return new ExpressionValue( value.getBytes(), SQLTokenizer.VARBINARY );
+			default:
+				// DECIMAL and NUMERIC are saved without the scale
+				return null;
+		}
+	}
+	
+	
+	private void setDirty() throws Exception{
+		if(isHash){
+			hashIndex.setDirty( raFile );
+		}else{
+			index.setDirty( raFile );
+		}
+	}
+	
+	
+	/**
+	 * Add a row to the values of the index.
+	 * @param key the values of the row, see getKey()
+	 */
+	private void add(long rowOffset, Expressions key) throws Exception{
+		if(isHash){
+			hashIndex.addRow( rowOffset, key );
+		}else{
+			index.addRow( rowOffset, key );
+		}
+	}
+	
+	
+	private void remove(long rowOffset, Expressions key) throws Exception{
+		if(isHash){
+			hashIndex.removeRow( rowOffset, key );
+		}else{
+			index.removeRow( rowOffset, key );
+		}
+	}
+	
+	
+	/**
+	 * Replace the key of a row in the index. If the new key can not be added then the old key is restored.
 	 */
-	final void writeFinish(SSConnection con) {
-		//TODO
-		//index.addValues(expressions);		
+	private void replace(long rowOffset, Expressions oldKey, Expressions newKey) throws Exception{
+		if(oldKey != null){
+			remove( rowOffset, oldKey );
+		}
+		if(newKey != null){
+			try{
+				add( rowOffset, newKey );
+			}catch(Exception e){
+				if(oldKey != null){
+					add( rowOffset, oldKey );
+				}
+				throw e;
+			}
+		}
+	}
+	
+	
+	/**
+	 * Reserve the old key of a change until the commit or rollback. 
+	 */
+	private void reserveKey(IndexChange change) throws Exception{
+		if(!isUnique() || change.oldKey == null){
+			return;
+		}
+		HashIndex.Key key = createReservedKey( change.oldKey );
+		ArrayList changes = (ArrayList)reservedKeys.get( key );
+		if(changes == null){
+			changes = new ArrayList();
+			reservedKeys.put( key, changes );
+		}
+		changes.add( change );
+		change.reservedKey = key;
+	}
+	
+	
+	/**
+	 * Release the old key of a change that was reserved with reserveKey().
+	 */
+	private void releaseKey(IndexChange change){
+		HashIndex.Key key = change.reservedKey;
+		if(key == null){
+			return;
+		}
+		change.reservedKey = null;
+		ArrayList changes = (ArrayList)reservedKeys.get( key );
+		if(changes != null){
+			changes.remove( change );
+			if(changes.size() == 0){
+				reservedKeys.remove( key );
+			}
+		}
+	}
+	
+	
+	/**
+	 * Check that a key is not reserved from a not committed change of another connection.
+	 * @param con the connection that want add the key or null if no reservation can be ignored
+	 * @throws SQLException if the key is reserved
+	 */
+	private void checkReservedKey(SSConnection con, Expressions key) throws Exception{
+		if(!isUnique() || key == null || reservedKeys.size() == 0){
+			return;
+		}
+		ArrayList changes = (ArrayList)reservedKeys.get( createReservedKey( key ) );
+		if(changes != null){
+			for(int i=0; i<changes.size(); i++){
+				if(((IndexChange)changes.get(i)).con != con){
+					throw SmallSQLException.create(Language.KEY_DUPLICATE);
+				}
+			}
+		}
+	}
+	
+	
+	/**
+	 * Create a hash key of the index columns without the included columns.
+	 */
+	private HashIndex.Key createReservedKey(Expressions key) throws Exception{
+		Expressions columnValues = new Expressions(columns.size());
+		for(int i=0; i<columns.size(); i++){
+			columnValues.add( key.get(i) );
+		}
+		return HashIndex.createKey( columnValues );
+	}
+	
+	
+	private static boolean equals(Expressions key1, Expressions key2) throws Exception{
+		if(key1 == null || key2 == null){
+			return key1 == key2;
+		}
+		for(int i=0; i<key1.size(); i++){
+			Object value1 = key1.get(i).getObject();
+			Object value2 = key2.get(i).getObject();
+			if(value1 == null || value2 == null){
+				if(value1 != value2){
+					return false;
+				}
+			}else
+			if(value1 instanceof byte[] && value2 instanceof byte[]){
+				if(!Arrays.equals( (byte[])value1, (byte[])value2 )){
+					return false;
+				}
+			}else
+			if(!value1.equals( value2 )){
+				return false;
+			}
+		}
+		return true;
 	}
 	
 	
@@ -251,13 +1189,19 @@ final class IndexDescription {
 			store.writeString( columns.get(c) );
 		}
 		store.writeString(name);
+		store.writeInt(includes.size());
+		for(int c=0; c<includes.size(); c++){
+			store.writeString( includes.get(c) );
+		}
+		store.writeInt( isHash ? SQLTokenizer.HASH : 0 );
 	}
 	
 	
 	/**
 	 * Restore a IndexDescription from a saved Table.
+	 * @param end the offset in the page after the saved IndexDescription
 	 */
-	final static IndexDescription load(Database database, TableView tableView, StoreImpl store) throws SQLException{
+	final static IndexDescription load(Database database, TableView tableView, StoreImpl store, int end) throws SQLException{
 		int constraintType = store.readInt();
 		int count = store.readInt();
 		Strings columns = new Strings();
@@ -268,7 +1212,18 @@ final class IndexDescription {
 			columns.add( column );
 			expressions.add( sqlParser.parseExpression(column));
 		}
-		IndexDescription indexDesc = new IndexDescription( store.readString(), tableView.name, constraintType, expressions, columns);
+		String name = store.readString();
+		Strings includes = new Strings();
+		boolean isHash = false;
+		if(store.getCurrentOffsetInPage() < end){
+			// older tables have no included columns
+			count = store.readInt();
+			for(int c=0; c<count; c++){
+				includes.add( store.readString() );
+			}
+			isHash = store.getCurrentOffsetInPage() < end && store.readInt() == SQLTokenizer.HASH;
+		}
+		IndexDescription indexDesc = new IndexDescription( name, tableView.name, constraintType, expressions, columns, includes, isHash);
         indexDesc.init( database, tableView );
         indexDesc.load(database);
 		return indexDesc;
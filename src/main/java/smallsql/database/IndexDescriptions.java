@@ -33,6 +33,7 @@
  */
 package smallsql.database;
 
+import java.sql.DriverManager;
 import java.sql.SQLException;
 import smallsql.tools.language.Language;
 
@@ -90,6 +91,9 @@ class IndexDescriptions {
 		int bestFactor = Integer.MAX_VALUE;
 		int bestIdx = 0;
 		for(int i=0; i<size; i++){
+			if(!data[i].isUsable()){
+				continue;
+			}
 			int factor = data[i].matchFactor(columns);
 			if(factor == 0) 
 				return data[i];
@@ -138,4 +142,113 @@ class IndexDescriptions {
             add(indexes.data[i]);
         }
     }
+    
+    
+    /**
+     * Create copies of all indexes for a new table that replaces the table of the indexes.
+     * @see IndexDescription#copy
+     */
+    IndexDescriptions copy(Database database, TableView tableView) throws Exception{
+        IndexDescriptions copy = new IndexDescriptions();
+        for(int i=0; i<size; i++){
+            copy.add( data[i].copy(database, tableView) );
+        }
+        return copy;
+    }
+    
+    
+    /**
+     * Read the keys of all indexes from a row of the table.
+     * @see IndexDescription#getKey
+     */
+    final Expressions[] getKeys(Store store, int[] offsets, int[] dataTypes) throws Exception{
+        Expressions[] keys = new Expressions[size];
+        for(int i=0; i<size; i++){
+            keys[i] = data[i].getKey(store, offsets, dataTypes);
+        }
+        return keys;
+    }
+    
+    
+    /**
+     * Read the keys of all indexes from a new written row.
+     */
+    final Expressions[] getKeys(Table table, StoreImpl store) throws Exception{
+        Columns columns = table.columns;
+        int[] offsets = new int[columns.size()];
+        int[] dataTypes = new int[columns.size()];
+        for(int c=0; c<dataTypes.length; c++){
+            dataTypes[c] = columns.get(c).getDataType();
+        }
+        store.scanObjectOffsets(offsets, dataTypes);
+        return getKeys(store, offsets, dataTypes);
+    }
+    
+    
+    /**
+     * Add a new written row to all indexes.
+     * @param con the connection for a later commit or rollback
+     * @param table the table of the row
+     * @param store the row, the writing must be finished
+     */
+    final void insertRow(SSConnection con, Table table, StoreImpl store) throws Exception{
+        if(size == 0){
+            return;
+        }
+        Expressions[] keys = getKeys(table, store);
+        StorePageLink link = store.getLink();
+        for(int i=0; i<size; i++){
+            data[i].insertRow(con, link, keys[i]);
+        }
+    }
+    
+    
+    /**
+     * Change the keys of an updated or deleted row in all indexes.
+     * @param newKeys the keys after an update or null if the row was deleted
+     * @see IndexDescription#changeRow
+     */
+    final void changeRow(SSConnection con, long rowOffset, StorePageLink link, Expressions[] oldKeys, Expressions[] newKeys) throws Exception{
+        for(int i=0; i<size; i++){
+            data[i].changeRow(con, rowOffset, link, oldKeys[i], newKeys == null ? null : newKeys[i]);
+        }
+    }
+    
+    
+    /**
+     * Build the values of the indexes that could not be loaded from the index files. This occurs for
+     * index files of an older version or if the database was not closed correctly.
+     */
+    void rebuild(SSConnection con, Table table) throws Exception{
+        boolean needRebuild = false;
+        boolean[] rebuild = new boolean[size];
+        for(int i=0; i<size; i++){
+            if(data[i].needRebuild()){
+                data[i].clearValues();
+                rebuild[i] = needRebuild = true;
+            }
+        }
+        if(!needRebuild){
+            return;
+        }
+        TableResult result = new TableResult(table);
+        result.init(con);
+        result.execute();
+        while(result.next()){
+            long rowOffset = result.getRowPosition();
+            Expressions[] keys = result.getIndexKeys();
+            for(int i=0; i<size; i++){
+                if(rebuild[i]){
+                    try{
+                        data[i].addRow(rowOffset, keys[i]);
+                    }catch(SQLException e){
+                        // duplicate keys from a time without a maintained index, the rows must be found with a scan
+                        DriverManager.println(data[i].getName() + ": " + e.getMessage());
+                        data[i].setUnusable();
+                        rebuild[i] = false;
+                    }
+                }
+            }
+        }
+    }
 }
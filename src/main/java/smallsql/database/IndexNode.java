@@ -44,9 +44,10 @@ class IndexNode {
 	
 	static final private IndexNode[] EMPTY_NODES = new IndexNode[0];
 	/**
-	 * Can be a PageIndex to the next page or a byte[] with rest data of the key.
+	 * The child nodes of this node or null if there are no child nodes. The most nodes of
+	 * a large index are leafs, that they should not need any memory for it.
 	 */
-	private IndexNode[] nodes = EMPTY_NODES;
+	private Children children;
 	
 	/** 
 	 * On this point of the tree there is no other value. There is only one value.
@@ -114,12 +115,12 @@ class IndexNode {
 	 * @param digit The digit must be in the range 0 between 255. 
 	 */
 	final boolean isEmpty(){
-		return nodes == EMPTY_NODES && value == null;
+		return children == null && value == null;
 	}
 	
 	
 	final void clear(){
-		nodes = EMPTY_NODES;
+		children = null;
 		value = null;
 		remainderKey = null;
 	}
@@ -139,8 +140,11 @@ class IndexNode {
 	}
 	
 	
+	/**
+	 * Returns all child nodes sorted by its digits. The returned array is never modified.
+	 */
 	final IndexNode[] getChildNodes(){
-		return nodes;
+		return (children == null) ? EMPTY_NODES : children.toArray();
 	}
 	
 	
@@ -149,9 +153,7 @@ class IndexNode {
 	 * @param digit The digit must be in the range 0 between 255. 
 	 */
 	final IndexNode getChildNode(char digit){
-		int pos = findNodePos(digit);
-		if(pos >=0) return nodes[pos];
-		return null;
+		return (children == null) ? null : children.get(digit);
 	}
 	
 	
@@ -166,14 +168,12 @@ class IndexNode {
 	 */
 	final IndexNode addNode(char digit) throws SQLException{
 		if(remainderKey != null) moveRemainderValue();
-		int pos = findNodePos( digit );
-		if(pos == -1){
-			IndexNode node = createIndexNode(unique, digit);
+		IndexNode node = getChildNode( digit );
+		if(node == null){
+			node = createIndexNode(unique, digit);
 			saveNode( node );
-			return node;
-		}else{
-			return nodes[pos];
 		}
+		return node;
 	}
 	
 	
@@ -182,13 +182,8 @@ class IndexNode {
 	 * @param digit The digit must be in the range 0 between 255. 
 	 */
 	final void removeNode(char digit){
-		int pos = findNodePos( digit );
-		if(pos != -1){
-			int length = nodes.length-1;
-			IndexNode[] temp = new IndexNode[length];
-			System.arraycopy(nodes, 0, temp, 0, pos);
-			System.arraycopy(nodes, pos+1, temp, pos, length-pos);
-			nodes = temp;
+		if(children != null && children.remove(digit) == 0){
+			children = null;
 		}
 	}
 	
@@ -217,11 +212,19 @@ class IndexNode {
 			if(value != null) throw SmallSQLException.create(Language.KEY_DUPLICATE);
 			value = new Long(rowOffset);
 		}else{
-			LongTreeList list = (LongTreeList)value;
-			if(list == null){
-				value = list = new LongTreeList();
+			if(value == null){
+				// the most keys have only one row, a list is created with the second row
+				value = new Long(rowOffset);
+			}else
+			if(value instanceof Long){
+				long firstOffset = ((Long)value).longValue();
+				if(firstOffset == rowOffset) return;
+				RowBitmap list = new RowBitmap(firstOffset);
+				list.add(rowOffset);
+				value = list;
+			}else{
+				((RowBitmap)value).add(rowOffset);
 			}
-			list.add(rowOffset);
 		}
 	}
 	
@@ -240,13 +243,13 @@ class IndexNode {
 	 */
 	final void addRemainderKey(long rowOffset, long remainderValue, int charCount) throws SQLException{
 		saveRemainderValue(remainderValue, charCount);
-		value = (unique) ? (Object)new Long(rowOffset) : new LongTreeList(rowOffset);
+		value = new Long(rowOffset);
 	}
 	
 	
 	final void addRemainderKey(long rowOffset, char[] remainderValue, int offset) throws SQLException{
 		saveRemainderValue(remainderValue, offset);
-		value = (unique) ? (Object)new Long(rowOffset) : new LongTreeList(rowOffset);
+		value = new Long(rowOffset);
 	}
 	
 	
@@ -330,50 +333,10 @@ class IndexNode {
 	
 	
 	private final void saveNode(IndexNode node){
-		int length = nodes.length;
-		IndexNode[] temp = new IndexNode[length+1];
-		if(length == 0){
-			temp[0] = node;
-		}else{
-			int pos = findNodeInsertPos( node.digit, 0, length);
-			System.arraycopy(nodes, 0, temp, 0, pos);
-			System.arraycopy(nodes, pos, temp, pos+1, length-pos);
-			temp[pos] = node;
-		}
-		nodes = temp;
-	}
-	
-	
-	private final int findNodeInsertPos(char digit, int start, int end){
-		if(start == end) return start;
-		int mid = start + (end - start)/2;
-		char nodeDigit = nodes[mid].digit;
-		if(nodeDigit == digit) return mid;
-		if(nodeDigit < digit){
-			return findNodeInsertPos( digit, mid+1, end );
-		}else{
-			if(start == mid) return start;
-			return findNodeInsertPos( digit, start, mid );
-		}
-	}
-	
-
-	private final int findNodePos(char digit){
-		return findNodePos(digit, 0, nodes.length);
-	}
-	
-
-	private final int findNodePos(char digit, int start, int end){
-		if(start == nodes.length) return -1;
-		int mid = start + (end - start)/2;
-		char nodeDigit = nodes[mid].digit;
-		if(nodeDigit == digit) return mid;
-		if(nodeDigit < digit){
-			return findNodePos( digit, mid+1, end );
-		}else{
-			if(start == mid) return -1;
-			return findNodePos( digit, start, mid-1 );
+		if(children == null){
+			children = new Children();
 		}
+		children.add(node);
 	}
     
 	
@@ -391,16 +354,17 @@ class IndexNode {
 			output.writeByte(1);
 			output.writeLong( ((Long)value).longValue() );
 		}else
-		if(value instanceof LongTreeList){
+		if(value instanceof RowBitmap){
 			output.writeByte(2);
-			((LongTreeList)value).save(output);
+			((RowBitmap)value).save(output);
 		}else
 		if(value instanceof IndexNode){
 			output.writeByte(3);
 			((IndexNode)value).saveRef(output);
 		}
         
-        output.writeShort(nodes.length);
+        IndexNode[] nodes = getChildNodes();
+        output.writeInt(nodes.length);
         for(int i=0; i<nodes.length; i++){
             nodes[i].saveRef( output );
         }
@@ -414,7 +378,7 @@ class IndexNode {
 	}
     
 	
-	IndexNode loadRef( long offset ) throws SQLException{
+	IndexNode loadRef( StoreImpl input ) throws SQLException{
 		throw new Error();
 	}
     
@@ -432,20 +396,199 @@ class IndexNode {
 				value = new Long(input.readLong());
 				break;
 			case 2:
-				value = new LongTreeList(input);
+				value = new RowBitmap(input);
 				break;
 			case 3:
-				value = loadRef( input.readLong());
+				value = loadRef( input );
 				break;
 			default: 
 				throw SmallSQLException.create(Language.INDEX_CORRUPT, String.valueOf(valueType));
 		}
         
-        nodes = new IndexNode[input.readShort()];
-        for(int i=0; i<nodes.length; i++){
-            nodes[i] = loadRef( input.readLong() );
+        children = null;
+        int count = input.readInt();
+        for(int i=0; i<count; i++){
+            saveNode( loadRef( input ) );
         }
 	}
 	
-
+	
+	/**
+	 * The child nodes of an IndexNode. The layout adapt to the count of children like the
+	 * nodes of an adaptive radix tree. Up to 48 children it is a sorted array that grow in
+	 * steps of powers of 2. The digits are saved in a parallel array that the binary search does not
+	 * need to load every node. If there are more children with near digits then the nodes are moved
+	 * in a direct lookup table. Because a digit has 16 bits the table has 2 levels, the high byte
+	 * and the low byte of the digit.
+	 */
+	private static final class Children{
+		private IndexNode[] nodes = new IndexNode[1];
+		private char[] digits = new char[1];
+		private int count;
+	
+		/** The direct lookup table. If it is not null then nodes and digits are not used. */
+		private IndexNode[][] table;
+	
+		/**
+		 * The sorted array of nodes that was returned from toArray(). A scroll status can hold it for
+		 * a long time, that it must not be modified. It is null if it need to create.
+		 */
+		private IndexNode[] sorted;
+	
+	
+		final IndexNode get(char digit){
+			if(table != null){
+				IndexNode[] page = table[digit >> 8];
+				return (page == null) ? null : page[digit & 0xFF];
+			}
+			int pos = findInsertPos(digit);
+			return (pos < count && digits[pos] == digit) ? nodes[pos] : null;
+		}
+	
+	
+		final IndexNode[] toArray(){
+			IndexNode[] result = sorted;
+			if(result == null){
+				if(table == null){
+					if(count != nodes.length){
+						// trim the arrays, typical all nodes are added before the first scroll
+						result = new IndexNode[count];
+						System.arraycopy(nodes, 0, result, 0, count);
+						nodes = result;
+						char[] temp = new char[count];
+						System.arraycopy(digits, 0, temp, 0, count);
+						digits = temp;
+					}
+					result = nodes;
+				}else{
+					result = new IndexNode[count];
+					int idx = 0;
+					for(int i=0; i<table.length; i++){
+						IndexNode[] page = table[i];
+						if(page == null) continue;
+						for(int k=0; k<page.length; k++){
+							if(page[k] != null) result[idx++] = page[k];
+						}
+					}
+				}
+				sorted = result;
+			}
+			return result;
+		}
+	
+	
+		/**
+		 * Add a new child node. There must not exist a node with the same digit.
+		 */
+		final void add(IndexNode node){
+			char digit = node.digit;
+			sorted = null;
+			if(table != null){
+				IndexNode[] page = table[digit >> 8];
+				if(page == null){
+					table[digit >> 8] = page = new IndexNode[256];
+				}
+				page[digit & 0xFF] = node;
+				count++;
+				return;
+			}
+			if(count == nodes.length){
+				if(count >= 48 && isDense()){
+					moveToTable();
+					add(node);
+					return;
+				}
+				int size = (count < 48) ? Math.min(count * 2, 48) : count + (count >> 1);
+				IndexNode[] temp = new IndexNode[size];
+				System.arraycopy(nodes, 0, temp, 0, count);
+				nodes = temp;
+				char[] tempDigits = new char[size];
+				System.arraycopy(digits, 0, tempDigits, 0, count);
+				digits = tempDigits;
+			}
+			int pos = findInsertPos( digit );
+			System.arraycopy(nodes, pos, nodes, pos+1, count-pos);
+			System.arraycopy(digits, pos, digits, pos+1, count-pos);
+			nodes[pos] = node;
+			digits[pos] = digit;
+			count++;
+		}
+	
+	
+		/**
+		 * Remove the node with the digit if it exists.
+		 * @return the count of the remaining nodes
+		 */
+		final int remove(char digit){
+			if(table != null){
+				IndexNode[] page = table[digit >> 8];
+				if(page == null || page[digit & 0xFF] == null) return count;
+				page[digit & 0xFF] = null;
+			}else{
+				int pos = findInsertPos(digit);
+				if(pos == count || digits[pos] != digit) return count;
+				if(nodes == sorted){
+					// the array is used from a scroll status
+					nodes = (IndexNode[])nodes.clone();
+				}
+				int length = count-1;
+				System.arraycopy(nodes, pos+1, nodes, pos, length-pos);
+				System.arraycopy(digits, pos+1, digits, pos, length-pos);
+				nodes[length] = null;
+			}
+			sorted = null;
+			return --count;
+		}
+	
+	
+		/**
+		 * Check if the direct lookup table is worth its memory. A page of the table
+		 * has 256 entries. It should be used from 32 nodes as minimum.
+		 */
+		private final boolean isDense(){
+			int pageCount = 0;
+			int lastPage = -1;
+			for(int i=0; i<count; i++){
+				int page = digits[i] >> 8;
+				if(page != lastPage){
+					pageCount++;
+					lastPage = page;
+				}
+			}
+			return count >= pageCount * 32;
+		}
+	
+	
+		private final void moveToTable(){
+			table = new IndexNode[256][];
+			for(int i=0; i<count; i++){
+				char digit = digits[i];
+				IndexNode[] page = table[digit >> 8];
+				if(page == null){
+					table[digit >> 8] = page = new IndexNode[256];
+				}
+				page[digit & 0xFF] = nodes[i];
+			}
+			nodes = null;
+			digits = null;
+		}
+	
+	
+		/**
+		 * Returns the position of the first node with a digit that is equals or greater.
+		 */
+		private final int findInsertPos(char digit){
+			int start = 0;
+			int end = count;
+			while(start < end){
+				int mid = (start + end) >>> 1;
+				if(digits[mid] < digit){
+					start = mid+1;
+				}else{
+					end = mid;
+				}
+			}
+			return start;
+		}
+	}
 }
@@ -0,0 +1,382 @@
+/* =============================================================
+ * SmallSQL : a free Java DBMS library for the Java(tm) platform
+ * =============================================================
+ *
+ * (C) Copyright 2004-2011, by Volker Berlin.
+ *
+ * Project Info:  http://www.smallsql.de/
+ *
+ * This library is free software; you can redistribute it and/or modify it 
+ * under the terms of the GNU Lesser General Public License as published by 
+ * the Free Software Foundation; either version 2.1 of the License, or 
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but 
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY 
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public 
+ * License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, 
+ * USA.  
+ *
+ * [Java is a trademark or registered trademark of Sun Microsystems, Inc. 
+ * in the United States and other countries.]
+ *
+ * ---------------
+ * IndexOrderScan.java
+ * ---------------
+ * Author: Volker Berlin
+ * 
+ */
+package smallsql.database;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+
+
+/**
+ * Read the rows of a table in the order of an index. It is used for an ORDER BY if the columns of the 
+ * ORDER BY are the first columns of an index. The rows are read on demand, there is no sort of all rows 
+ * before the first row. Every column can be read ascending or descending.
+ * 
+ * @author Volker Berlin
+ */
+final class IndexOrderScan extends RowSource {
+
+	final private TableResult result;
+	final private IndexDescription index;
+	/** The sort direction of every index column. true for ASC. */
+	final private boolean[] asc;
+	/** The path in the index tree to the current node. */
+	final private ArrayList stack = new ArrayList();
+	/** The row offsets of the current node of a not unique index. */
+	final private LongList values = new LongList();
+	private int valueIdx;
+	/** The not committed inserts of this connection. Temporary row offset in the index --> index in the list of inserts */
+	final private HashMap inserts = new HashMap();
+	/** The already read row positions. It is used for setRowPosition(). */
+	final private LongList rows = new LongList();
+	private int rowIdx;
+	/** If the read row positions are not saved, see setStreaming() */
+	private boolean isStreaming;
+	/** If the rows with a NULL value that are not in the index are skipped, see setSkipNulls() */
+	private boolean isSkipNulls;
+	/** 
+	 * The ORDER BY column if the index is unique and the column is nullable. 
+	 * Rows with a NULL value are not saved in a unique index and must be read with a table scan. 
+	 */
+	final private Expression nullColumn;
+	/** The current source of rows, one of the constants NULLS_FIRST, INDEX, NULLS_LAST and END. */
+	private int phase;
+	
+	private static final int NULLS_FIRST = 0;
+	private static final int INDEX = 1;
+	private static final int NULLS_LAST = 2;
+	private static final int END = 3;
+	
+	/** The count of inserts of the connection on execute. Later inserts are returned at the end, it is the next of them. */
+	private int insertCount;
+	/** The flag of a row position from the list of inserts, see TableResult.getRowPosition() */
+	private static final long INSERT_ROW = 0x4000000000000000L;
+	
+
+	private IndexOrderScan(TableResult result, IndexDescription index, boolean[] asc, Expression nullColumn){
+		this.result = result;
+		this.index = index;
+		this.asc = asc;
+		this.nullColumn = nullColumn;
+	}
+	
+	
+	/**
+	 * Search an index for the ORDER BY clause.
+	 * @param result the table of the FROM clause
+	 * @param orderBy the columns of the ORDER BY
+	 * @return an IndexOrderScan or the result if there is no usable index
+	 */
+	static RowSource create(TableResult result, Expressions orderBy){
+		TableView table = result.getTableView();
+		IndexDescriptions indexes = ((Table)table).indexes;
+		nextIndex:
+		for(int i=0; i<indexes.size(); i++){
+			IndexDescription index = indexes.get(i);
+			Strings indexColumns = index.getColumns();
+			if(indexColumns.size() < orderBy.size() || index.isHash() || !index.isUsable()){
+				continue;
+			}
+			boolean hasNulls = false;
+			if(index.isUnique()){
+				for(int c=0; c<indexColumns.size(); c++){
+					hasNulls |= table.findColumn( indexColumns.get(c) ).isNullable();
+				}
+				if(hasNulls && indexColumns.size() > 1){
+					// rows with a NULL value in any column are not saved in a unique index, 
+					// there is no simple way to sort them between the other rows
+					continue;
+				}
+			}
+			boolean[] asc = new boolean[indexColumns.size()];
+			for(int c=0; c<asc.length; c++){
+				if(c < orderBy.size()){
+					Expression expr = orderBy.get(c);
+					if(expr.getType() != Expression.NAME || ((ExpressionName)expr).getDataSource() != result){
+						return result;
+					}
+					String name = table.columns.get( ((ExpressionName)expr).getColumnIndex() ).getName();
+					if(!name.equalsIgnoreCase( indexColumns.get(c) )){
+						continue nextIndex;
+					}
+					asc[c] = expr.getAlias() != SQLTokenizer.DESC_STR;
+				}else{
+					asc[c] = true;
+				}
+			}
+			return new IndexOrderScan( result, index, asc, hasNulls ? orderBy.get(0) : null );
+		}
+		return result;
+	}
+	
+	
+	TableResult getFrom(){
+		return result;
+	}
+	
+	
+	/**
+	 * Do not save the read row positions. The rows can be read only once in the order of the index and a 
+	 * setRowPosition() does not change the position of the scan. It is used from the merge join for large tables.
+	 */
+	final void setStreaming(){
+		isStreaming = true;
+	}
+	
+	
+	/**
+	 * Do not read the rows with a NULL value that are not saved in a unique index. This save the table scan 
+	 * if the caller does not need this rows like the inner side of a join.
+	 */
+	final void setSkipNulls(){
+		isSkipNulls = true;
+	}
+	
+	
+	final void execute() throws Exception{
+		result.execute();
+		inserts.clear();
+		insertCount = 0;
+		StorePageLink link;
+		while((link = result.getInsertLink( insertCount )) != null){
+			long rowOffset = index.getPendingRow( link );
+			if(rowOffset >= 0){
+				inserts.put( new Long(rowOffset), new Integer(insertCount) );
+			}
+			insertCount++;
+		}
+		stack.clear();
+		synchronized(index){
+			stack.add( new NodeStatus( index.getRootPage(), 0 ) );
+		}
+		values.clear();
+		valueIdx = 0;
+		rows.clear();
+		beforeFirst();
+		// NULL is sorted before all other values
+		phase = (nullColumn != null && asc[0] && !isSkipNulls) ? NULLS_FIRST : INDEX;
+	}
+	
+	
+	/**
+	 * The scroll status of a single node of the index tree.
+	 */
+	private static final class NodeStatus{
+		final IndexNode[] nodes;
+		final Object value;
+		/** the column of the index */
+		final int level;
+		/** the count of returned entries, the value and every node is an entry */
+		int count;
+		
+		NodeStatus(IndexNode node, int level){
+			// the nodes array is replaced on every change of the node
+			nodes = node.getChildNodes();
+			value = node.getValue();
+			this.level = level;
+		}
+	}
+	
+	
+	/**
+	 * Returns the next row offset in the order of the index or -1 if there are no more entries.
+	 * The caller must hold the lock of the index.
+	 */
+	private long nextRowOffset(){
+		while(true){
+			if(valueIdx < values.size()){
+				return values.get( valueIdx++ );
+			}
+			if(stack.size() == 0){
+				return -1;
+			}
+			NodeStatus status = (NodeStatus)stack.get( stack.size()-1 );
+			int length = status.nodes.length;
+			if(status.count > length){
+				stack.remove( stack.size()-1 );
+				continue;
+			}
+			int idx = status.count++;
+			boolean isAsc = asc[status.level];
+			// a shorter key is lesser, the value of a node is before its child nodes
+			if(isAsc ? idx == 0 : idx == length){
+				Object value = status.value;
+				if(value instanceof IndexNode){
+					// the root of the next column
+					stack.add( new NodeStatus( (IndexNode)value, status.level+1 ) );
+				}else if(value instanceof Long){
+					return ((Long)value).longValue();
+				}else if(value != null){
+					// copy the list because it can be changed from other connections
+					values.clear();
+					valueIdx = 0;
+					((RowBitmap)value).addTo( values );
+				}
+				continue;
+			}
+			IndexNode node = status.nodes[ isAsc ? idx-1 : length-1-idx ];
+			stack.add( new NodeStatus( node, status.level ) );
+		}
+	}
+	
+	
+	final boolean isScrollable(){
+		return false;
+	}
+
+
+	final void beforeFirst() throws Exception{
+		result.beforeFirst();
+		rowIdx = -1;
+	}
+
+
+	final boolean first() throws Exception{
+		beforeFirst();
+		return next();
+	}
+
+
+	final boolean next() throws Exception{
+		if(rowIdx+1 < rows.size()){
+			// a row that was already read, for example after setRowPosition()
+			result.setRowPosition( rows.get( ++rowIdx ) );
+			return true;
+		}
+		while(true){
+			boolean isValid;
+			switch(phase){
+			case NULLS_FIRST:
+			case NULLS_LAST:
+				// a table scan for the rows that are not in the unique index
+				if(!result.next() || result.getRowPosition() >= (INSERT_ROW | insertCount)){
+					phase++;
+					continue;
+				}
+				isValid = nullColumn.isNull();
+				break;
+			case INDEX:
+				long rowOffset;
+				synchronized(index){
+					rowOffset = nextRowOffset();
+				}
+				if(rowOffset < 0){
+					if(nullColumn != null && !asc[0] && !isSkipNulls){
+						phase = NULLS_LAST;
+						result.beforeFirst();
+					}else{
+						phase = END;
+					}
+					continue;
+				}
+				Integer insertIdx = (inserts.size() == 0) ? null : (Integer)inserts.get( new Long(rowOffset) );
+				if(insertIdx != null){
+					isValid = result.moveToInsertRow( insertIdx.intValue() );
+				}else if(rowOffset >= IndexDescription.PENDING_ROW){
+					// not committed insert of another connection
+					continue;
+				}else{
+					isValid = result.moveToIndexRow( rowOffset );
+				}
+				break;
+			default:
+				// rows that are inserted after the execute, for example with ResultSet.insertRow()
+				if(result.getInsertLink( insertCount ) == null){
+					result.afterLast();
+					rowIdx = rows.size();
+					return false;
+				}
+				isValid = result.moveToInsertRow( insertCount++ );
+			}
+			if(isValid){
+				if(!isStreaming){
+					rows.add( result.getRowPosition() );
+				}
+				rowIdx = rows.size()-1;
+				return true;
+			}
+		}
+	}
+
+
+	final void afterLast() throws Exception{
+		result.afterLast();
+		rowIdx = rows.size();
+	}
+
+
+	final int getRow() throws Exception{
+		return (rowIdx >= 0 && rowIdx < rows.size()) ? rowIdx+1 : 0;
+	}
+
+
+	final long getRowPosition(){
+		return result.getRowPosition();
+	}
+
+
+	final void setRowPosition(long rowPosition) throws Exception{
+		result.setRowPosition( rowPosition );
+		// search from the end because it is typical the last row
+		for(int i=rows.size()-1; i>=0; i--){
+			if(rows.get(i) == rowPosition){
+				rowIdx = i;
+				break;
+			}
+		}
+	}
+
+
+	final void nullRow(){
+		result.nullRow();
+	}
+
+
+	final void noRow(){
+		result.noRow();
+	}
+
+
+	final boolean rowInserted(){
+		return result.rowInserted();
+	}
+
+
+	final boolean rowDeleted(){
+		return result.rowDeleted();
+	}
+
+
+	boolean isExpressionsFromThisRowSource(Expressions columns){
+		return result.isExpressionsFromThisRowSource( columns );
+	}
+}
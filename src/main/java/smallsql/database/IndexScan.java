@@ -0,0 +1,751 @@
+/* =============================================================
+ * SmallSQL : a free Java DBMS library for the Java(tm) platform
+ * =============================================================
+ *
+ * (C) Copyright 2004-2011, by Volker Berlin.
+ *
+ * Project Info:  http://www.smallsql.de/
+ *
+ * This library is free software; you can redistribute it and/or modify it 
+ * under the terms of the GNU Lesser General Public License as published by 
+ * the Free Software Foundation; either version 2.1 of the License, or 
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but 
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY 
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public 
+ * License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, 
+ * USA.  
+ *
+ * [Java is a trademark or registered trademark of Sun Microsystems, Inc. 
+ * in the United States and other countries.]
+ *
+ * ---------------
+ * IndexScan.java
+ * ---------------
+ * Author: Volker Berlin
+ * 
+ */
+package smallsql.database;
+
+import java.sql.Connection;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+
+/**
+ * Read the rows of a table that are found with an index instead of a scan over all rows. It is used for 
+ * a WHERE clause with equals conditions of all columns of an index or with equals conditions of the first 
+ * columns and a range (&lt;, &lt;=, &gt;, &gt;=, BETWEEN or LIKE 'abc%') on the next column. The found rows 
+ * must be verified with the WHERE condition like the rows of a scan.
+ * <p>
+ * If other indexes have equals conditions on all its columns then the found rows of all indexes are 
+ * intersected before any row is read. For an OR the found rows of the indexes of both sides are united. 
+ * <p>
+ * If the index covers all used columns of the query then the values are read from the index without 
+ * reading the rows of the table (index-only scan). This is only possible for a read only result and if 
+ * there are no not committed changes in the index.
+ * 
+ * @author Volker Berlin
+ */
+final class IndexScan extends RowSource {
+
+	final private TableResult result;
+	final private IndexDescription index;
+	/** The searched values in the order of the index columns. */
+	final private Expression[] values;
+	/** The bounds of the range on the column after the values or null. */
+	final private Expression low, high;
+	/** true if high is the pattern of a LIKE */
+	final private boolean isLike;
+	/** Other indexes with equals conditions on all its columns, the found rows are intersected. */
+	private IndexDescription[] andIndexes = new IndexDescription[0];
+	private Expression[][] andValues;
+	/** The scan for the other side of an OR or null. The found rows are united. */
+	private IndexScan or;
+	/** The sorted row positions that was found in the index. */
+	private LongList rows;
+	/** false if the index can not be used for the current values. Then it is a scan over all rows. */
+	private boolean useIndex;
+	/** 
+	 * The position in the list of found rows. A value larger as the size of rows is the position 
+	 * in the list of inserts.
+	 */
+	private int rowIdx;
+	private int row;
+	/** The position of every table column in the entries of the index or null if the index does not cover the used columns. */
+	private int[] entryIdxs;
+	/** If the result is read only. Only then the values can be read from the index. */
+	private boolean readOnly;
+	/** The digits of the found rows if the values are read from the index, else null. */
+	private char[][][] entries;
+	
+
+	private IndexScan(TableResult result, IndexDescription index, Expression[] values, Expression low, Expression high, boolean isLike){
+		this.result = result;
+		this.index = index;
+		this.values = values;
+		this.low = low;
+		this.high = high;
+		this.isLike = isLike;
+	}
+	
+	
+	/**
+	 * Search an index for the conditions of the WHERE clause.
+	 * @param result the table of the FROM clause
+	 * @param where the condition
+	 * @return an IndexScan or the result if there is no usable index
+	 */
+	static RowSource create(TableResult result, Expression where){
+		IndexScan scan = createOr( result, where );
+		return (scan == null) ? result : scan;
+	}
+	
+	
+	/**
+	 * Search the indexes for both sides of an OR. If one side can not use an index then all rows must be scanned.
+	 * @return an IndexScan or null if there is no usable index
+	 */
+	private static IndexScan createOr(TableResult result, Expression where){
+		if(where instanceof ExpressionArithmetic && ((ExpressionArithmetic)where).getOperation() == ExpressionArithmetic.OR){
+			Expression[] params = where.getParams();
+			IndexScan scan = createOr( result, params[0] );
+			IndexScan other = (scan == null) ? null : createOr( result, params[1] );
+			if(other == null){
+				return null;
+			}
+			IndexScan last = scan;
+			while(last.or != null){
+				last = last.or;
+			}
+			last.or = other;
+			return scan;
+		}
+		Conditions conditions = new Conditions();
+		addConditions( result, where, conditions );
+		return create( result, conditions );
+	}
+	
+	
+	/**
+	 * Search an index for the columns of an equi join. The values are expressions of the other side of the 
+	 * join, find() must be called for every row of the other side.
+	 * @param result the table on the right side of the join
+	 * @param columns the expressions of the table in the join condition
+	 * @param values the expressions of the other side that must be equals to the columns
+	 * @return an IndexScan or null if there is no usable index
+	 */
+	static IndexScan create(TableResult result, Expressions columns, Expressions values){
+		Conditions conditions = new Conditions();
+		for(int i=0; i<columns.size(); i++){
+			ExpressionName column = getColumn( result, columns.get(i) );
+			if(column != null){
+				conditions.columns.add( getColumnName( result, column ) );
+				conditions.values.add( values.get(i) );
+			}
+		}
+		return create( result, conditions );
+	}
+	
+	
+	/**
+	 * Search the best index for the conditions.
+	 * @return an IndexScan or null if there is no usable index
+	 */
+	private static IndexScan create(TableResult result, Conditions conditions){
+		IndexDescriptions indexes = ((Table)result.getTableView()).indexes;
+		if(indexes.size() == 0){
+			return null;
+		}
+		if(conditions.columns.size() == 0 && conditions.rangeColumns.size() == 0){
+			return null;
+		}
+		IndexDescription index = (conditions.columns.size() == 0) ? null : indexes.findBestMatch( conditions.columns );
+		if(index != null){
+			Strings indexColumns = index.getColumns();
+			IndexScan scan = new IndexScan( result, index, conditions.getValues( indexColumns, indexColumns.size() ), null, null, false );
+			scan.addAndIndexes( indexes, conditions );
+			return scan;
+		}
+		
+		// search the index with the most equals columns and a range on the next column
+		int bestScore = 0;
+		for(int i=0; i<indexes.size(); i++){
+			IndexDescription idx = indexes.get(i);
+			if(idx.isHash() || !idx.isUsable()){
+				// a hash index has no sort order for a range, an unusable index has no values
+				continue;
+			}
+			Strings indexColumns = idx.getColumns();
+			int count = 0;
+			while(count < indexColumns.size() && indexOf( conditions.columns, indexColumns.get(count) ) >= 0){
+				count++;
+			}
+			if(count == indexColumns.size()){
+				continue;
+			}
+			// a range with both bounds is more selective as a range with one bound
+			int score = 4 * count;
+			int r = indexOf( conditions.rangeColumns, indexColumns.get(count) );
+			if(r >= 0){
+				score += (conditions.lows.get(r) != null && conditions.highs.get(r) != null) || conditions.likes.get(r) != null ? 2 : 1;
+			}
+			if(score > bestScore){
+				bestScore = score;
+				index = idx;
+			}
+		}
+		if(index == null){
+			return null;
+		}
+		Strings indexColumns = index.getColumns();
+		int count = bestScore / 4;
+		Expression[] values = conditions.getValues( indexColumns, count );
+		int r = indexOf( conditions.rangeColumns, indexColumns.get(count) );
+		if(r < 0){
+			return new IndexScan( result, index, values, null, null, false );
+		}
+		return new IndexScan( result, index, values, conditions.lows.get(r), conditions.highs.get(r), conditions.likes.get(r) != null );
+	}
+	
+	
+	/**
+	 * Add the other indexes with equals conditions on all its columns. An index is only added if it has a column 
+	 * without a previous index, else it can not reduce the found rows.
+	 */
+	private void addAndIndexes(IndexDescriptions indexes, Conditions conditions){
+		Strings covered = new Strings();
+		addColumns( covered, index.getColumns() );
+		ArrayList found = new ArrayList();
+		for(int i=0; i<indexes.size(); i++){
+			IndexDescription idx = indexes.get(i);
+			Strings indexColumns = idx.getColumns();
+			if(idx == index || !idx.isUsable() || idx.matchFactor( conditions.columns ) == Integer.MAX_VALUE || idx.matchFactor( covered ) != Integer.MAX_VALUE){
+				continue;
+			}
+			found.add( idx );
+			addColumns( covered, indexColumns );
+		}
+		andIndexes = (IndexDescription[])found.toArray( new IndexDescription[found.size()] );
+		andValues = new Expression[andIndexes.length][];
+		for(int i=0; i<andIndexes.length; i++){
+			Strings indexColumns = andIndexes[i].getColumns();
+			andValues[i] = conditions.getValues( indexColumns, indexColumns.size() );
+		}
+	}
+	
+	
+	private static void addColumns(Strings columns, Strings newColumns){
+		for(int i=0; i<newColumns.size(); i++){
+			if(indexOf( columns, newColumns.get(i) ) < 0){
+				columns.add( newColumns.get(i) );
+			}
+		}
+	}
+	
+	
+	/**
+	 * The conditions of a WHERE that can be used for an index.
+	 */
+	private static class Conditions{
+		/** the columns with a condition "column = value" */
+		final Strings columns = new Strings();
+		final Expressions values = new Expressions();
+		/** the columns with a range, the bounds can be null */
+		final Strings rangeColumns = new Strings();
+		final Expressions lows = new Expressions();
+		final Expressions highs = new Expressions();
+		/** not null if the range is a LIKE, then highs contains the pattern */
+		final Expressions likes = new Expressions();
+		
+		
+		void addRange(String column, Expression low, Expression high, Expression like){
+			int idx = indexOf( rangeColumns, column );
+			if(idx < 0){
+				rangeColumns.add( column );
+				lows.add( low );
+				highs.add( high );
+				likes.add( like );
+			}else if(likes.get(idx) == null && like == null){
+				// a second condition for the same column like "a > 1 AND a < 9"
+				if(lows.get(idx) == null){
+					lows.set( idx, low );
+				}
+				if(highs.get(idx) == null){
+					highs.set( idx, high );
+				}
+			}
+		}
+		
+		
+		/**
+		 * Returns the searched values in the order of the first count index columns.
+		 */
+		Expression[] getValues(Strings indexColumns, int count){
+			Expression[] indexValues = new Expression[count];
+			for(int i=0; i<count; i++){
+				indexValues[i] = values.get( indexOf( columns, indexColumns.get(i) ) );
+			}
+			return indexValues;
+		}
+	}
+	
+	
+	private static int indexOf(Strings columns, String column){
+		for(int i=0; i<columns.size(); i++){
+			if(column.equalsIgnoreCase( columns.get(i) )){
+				return i;
+			}
+		}
+		return -1;
+	}
+	
+	
+	/**
+	 * Collect the conditions "column = value", the ranges and the LIKE conditions of a AND tree.
+	 */
+	private static void addConditions(TableResult result, Expression expr, Conditions conditions){
+		if(!(expr instanceof ExpressionArithmetic)){
+			return;
+		}
+		Expression[] params = expr.getParams();
+		int operation = ((ExpressionArithmetic)expr).getOperation();
+		switch(operation){
+			case ExpressionArithmetic.AND:
+				addConditions( result, params[0], conditions );
+				addConditions( result, params[1], conditions );
+				break;
+			case ExpressionArithmetic.EQUALS:
+				for(int i=0; i<2; i++){
+					ExpressionName column = getColumn( result, params[i] );
+					Expression value = params[1-i];
+					if(column != null && isConstant( value )){
+						conditions.columns.add( getColumnName( result, column ) );
+						conditions.values.add( value );
+						break;
+					}
+				}
+				break;
+			case ExpressionArithmetic.GREATER:
+			case ExpressionArithmetic.GRE_EQU:
+			case ExpressionArithmetic.LESSER:
+			case ExpressionArithmetic.LES_EQU:
+				for(int i=0; i<2; i++){
+					ExpressionName column = getColumn( result, params[i] );
+					Expression value = params[1-i];
+					if(column != null && isConstant( value )){
+						// the column is on the left side or the operation is mirrored
+						boolean isLow = (operation == ExpressionArithmetic.GREATER || operation == ExpressionArithmetic.GRE_EQU) == (i == 0);
+						conditions.addRange( getColumnName( result, column ), isLow ? value : null, isLow ? null : value, null );
+						break;
+					}
+				}
+				break;
+			case ExpressionArithmetic.BETWEEN:{
+				ExpressionName column = getColumn( result, params[0] );
+				if(column != null && isConstant( params[1] ) && isConstant( params[2] )){
+					conditions.addRange( getColumnName( result, column ), params[1], params[2], null );
+				}
+				break;}
+			case ExpressionArithmetic.LIKE:{
+				ExpressionName column = getColumn( result, params[0] );
+				if(column != null && isConstant( params[1] )){
+					conditions.addRange( getColumnName( result, column ), null, params[1], expr );
+				}
+				break;}
+		}
+	}
+	
+	
+	private static String getColumnName(TableResult result, ExpressionName column){
+		return result.getTableView().columns.get( column.getColumnIndex() ).getName();
+	}
+	
+	
+	/**
+	 * Returns the column if the expression is a column of the table. 
+	 */
+	private static ExpressionName getColumn(TableResult result, Expression expr){
+		if(expr instanceof ExpressionFunctionRTrim){
+			// A CHAR column is trimmed for a compare with a VARCHAR, the index values of CHAR are also trimmed
+			Expression param = expr.getParams()[0];
+			switch(param.getDataType()){
+				case SQLTokenizer.CHAR:
+				case SQLTokenizer.NCHAR:
+					expr = param;
+			}
+		}
+		if(expr.getType() == Expression.NAME && ((ExpressionName)expr).getDataSource() == result){
+			return (ExpressionName)expr;
+		}
+		return null;
+	}
+	
+	
+	/**
+	 * If the value of the expression is constant for all rows of the ResultSet. 
+	 */
+	private static boolean isConstant(Expression expr){
+		if(expr.getType() != Expression.VALUE && expr.getType() != Expression.FUNCTION){
+			return false;
+		}
+		if(expr instanceof ExpressionInSelect){
+			return false;
+		}
+		if(expr instanceof ExpressionFunction && ((ExpressionFunction)expr).getFunction() == SQLTokenizer.RAND){
+			return false;
+		}
+		Expression[] params = expr.getParams();
+		if(params != null){
+			for(int i=0; i<params.length; i++){
+				if(!isConstant( params[i] )){
+					return false;
+				}
+			}
+		}
+		return true;
+	}
+	
+	
+	TableResult getFrom(){
+		return result;
+	}
+	
+	
+	/**
+	 * Set the columns of the table that are used in the query.
+	 * @param used a flag for every column of the table or null if the used columns are unknown
+	 */
+	final void setColumns(boolean[] used){
+		entryIdxs = null;
+		if(used == null || or != null){
+			// the rows of the other side of an OR are not in this index
+			return;
+		}
+		int[] idxs = new int[used.length];
+		for(int i=0; i<used.length; i++){
+			idxs[i] = -1;
+			if(used[i]){
+				idxs[i] = index.getEntryIdx( i, values.length );
+				if(idxs[i] < 0){
+					return;
+				}
+			}
+		}
+		entryIdxs = idxs;
+	}
+	
+	
+	/**
+	 * Set if the rows of the result can not be changed. It is called before every execute.
+	 */
+	final void setReadOnly(boolean readOnly){
+		this.readOnly = readOnly;
+	}
+	
+	
+	/**
+	 * If the values of the rows can be read from the index. The index must cover all used columns, the 
+	 * rows are not locked and the index includes no changes that are not committed.
+	 */
+	private boolean isIndexOnly(){
+		return readOnly && entryIdxs != null &&
+			result.lock == SQLTokenizer.SELECT &&
+			result.con.isolationLevel <= Connection.TRANSACTION_READ_COMMITTED &&
+			!index.hasChanges();
+	}
+	
+	
+	final void execute() throws Exception{
+		result.execute();
+		find();
+	}
+	
+	
+	/**
+	 * Search the rows for the current values. It is called from a join for every row of the other side.
+	 */
+	final void find() throws Exception{
+		entries = null;
+		if(hasChangedRows()){
+			// the index can not find the committed rows that another connection has changed, 
+			// a scan over all rows returns the rows or waits for the lock like without an index
+			useIndex = false;
+			beforeFirst();
+			return;
+		}
+		if(isIndexOnly()){
+			findEntries();
+		}else
+		if(values.length == index.getColumns().size() || or != null){
+			RowBitmap found = new RowBitmap();
+			useIndex = findRows( found );
+			rows = new LongList();
+			found.addTo( rows );
+		}else{
+			// a range can be very large, a sort of the list is faster as the insert in a RowBitmap
+			rows = new LongList();
+			useIndex = index.findRange( values, low, high, isLike, rows, null );
+			rows.sort();
+			// the pending rows of other connections are not valid
+			int count = rows.size();
+			while(count > 0 && rows.get( count-1 ) >= IndexDescription.PENDING_ROW){
+				count--;
+			}
+			rows.setSize( count );
+		}
+		beforeFirst();
+	}
+	
+	
+	/**
+	 * If any used index has not committed changes of committed rows from another connection.
+	 */
+	private boolean hasChangedRows(){
+		if(result.con.isolationLevel <= Connection.TRANSACTION_READ_UNCOMMITTED){
+			// the index includes the not committed changes like a scan
+			return false;
+		}
+		if(index.hasChangedRows( result.con )){
+			return true;
+		}
+		for(int i=0; i<andIndexes.length; i++){
+			if(andIndexes[i].hasChangedRows( result.con )){
+				return true;
+			}
+		}
+		return or != null && or.hasChangedRows();
+	}
+	
+	
+	/**
+	 * Search the rows of the index and combine it with the found rows of the other indexes.
+	 * @param found receive the row positions
+	 * @return false if an index can not be used, then all rows must be scanned
+	 */
+	private boolean findRows(RowBitmap found) throws Exception{
+		if(values.length == index.getColumns().size()){
+			if(!index.findRows( values, found )){
+				return false;
+			}
+		}else{
+			LongList range = new LongList();
+			if(!index.findRange( values, low, high, isLike, range, null )){
+				return false;
+			}
+			for(int i=0; i<range.size(); i++){
+				// the pending rows of other connections are not valid
+				if(range.get(i) < IndexDescription.PENDING_ROW){
+					found.add( range.get(i) );
+				}
+			}
+		}
+		for(int i=0; i<andIndexes.length && found.getSize() > 0; i++){
+			RowBitmap rows = new RowBitmap();
+			if(andIndexes[i].findRows( andValues[i], rows )){
+				found.and( rows );
+			}
+		}
+		if(or != null){
+			RowBitmap rows = new RowBitmap();
+			if(!or.findRows( rows )){
+				return false;
+			}
+			found.or( rows );
+		}
+		return true;
+	}
+	
+	
+	/**
+	 * Search the rows for the current values with the digits of the index values.
+	 */
+	private void findEntries() throws Exception{
+		rows = new LongList();
+		ArrayList found = new ArrayList();
+		useIndex = index.findRange( values, low, high, isLike, rows, found );
+		if(!useIndex){
+			return;
+		}
+		Entry[] list = new Entry[rows.size()];
+		for(int i=0; i<list.length; i++){
+			list[i] = new Entry( rows.get(i), (char[][])found.get(i) );
+		}
+		Arrays.sort( list );
+		// the pending rows of other connections are not valid
+		int count = list.length;
+		while(count > 0 && list[count-1].rowOffset >= IndexDescription.PENDING_ROW){
+			count--;
+		}
+		rows = new LongList( count );
+		entries = new char[count][][];
+		for(int i=0; i<count; i++){
+			rows.add( list[i].rowOffset );
+			entries[i] = list[i].digits;
+		}
+	}
+	
+	
+	/**
+	 * A found row with the digits of its index entry, sorted by the row position.
+	 */
+	private static class Entry implements Comparable{
+		final long rowOffset;
+		final char[][] digits;
+		
+		Entry(long rowOffset, char[][] digits){
+			this.rowOffset = rowOffset;
+			this.digits = digits;
+		}
+		
+		public int compareTo(Object obj){
+			long other = ((Entry)obj).rowOffset;
+			return (rowOffset < other) ? -1 : (rowOffset == other ? 0 : 1);
+		}
+	}
+	
+	
+	/**
+	 * Move the result to a found row. If the values are read from the index then the row is not read.
+	 */
+	private boolean moveToIndexRow(int idx) throws Exception{
+		if(entries == null){
+			return result.moveToIndexRow( rows.get( idx ) );
+		}
+		return result.moveToIndexRow( rows.get( idx ), new StoreIndex( index, entryIdxs, entries[idx] ) );
+	}
+	
+	
+	final boolean isScrollable(){
+		return false;
+	}
+
+
+	final void beforeFirst() throws Exception{
+		result.beforeFirst();
+		rowIdx = -1;
+		row = 0;
+	}
+
+
+	final boolean first() throws Exception{
+		beforeFirst();
+		return next();
+	}
+
+
+	final boolean next() throws Exception{
+		if(!useIndex){
+			return result.next();
+		}
+		while(rowIdx >= -1){
+			rowIdx++;
+			boolean isValid;
+			if(rowIdx < rows.size()){
+				isValid = moveToIndexRow( rowIdx );
+			}else{
+				isValid = result.moveToInsertRow( rowIdx - rows.size() );
+				if(!isValid && result.getRowPosition() < 0){
+					// after the last insert
+					rowIdx = -2;
+					row = 0;
+					return false;
+				}
+			}
+			if(isValid){
+				row++;
+				return true;
+			}
+		}
+		return false;
+	}
+
+
+	final void afterLast() throws Exception{
+		result.afterLast();
+		rowIdx = -2;
+		row = 0;
+	}
+
+
+	final int getRow() throws Exception{
+		return useIndex ? row : result.getRow();
+	}
+
+
+	final long getRowPosition(){
+		return result.getRowPosition();
+	}
+
+
+	final void setRowPosition(long rowPosition) throws Exception{
+		if(entries != null && rowPosition >= 0 && rowPosition < IndexDescription.PENDING_ROW){
+			rowIdx = indexOf( rowPosition );
+			if(rowIdx >= 0 && moveToIndexRow( rowIdx )){
+				return;
+			}
+		}
+		result.setRowPosition( rowPosition );
+		if(useIndex && rowPosition >= 0){
+			if(rowPosition >= IndexDescription.PENDING_ROW){
+				rowIdx = rows.size() + (int)(rowPosition & ~IndexDescription.PENDING_ROW);
+			}else{
+				rowIdx = indexOf( rowPosition );
+			}
+		}
+	}
+
+
+	/**
+	 * Search a row position in the sorted list of found rows.
+	 */
+	private int indexOf(long rowPosition){
+		int low = 0;
+		int high = rows.size() - 1;
+		while(low <= high){
+			int mid = (low + high) >>> 1;
+			long value = rows.get( mid );
+			if(value < rowPosition){
+				low = mid + 1;
+			}else
+			if(value > rowPosition){
+				high = mid - 1;
+			}else{
+				return mid;
+			}
+		}
+		return -1;
+	}
+
+
+	final void nullRow(){
+		result.nullRow();
+		row = 0;
+	}
+
+
+	final void noRow(){
+		result.noRow();
+		row = 0;
+	}
+
+
+	final boolean rowInserted(){
+		return result.rowInserted();
+	}
+
+
+	final boolean rowDeleted(){
+		return result.rowDeleted();
+	}
+
+
+	boolean isExpressionsFromThisRowSource(Expressions columns){
+		return result.isExpressionsFromThisRowSource( columns );
+	}
+}
@@ -42,8 +42,9 @@ class IndexScrollStatus {
 
 	private final java.util.Stack nodeStack = new java.util.Stack(); //TODO performance Stack durch nicht synchronisierte Klasse ersetzten
 	/** Used for getRowOffset() as context cash between 2 calls */
-	private LongTreeList longList;
-	private LongTreeListEnum longListEnum = new LongTreeListEnum();
+	private RowBitmap longList;
+	/** the last returned value of longList */
+	private long longListOffset;
 
 
 	IndexScrollStatus(IndexNode rootPage, Expressions expressions){	
@@ -70,12 +71,13 @@ class IndexScrollStatus {
 	final long getRowOffset( boolean scroll){
 		if(longList != null){
 			long rowOffset = scroll ? 
-								longList.getNext(longListEnum) : 
-								longList.getPrevious(longListEnum);
+								longList.getNext(longListOffset) : 
+								longList.getPrevious(longListOffset);
 			if(rowOffset < 0){
 				// No more entries on this node
 				longList = null;
 			}else{
+				longListOffset = rowOffset;
 				return rowOffset;
 			}
 		}
@@ -170,12 +172,13 @@ class IndexScrollStatus {
     
 	
 	private final long getReturnValue( Object value){
-		if(rootPage.getUnique()){
+		if(value instanceof Long){
+			// a unique index or a key with only one row
 			return ((Long)value).longValue();
 		}else{
-			longList = (LongTreeList)value;
-			longListEnum.reset();
-			return longList.getNext(longListEnum); // there be should one value as minimum
+			longList = (RowBitmap)value;
+			longListOffset = longList.getNext(-1); // there be should one value as minimum
+			return longListOffset;
 		}
 		
 	}
@@ -103,6 +103,12 @@ final class Join extends RowSource{
 	}
 	
 	final void setRowPosition(long rowPosition) throws Exception{
+		if(rowPosition < 0){
+			// the null side of an outer join, see JoinScroll.nullRow()
+			left .setRowPosition( -1 );
+			right.setRowPosition( -1 );
+			return;
+		}
 		left .setRowPosition( rowPositions.get1((int)rowPosition));
 		right.setRowPosition( rowPositions.get2((int)rowPosition));
 	}
@@ -176,51 +182,104 @@ final class Join extends RowSource{
 
     /**
      * Create a ScrollJoin that based on a index. 
-     * There must not exist a index on a table. If there is no index then a index will be created.
+     * If the right side is a table with a matching index then this index is used. 
+     * If there is no index then a index will be created.
+     * An OUTER JOIN or a condition with further predicates use a hash join.
+     * If both sides are tables with an index on the join columns then a merge join is used.
      * @return null if it is not possible to create a ScrollJoin based on a Index
      */
     private boolean createJoinScrollIndex() throws Exception{
         if(type == CROSS_JOIN){
             return false;
         }
-        if(type != INNER_JOIN){
-            // TODO currently only INNER JOIN are implemented
-            return false;
-        }
         if(condition instanceof ExpressionArithmetic){
             ExpressionArithmetic cond = (ExpressionArithmetic)condition;
             Expressions leftEx = new Expressions();
             Expressions rightEx = new Expressions();
-            int operation = createJoinScrollIndex(cond, leftEx, rightEx, 0);
-            if(operation != 0){
-                scroll = new JoinScrollIndex( type, left, right, leftEx, rightEx, operation);
+            Expressions ranges = new Expressions();
+            boolean isEqualsOnly = createJoinScrollIndex(cond, leftEx, rightEx, ranges);
+            scroll = createJoinScrollMerge(leftEx, rightEx, ranges);
+            if(scroll != null){
+                return true;
+            }
+            if(leftEx.size() == 0){
+                return false;
+            }
+            if(type == INNER_JOIN && isEqualsOnly && isSameDataTypes(leftEx, rightEx)){
+                scroll = new JoinScrollIndex( type, left, right, leftEx, rightEx, ExpressionArithmetic.EQUALS, condition);
                 return true;
             }
+            scroll = JoinScrollHash.create( type, left, right, leftEx, rightEx, condition);
+            return scroll != null;
         }
         return false;
     }
     
     
-    private int createJoinScrollIndex(ExpressionArithmetic cond, Expressions leftEx, Expressions rightEx, int operation) throws Exception{
+    /**
+     * Create a merge join for one of the equals conditions or one of the BETWEEN conditions.
+     * @param ranges BETWEEN conditions with a value of the left side and the bounds from the right side
+     * @return null if no condition has indexes on both sides
+     */
+    private JoinScroll createJoinScrollMerge(Expressions leftEx, Expressions rightEx, Expressions ranges) throws Exception{
+        for(int i=0; i<leftEx.size(); i++){
+            JoinScroll merge = JoinScrollMerge.create( type, left, right, leftEx.get(i), rightEx.get(i), rightEx.get(i), condition);
+            if(merge != null){
+                return merge;
+            }
+        }
+        for(int i=0; i<ranges.size(); i++){
+            Expression[] params = ranges.get(i).getParams();
+            JoinScroll merge = JoinScrollMerge.create( type, left, right, params[0], params[1], params[2], condition);
+            if(merge != null){
+                return merge;
+            }
+        }
+        return null;
+    }
+    
+    
+    /**
+     * The digits of an index depends on the data type. An index can only used if both sides of every 
+     * equals condition have the same data type.
+     */
+    private static boolean isSameDataTypes(Expressions leftEx, Expressions rightEx){
+        for(int i=0; i<leftEx.size(); i++){
+            if(leftEx.get(i).getDataType() != rightEx.get(i).getDataType()){
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    
+    /**
+     * Collect the equals conditions between the left and the right side from the AND tree of the condition.
+     * The BETWEEN conditions with a value of the left side and bounds of the right side are added to ranges.
+     * @return false if the condition includes other predicates
+     */
+    private boolean createJoinScrollIndex(ExpressionArithmetic cond, Expressions leftEx, Expressions rightEx, Expressions ranges) throws Exception{
         Expression[] params = cond.getParams();
-        int op = cond.getOperation();
-        if(op == ExpressionArithmetic.AND){
-            Expression param0 = params[0];
-            Expression param1 = params[1];
-            if(param0 instanceof ExpressionArithmetic && param1 instanceof ExpressionArithmetic){
-                op = createJoinScrollIndex((ExpressionArithmetic)param0, leftEx, rightEx, operation);
-                if(op == 0){
-                    return 0;
+        int operation = cond.getOperation();
+        if(operation == ExpressionArithmetic.AND){
+            boolean isEqualsOnly = true;
+            for(int i=0; i<2; i++){
+                Expression param = params[i];
+                if(param instanceof ExpressionArithmetic){
+                    isEqualsOnly &= createJoinScrollIndex((ExpressionArithmetic)param, leftEx, rightEx, ranges);
+                }else{
+                    isEqualsOnly = false;
                 }
-                return createJoinScrollIndex((ExpressionArithmetic)param1, leftEx, rightEx, operation);
             }
-            return 0;
-        }
-        if(operation == 0){
-            operation = op;
+            return isEqualsOnly;
         }
-        if(operation != op){
-            return 0;
+        if(operation == ExpressionArithmetic.BETWEEN){
+            if(left.isExpressionsFromThisRowSource(Utils.getExpressionNameFromTree(params[0]))
+                    && right.isExpressionsFromThisRowSource(Utils.getExpressionNameFromTree(params[1]))
+                    && right.isExpressionsFromThisRowSource(Utils.getExpressionNameFromTree(params[2]))){
+                ranges.add( cond );
+            }
+            return false;
         }
         if(operation == ExpressionArithmetic.EQUALS){
             Expression param0 = params[0];
@@ -236,13 +295,13 @@ final class Join extends RowSource{
                     leftEx.add( param1 );
                     rightEx.add( param0 );
                 }else{
-                    return 0;
+                    return false;
                 }
             }
             
-            return operation;
+            return true;
         }
-        return 0;
+        return false;
     }
     
     
@@ -99,7 +99,7 @@ class JoinScroll{
                             case Join.FULL_JOIN:
                                 isOuterValid = false;
                                 isBeforeFirst = false;
-                                right.nullRow();
+                                nullRow(right);
                                 return true;
                         }
                     }else fullRightRowCounter++;
@@ -120,7 +120,7 @@ class JoinScroll{
                         case Join.FULL_JOIN:
                             if(isOuterValid){
                                 isOuterValid = false;
-                                right.nullRow();
+                                nullRow(right);
                                 return true;
                             }
                             fullRowCount = Math.max( fullRowCount, fullRightRowCounter);
@@ -135,7 +135,7 @@ class JoinScroll{
                                 case Join.LEFT_JOIN:
                                 case Join.FULL_JOIN:
                                     isOuterValid = false;
-                                    right.nullRow();
+                                    nullRow(right);
                                     return true;
                             }
                         }else fullRightRowCounter++;
@@ -159,7 +159,7 @@ class JoinScroll{
                 if(fullReturnCounter<0) {
                     fullReturnCounter = 0;
                     right.first();
-                    left.nullRow();
+                    nullRow(left);
                 }
                 while(isFullNotValid[fullReturnCounter++]){
                     if(fullReturnCounter >= fullRowCount){
@@ -175,7 +175,18 @@ class JoinScroll{
     }
 
     
-    private boolean getBoolean() throws Exception{
+    boolean getBoolean() throws Exception{
         return type == Join.CROSS_JOIN || condition.getBoolean();
     }
+    
+    
+    /**
+     * Set one side of an outer join to null. The row position is also invalidated because
+     * SortedResult, TopResult and Scrollable save the row position and restore the row later.
+     * Without it the restore would return the last row of this side instead of null values.
+     */
+    static void nullRow(RowSource rowSource) throws Exception{
+        rowSource.setRowPosition(-1);
+        rowSource.nullRow();
+    }
 }
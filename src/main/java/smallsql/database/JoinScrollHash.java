@@ -0,0 +1,290 @@
+/* =============================================================
+ * SmallSQL : a free Java DBMS library for the Java(tm) platform
+ * =============================================================
+ *
+ * (C) Copyright 2004-2011, by Volker Berlin.
+ *
+ * Project Info:  http://www.smallsql.de/
+ *
+ * This library is free software; you can redistribute it and/or modify it 
+ * under the terms of the GNU Lesser General Public License as published by 
+ * the Free Software Foundation; either version 2.1 of the License, or 
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but 
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY 
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public 
+ * License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, 
+ * USA.  
+ *
+ * [Java is a trademark or registered trademark of Sun Microsystems, Inc. 
+ * in the United States and other countries.]
+ *
+ * ---------------
+ * JoinScrollHash.java
+ * ---------------
+ * Author: Volker Berlin
+ * 
+ */
+package smallsql.database;
+
+import java.util.BitSet;
+import java.util.HashMap;
+
+/**
+ * A hash join for joins with equals conditions. The right side is the build side. All rows of it are read 
+ * once and saved with the key of the join columns in a hash table. The left side is the probe side. For every 
+ * row of the left side the matching rows are searched in the hash table. Every found row is verified with 
+ * the complete join condition, that the condition can include further predicates like 
+ * <code>a.x = b.x AND a.y > b.y</code>.
+ * <p>
+ * For a LEFT or FULL JOIN a row of the left side without a matching row is returned with a null row on the
+ * right side. For a RIGHT or FULL JOIN the matched rows of the build side are marked in a bitmap. After the
+ * last row of the left side all not marked rows are returned with a null row on the left side.
+ * 
+ * @author Volker Berlin
+ */
+class JoinScrollHash extends JoinScroll{
+
+    private final Expressions leftEx;
+    private final Expressions rightEx;
+
+    /** The common data type of the left and the right expression of every equals condition. */
+    private final int[] keyTypes;
+
+    /** The keys of the build side. The value is a Long with the row number or a LongList if there are multiple rows. */
+    private final HashMap hashTable = new HashMap();
+
+    /** The row positions of all rows of the build side. The index in this list is the row number. */
+    private final LongList rowPositions = new LongList();
+
+    /** The row numbers of the build side that have matched a row of the left side, only for RIGHT and FULL JOIN. */
+    private final BitSet matched;
+
+    /** The row numbers of the build side that can match the current row of the left side or null. */
+    private Object candidates;
+    private int candidateIdx;
+
+    /** If there is a current row on the left side. */
+    private boolean isLeftValid;
+    /** If the current row of the left side has returned with a row of the right side. */
+    private boolean isLeftMatched;
+
+    /** The next row number to check after the last row of the left side, -1 if the left side is not finish. */
+    private int unmatchedIdx = -1;
+
+
+    private JoinScrollHash( int joinType, RowSource left, RowSource right, Expressions leftEx, Expressions rightEx, int[] keyTypes, Expression condition)
+            throws Exception{
+        super( joinType, left, right, condition);
+        this.leftEx = leftEx;
+        this.rightEx = rightEx;
+        this.keyTypes = keyTypes;
+        matched = (joinType == Join.RIGHT_JOIN || joinType == Join.FULL_JOIN) ? new BitSet() : null;
+        createHashTable();
+    }
+
+
+    /**
+     * Create a hash join if the left and right expressions of all equals conditions can compare via its keys.
+     * @param leftEx the expressions of the left side
+     * @param rightEx the expressions of the right side in the same order
+     * @param condition the complete join condition
+     * @return null if the data types are not supported
+     */
+    static JoinScrollHash create( int joinType, RowSource left, RowSource right, Expressions leftEx, Expressions rightEx, Expression condition)
+            throws Exception{
+        int[] keyTypes = new int[leftEx.size()];
+        for(int i=0; i<keyTypes.length; i++){
+            keyTypes[i] = getKeyType( leftEx.get(i).getDataType(), rightEx.get(i).getDataType() );
+            if(keyTypes[i] < 0){
+                return null;
+            }
+        }
+        return new JoinScrollHash( joinType, left, right, leftEx, rightEx, keyTypes, condition );
+    }
+
+
+    /**
+     * Get the data type in which both values are converted for the key. Values that are equals must produce 
+     * the same key. Different values can produce the same key because the join condition is verified.
+     * The digits of NUMERIC and DECIMAL include the scale that they are converted to DOUBLE.
+     * @return -1 if the data types can not be compared via the key
+     */
+    private static int getKeyType(int dataType1, int dataType2){
+        int keyType1 = getKeyGroup( dataType1 );
+        int keyType2 = getKeyGroup( dataType2 );
+        if(keyType1 != 0 && keyType2 != 0){
+            if(keyType1 == keyType2){
+                return keyType1;
+            }
+            if(keyType1 == SQLTokenizer.BIGINT && keyType2 == SQLTokenizer.DOUBLE
+                    || keyType1 == SQLTokenizer.DOUBLE && keyType2 == SQLTokenizer.BIGINT){
+                return SQLTokenizer.DOUBLE;
+            }
+        }
+        if(dataType1 == dataType2 && dataType1 != SQLTokenizer.NULL && Index.isKeyType( dataType1 )){
+            return dataType1;
+        }
+        return -1;
+    }
+
+
+    private static int getKeyGroup(int dataType){
+        switch(dataType){
+            case SQLTokenizer.TINYINT:
+            case SQLTokenizer.SMALLINT:
+            case SQLTokenizer.INT:
+            case SQLTokenizer.BIGINT:
+                return SQLTokenizer.BIGINT;
+            case SQLTokenizer.REAL:
+            case SQLTokenizer.FLOAT:
+            case SQLTokenizer.DOUBLE:
+            case SQLTokenizer.NUMERIC:
+            case SQLTokenizer.DECIMAL:
+            case SQLTokenizer.MONEY:
+            case SQLTokenizer.SMALLMONEY:
+                return SQLTokenizer.DOUBLE;
+            case SQLTokenizer.CHAR:
+            case SQLTokenizer.NCHAR:
+            case SQLTokenizer.VARCHAR:
+            case SQLTokenizer.NVARCHAR:
+            case SQLTokenizer.LONGVARCHAR:
+            case SQLTokenizer.LONGNVARCHAR:
+            case SQLTokenizer.CLOB:
+                // the digits of CHAR are trimmed
+                return SQLTokenizer.CHAR;
+            case SQLTokenizer.DATE:
+            case SQLTokenizer.TIME:
+            case SQLTokenizer.TIMESTAMP:
+            case SQLTokenizer.SMALLDATETIME:
+                return SQLTokenizer.TIMESTAMP;
+            default:
+                return 0;
+        }
+    }
+
+
+    /**
+     * Read all rows of the build side.
+     */
+    private void createHashTable() throws Exception{
+        right.beforeFirst();
+        while(right.next()){
+            int rowNumber = rowPositions.size();
+            rowPositions.add( right.getRowPosition() );
+            Object key = createKey( rightEx );
+            if(key == null){
+                // a NULL value can not be equals to any value
+                continue;
+            }
+            Object value = hashTable.get( key );
+            if(value == null){
+                hashTable.put( key, new Long( rowNumber ) );
+            }else if(value instanceof Long){
+                LongList list = new LongList();
+                list.add( ((Long)value).longValue() );
+                list.add( rowNumber );
+                hashTable.put( key, list );
+            }else{
+                ((LongList)value).add( rowNumber );
+            }
+        }
+    }
+
+
+    /**
+     * Create the key of the current row of the left or right side. Equals values like -0.0 and 0.0 get the
+     * same key, see Index.createCompareKey().
+     * @return null if one of the values is NULL
+     */
+    private Object createKey(Expressions expressions) throws Exception{
+        for(int i=0; i<expressions.size(); i++){
+            if(expressions.get(i).isNull()){
+                return null;
+            }
+        }
+        return HashIndex.createKey( expressions, keyTypes );
+    }
+
+
+    void beforeFirst() throws Exception{
+        super.beforeFirst();
+        candidates = null;
+        isLeftValid = false;
+        unmatchedIdx = -1;
+        if(matched != null){
+            matched.clear();
+        }
+    }
+
+
+    boolean next() throws Exception{
+        if(unmatchedIdx >= 0){
+            return nextUnmatched();
+        }
+        while(true){
+            if(isLeftValid){
+                while(candidates != null){
+                    int rowNumber;
+                    if(candidates instanceof Long){
+                        rowNumber = (int)((Long)candidates).longValue();
+                        candidates = null;
+                    }else{
+                        LongList list = (LongList)candidates;
+                        rowNumber = (int)list.get( candidateIdx++ );
+                        if(candidateIdx >= list.size()){
+                            candidates = null;
+                        }
+                    }
+                    right.setRowPosition( rowPositions.get( rowNumber ) );
+                    if(getBoolean()){
+                        isLeftMatched = true;
+                        if(matched != null){
+                            matched.set( rowNumber );
+                        }
+                        return true;
+                    }
+                }
+                isLeftValid = false;
+                if(!isLeftMatched && (type == Join.LEFT_JOIN || type == Join.FULL_JOIN)){
+                    nullRow(right);
+                    return true;
+                }
+            }
+            if(!left.next()){
+                break;
+            }
+            isLeftValid = true;
+            isLeftMatched = false;
+            Object key = createKey( leftEx );
+            candidates = (key == null) ? null : hashTable.get( key );
+            candidateIdx = 0;
+        }
+        if(matched == null){
+            return false;
+        }
+        unmatchedIdx = 0;
+        nullRow(left);
+        return nextUnmatched();
+    }
+
+
+    /**
+     * Return the rows of the build side that have not matched any row of the left side.
+     */
+    private boolean nextUnmatched() throws Exception{
+        int rowNumber = matched.nextClearBit( unmatchedIdx );
+        if(rowNumber >= rowPositions.size()){
+            unmatchedIdx = rowPositions.size();
+            return false;
+        }
+        unmatchedIdx = rowNumber + 1;
+        right.setRowPosition( rowPositions.get( rowNumber ) );
+        return true;
+    }
+}
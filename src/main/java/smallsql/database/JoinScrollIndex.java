@@ -34,6 +34,10 @@
 package smallsql.database;
 
 /**
+ * A join of equals conditions that search the rows of the right side with an index. If the right side is
+ * a table with an index for the join columns then the index of the table is used. Else a temporary index
+ * of all rows of the right side is created.
+ * 
  * @author Volker Berlin
  */
 class JoinScrollIndex extends JoinScroll{
@@ -45,18 +49,30 @@ class JoinScrollIndex extends JoinScroll{
 
     private Index index;
 
-    private LongTreeList rowList;
+    private RowBitmap rowList;
+
+    /** The last row position of rowList. */
+    private long rowListOffset;
 
-    private final LongTreeListEnum longListEnum = new LongTreeListEnum();
+    /** The index of the right table or null if a temporary index is used. */
+    private IndexScan scan;
+    
+    /** If the scan includes the rows for the current row of the left side. */
+    private boolean isScanValid;
 
 
-    JoinScrollIndex( int joinType, RowSource left, RowSource right, Expressions leftEx, Expressions rightEx, int compare)
+    JoinScrollIndex( int joinType, RowSource left, RowSource right, Expressions leftEx, Expressions rightEx, int compare, Expression condition)
             throws Exception{
-        super( joinType, left, right, null);
+        super( joinType, left, right, condition);
         this.leftEx = leftEx;
         this.rightEx = rightEx;
         this.compare = compare;
-        createIndex(rightEx);
+        if(right instanceof TableResult){
+            scan = IndexScan.create( (TableResult)right, rightEx, leftEx );
+        }
+        if(scan == null){
+            createIndex(rightEx);
+        }
     }
 
 
@@ -69,10 +85,17 @@ class JoinScrollIndex extends JoinScroll{
     }
 
 
+    void beforeFirst() throws Exception{
+        super.beforeFirst();
+        rowList = null;
+        isScanValid = false;
+    }
+
+
     boolean next() throws Exception{
         switch(compare){
         case ExpressionArithmetic.EQUALS:
-            return nextEquals();
+            return (scan != null) ? nextScan() : nextEquals();
         default:
             throw new Error("Compare operation not supported:" + compare);
         }
@@ -82,8 +105,9 @@ class JoinScrollIndex extends JoinScroll{
 
     private boolean nextEquals() throws Exception{
         if(rowList != null){
-            long rowPosition = rowList.getNext(longListEnum);
+            long rowPosition = rowList.getNext(rowListOffset);
             if(rowPosition != -1){
+                rowListOffset = rowPosition;
                 right.setRowPosition(rowPosition);
                 return true;
             }
@@ -100,12 +124,34 @@ class JoinScrollIndex extends JoinScroll{
         if(rows instanceof Long){
             right.setRowPosition(((Long)rows).longValue());
         }else{
-            rowList = (LongTreeList)rows;
-            longListEnum.reset();
-            right.setRowPosition(rowList.getNext(longListEnum));
+            rowList = (RowBitmap)rows;
+            rowListOffset = rowList.getNext(-1);
+            right.setRowPosition(rowListOffset);
         }
         return true;
     }
 
 
+    /**
+     * Search the rows of the right side with the index of the table. The index can find more rows, every row
+     * is verified with the join condition. If another connection has not committed changes in the index then 
+     * the scan reads all rows of the right side, see IndexScan.find().
+     */
+    private boolean nextScan() throws Exception{
+        while(true){
+            if(isScanValid){
+                while(scan.next()){
+                    if(getBoolean()){
+                        return true;
+                    }
+                }
+            }
+            if(!left.next()){
+                isScanValid = false;
+                return false;
+            }
+            scan.find();
+            isScanValid = true;
+        }
+    }
 }
@@ -0,0 +1,349 @@
+/* =============================================================
+ * SmallSQL : a free Java DBMS library for the Java(tm) platform
+ * =============================================================
+ *
+ * (C) Copyright 2004-2011, by Volker Berlin.
+ *
+ * Project Info:  http://www.smallsql.de/
+ *
+ * This library is free software; you can redistribute it and/or modify it 
+ * under the terms of the GNU Lesser General Public License as published by 
+ * the Free Software Foundation; either version 2.1 of the License, or 
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but 
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY 
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public 
+ * License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, 
+ * USA.  
+ *
+ * [Java is a trademark or registered trademark of Sun Microsystems, Inc. 
+ * in the United States and other countries.]
+ *
+ * ---------------
+ * JoinScrollMerge.java
+ * ---------------
+ * Author: Volker Berlin
+ * 
+ */
+package smallsql.database;
+
+import java.util.ArrayList;
+
+/**
+ * A merge join of two tables that are read in the order of an index on the join column. A row of the
+ * right side is valid for all values of the left side between a low and a high value. For an equals
+ * condition <code>a.x = b.x</code> both are the column of the right side. For a range condition like
+ * <code>a.t BETWEEN b.start AND b.end</code> the index of the right side must be on the low value.
+ * <p>
+ * Because the keys of the left side are ascending, a row of the right side is added if its low value is
+ * reached and removed if its high value is passed. Only the rows between are hold in the memory. There is no
+ * hash table or temporary index of a side. Every found row is verified with the complete join condition.
+ * <p>
+ * The keys are compared with the digits of the index, see Index.createKey(). This is only possible for data
+ * types with the same order of the digits and the values.
+ * 
+ * @author Volker Berlin
+ */
+class JoinScrollMerge extends JoinScroll{
+
+    private final IndexOrderScan leftScan;
+    private final IndexOrderScan rightScan;
+    private final Expression leftKey;
+    private final Expression rightLow;
+    private final Expression rightHigh;
+
+    /** If rows of the left side without a matching row are returned, LEFT and FULL JOIN */
+    private final boolean isLeftOuter;
+    /** If rows of the right side without a matching row are returned, RIGHT and FULL JOIN */
+    private final boolean isRightOuter;
+
+    /** The rows of the right side that can match the current and following rows of the left side. */
+    private final ArrayList active = new ArrayList();
+    private int activeIdx;
+
+    /** The next row of the right side that is read but its low value is not reached. */
+    private Entry nextRight;
+    private boolean isRightRead;
+    private boolean isRightEnd;
+
+    /** The rows of the right side that are returned with a null row on the left side. */
+    private final LongList unmatched = new LongList();
+    private int unmatchedIdx;
+
+    private long leftPosition;
+    /** If there is a current row on the left side. */
+    private boolean isLeftValid;
+    /** If the current row of the left side has returned with a row of the right side. */
+    private boolean isLeftMatched;
+    private boolean isLeftEnd;
+
+
+    private JoinScrollMerge( int joinType, TableResult left, TableResult right, IndexOrderScan leftScan, IndexOrderScan rightScan, 
+            Expression leftKey, Expression rightLow, Expression rightHigh, Expression condition) throws Exception{
+        super( joinType, left, right, condition);
+        this.leftScan = leftScan;
+        this.rightScan = rightScan;
+        this.leftKey = leftKey;
+        this.rightLow = rightLow;
+        this.rightHigh = rightHigh;
+        isLeftOuter = joinType == Join.LEFT_JOIN || joinType == Join.FULL_JOIN;
+        isRightOuter = joinType == Join.RIGHT_JOIN || joinType == Join.FULL_JOIN;
+        leftScan.setStreaming();
+        rightScan.setStreaming();
+        // a NULL value can not match, the rows are only needed for an OUTER JOIN
+        if(!isLeftOuter){
+            leftScan.setSkipNulls();
+        }
+        if(!isRightOuter){
+            rightScan.setSkipNulls();
+        }
+        reset();
+    }
+
+
+    /**
+     * Create a merge join if both sides are tables with an index on the key columns.
+     * @param leftKey a column of the left side
+     * @param rightLow a column of the right side, the lowest value of the left key for a row of the right side
+     * @param rightHigh an expression of the right side, the highest value of the left key
+     * @param condition the complete join condition
+     * @return null if a merge join is not possible
+     */
+    static JoinScrollMerge create( int joinType, RowSource left, RowSource right, Expression leftKey, Expression rightLow, Expression rightHigh, Expression condition) 
+            throws Exception{
+        if(!(left instanceof TableResult) || !(right instanceof TableResult) || left == right){
+            return null;
+        }
+        int dataType = leftKey.getDataType();
+        if(!isMergeType( dataType ) || rightLow.getDataType() != dataType || rightHigh.getDataType() != dataType){
+            return null;
+        }
+        IndexOrderScan leftScan = createScan( (TableResult)left, leftKey );
+        IndexOrderScan rightScan = (leftScan == null) ? null : createScan( (TableResult)right, rightLow );
+        if(rightScan == null){
+            return null;
+        }
+        return new JoinScrollMerge( joinType, (TableResult)left, (TableResult)right, leftScan, rightScan, leftKey, rightLow, rightHigh, condition );
+    }
+
+
+    /**
+     * Create a scan over the table in the order of an index on the column.
+     * @return null if there is no usable index
+     */
+    private static IndexOrderScan createScan(TableResult table, Expression column){
+        Expressions orderBy = new Expressions();
+        orderBy.add( column );
+        RowSource scan = IndexOrderScan.create( table, orderBy );
+        return (scan instanceof IndexOrderScan) ? (IndexOrderScan)scan : null;
+    }
+
+
+    /**
+     * If the order of the digits is the same as the order of the values. The digits of CHAR are trimmed, 
+     * the digits of NUMERIC include the scale and -0.0 and 0.0 of floating numbers have different digits.
+     */
+    private static boolean isMergeType(int dataType){
+        switch(dataType){
+            case SQLTokenizer.TINYINT:
+            case SQLTokenizer.SMALLINT:
+            case SQLTokenizer.INT:
+            case SQLTokenizer.BIGINT:
+            case SQLTokenizer.DATE:
+            case SQLTokenizer.TIME:
+            case SQLTokenizer.TIMESTAMP:
+            case SQLTokenizer.SMALLDATETIME:
+            case SQLTokenizer.MONEY:
+            case SQLTokenizer.SMALLMONEY:
+            case SQLTokenizer.VARCHAR:
+            case SQLTokenizer.NVARCHAR:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+
+    /**
+     * Start both index scans from the beginning.
+     */
+    private void reset() throws Exception{
+        leftScan.execute();
+        rightScan.execute();
+        active.clear();
+        nextRight = null;
+        isRightRead = false;
+        isRightEnd = false;
+        unmatched.clear();
+        unmatchedIdx = 0;
+        isLeftValid = false;
+        isLeftEnd = false;
+    }
+
+
+    void beforeFirst() throws Exception{
+        super.beforeFirst();
+        reset();
+    }
+
+
+    boolean next() throws Exception{
+        while(true){
+            if(unmatchedIdx < unmatched.size()){
+                nullRow(left);
+                right.setRowPosition( unmatched.get( unmatchedIdx++ ) );
+                return true;
+            }
+            if(unmatchedIdx > 0){
+                unmatched.clear();
+                unmatchedIdx = 0;
+                if(isLeftValid){
+                    left.setRowPosition( leftPosition );
+                }
+            }
+            if(isLeftValid){
+                while(activeIdx < active.size()){
+                    Entry entry = (Entry)active.get( activeIdx++ );
+                    right.setRowPosition( entry.rowPosition );
+                    if(getBoolean()){
+                        entry.isMatched = true;
+                        isLeftMatched = true;
+                        return true;
+                    }
+                }
+                isLeftValid = false;
+                if(!isLeftMatched && isLeftOuter){
+                    nullRow(right);
+                    return true;
+                }
+            }
+            if(isLeftEnd){
+                return false;
+            }
+            if(!leftScan.next()){
+                isLeftEnd = true;
+                if(isRightOuter){
+                    for(int i=0; i<active.size(); i++){
+                        Entry entry = (Entry)active.get(i);
+                        if(!entry.isMatched){
+                            unmatched.add( entry.rowPosition );
+                        }
+                    }
+                    if(nextRight != null){
+                        unmatched.add( nextRight.rowPosition );
+                    }
+                    while(readRight()){
+                        unmatched.add( nextRight.rowPosition );
+                    }
+                }
+                active.clear();
+                nextRight = null;
+                continue;
+            }
+            isLeftValid = true;
+            isLeftMatched = false;
+            leftPosition = left.getRowPosition();
+            if(leftKey.isNull()){
+                // a NULL value is not equals to any value
+                activeIdx = active.size();
+                continue;
+            }
+            activeIdx = 0;
+            moveRight( Index.createKey( leftKey ) );
+        }
+    }
+
+
+    /**
+     * Add the rows of the right side with a low value that is reached and remove the rows with a high
+     * value that is passed.
+     * @param key the digits of the current row of the left side
+     */
+    private void moveRight(char[] key) throws Exception{
+        while(nextRight != null || readRight()){
+            if(nextRight.low == null || nextRight.high == null){
+                // can not match any row
+                if(isRightOuter){
+                    unmatched.add( nextRight.rowPosition );
+                }
+            }else if(compare( nextRight.low, key ) > 0){
+                break;
+            }else{
+                active.add( nextRight );
+            }
+            nextRight = null;
+        }
+        int count = 0;
+        for(int i=0; i<active.size(); i++){
+            Entry entry = (Entry)active.get(i);
+            if(compare( entry.high, key ) < 0){
+                if(isRightOuter && !entry.isMatched){
+                    unmatched.add( entry.rowPosition );
+                }
+            }else{
+                active.set( count++, entry );
+            }
+        }
+        for(int i=active.size()-1; i>=count; i--){
+            active.remove(i);
+        }
+    }
+
+
+    /**
+     * Read the next row of the right side in the order of the index. The rows with a NULL value of a unique 
+     * index are read with a table scan at first. They are read without a change of the right row between.
+     * @return false if there are no more rows
+     */
+    private boolean readRight() throws Exception{
+        if(!isRightRead){
+            // the row can be set to null from a LEFT JOIN, the table scan must start at the begin
+            right.beforeFirst();
+            isRightRead = true;
+        }
+        if(isRightEnd || !rightScan.next()){
+            isRightEnd = true;
+            return false;
+        }
+        char[] low = rightLow.isNull() ? null : Index.createKey( rightLow );
+        char[] high = rightHigh.isNull() ? null : (rightHigh == rightLow) ? low : Index.createKey( rightHigh );
+        nextRight = new Entry( right.getRowPosition(), low, high );
+        return true;
+    }
+
+
+    /**
+     * Compare the digits like the order in the index. A shorter key is lesser.
+     */
+    private static int compare(char[] digits1, char[] digits2){
+        int length = Math.min( digits1.length, digits2.length );
+        for(int i=0; i<length; i++){
+            if(digits1[i] != digits2[i]){
+                return digits1[i] < digits2[i] ? -1 : 1;
+            }
+        }
+        return digits1.length - digits2.length;
+    }
+
+
+    /**
+     * A row of the right side.
+     */
+    private static final class Entry{
+        final long rowPosition;
+        final char[] low;
+        final char[] high;
+        boolean isMatched;
+
+        Entry(long rowPosition, char[] low, char[] high){
+            this.rowPosition = rowPosition;
+            this.low = low;
+            this.high = high;
+        }
+    }
+}
@@ -0,0 +1,243 @@
+/* =============================================================
+ * SmallSQL : a free Java DBMS library for the Java(tm) platform
+ * =============================================================
+ *
+ * (C) Copyright 2004-2011, by Volker Berlin.
+ *
+ * Project Info:  http://www.smallsql.de/
+ *
+ * This library is free software; you can redistribute it and/or modify it 
+ * under the terms of the GNU Lesser General Public License as published by 
+ * the Free Software Foundation; either version 2.1 of the License, or 
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but 
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY 
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public 
+ * License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, 
+ * USA.  
+ *
+ * [Java is a trademark or registered trademark of Sun Microsystems, Inc. 
+ * in the United States and other countries.]
+ *
+ * ---------------
+ * LZCodec.java
+ * ---------------
+ * Author: Volker Berlin
+ * 
+ */
+package smallsql.database;
+
+import java.sql.SQLException;
+import smallsql.tools.language.Language;
+
+
+/**
+ * A fast LZ77 codec for the compression of rows and LOB chunks. The format is the block format of LZ4. The data is a
+ * list of sequences. Every sequence is:
+ * 1 byte - token, the high 4 bits are the count of literals, the low 4 bits are the match length - 4
+ * n byte - additional count of literals if the count is 15, every byte 255 means more bytes follow
+ * n byte - literals
+ * 2 byte - offset of the match (little endian), is missing in the last sequence
+ * n byte - additional match length if the match length is 15, like the count of literals
+ * 
+ * The compression use a hash table of 4 byte sequences without any search of longer matches. It is fast and
+ * compress text with the 2 bytes per character of StoreImpl.writeChars() and padded CHAR columns well.
+ */
+final class LZCodec {
+
+	private static final int MIN_MATCH = 4;
+	private static final int MAX_OFFSET = 0xFFFF;
+	private static final int MAX_HASH_BITS = 12;
+	
+	
+	private LZCodec(){/* only static methods */}
+	
+	
+	/**
+	 * Compress the data.
+	 * @param src the data
+	 * @param srcOff the offset of the first byte in src
+	 * @param srcLen the count of bytes
+	 * @param dst the buffer for the compressed data
+	 * @param dstOff the offset in dst
+	 * @param dstLen the max count of bytes that can be written to dst
+	 * @return the count of compressed bytes or -1 if the compressed data does not fit into dstLen bytes
+	 */
+	static int compress(byte[] src, int srcOff, int srcLen, byte[] dst, int dstOff, int dstLen){
+		int srcEnd = srcOff + srcLen;
+		int dstEnd = dstOff + dstLen;
+		// the last bytes are ever literals, a match can not start there
+		int matchLimit = srcEnd - MIN_MATCH;
+		int hashBits = MAX_HASH_BITS;
+		while(hashBits > 6 && (1 << hashBits) > srcLen){
+			hashBits--;
+		}
+		// position + 1 of the last occurrence of a 4 byte sequence, 0 is an empty entry
+		int[] hashTable = new int[1 << hashBits];
+		int shift = 32 - hashBits;
+		
+		int anchor = srcOff;
+		int pos = srcOff;
+		int dstPos = dstOff;
+		while(pos < matchLimit){
+			int sequence = readInt( src, pos );
+			int hash = (sequence * 0x9E3779B1) >>> shift;
+			int ref = hashTable[hash] - 1;
+			hashTable[hash] = pos - srcOff + 1;
+			ref += srcOff;
+			if(ref < srcOff || pos - ref > MAX_OFFSET || readInt( src, ref ) != sequence){
+				// skip faster over data that does not compress
+				pos += 1 + ((pos - anchor) >> 6);
+				continue;
+			}
+			int matchLength = MIN_MATCH;
+			while(pos + matchLength < srcEnd && src[ref + matchLength] == src[pos + matchLength]){
+				matchLength++;
+			}
+			dstPos = writeSequence( src, anchor, pos - anchor, dst, dstPos, dstEnd, pos - ref, matchLength );
+			if(dstPos < 0){
+				return -1;
+			}
+			pos += matchLength;
+			anchor = pos;
+		}
+		dstPos = writeSequence( src, anchor, srcEnd - anchor, dst, dstPos, dstEnd, 0, 0 );
+		return dstPos < 0 ? -1 : dstPos - dstOff;
+	}
+	
+	
+	/**
+	 * Write one sequence.
+	 * @param matchLength the length of the match or 0 for the last sequence
+	 * @return the new position in dst or -1 if dst is too small
+	 */
+	private static int writeSequence(byte[] src, int literalOff, int literalLength, byte[] dst, int dstPos, int dstEnd, int offset, int matchLength){
+		// token + literal length + literals + offset + match length
+		int size = 1 + literalLength;
+		if(literalLength >= 15){
+			size += (literalLength - 15) / 255 + 1;
+		}
+		if(matchLength > 0){
+			size += 2;
+			if(matchLength - MIN_MATCH >= 15){
+				size += (matchLength - MIN_MATCH - 15) / 255 + 1;
+			}
+		}
+		if(dstPos + size > dstEnd){
+			return -1;
+		}
+		int tokenPos = dstPos++;
+		int token;
+		if(literalLength >= 15){
+			token = 15 << 4;
+			dstPos = writeLength( dst, dstPos, literalLength - 15 );
+		}else{
+			token = literalLength << 4;
+		}
+		System.arraycopy( src, literalOff, dst, dstPos, literalLength );
+		dstPos += literalLength;
+		if(matchLength > 0){
+			dst[ dstPos++ ] = (byte)offset;
+			dst[ dstPos++ ] = (byte)(offset >> 8);
+			int length = matchLength - MIN_MATCH;
+			if(length >= 15){
+				token |= 15;
+				dstPos = writeLength( dst, dstPos, length - 15 );
+			}else{
+				token |= length;
+			}
+		}
+		dst[ tokenPos ] = (byte)token;
+		return dstPos;
+	}
+	
+	
+	private static int writeLength(byte[] dst, int dstPos, int length){
+		while(length >= 255){
+			dst[ dstPos++ ] = (byte)255;
+			length -= 255;
+		}
+		dst[ dstPos++ ] = (byte)length;
+		return dstPos;
+	}
+	
+	
+	/**
+	 * Decompress data that was compressed with compress().
+	 * @param src the compressed data
+	 * @param srcOff the offset of the compressed data in src
+	 * @param srcLen the count of compressed bytes
+	 * @param dst the buffer for the data
+	 * @param dstOff the offset in dst
+	 * @param dstLen the count of bytes of the uncompressed data
+	 * @throws SQLException if the compressed data are corrupt
+	 */
+	static void decompress(byte[] src, int srcOff, int srcLen, byte[] dst, int dstOff, int dstLen) throws SQLException{
+		int srcEnd = srcOff + srcLen;
+		int dstEnd = dstOff + dstLen;
+		int srcPos = srcOff;
+		int dstPos = dstOff;
+		try{
+			while(true){
+				int token = src[ srcPos++ ] & 0xFF;
+				int literalLength = token >>> 4;
+				if(literalLength == 15){
+					int b;
+					do{
+						b = src[ srcPos++ ] & 0xFF;
+						literalLength += b;
+					}while(b == 255);
+				}
+				if(dstPos + literalLength > dstEnd){
+					break;
+				}
+				System.arraycopy( src, srcPos, dst, dstPos, literalLength );
+				srcPos += literalLength;
+				dstPos += literalLength;
+				if(srcPos >= srcEnd){
+					// the last sequence has no match
+					if(srcPos == srcEnd && dstPos == dstEnd){
+						return;
+					}
+					break;
+				}
+				int offset = (src[ srcPos++ ] & 0xFF) | ((src[ srcPos++ ] & 0xFF) << 8);
+				int matchLength = token & 15;
+				if(matchLength == 15){
+					int b;
+					do{
+						b = src[ srcPos++ ] & 0xFF;
+						matchLength += b;
+					}while(b == 255);
+				}
+				matchLength += MIN_MATCH;
+				int ref = dstPos - offset;
+				if(offset == 0 || ref < dstOff || dstPos + matchLength > dstEnd){
+					break;
+				}
+				if(offset >= matchLength){
+					System.arraycopy( dst, ref, dst, dstPos, matchLength );
+					dstPos += matchLength;
+				}else{
+					// overlapping match, a repeat of the last bytes
+					for(int i=0; i<matchLength; i++){
+						dst[ dstPos++ ] = dst[ ref++ ];
+					}
+				}
+			}
+		}catch(ArrayIndexOutOfBoundsException e){
+			// corrupt data, handled below
+		}
+		throw SmallSQLException.create(Language.CUSTOM_MESSAGE, "Corrupt compressed data");
+	}
+	
+	
+	private static int readInt(byte[] data, int offset){
+		return (data[offset] & 0xFF) | ((data[offset+1] & 0xFF) << 8) | ((data[offset+2] & 0xFF) << 16) | (data[offset+3] << 24);
+	}
+}
@@ -0,0 +1,314 @@
+/* =============================================================
+ * SmallSQL : a free Java DBMS library for the Java(tm) platform
+ * =============================================================
+ *
+ * (C) Copyright 2004-2011, by Volker Berlin.
+ *
+ * Project Info:  http://www.smallsql.de/
+ *
+ * This library is free software; you can redistribute it and/or modify it 
+ * under the terms of the GNU Lesser General Public License as published by 
+ * the Free Software Foundation; either version 2.1 of the License, or 
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but 
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY 
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public 
+ * License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, 
+ * USA.  
+ *
+ * [Java is a trademark or registered trademark of Sun Microsystems, Inc. 
+ * in the United States and other countries.]
+ *
+ * ---------------
+ * Lob.java
+ * ---------------
+ * Author: Volker Berlin
+ * 
+ */
+package smallsql.database;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.sql.SQLException;
+import smallsql.tools.language.Language;
+
+
+/**
+ * A LOB value for reading. The data are read with positional reads from the LOB file of the table only if they are
+ * requested. The format of the file is described in Lobs. A Lob can also wrap a value in memory, for example the
+ * value of a function.
+ */
+final class Lob {
+
+	private final FileChannel raFile;
+	private final byte[] data;
+	private final boolean isChars;
+	/** the length of the value in bytes */
+	private final long length;
+	private final long firstPos;
+	
+	// the current chunk, guarded by this
+	/** the offset of the first byte of the current chunk in the value */
+	private long chunkStart;
+	/** the count of bytes in the current chunk */
+	private long chunkLength;
+	/** the file position of the data of the current chunk */
+	private long chunkDataPos;
+	/** the file position of the next chunk or -1 */
+	private long nextChunk;
+	/** the count of compressed bytes of the current chunk or -1 if the chunk is not compressed */
+	private int chunkPackedLength;
+	/** the uncompressed data of the current chunk if it is compressed, null if not loaded yet */
+	private byte[] chunkData;
+	
+	
+	/**
+	 * Read the header of a LOB value.
+	 * @param raFile the LOB file
+	 * @param filePos the position of the first chunk
+	 * @param isChars true for character values
+	 */
+	Lob(FileChannel raFile, long filePos, boolean isChars) throws SQLException, IOException{
+		this.raFile = raFile;
+		this.data = null;
+		this.isChars = isChars;
+		this.firstPos = filePos;
+		if(filePos < 0 || filePos + StoreImpl.PAGE_CONTROL_SIZE + 4 > raFile.size()){
+			throw SmallSQLException.create(Language.LOB_DELETED);
+		}
+		ByteBuffer buffer = ByteBuffer.allocate( 4 );
+		Utils.readFully( raFile, buffer, filePos + StoreImpl.PAGE_CONTROL_SIZE );
+		int marker = buffer.getInt( 0 );
+		if(marker >= 0){
+			// old format, the complete value in one page
+			length = isChars ? marker * 2L : marker;
+			chunkStart = 0;
+			chunkLength = length;
+			chunkDataPos = filePos + StoreImpl.PAGE_CONTROL_SIZE + 4;
+			nextChunk = -1;
+			chunkPackedLength = -1;
+		}else{
+			loadChunk( filePos, 0 );
+			length = readLong( filePos + StoreImpl.PAGE_CONTROL_SIZE + 4 );
+		}
+	}
+	
+	
+	/**
+	 * Create a Lob for a value in memory.
+	 * @param data the value; characters with 2 bytes per character in little endian order
+	 * @param isChars true for character values
+	 */
+	Lob(byte[] data, boolean isChars){
+		this.raFile = null;
+		this.data = data;
+		this.isChars = isChars;
+		this.length = data.length;
+		this.firstPos = -1;
+	}
+	
+	
+	/**
+	 * Create a Lob for a character value in memory.
+	 */
+	Lob(String value){
+		this( toBytes( value ), true );
+	}
+	
+	
+	private static byte[] toBytes(String value){
+		byte[] bytes = new byte[value.length() * 2];
+		for(int i=0, offset=0; i<value.length(); i++){
+			char c = value.charAt(i);
+			bytes[ offset++ ] = (byte)(c);
+			bytes[ offset++ ] = (byte)(c >> 8);
+		}
+		return bytes;
+	}
+	
+	
+	/**
+	 * The length of the value in bytes.
+	 */
+	long length(){
+		return length;
+	}
+	
+	
+	boolean isChars(){
+		return isChars;
+	}
+	
+	
+	/**
+	 * Read bytes of the value.
+	 * @param pos the offset in the value, starting with 0
+	 * @return the count of read bytes or -1 if pos is at the end of the value
+	 */
+	synchronized int read(long pos, byte[] b, int off, int len) throws IOException, SQLException{
+		if(pos >= length){
+			return -1;
+		}
+		len = (int)Math.min( len, length - pos );
+		if(data != null){
+			System.arraycopy( data, (int)pos, b, off, len );
+			return len;
+		}
+		if(pos < chunkStart){
+			loadChunk( firstPos, 0 );
+		}
+		while(pos >= chunkStart + chunkLength){
+			if(nextChunk < 0){
+				throw SmallSQLException.create(Language.LOB_DELETED);
+			}
+			loadChunk( nextChunk, chunkStart + chunkLength );
+		}
+		len = (int)Math.min( len, chunkStart + chunkLength - pos );
+		if(chunkPackedLength >= 0){
+			if(chunkData == null){
+				byte[] packed = new byte[chunkPackedLength];
+				Utils.readFully( raFile, ByteBuffer.wrap( packed ), chunkDataPos );
+				chunkData = new byte[(int)chunkLength];
+				LZCodec.decompress( packed, 0, packed.length, chunkData, 0, chunkData.length );
+			}
+			System.arraycopy( chunkData, (int)(pos - chunkStart), b, off, len );
+			return len;
+		}
+		Utils.readFully( raFile, ByteBuffer.wrap( b, off, len ).slice(), chunkDataPos + (pos - chunkStart) );
+		return len;
+	}
+	
+	
+	/**
+	 * Read the header of a chunk. The data of a compressed chunk are loaded on the first read.
+	 */
+	private void loadChunk(long filePos, long start) throws IOException{
+		ByteBuffer buffer = ByteBuffer.allocate( StoreImpl.PAGE_CONTROL_SIZE + Lobs.CHUNK_HEADER_SIZE );
+		Utils.readFully( raFile, buffer, filePos );
+		int sizeUsed = buffer.getInt( 8 );
+		chunkStart = start;
+		chunkLength = sizeUsed - buffer.capacity();
+		chunkDataPos = filePos + buffer.capacity();
+		nextChunk = buffer.getLong( StoreImpl.PAGE_CONTROL_SIZE + 12 );
+		chunkData = null;
+		chunkPackedLength = -1;
+		if(buffer.getInt( StoreImpl.PAGE_CONTROL_SIZE ) == Lobs.CHUNKED_LZ){
+			chunkPackedLength = (int)chunkLength - 4;
+			chunkLength = readInt( chunkDataPos );
+			chunkDataPos += 4;
+		}
+	}
+	
+	
+	private int readInt(long filePos) throws IOException{
+		ByteBuffer buffer = ByteBuffer.allocate( 4 );
+		Utils.readFully( raFile, buffer, filePos );
+		return buffer.getInt( 0 );
+	}
+	
+	
+	private long readLong(long filePos) throws IOException{
+		ByteBuffer buffer = ByteBuffer.allocate( 8 );
+		Utils.readFully( raFile, buffer, filePos );
+		return buffer.getLong( 0 );
+	}
+	
+	
+	/**
+	 * Read the complete value.
+	 */
+	byte[] getBytes() throws IOException, SQLException{
+		if(data != null){
+			return data;
+		}
+		if(length > Integer.MAX_VALUE){
+			throw SmallSQLException.create(Language.CUSTOM_MESSAGE, "LOB value is too large for a byte array: " + length);
+		}
+		byte[] bytes = new byte[(int)length];
+		int offset = 0;
+		while(offset < bytes.length){
+			offset += read( offset, bytes, offset, bytes.length - offset );
+		}
+		return bytes;
+	}
+	
+	
+	/**
+	 * Read the complete value of a character LOB.
+	 */
+	String getString() throws IOException, SQLException{
+		byte[] bytes = getBytes();
+		char[] chars = new char[bytes.length / 2];
+		for(int i=0, offset=0; i<chars.length; i++){
+			chars[i] = (char)((bytes[ offset++ ] & 0xFF) | (bytes[ offset++ ] << 8));
+		}
+		return new String( chars );
+	}
+	
+	
+	/**
+	 * Create a stream over a part of the value.
+	 * @param pos the offset in bytes of the first byte
+	 * @param count the count of bytes
+	 */
+	InputStream getInputStream(final long pos, final long count){
+		return new InputStream(){
+			private long offset = pos;
+			private final long end = Math.min( length, pos + count );
+			
+			@Override
+			public int read() throws IOException{
+				byte[] b = new byte[1];
+				return read( b, 0, 1 ) < 0 ? -1 : b[0] & 0xFF;
+			}
+			
+			@Override
+			public int read(byte[] b, int off, int len) throws IOException{
+				if(offset >= end){
+					return -1;
+				}
+				if(len == 0){
+					return 0;
+				}
+				try{
+					int count = Lob.this.read( offset, b, off, (int)Math.min( len, end - offset ) );
+					offset += count;
+					return count;
+				}catch(SQLException e){
+					throw new IOException( e.getMessage() );
+				}
+			}
+			
+			@Override
+			public long skip(long n){
+				n = Math.max( 0, Math.min( n, end - offset ) );
+				offset += n;
+				return n;
+			}
+			
+			@Override
+			public int available(){
+				return (int)Math.min( Integer.MAX_VALUE, end - offset );
+			}
+		};
+	}
+	
+	
+	/**
+	 * Create a reader over a part of a character value.
+	 * @param pos the offset in characters of the first character
+	 * @param count the count of characters
+	 */
+	Reader getReader(long pos, long count) throws IOException{
+		return new InputStreamReader( getInputStream( pos * 2, count * 2 ), "UTF-16LE" );
+	}
+}
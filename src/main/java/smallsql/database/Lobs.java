@@ -34,15 +34,43 @@
 package smallsql.database;
 
 import java.io.File;
+import java.io.InputStream;
+import java.io.Reader;
+import java.nio.ByteBuffer;
 
 /**
+ * The file with the LOB values (LONGVARBINARY, LONGVARCHAR, BLOB, CLOB, JAVA_OBJECT) of a table.
+ * 
+ * A value is saved in chunks that it can be written and read as stream with bounded memory. Every chunk is a page 
+ * with a page control block (see StoreImpl) and follow data:
+ * 4 byte - CHUNKED marker (-1)
+ * 8 byte - length of the value in bytes, only valid in the first chunk
+ * 8 byte - position of the next chunk or -1
+ * ... data of the chunk
+ * 
+ * If the table is compressed then a chunk can be marked with CHUNKED_LZ (-2). Then the data of the chunk start with 
+ * the length of the uncompressed data followed by the data compressed with the LZCodec. 
+ * 
+ * Older versions saved the value in one page. There the page control block is followed by the length of the value
+ * (in characters for LONGVARCHAR) and the complete value. Character values are saved with 2 bytes per character.
+ * 
+ * A value is never changed after it was written. New values are appended at the end of the file.
+ * 
  * @author Volker Berlin
  */
 class Lobs extends Table {
+	
+	static final int CHUNKED = -1;
+	static final int CHUNKED_LZ = -2;
+	/** the size of the chunk header after the page control block */
+	static final int CHUNK_HEADER_SIZE = 20;
+	/** the max size of the data in one chunk */
+	static final int CHUNK_SIZE = 65536;
 
 	Lobs(Table table) throws Exception{
 		super(table.database, table.name);
-		raFile = Utils.openRaFile( getFile(database), database.isReadOnly() );
+		compression = table.compression;
+		raFile = database.openFile( getFile(database) );
 	}
 	
 	
@@ -54,5 +82,122 @@ class Lobs extends Table {
 		return new File( Utils.createLobFileName( database, name ) );
 	}
 	
-
+	
+	/**
+	 * Get a value for reading.
+	 * @param filePos the position of the first chunk
+	 * @param isChars true for character values
+	 */
+	Lob getLob(long filePos, boolean isChars) throws Exception{
+		return new Lob( raFile, filePos, isChars );
+	}
+	
+	
+	/**
+	 * Write a new value. The source is read chunk by chunk. The chunks are appended at the end of the file and then
+	 * linked with the previous chunk.
+	 * @param source an InputStream for binary values or a Reader for character values
+	 * @return the position of the first chunk
+	 */
+	long write(Object source) throws Exception{
+		final int dataOffset = StoreImpl.PAGE_CONTROL_SIZE + CHUNK_HEADER_SIZE;
+		byte[] chunk = new byte[dataOffset + CHUNK_SIZE];
+		char[] chars = (source instanceof Reader) ? new char[CHUNK_SIZE / 2] : null;
+		byte[] packed = isCompressed() ? new byte[chunk.length] : null;
+		long firstPos = -1;
+		long prevPos = -1;
+		long length = 0;
+		while(true){
+			int count = (chars != null) ?
+					fill( (Reader)source, chars, chunk, dataOffset ) :
+					fill( (InputStream)source, chunk, dataOffset );
+			if(count == 0 && firstPos >= 0){
+				break;
+			}
+			length += count;
+			byte[] page = chunk;
+			int size = dataOffset + count;
+			int marker = CHUNKED;
+			if(packed != null){
+				int packedLength = LZCodec.compress( chunk, dataOffset, count, packed, dataOffset + 4, count - 5 );
+				if(packedLength >= 0){
+					page = packed;
+					size = dataOffset + 4 + packedLength;
+					marker = CHUNKED_LZ;
+					ByteBuffer.wrap( packed ).putInt( dataOffset, count );
+				}
+			}
+			StoreImpl.writePageControl( page, size );
+			ByteBuffer buffer = ByteBuffer.wrap( page );
+			buffer.putInt( StoreImpl.PAGE_CONTROL_SIZE, marker );
+			buffer.putLong( StoreImpl.PAGE_CONTROL_SIZE + 4, length );
+			buffer.putLong( StoreImpl.PAGE_CONTROL_SIZE + 12, -1 );
+			long pos;
+			// the size of the file and the write must be atomic
+			synchronized(raFile){
+				pos = raFile.size();
+				Utils.writeFully( raFile, ByteBuffer.wrap( page, 0, size ), pos );
+			}
+			if(prevPos >= 0){
+				writeLong( prevPos + StoreImpl.PAGE_CONTROL_SIZE + 12, pos );
+			}else{
+				firstPos = pos;
+			}
+			prevPos = pos;
+			if(count < CHUNK_SIZE){
+				break;
+			}
+		}
+		if(prevPos != firstPos){
+			writeLong( firstPos + StoreImpl.PAGE_CONTROL_SIZE + 4, length );
+		}
+		return firstPos;
+	}
+	
+	
+	private void writeLong(long filePos, long value) throws Exception{
+		ByteBuffer buffer = ByteBuffer.allocate( 8 );
+		buffer.putLong( 0, value );
+		Utils.writeFully( raFile, buffer, filePos );
+	}
+	
+	
+	/**
+	 * Read bytes until the chunk is full or the end of the stream.
+	 * @return the count of read bytes
+	 */
+	private static int fill(InputStream in, byte[] chunk, int offset) throws Exception{
+		int count = 0;
+		while(count < CHUNK_SIZE){
+			int read = in.read( chunk, offset + count, CHUNK_SIZE - count );
+			if(read < 0){
+				break;
+			}
+			count += read;
+		}
+		return count;
+	}
+	
+	
+	/**
+	 * Read characters until the chunk is full or the end of the stream. The characters are saved with 2 bytes in
+	 * little endian order like StoreImpl.writeChars().
+	 * @return the count of written bytes
+	 */
+	private static int fill(Reader reader, char[] chars, byte[] chunk, int offset) throws Exception{
+		int count = 0;
+		while(count < chars.length){
+			int read = reader.read( chars, count, chars.length - count );
+			if(read < 0){
+				break;
+			}
+			count += read;
+		}
+		for(int i=0; i<count; i++){
+			char c = chars[i];
+			chunk[ offset++ ] = (byte)(c);
+			chunk[ offset++ ] = (byte)(c >> 8);
+		}
+		return count * 2;
+	}
 }
@@ -0,0 +1,414 @@
+/* =============================================================
+ * SmallSQL : a free Java DBMS library for the Java(tm) platform
+ * =============================================================
+ *
+ * (C) Copyright 2004-2011, by Volker Berlin.
+ *
+ * Project Info:  http://www.smallsql.de/
+ *
+ * This library is free software; you can redistribute it and/or modify it 
+ * under the terms of the GNU Lesser General Public License as published by 
+ * the Free Software Foundation; either version 2.1 of the License, or 
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but 
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY 
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public 
+ * License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, 
+ * USA.  
+ *
+ * [Java is a trademark or registered trademark of Sun Microsystems, Inc. 
+ * in the United States and other countries.]
+ *
+ * ---------------
+ * LoggedFileChannel.java
+ * ---------------
+ * Author: Volker Berlin
+ * 
+ */
+package smallsql.database;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * A table or lob file of a database with a WriteAheadLog. The writes are not written to the file. They are saved in 
+ * chunks in the memory and appended to the log. A read merge the chunks with the data of the file. On a checkpoint
+ * the chunks are written to the file with flush().
+ */
+final class LoggedFileChannel extends FileChannel {
+
+	private static final int CHUNK_SIZE = 4096;
+	
+	private final WriteAheadLog log;
+	private final FileChannel file;
+	private final String fileName;
+	/** the changed chunks; key is the chunk number as Long, value is a byte[CHUNK_SIZE] */
+	private final HashMap chunks = new HashMap();
+	private final ReentrantReadWriteLock chunkLock = new ReentrantReadWriteLock();
+	/** true if there are chunks, a read without chunks need no lock */
+	private volatile boolean dirty;
+	/** the logical size of the file including the chunks */
+	private volatile long size;
+	/** the position for the relative read and write methods */
+	private long position;
+	
+	
+	LoggedFileChannel(WriteAheadLog log, FileChannel file, String fileName) throws IOException{
+		this.log = log;
+		this.file = file;
+		this.fileName = fileName;
+		this.size = file.size();
+	}
+	
+	
+	/**
+	 * The name of the file in the database directory.
+	 */
+	String getFileName(){
+		return fileName;
+	}
+	
+	
+	boolean isDirty(){
+		return dirty;
+	}
+	
+	
+	@Override
+	public int read(ByteBuffer dst, long filePos) throws IOException{
+		if(!dirty){
+			return file.read( dst, filePos );
+		}
+		chunkLock.readLock().lock();
+		try{
+			if(filePos >= size){
+				return -1;
+			}
+			int count = (int)Math.min( dst.remaining(), size - filePos );
+			int done = 0;
+			while(done < count){
+				long pos = filePos + done;
+				int offset = (int)(pos % CHUNK_SIZE);
+				byte[] chunk = (byte[])chunks.get( new Long( pos / CHUNK_SIZE ) );
+				int length = Math.min( CHUNK_SIZE - offset, count - done );
+				if(chunk != null){
+					dst.put( chunk, offset, length );
+				}else{
+					// read all following chunks that are not in memory at once
+					while(done + length < count && !chunks.containsKey( new Long( (pos + length) / CHUNK_SIZE ) )){
+						length = Math.min( length + CHUNK_SIZE, count - done );
+					}
+					readFile( dst, pos, length );
+				}
+				done += length;
+			}
+			return count;
+		}finally{
+			chunkLock.readLock().unlock();
+		}
+	}
+	
+	
+	/**
+	 * Read from the file. Bytes after the end of the file are 0, this can occur if there was written after the end.
+	 */
+	private void readFile(ByteBuffer dst, long filePos, int length) throws IOException{
+		int start = dst.position();
+		ByteBuffer buffer = dst.duplicate();
+		buffer.limit( start + length );
+		while(buffer.hasRemaining()){
+			if(file.read( buffer, filePos + buffer.position() - start ) < 0){
+				while(buffer.hasRemaining()){
+					buffer.put( (byte)0 );
+				}
+			}
+		}
+		dst.position( start + length );
+	}
+	
+	
+	@Override
+	public int write(ByteBuffer src, long filePos) throws IOException{
+		int count = src.remaining();
+		byte[] data = new byte[count];
+		src.get( data );
+		log.enterWrite();
+		try{
+			chunkLock.writeLock().lock();
+			try{
+				int done = 0;
+				while(done < count){
+					long pos = filePos + done;
+					Long key = new Long( pos / CHUNK_SIZE );
+					int offset = (int)(pos % CHUNK_SIZE);
+					int length = Math.min( CHUNK_SIZE - offset, count - done );
+					byte[] chunk = (byte[])chunks.get( key );
+					if(chunk == null){
+						chunk = new byte[CHUNK_SIZE];
+						if(offset != 0 || length != CHUNK_SIZE){
+							long chunkPos = key.longValue() * CHUNK_SIZE;
+							if(chunkPos < size){
+								readFile( ByteBuffer.wrap( chunk, 0, (int)Math.min( CHUNK_SIZE, size - chunkPos ) ), chunkPos, (int)Math.min( CHUNK_SIZE, size - chunkPos ) );
+							}
+						}
+						chunks.put( key, chunk );
+						log.addDirtySize( CHUNK_SIZE );
+					}
+					System.arraycopy( data, done, chunk, offset, length );
+					done += length;
+				}
+				dirty = true;
+				if(filePos + count > size){
+					size = filePos + count;
+				}
+				// append to the log before another thread can change the same bytes, else the order can differ
+				log.write( this, filePos, data );
+			}finally{
+				chunkLock.writeLock().unlock();
+			}
+		}finally{
+			log.exitWrite();
+		}
+		return count;
+	}
+	
+	
+	/**
+	 * Write all chunks to the file. Is called from the checkpoint of the WriteAheadLog.
+	 */
+	void flush() throws IOException{
+		if(!dirty){
+			return;
+		}
+		chunkLock.writeLock().lock();
+		try{
+			// write the chunks in file order; contiguous chunks are written together with one gathering write
+			Long[] keys = (Long[])chunks.keySet().toArray( new Long[chunks.size()] );
+			Arrays.sort( keys );
+			ArrayList buffers = new ArrayList();
+			long startPos = 0;
+			long nextPos = -1;
+			for(int i=0; i<keys.length; i++){
+				long chunkPos = keys[i].longValue() * CHUNK_SIZE;
+				int length = (int)Math.min( CHUNK_SIZE, size - chunkPos );
+				if(length <= 0){
+					break;
+				}
+				if(chunkPos != nextPos){
+					writeBuffers( buffers, startPos );
+					startPos = chunkPos;
+				}
+				buffers.add( ByteBuffer.wrap( (byte[])chunks.get( keys[i] ), 0, length ) );
+				nextPos = chunkPos + length;
+			}
+			writeBuffers( buffers, startPos );
+			file.force( false );
+			chunks.clear();
+			dirty = false;
+		}finally{
+			chunkLock.writeLock().unlock();
+		}
+	}
+	
+	
+	/**
+	 * Write the buffers with one gathering write to the file and clear the list.
+	 */
+	private void writeBuffers(ArrayList buffers, long pos) throws IOException{
+		if(buffers.size() == 0){
+			return;
+		}
+		ByteBuffer[] array = (ByteBuffer[])buffers.toArray( new ByteBuffer[buffers.size()] );
+		long remaining = 0;
+		for(int i=0; i<array.length; i++){
+			remaining += array[i].remaining();
+		}
+		file.position( pos );
+		while(remaining > 0){
+			remaining -= file.write( array );
+		}
+		buffers.clear();
+	}
+	
+	
+	@Override
+	public int read(ByteBuffer dst) throws IOException{
+		synchronized(this){
+			int count = read( dst, position );
+			if(count > 0){
+				position += count;
+			}
+			return count;
+		}
+	}
+	
+	
+	@Override
+	public long read(ByteBuffer[] dsts, int offset, int length) throws IOException{
+		long count = 0;
+		for(int i=offset; i<offset+length; i++){
+			int read = read( dsts[i] );
+			if(read < 0){
+				return count == 0 ? -1 : count;
+			}
+			count += read;
+			if(dsts[i].hasRemaining()){
+				break;
+			}
+		}
+		return count;
+	}
+	
+	
+	@Override
+	public int write(ByteBuffer src) throws IOException{
+		synchronized(this){
+			int count = write( src, position );
+			position += count;
+			return count;
+		}
+	}
+	
+	
+	@Override
+	public long write(ByteBuffer[] srcs, int offset, int length) throws IOException{
+		long count = 0;
+		for(int i=offset; i<offset+length; i++){
+			count += write( srcs[i] );
+		}
+		return count;
+	}
+	
+	
+	@Override
+	public synchronized long position(){
+		return position;
+	}
+	
+	
+	@Override
+	public synchronized FileChannel position(long newPosition){
+		position = newPosition;
+		return this;
+	}
+	
+	
+	@Override
+	public long size(){
+		return size;
+	}
+	
+	
+	@Override
+	public FileChannel truncate(long newSize) throws IOException{
+		if(newSize < size){
+			// the log can contain writes after the new size, a replay would restore them
+			if(!log.checkpoint( true )){
+				throw new IOException( "The file " + fileName + " can not be truncated inside of a commit." );
+			}
+			chunkLock.writeLock().lock();
+			try{
+				flush();
+				file.truncate( newSize );
+				size = newSize;
+			}finally{
+				chunkLock.writeLock().unlock();
+			}
+		}
+		return this;
+	}
+	
+	
+	/**
+	 * The data are durable with the log. There is nothing to do.
+	 */
+	@Override
+	public void force(boolean metaData){
+		// nothing
+	}
+	
+	
+	@Override
+	public long transferTo(long pos, long count, WritableByteChannel target) throws IOException{
+		// the chunks must be merged, the bytes are copied with read()
+		ByteBuffer buffer = ByteBuffer.allocate( CHUNK_SIZE );
+		long done = 0;
+		while(done < count){
+			buffer.clear();
+			buffer.limit( (int)Math.min( CHUNK_SIZE, count - done ) );
+			int read = read( buffer, pos + done );
+			if(read <= 0){
+				break;
+			}
+			buffer.flip();
+			int written = target.write( buffer );
+			done += written;
+			if(written < read){
+				// a non blocking target is full
+				break;
+			}
+		}
+		return done;
+	}
+	
+	
+	@Override
+	public long transferFrom(ReadableByteChannel src, long pos, long count) throws IOException{
+		if(pos > size){
+			return 0;
+		}
+		// every piece is saved in the chunks and logged like a write()
+		ByteBuffer buffer = ByteBuffer.allocate( CHUNK_SIZE );
+		long done = 0;
+		while(done < count){
+			buffer.clear();
+			buffer.limit( (int)Math.min( CHUNK_SIZE, count - done ) );
+			int read = src.read( buffer );
+			if(read <= 0){
+				break;
+			}
+			buffer.flip();
+			done += write( buffer, pos + done );
+		}
+		return done;
+	}
+	
+	
+	@Override
+	public MappedByteBuffer map(MapMode mode, long pos, long length) throws IOException{
+		throw new IOException( "The file " + fileName + " can not be mapped because the changes are only in memory and in the log." );
+	}
+	
+	
+	@Override
+	public FileLock lock(long pos, long length, boolean shared) throws IOException{
+		return file.lock( pos, length, shared );
+	}
+	
+	
+	@Override
+	public FileLock tryLock(long pos, long length, boolean shared) throws IOException{
+		return file.tryLock( pos, length, shared );
+	}
+	
+	
+	@Override
+	protected void implCloseChannel() throws IOException{
+		log.close( this );
+		file.close();
+	}
+}
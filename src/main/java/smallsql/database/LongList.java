@@ -77,6 +77,20 @@ class LongList {
 	}
 	
 	
+	final void setSize(int newSize){
+		if(newSize > data.length) resize(newSize);
+		size = newSize;
+	}
+	
+	
+	/**
+	 * Sort the values in ascending order.
+	 */
+	final void sort(){
+		java.util.Arrays.sort(data, 0, size);
+	}
+	
+	
 	private final void resize(int newSize){
 		long[] dataNew = new long[newSize];
 		System.arraycopy(data, 0, dataNew, 0, size);
@@ -0,0 +1,221 @@
+/* =============================================================
+ * SmallSQL : a free Java DBMS library for the Java(tm) platform
+ * =============================================================
+ *
+ * (C) Copyright 2004-2011, by Volker Berlin.
+ *
+ * Project Info:  http://www.smallsql.de/
+ *
+ * This library is free software; you can redistribute it and/or modify it 
+ * under the terms of the GNU Lesser General Public License as published by 
+ * the Free Software Foundation; either version 2.1 of the License, or 
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but 
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY 
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public 
+ * License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, 
+ * USA.  
+ *
+ * [Java is a trademark or registered trademark of Sun Microsystems, Inc. 
+ * in the United States and other countries.]
+ *
+ * ---------------
+ * PageCache.java
+ * ---------------
+ * Author: Volker Berlin
+ * 
+ */
+package smallsql.database;
+
+import java.nio.channels.FileChannel;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A LRU cache of committed pages for all table and lob files of one Database. The key of a page is the file handle and
+ * the file offset of the page. The cached data are the complete page including the page control block like it was read
+ * from the file. The byte arrays in the cache are shared and must never be modified by the reader.
+ * 
+ * The cache is coherent with StorePage.commit() because TableStorePage update the cache after every write.
+ */
+final class PageCache {
+
+    /** The memory budget of the cache in bytes. */
+    private final long maxSize;
+    /** The sum of the size of all cached pages. */
+    private long size;
+    private long hitCount;
+    private long missCount;
+    /**
+     * Is incremented on every write. A reader that has read a page from the file can only add it to the cache if there
+     * was no write in the meantime. Else the cache can include an old version of the page.
+     */
+    private long writeStamp;
+    
+    /** LinkedHashMap in access order, the first entry is the eldest */
+    private final LinkedHashMap pages = new LinkedHashMap(256, 0.75f, true);
+    
+    
+    /**
+     * Create a new page cache.
+     * @param maxSize the memory budget in bytes. A value of 0 disable the cache.
+     */
+    PageCache(long maxSize){
+        this.maxSize = maxSize;
+    }
+    
+    
+    /**
+     * Get a page from the cache.
+     * @param file the file of the page
+     * @param filePos the offset of the page in the file
+     * @return the page data or null if the page is not in the cache
+     */
+    final synchronized byte[] get(FileChannel file, long filePos){
+        if(maxSize <= 0){
+            return null;
+        }
+        byte[] page = (byte[])pages.get( new PageKey(file, filePos) );
+        if(page != null){
+            hitCount++;
+        }else{
+            missCount++;
+        }
+        return page;
+    }
+    
+    
+    /**
+     * Get the current write stamp. The value must be request before the page is read from file.
+     * @see #put(FileChannel, long, byte[], long)
+     */
+    final synchronized long getWriteStamp(){
+        return writeStamp;
+    }
+    
+    
+    /**
+     * Add a page that was read from the file.
+     * @param file the file of the page
+     * @param filePos the offset of the page in the file
+     * @param page the complete data of the page, the array must not be changed later
+     * @param stamp the write stamp before the page was read
+     */
+    final synchronized void put(FileChannel file, long filePos, byte[] page, long stamp){
+        if(stamp != writeStamp || page.length > maxSize){
+            return;
+        }
+        byte[] old = (byte[])pages.put( new PageKey(file, filePos), page );
+        if(old != null){
+            size -= old.length;
+        }
+        size += page.length;
+        shrink();
+    }
+    
+    
+    /**
+     * Is called after a page was written to the file. If the page is in the cache then the cached data will be replaced.
+     * @param file the file of the page
+     * @param filePos the offset of the page in the file
+     * @param data the written data, the data are copied
+     * @param length the count of written bytes
+     */
+    final synchronized void update(FileChannel file, long filePos, byte[] data, int length){
+        writeStamp++;
+        if(maxSize <= 0){
+            return;
+        }
+        PageKey key = new PageKey(file, filePos);
+        byte[] old = (byte[])pages.get( key );
+        if(old != null){
+            byte[] page = new byte[length];
+            System.arraycopy( data, 0, page, 0, length );
+            pages.put( key, page );
+            size += length - old.length;
+            shrink();
+        }
+    }
+    
+    
+    /**
+     * Remove all pages of a file. This must be called before the file is closed.
+     */
+    final synchronized void remove(FileChannel file){
+        writeStamp++;
+        Iterator iterator = pages.entrySet().iterator();
+        while(iterator.hasNext()){
+            Map.Entry entry = (Map.Entry)iterator.next();
+            if(((PageKey)entry.getKey()).file == file){
+                size -= ((byte[])entry.getValue()).length;
+                iterator.remove();
+            }
+        }
+    }
+    
+    
+    /**
+     * Remove the eldest pages until the cache is within its memory budget.
+     */
+    private void shrink(){
+        Iterator iterator = pages.values().iterator();
+        while(size > maxSize && iterator.hasNext()){
+            size -= ((byte[])iterator.next()).length;
+            iterator.remove();
+        }
+    }
+    
+    
+    final synchronized long getHitCount(){
+        return hitCount;
+    }
+    
+    
+    final synchronized long getMissCount(){
+        return missCount;
+    }
+    
+    
+    final synchronized long getSize(){
+        return size;
+    }
+    
+    
+    final long getMaxSize(){
+        return maxSize;
+    }
+    
+    
+    /**
+     * The key of a page in the cache.
+     */
+    private static final class PageKey{
+        final FileChannel file;
+        final long filePos;
+        
+        PageKey(FileChannel file, long filePos){
+            this.file = file;
+            this.filePos = filePos;
+        }
+        
+        @Override
+        public int hashCode(){
+            return file.hashCode() ^ (int)filePos ^ (int)(filePos >> 32);
+        }
+        
+        @Override
+        public boolean equals(Object obj){
+            if(!(obj instanceof PageKey)){
+                return false;
+            }
+            PageKey key = (PageKey)obj;
+            return file == key.file && filePos == key.filePos;
+        }
+    }
+}
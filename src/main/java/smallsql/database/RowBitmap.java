@@ -0,0 +1,683 @@
+/* =============================================================
+ * SmallSQL : a free Java DBMS library for the Java(tm) platform
+ * =============================================================
+ *
+ * (C) Copyright 2004-2011, by Volker Berlin.
+ *
+ * Project Info:  http://www.smallsql.de/
+ *
+ * This library is free software; you can redistribute it and/or modify it 
+ * under the terms of the GNU Lesser General Public License as published by 
+ * the Free Software Foundation; either version 2.1 of the License, or 
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but 
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY 
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public 
+ * License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, 
+ * USA.  
+ *
+ * [Java is a trademark or registered trademark of Sun Microsystems, Inc. 
+ * in the United States and other countries.]
+ *
+ * ---------------
+ * RowBitmap.java
+ * ---------------
+ * Author: Volker Berlin
+ * 
+ */
+package smallsql.database;
+
+import java.sql.SQLException;
+
+/**
+ * A compressed set of row positions (RowID) for the not unique values of an index. It is organized like a 
+ * Roaring bitmap. The high 48 bits of a row position select a container, the low 16 bits are saved in the 
+ * container. A container with few values is a sorted char[], a container with more as 4096 values is a 
+ * bitmap of 65536 bits. A container with a single value needs no object, this is the typical case for 
+ * a value that occurs rarely in a large table.
+ * <p>
+ * Two sets can be combined with and() and or() without reading the rows. This is used to combine the 
+ * results of multiple indexes for a WHERE clause.
+ * 
+ * @author Volker Berlin
+ */
+final class RowBitmap {
+
+	/** A container with more values is saved as bitmap. */
+	static final private int MAX_ARRAY = 4096;
+	static final private int BITMAP_WORDS = 1024;
+
+	/** The high 48 bits of the row positions in ascending order. */
+	private long[] keys = new long[1];
+	/** A char[] or a long[] for every key or null if there is only a single value. */
+	private Object[] containers = new Object[1];
+	/** The count of values in every container or the single value if the container is null. */
+	private int[] sizes = new int[1];
+	/** The count of used containers. */
+	private int count;
+	/** The count of values. */
+	private int size;
+	
+	
+	RowBitmap(){
+	}
+	
+	
+	RowBitmap(long rowOffset){
+		add( rowOffset );
+	}
+	
+	
+	/**
+	 * Load a set that was saved with save().
+	 */
+	RowBitmap(StoreImpl input) throws SQLException{
+		int length = input.readInt();
+		for(int i=0; i<length; i++){
+			add( input.readLong() );
+		}
+	}
+	
+	
+	void save(StoreImpl output) throws SQLException{
+		output.writeInt( size );
+		long rowOffset = -1;
+		while((rowOffset = getNext( rowOffset )) >= 0){
+			output.writeLong( rowOffset );
+		}
+	}
+	
+	
+	final int getSize(){
+		return size;
+	}
+	
+	
+	final void add(long rowOffset){
+		long key = rowOffset >>> 16;
+		int low = (int)rowOffset & 0xFFFF;
+		int idx = findKey( key );
+		if(idx < 0){
+			insertContainer( -(idx+1), key, null, low );
+			size++;
+			return;
+		}
+		Object container = containers[idx];
+		int length = sizes[idx];
+		if(container == null){
+			// the second value of the container
+			if(length == low){
+				return;
+			}
+			char[] array = new char[4];
+			array[0] = (char)Math.min( length, low );
+			array[1] = (char)Math.max( length, low );
+			containers[idx] = array;
+			sizes[idx] = 2;
+			size++;
+			return;
+		}
+		if(container instanceof long[]){
+			long[] bitmap = (long[])container;
+			long bit = 1L << low;
+			if((bitmap[low >>> 6] & bit) != 0){
+				return;
+			}
+			bitmap[low >>> 6] |= bit;
+		}else{
+			char[] array = (char[])container;
+			int pos = binarySearch( array, length, low );
+			if(pos >= 0){
+				return;
+			}
+			pos = -(pos+1);
+			if(length == MAX_ARRAY){
+				long[] bitmap = toBitmap( array, length );
+				bitmap[low >>> 6] |= 1L << low;
+				containers[idx] = bitmap;
+			}else{
+				if(length == array.length){
+					char[] temp = new char[Math.min( length * 2, MAX_ARRAY )];
+					System.arraycopy( array, 0, temp, 0, length );
+					containers[idx] = array = temp;
+				}
+				System.arraycopy( array, pos, array, pos+1, length-pos );
+				array[pos] = (char)low;
+			}
+		}
+		sizes[idx]++;
+		size++;
+	}
+	
+	
+	final void remove(long rowOffset){
+		int idx = findKey( rowOffset >>> 16 );
+		if(idx < 0){
+			return;
+		}
+		int low = (int)rowOffset & 0xFFFF;
+		Object container = containers[idx];
+		int length = sizes[idx];
+		if(container == null){
+			if(length == low){
+				size--;
+				removeContainer( idx );
+			}
+			return;
+		}
+		if(container instanceof long[]){
+			long[] bitmap = (long[])container;
+			long bit = 1L << low;
+			if((bitmap[low >>> 6] & bit) == 0){
+				return;
+			}
+			bitmap[low >>> 6] &= ~bit;
+			if(length-1 == MAX_ARRAY){
+				containers[idx] = toArray( bitmap, MAX_ARRAY );
+			}
+		}else{
+			char[] array = (char[])container;
+			int pos = binarySearch( array, length, low );
+			if(pos < 0){
+				return;
+			}
+			System.arraycopy( array, pos+1, array, pos, length-pos-1 );
+		}
+		size--;
+		if(--sizes[idx] == 1){
+			// only a single value is left
+			sizes[idx] = nextValue( idx, 0 );
+			containers[idx] = null;
+		}
+	}
+	
+	
+	final boolean contains(long rowOffset){
+		int idx = findKey( rowOffset >>> 16 );
+		if(idx < 0){
+			return false;
+		}
+		int low = (int)rowOffset & 0xFFFF;
+		Object container = containers[idx];
+		if(container == null){
+			return sizes[idx] == low;
+		}
+		if(container instanceof long[]){
+			return (((long[])container)[low >>> 6] & (1L << low)) != 0;
+		}
+		return binarySearch( (char[])container, sizes[idx], low ) >= 0;
+	}
+	
+	
+	/**
+	 * Returns the smallest row position that is greater as rowOffset or -1 if there is no one.
+	 * A value of -1 for rowOffset returns the first row position.
+	 */
+	final long getNext(long rowOffset){
+		long target = rowOffset + 1;
+		long key = target >>> 16;
+		int idx = findKey( key );
+		if(idx >= 0){
+			int value = nextValue( idx, (int)target & 0xFFFF );
+			if(value >= 0){
+				return (key << 16) | value;
+			}
+			idx++;
+		}else{
+			idx = -(idx+1);
+		}
+		if(idx < count){
+			return (keys[idx] << 16) | nextValue( idx, 0 );
+		}
+		return -1;
+	}
+	
+	
+	/**
+	 * Returns the largest row position that is lesser as rowOffset or -1 if there is no one.
+	 * A value of Long.MAX_VALUE for rowOffset returns the last row position.
+	 */
+	final long getPrevious(long rowOffset){
+		if(rowOffset <= 0){
+			return -1;
+		}
+		long target = rowOffset - 1;
+		long key = target >>> 16;
+		int idx = findKey( key );
+		if(idx >= 0){
+			int value = previousValue( idx, (int)target & 0xFFFF );
+			if(value >= 0){
+				return (key << 16) | value;
+			}
+			idx--;
+		}else{
+			idx = -(idx+1) - 1;
+		}
+		if(idx >= 0){
+			return (keys[idx] << 16) | previousValue( idx, 0xFFFF );
+		}
+		return -1;
+	}
+	
+	
+	/**
+	 * Add all row positions in ascending order to the list.
+	 */
+	final void addTo(LongList rows){
+		for(int i=0; i<count; i++){
+			long high = keys[i] << 16;
+			Object container = containers[i];
+			if(container == null){
+				rows.add( high | sizes[i] );
+			}else
+			if(container instanceof long[]){
+				long[] bitmap = (long[])container;
+				for(int w=0; w<BITMAP_WORDS; w++){
+					long word = bitmap[w];
+					while(word != 0){
+						rows.add( high | (w << 6) | Long.numberOfTrailingZeros( word ) );
+						word &= word - 1;
+					}
+				}
+			}else{
+				char[] array = (char[])container;
+				int length = sizes[i];
+				for(int k=0; k<length; k++){
+					rows.add( high | array[k] );
+				}
+			}
+		}
+	}
+	
+	
+	/**
+	 * Remove all row positions that are not in the other set.
+	 */
+	final void and(RowBitmap other){
+		int newCount = 0;
+		int newSize = 0;
+		int o = 0;
+		for(int i=0; i<count && o<other.count; ){
+			long key = keys[i];
+			long otherKey = other.keys[o];
+			if(key < otherKey){
+				i++;
+			}else
+			if(key > otherKey){
+				o++;
+			}else{
+				Object container = and( getContainer( i ), getLength( i ), other.getContainer( o ), other.getLength( o ) );
+				int length = countValues( container );
+				if(length > 0){
+					setContainer( keys, containers, sizes, newCount++, key, container, length );
+					newSize += length;
+				}
+				i++;
+				o++;
+			}
+		}
+		for(int i=newCount; i<count; i++){
+			containers[i] = null;
+		}
+		count = newCount;
+		size = newSize;
+	}
+	
+	
+	/**
+	 * Add all row positions of the other set.
+	 */
+	final void or(RowBitmap other){
+		int length = count + other.count;
+		long[] newKeys = new long[Math.max( length, 1 )];
+		Object[] newContainers = new Object[newKeys.length];
+		int[] newSizes = new int[newKeys.length];
+		int newCount = 0;
+		int newSize = 0;
+		int i = 0;
+		int o = 0;
+		while(i < count || o < other.count){
+			long key;
+			Object container;
+			int containerSize;
+			if(o == other.count || (i < count && keys[i] < other.keys[o])){
+				key = keys[i];
+				container = getContainer( i );
+				containerSize = getLength( i++ );
+			}else
+			if(i == count || keys[i] > other.keys[o]){
+				key = other.keys[o];
+				container = other.getContainer( o );
+				if(other.containers[o] != null){
+					container = copy( container );
+				}
+				containerSize = other.getLength( o++ );
+			}else{
+				key = keys[i];
+				container = or( getContainer( i ), getLength( i++ ), other.getContainer( o ), other.getLength( o++ ) );
+				containerSize = countValues( container );
+			}
+			setContainer( newKeys, newContainers, newSizes, newCount++, key, container, containerSize );
+			newSize += containerSize;
+		}
+		keys = newKeys;
+		containers = newContainers;
+		sizes = newSizes;
+		count = newCount;
+		size = newSize;
+	}
+	
+	
+	/**
+	 * Returns the container of the position. A single value is returned as char[].
+	 */
+	private Object getContainer(int idx){
+		Object container = containers[idx];
+		return (container == null) ? new char[]{ (char)sizes[idx] } : container;
+	}
+	
+	
+	/**
+	 * Returns the count of values of the container on the position.
+	 */
+	private int getLength(int idx){
+		return (containers[idx] == null) ? 1 : sizes[idx];
+	}
+	
+	
+	private static void setContainer(long[] keys, Object[] containers, int[] sizes, int idx, long key, Object container, int length){
+		keys[idx] = key;
+		if(length == 1 && container instanceof char[]){
+			containers[idx] = null;
+			sizes[idx] = ((char[])container)[0];
+		}else{
+			containers[idx] = container;
+			sizes[idx] = length;
+		}
+	}
+	
+	
+	/**
+	 * Returns the intersection of two containers as new container. A char[] has the exact size.
+	 */
+	private static Object and(Object container1, int size1, Object container2, int size2){
+		if(container1 instanceof long[] && container2 instanceof long[]){
+			long[] bitmap1 = (long[])container1;
+			long[] bitmap2 = (long[])container2;
+			long[] bitmap = new long[BITMAP_WORDS];
+			int length = 0;
+			for(int w=0; w<BITMAP_WORDS; w++){
+				bitmap[w] = bitmap1[w] & bitmap2[w];
+				length += Long.bitCount( bitmap[w] );
+			}
+			return (length > MAX_ARRAY) ? (Object)bitmap : toArray( bitmap, length );
+		}
+		if(container1 instanceof long[]){
+			// the array is the smaller container
+			Object temp = container1;
+			container1 = container2;
+			container2 = temp;
+			size1 = size2;
+		}
+		char[] array1 = (char[])container1;
+		char[] array = new char[size1];
+		int length = 0;
+		if(container2 instanceof long[]){
+			long[] bitmap2 = (long[])container2;
+			for(int k=0; k<size1; k++){
+				int low = array1[k];
+				if((bitmap2[low >>> 6] & (1L << low)) != 0){
+					array[length++] = (char)low;
+				}
+			}
+		}else{
+			char[] array2 = (char[])container2;
+			int k2 = 0;
+			for(int k=0; k<size1 && k2<size2; ){
+				char low1 = array1[k];
+				char low2 = array2[k2];
+				if(low1 < low2){
+					k++;
+				}else
+				if(low1 > low2){
+					k2++;
+				}else{
+					array[length++] = low1;
+					k++;
+					k2++;
+				}
+			}
+		}
+		return trim( array, length );
+	}
+	
+	
+	/**
+	 * Returns the union of two containers as new container. A char[] has the exact size.
+	 */
+	private static Object or(Object container1, int size1, Object container2, int size2){
+		if(container1 instanceof long[] || container2 instanceof long[] || size1 + size2 > MAX_ARRAY){
+			long[] bitmap1 = (container1 instanceof long[]) ? (long[])container1 : toBitmap( (char[])container1, size1 );
+			long[] bitmap = (container2 instanceof long[]) ? (long[])((long[])container2).clone() : toBitmap( (char[])container2, size2 );
+			int length = 0;
+			for(int w=0; w<BITMAP_WORDS; w++){
+				bitmap[w] |= bitmap1[w];
+				length += Long.bitCount( bitmap[w] );
+			}
+			return (length > MAX_ARRAY) ? (Object)bitmap : toArray( bitmap, length );
+		}
+		char[] array1 = (char[])container1;
+		char[] array2 = (char[])container2;
+		char[] array = new char[size1 + size2];
+		int length = 0;
+		int k1 = 0;
+		int k2 = 0;
+		while(k1 < size1 || k2 < size2){
+			if(k2 == size2 || (k1 < size1 && array1[k1] < array2[k2])){
+				array[length++] = array1[k1++];
+			}else
+			if(k1 == size1 || array1[k1] > array2[k2]){
+				array[length++] = array2[k2++];
+			}else{
+				array[length++] = array1[k1++];
+				k2++;
+			}
+		}
+		return trim( array, length );
+	}
+	
+	
+	/**
+	 * Returns the smallest value of the container that is equals or greater as low or -1.
+	 */
+	private int nextValue(int idx, int low){
+		Object container = containers[idx];
+		if(container == null){
+			return (sizes[idx] >= low) ? sizes[idx] : -1;
+		}
+		if(container instanceof long[]){
+			long[] bitmap = (long[])container;
+			int w = low >>> 6;
+			long word = bitmap[w] & (-1L << low);
+			while(true){
+				if(word != 0){
+					return (w << 6) | Long.numberOfTrailingZeros( word );
+				}
+				if(++w == BITMAP_WORDS){
+					return -1;
+				}
+				word = bitmap[w];
+			}
+		}
+		int length = sizes[idx];
+		int pos = binarySearch( (char[])container, length, low );
+		if(pos < 0){
+			pos = -(pos+1);
+		}
+		return (pos < length) ? ((char[])container)[pos] : -1;
+	}
+	
+	
+	/**
+	 * Returns the largest value of the container that is equals or lesser as low or -1.
+	 */
+	private int previousValue(int idx, int low){
+		Object container = containers[idx];
+		if(container == null){
+			return (sizes[idx] <= low) ? sizes[idx] : -1;
+		}
+		if(container instanceof long[]){
+			long[] bitmap = (long[])container;
+			int w = low >>> 6;
+			long word = bitmap[w] & (-1L >>> (63 - (low & 63)));
+			while(true){
+				if(word != 0){
+					return (w << 6) | (63 - Long.numberOfLeadingZeros( word ));
+				}
+				if(--w < 0){
+					return -1;
+				}
+				word = bitmap[w];
+			}
+		}
+		int pos = binarySearch( (char[])container, sizes[idx], low );
+		if(pos < 0){
+			pos = -(pos+1) - 1;
+		}
+		return (pos >= 0) ? ((char[])container)[pos] : -1;
+	}
+	
+	
+	/**
+	 * Search the container of the key.
+	 * @return the position or (-(insertion point) - 1) if the key does not exist
+	 */
+	private int findKey(long key){
+		int low = 0;
+		int high = count - 1;
+		while(low <= high){
+			int mid = (low + high) >>> 1;
+			long value = keys[mid];
+			if(value < key){
+				low = mid + 1;
+			}else
+			if(value > key){
+				high = mid - 1;
+			}else{
+				return mid;
+			}
+		}
+		return -(low + 1);
+	}
+	
+	
+	private void insertContainer(int idx, long key, Object container, int containerSize){
+		if(count == keys.length){
+			int length = count * 2;
+			long[] newKeys = new long[length];
+			System.arraycopy( keys, 0, newKeys, 0, count );
+			keys = newKeys;
+			Object[] newContainers = new Object[length];
+			System.arraycopy( containers, 0, newContainers, 0, count );
+			containers = newContainers;
+			int[] newSizes = new int[length];
+			System.arraycopy( sizes, 0, newSizes, 0, count );
+			sizes = newSizes;
+		}
+		System.arraycopy( keys, idx, keys, idx+1, count-idx );
+		System.arraycopy( containers, idx, containers, idx+1, count-idx );
+		System.arraycopy( sizes, idx, sizes, idx+1, count-idx );
+		keys[idx] = key;
+		containers[idx] = container;
+		sizes[idx] = containerSize;
+		count++;
+	}
+	
+	
+	private void removeContainer(int idx){
+		count--;
+		System.arraycopy( keys, idx+1, keys, idx, count-idx );
+		System.arraycopy( containers, idx+1, containers, idx, count-idx );
+		System.arraycopy( sizes, idx+1, sizes, idx, count-idx );
+		containers[count] = null;
+	}
+	
+	
+	private static int binarySearch(char[] array, int length, int value){
+		int low = 0;
+		int high = length - 1;
+		while(low <= high){
+			int mid = (low + high) >>> 1;
+			int midValue = array[mid];
+			if(midValue < value){
+				low = mid + 1;
+			}else
+			if(midValue > value){
+				high = mid - 1;
+			}else{
+				return mid;
+			}
+		}
+		return -(low + 1);
+	}
+	
+	
+	private static long[] toBitmap(char[] array, int length){
+		long[] bitmap = new long[BITMAP_WORDS];
+		for(int i=0; i<length; i++){
+			int low = array[i];
+			bitmap[low >>> 6] |= 1L << low;
+		}
+		return bitmap;
+	}
+	
+	
+	private static char[] toArray(long[] bitmap, int length){
+		char[] array = new char[length];
+		int i = 0;
+		for(int w=0; w<BITMAP_WORDS; w++){
+			long word = bitmap[w];
+			while(word != 0){
+				array[i++] = (char)((w << 6) | Long.numberOfTrailingZeros( word ));
+				word &= word - 1;
+			}
+		}
+		return array;
+	}
+	
+	
+	private static char[] trim(char[] array, int length){
+		if(length == array.length){
+			return array;
+		}
+		char[] temp = new char[length];
+		System.arraycopy( array, 0, temp, 0, length );
+		return temp;
+	}
+	
+	
+	/**
+	 * Returns the count of values of a container that was created from and() or or().
+	 */
+	private static int countValues(Object container){
+		if(container instanceof char[]){
+			return ((char[])container).length;
+		}
+		long[] bitmap = (long[])container;
+		int length = 0;
+		for(int w=0; w<BITMAP_WORDS; w++){
+			length += Long.bitCount( bitmap[w] );
+		}
+		return length;
+	}
+	
+	
+	private static Object copy(Object container){
+		return (container instanceof long[]) ? ((long[])container).clone() : ((char[])container).clone();
+	}
+}
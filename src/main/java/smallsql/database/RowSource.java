@@ -47,6 +47,7 @@ import smallsql.tools.language.Language;
  * - MemoryResult
  * - GroupResult (extends from MemoryResult)
  * - SortedResult
+ * - TopResult
  * - UnionAll
  * 
  * Future Implementations are:
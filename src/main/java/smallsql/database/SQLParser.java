@@ -87,6 +87,12 @@ final class SQLParser {
                     return execute();
             case SQLTokenizer.TRUNCATE:
             		return truncate();
+            case SQLTokenizer.COMPACT:
+            		return compact();
+            case SQLTokenizer.VACUUM:
+            		return vacuum();
+            case SQLTokenizer.COPY:
+            		return copy();
             default:
                     throw new Error();
         }
@@ -466,6 +472,83 @@ Switch: while(true){
 	}
 
 
+	/**
+	 * COMPACT TABLE [catalog.]table
+	 */
+	private Command compact() throws SQLException{
+		nextToken(MISSING_TABLE);
+		String catalog;
+		String name = catalog = nextIdentifier();
+		name = nextIdentiferPart( name );
+		if(name == catalog) catalog = null;
+		return new CommandCompact( con.log, catalog, name );
+	}
+
+
+	/**
+	 * VACUUM [[catalog.]table]; without a table name all tables of the current database are compacted.
+	 */
+	private Command vacuum() throws SQLException{
+		SQLToken token = nextToken();
+		if(token == null){
+			return new CommandCompact( con.log, null, null );
+		}
+		previousToken();
+		String catalog;
+		String name = catalog = nextIdentifier();
+		name = nextIdentiferPart( name );
+		if(name == catalog) catalog = null;
+		return new CommandCompact( con.log, catalog, name );
+	}
+
+
+	/**
+	 * COPY [catalog.]table [(column, ...)] FROM 'file' [DELIMITER 'char'] [HEADER]
+	 */
+	private Command copy() throws SQLException{
+		String catalog;
+		String name = catalog = nextIdentifier();
+		name = nextIdentiferPart( name );
+		if(name == catalog) catalog = null;
+		CommandCopy cmd = new CommandCopy( con.log, catalog, name );
+		SQLToken token = nextToken( MISSING_PARENTHESIS_FROM );
+		if(token.value == SQLTokenizer.PARENTHESIS_L){
+			cmd.columnNames = new Strings();
+			do{
+				cmd.columnNames.add( nextIdentifier() );
+				token = nextToken( MISSING_COMMA_PARENTHESIS );
+			}while(token.value == SQLTokenizer.COMMA);
+			nextToken( MISSING_FROM );
+		}
+		cmd.fileName = nextString();
+		while((token = nextToken()) != null){
+			switch(token.value){
+				case SQLTokenizer.DELIMITER:
+					String delimiter = nextString();
+					if(delimiter.length() != 1){
+						throw SmallSQLException.create(Language.CUSTOM_MESSAGE, "The delimiter must be one character: '" + delimiter + "'");
+					}
+					cmd.delimiter = delimiter.charAt(0);
+					break;
+				case SQLTokenizer.HEADER:
+					cmd.header = true;
+					break;
+				default:
+					throw createSyntaxError( token, MISSING_DELIMITER_HEADER );
+			}
+		}
+		return cmd;
+	}
+	
+	
+	/**
+	 * Returns the value of the next token that must be a string constant.
+	 */
+	private String nextString() throws SQLException{
+		return nextToken( MISSING_STRING ).getName( null );
+	}
+
+
     private Command insert() throws SQLException{
         SQLToken token = nextToken( MISSING_INTO );
         CommandInsert cmd = new CommandInsert( con.log, nextIdentifier() );
@@ -558,7 +641,7 @@ Switch: while(true)
                 case SQLTokenizer.UNIQUE:
                     do{
                         token = nextToken(COMMANDS_CREATE_UNIQUE);
-                    }while(token.value == SQLTokenizer.INDEX);
+                    }while(token.value != SQLTokenizer.INDEX);
                     return createIndex(true);
                 case SQLTokenizer.NONCLUSTERED:
                 case SQLTokenizer.CLUSTERED:
@@ -618,7 +701,7 @@ Switch: while(true)
 					token = nextToken( MISSING_COMMA_PARENTHESIS );
 					switch(token.value){
 						case SQLTokenizer.PARENTHESIS_R:
-							return cmdCreate;
+							return tableOptions( cmdCreate );
 						case SQLTokenizer.COMMA:
 							continue nextCol;
 					}
@@ -630,7 +713,7 @@ Switch: while(true)
             }
             switch(token.value){
                 case SQLTokenizer.PARENTHESIS_R:
-                    return cmdCreate;
+                    return tableOptions( cmdCreate );
                 case SQLTokenizer.COMMA:
                     continue nextCol;
                 default:
@@ -640,6 +723,30 @@ Switch: while(true)
     }
     
 	
+    /**
+     * Parse the optional table options after the column definitions:
+     * WITH (COMPRESSION = LZ | NONE)
+     */
+    private CommandTable tableOptions(CommandTable cmdCreate) throws SQLException{
+        SQLToken token = nextToken();
+        if(token == null || token.value != SQLTokenizer.WITH){
+            previousToken();
+            return cmdCreate;
+        }
+        nextToken( MISSING_PARENTHESIS_L );
+        do{
+            nextToken( MISSING_COMPRESSION );
+            nextToken( MISSING_EQUALS );
+            cmdCreate.compression = Table.getCompression( nextIdentifier() );
+            token = nextToken( MISSING_COMMA_PARENTHESIS );
+        }while(token.value == SQLTokenizer.COMMA);
+        if(token.value != SQLTokenizer.PARENTHESIS_R){
+            throw createSyntaxError( token, MISSING_COMMA_PARENTHESIS );
+        }
+        return cmdCreate;
+    }
+    
+	
     /**
      * Parse a Column and add it to the Command. If the column is unique or primary
      * then an index is added.
@@ -877,6 +984,9 @@ Switch: while(true)
     }
 
 
+    /**
+     * CREATE [UNIQUE] INDEX name ON [catalog.]table (column, ...) [USING HASH] [INCLUDE (column, ...)]
+     */
     private CommandTable createIndex(boolean unique) throws SQLException{
         String indexName = nextIdentifier();
         nextToken(MISSING_ON);
@@ -888,15 +998,33 @@ Switch: while(true)
         Expressions expressions = new Expressions();
         Strings columns = new Strings();
         expressionDefList( cmd, expressions, columns );
+        boolean isHash = false;
+        SQLToken token = nextToken();
+        if(token != null && token.value == SQLTokenizer.USING){
+            nextToken( MISSING_HASH );
+            isHash = true;
+            token = nextToken();
+        }
+        Strings includes = new Strings();
+        if(token != null && token.value == SQLTokenizer.INCLUDE){
+            nextToken( MISSING_PARENTHESIS_L );
+            do{
+                includes.add( nextIdentifier() );
+                token = nextToken( MISSING_COMMA_PARENTHESIS );
+            }while(token.value == SQLTokenizer.COMMA);
+        }else{
+            previousToken();
+        }
         IndexDescription indexDesc = new IndexDescription( 
                 indexName, 
                 tableName, 
                 unique ? SQLTokenizer.UNIQUE : SQLTokenizer.INDEX, 
                         expressions, 
-                        columns);
-        //TODO Create Index
-		Object[] param = { "Create Index" };
-        throw SmallSQLException.create(Language.UNSUPPORTED_OPERATION, param);
+                        columns,
+                        includes,
+                        isHash);
+        cmd.addIndex( indexDesc );
+        return cmd;
     }
 
     private CommandCreateDatabase createProcedure() throws SQLException{
@@ -1935,6 +2063,18 @@ Switch: while(true)
         }catch(NumberFormatException e){
             throw createSyntaxError(token, Language.STXADD_NOT_NUMBER, token.getName(sql));
         }
+        token = nextToken();
+        if(token != null && token.value == SQLTokenizer.OFFSET){
+            token = nextToken(MISSING_EXPRESSION);
+            try{
+                int offset = Integer.parseInt(token.getName(sql));
+                selCmd.setOffset(offset);
+            }catch(NumberFormatException e){
+                throw createSyntaxError(token, Language.STXADD_NOT_NUMBER, token.getName(sql));
+            }
+        }else{
+            previousToken();
+        }
     }
 
     private void group(CommandSelect cmd) throws SQLException{
@@ -1951,7 +2091,7 @@ Switch: while(true)
     }
 
 
-    private static final int[] COMMANDS = {SQLTokenizer.SELECT, SQLTokenizer.DELETE, SQLTokenizer.INSERT, SQLTokenizer.UPDATE, SQLTokenizer.CREATE, SQLTokenizer.DROP, SQLTokenizer.ALTER, SQLTokenizer.SET, SQLTokenizer.USE, SQLTokenizer.EXECUTE, SQLTokenizer.TRUNCATE};
+    private static final int[] COMMANDS = {SQLTokenizer.SELECT, SQLTokenizer.DELETE, SQLTokenizer.INSERT, SQLTokenizer.UPDATE, SQLTokenizer.CREATE, SQLTokenizer.DROP, SQLTokenizer.ALTER, SQLTokenizer.SET, SQLTokenizer.USE, SQLTokenizer.EXECUTE, SQLTokenizer.TRUNCATE, SQLTokenizer.COMPACT, SQLTokenizer.VACUUM, SQLTokenizer.COPY};
     private static final int[] COMMANDS_ESCAPE = {SQLTokenizer.D, SQLTokenizer.T, SQLTokenizer.TS, SQLTokenizer.FN, SQLTokenizer.CALL};
     private static final int[] COMMANDS_ALTER = {SQLTokenizer.DATABASE, SQLTokenizer.TABLE, SQLTokenizer.VIEW,  SQLTokenizer.PROCEDURE, };
     private static final int[] COMMANDS_CREATE = {SQLTokenizer.DATABASE, SQLTokenizer.TABLE, SQLTokenizer.VIEW, SQLTokenizer.INDEX, SQLTokenizer.PROCEDURE, SQLTokenizer.UNIQUE, SQLTokenizer.CLUSTERED, SQLTokenizer.NONCLUSTERED};
@@ -1976,6 +2116,11 @@ Switch: while(true)
     private static final int[] MISSING_PARENTHESIS_VALUES_SELECT = {SQLTokenizer.PARENTHESIS_L, SQLTokenizer.VALUES, SQLTokenizer.SELECT};
     private static final int[] MISSING_TOKEN_LIST = {SQLTokenizer.COMMA, SQLTokenizer.FROM, SQLTokenizer.GROUP, SQLTokenizer.HAVING, SQLTokenizer.ORDER};
 	private static final int[] MISSING_FROM = {SQLTokenizer.FROM};
+	private static final int[] MISSING_PARENTHESIS_FROM = {SQLTokenizer.PARENTHESIS_L, SQLTokenizer.FROM};
+	private static final int[] MISSING_STRING = {SQLTokenizer.STRING};
+	private static final int[] MISSING_DELIMITER_HEADER = {SQLTokenizer.DELIMITER, SQLTokenizer.HEADER};
+	private static final int[] MISSING_COMPRESSION = {SQLTokenizer.COMPRESSION};
+	private static final int[] MISSING_HASH = {SQLTokenizer.HASH};
 	private static final int[] MISSING_SET = {SQLTokenizer.SET};
 	private static final int[] MISSING_EQUALS = {SQLTokenizer.EQUALS};
 	private static final int[] MISSING_WHERE = {SQLTokenizer.WHERE};
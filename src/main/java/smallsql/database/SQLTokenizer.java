@@ -463,6 +463,17 @@ public class SQLTokenizer {
 	static final int ELSE 		= 266;
 	static final int END 		= 267;
 	static final int SWITCH 	= 268;
+	static final int COMPACT 	= 269;
+	static final int VACUUM 	= 270;
+	static final int COPY 		= 271;
+	static final int DELIMITER 	= 272;
+	static final int HEADER 	= 273;
+	static final int WITH 		= 274;
+	static final int COMPRESSION = 275;
+	static final int INCLUDE 	= 276;
+	static final int USING 		= 277;
+	static final int HASH 		= 278;
+	static final int OFFSET 	= 279;
 	
 	static final String DESC_STR   = "DESC";
     static{
@@ -534,6 +545,17 @@ public class SQLTokenizer {
 		addKeyWord( "ELSE",   		ELSE);
 		addKeyWord( "END",   		END);
 		addKeyWord( "SWITCH", 		SWITCH);
+		addKeyWord( "COMPACT", 	COMPACT);
+		addKeyWord( "VACUUM", 		VACUUM);
+		addKeyWord( "COPY", 		COPY);
+		addKeyWord( "DELIMITER", 	DELIMITER);
+		addKeyWord( "HEADER", 		HEADER);
+		addKeyWord( "WITH", 		WITH);
+		addKeyWord( "COMPRESSION", 	COMPRESSION);
+		addKeyWord( "INCLUDE", 		INCLUDE);
+		addKeyWord( "USING", 		USING);
+		addKeyWord( "HASH", 		HASH);
+		addKeyWord( "OFFSET", 		OFFSET);
     }
 
 
@@ -0,0 +1,117 @@
+/* =============================================================
+ * SmallSQL : a free Java DBMS library for the Java(tm) platform
+ * =============================================================
+ *
+ * (C) Copyright 2004-2011, by Volker Berlin.
+ *
+ * Project Info:  http://www.smallsql.de/
+ *
+ * This library is free software; you can redistribute it and/or modify it 
+ * under the terms of the GNU Lesser General Public License as published by 
+ * the Free Software Foundation; either version 2.1 of the License, or 
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but 
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY 
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public 
+ * License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, 
+ * USA.  
+ *
+ * [Java is a trademark or registered trademark of Sun Microsystems, Inc. 
+ * in the United States and other countries.]
+ *
+ * ---------------
+ * SSBlob.java
+ * ---------------
+ * Author: Volker Berlin
+ * 
+ */
+package smallsql.database;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.sql.*;
+
+import smallsql.tools.util;
+
+/**
+ * A read only Blob of a ResultSet. The data are read from the LOB file only if they are requested.
+ */
+class SSBlob implements Blob {
+
+	private final Lob lob;
+	
+	
+	SSBlob(Lob lob){
+		this.lob = lob;
+	}
+
+
+	public long length(){
+		return lob.length();
+	}
+
+
+	public byte[] getBytes(long pos, int length) throws SQLException{
+		try{
+			length = (int)Math.max( 0, Math.min( length, lob.length() - pos + 1 ) );
+			byte[] bytes = new byte[length];
+			int offset = 0;
+			while(offset < length){
+				offset += lob.read( pos - 1 + offset, bytes, offset, length - offset );
+			}
+			return bytes;
+		}catch(Exception e){
+			throw SmallSQLException.createFromException(e);
+		}
+	}
+
+
+	public InputStream getBinaryStream(){
+		return lob.getInputStream( 0, lob.length() );
+	}
+
+
+	public InputStream getBinaryStream(long pos, long length){
+		return lob.getInputStream( pos - 1, length );
+	}
+
+
+	public void free(){
+		// there are no resources, the data are read on request
+	}
+
+
+	public long position(byte[] pattern, long start){
+		throw util.generateUnsupportedOperation();
+	}
+
+
+	public long position(Blob pattern, long start){
+		throw util.generateUnsupportedOperation();
+	}
+
+
+	public int setBytes(long pos, byte[] bytes){
+		throw util.generateUnsupportedOperation();
+	}
+
+
+	public int setBytes(long pos, byte[] bytes, int offset, int len){
+		throw util.generateUnsupportedOperation();
+	}
+
+
+	public OutputStream setBinaryStream(long pos){
+		throw util.generateUnsupportedOperation();
+	}
+
+
+	public void truncate(long len){
+		throw util.generateUnsupportedOperation();
+	}
+}
@@ -0,0 +1,138 @@
+/* =============================================================
+ * SmallSQL : a free Java DBMS library for the Java(tm) platform
+ * =============================================================
+ *
+ * (C) Copyright 2004-2011, by Volker Berlin.
+ *
+ * Project Info:  http://www.smallsql.de/
+ *
+ * This library is free software; you can redistribute it and/or modify it 
+ * under the terms of the GNU Lesser General Public License as published by 
+ * the Free Software Foundation; either version 2.1 of the License, or 
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but 
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY 
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public 
+ * License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, 
+ * USA.  
+ *
+ * [Java is a trademark or registered trademark of Sun Microsystems, Inc. 
+ * in the United States and other countries.]
+ *
+ * ---------------
+ * SSClob.java
+ * ---------------
+ * Author: Volker Berlin
+ * 
+ */
+package smallsql.database;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.Writer;
+import java.sql.*;
+
+import smallsql.tools.util;
+
+/**
+ * A read only Clob of a ResultSet. The data are read from the LOB file only if they are requested.
+ */
+class SSClob implements Clob {
+
+	private final Lob lob;
+	
+	
+	SSClob(Lob lob){
+		this.lob = lob;
+	}
+
+
+	public long length(){
+		return lob.length() / 2;
+	}
+
+
+	public String getSubString(long pos, int length) throws SQLException{
+		try{
+			length = (int)Math.max( 0, Math.min( length, length() - pos + 1 ) );
+			char[] chars = new char[length];
+			Reader reader = lob.getReader( pos - 1, length );
+			int offset = 0;
+			while(offset < length){
+				int count = reader.read( chars, offset, length - offset );
+				if(count < 0){
+					break;
+				}
+				offset += count;
+			}
+			return new String( chars, 0, offset );
+		}catch(Exception e){
+			throw SmallSQLException.createFromException(e);
+		}
+	}
+
+
+	public Reader getCharacterStream() throws SQLException{
+		return getCharacterStream( 1, length() );
+	}
+
+
+	public Reader getCharacterStream(long pos, long length) throws SQLException{
+		try{
+			return lob.getReader( pos - 1, length );
+		}catch(Exception e){
+			throw SmallSQLException.createFromException(e);
+		}
+	}
+
+
+	public void free(){
+		// there are no resources, the data are read on request
+	}
+
+
+	public InputStream getAsciiStream(){
+		throw util.generateUnsupportedOperation();
+	}
+
+
+	public long position(String searchstr, long start){
+		throw util.generateUnsupportedOperation();
+	}
+
+
+	public long position(Clob searchstr, long start){
+		throw util.generateUnsupportedOperation();
+	}
+
+
+	public int setString(long pos, String str){
+		throw util.generateUnsupportedOperation();
+	}
+
+
+	public int setString(long pos, String str, int offset, int len){
+		throw util.generateUnsupportedOperation();
+	}
+
+
+	public OutputStream setAsciiStream(long pos){
+		throw util.generateUnsupportedOperation();
+	}
+
+
+	public Writer setCharacterStream(long pos){
+		throw util.generateUnsupportedOperation();
+	}
+
+
+	public void truncate(long len){
+		throw util.generateUnsupportedOperation();
+	}
+}
@@ -38,6 +38,7 @@ import smallsql.tools.util;
 import java.nio.channels.FileChannel;
 import java.sql.*;
 import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
@@ -45,7 +46,36 @@ import java.util.concurrent.Executor;
 
 public class SSConnection implements Connection {
 
+    /**
+     * The default memory budget of the page cache (4 MB).
+     */
+    static final long DEFAULT_PAGE_CACHE_SIZE = 4096 * 1024;
+
     private final boolean readonly;
+    /**
+     * The memory budget of the page cache of the database in bytes.
+     */
+    private final long pageCacheSize;
+    /**
+     * The block size in bytes of the slotted pages for new tables.
+     */
+    private final int tablePageSize;
+    /**
+     * If the database use a write-ahead log. It is only used if this connection open the database.
+     */
+    private final boolean writeAheadLog;
+    /**
+     * The interval of the background sync of the write-ahead log in milliseconds.
+     */
+    private final int syncInterval;
+    /**
+     * The sync policy of the write-ahead log for the commits of this connection.
+     */
+    private final int syncPolicy;
+    /**
+     * The count of worker threads for the aggregation of large tables. A value of 1 disables the parallel aggregation.
+     */
+    private final int parallelThreads;
     private Database database;
     private boolean autoCommit = true;
     int isolationLevel = TRANSACTION_READ_COMMITTED; // see also getDefaultTransactionIsolation
@@ -63,6 +93,47 @@ public class SSConnection implements Connection {
         log = new Logger();
         String name = props.getProperty("dbpath");
         readonly = "true".equals(props.getProperty("readonly"));
+        String cacheSize = props.getProperty("pagecache");
+        try {
+            pageCacheSize = (cacheSize == null) ? DEFAULT_PAGE_CACHE_SIZE : Long.parseLong(cacheSize.trim()) * 1024;
+        } catch (NumberFormatException e) {
+            throw SmallSQLException.create(Language.CUSTOM_MESSAGE, "Invalid value of property pagecache:" + cacheSize);
+        }
+        String pageSize = props.getProperty("pagesize");
+        try {
+            tablePageSize = (pageSize == null) ? SlottedPages.DEFAULT_BLOCK_SIZE : Integer.parseInt(pageSize.trim()) * 1024;
+        } catch (NumberFormatException e) {
+            throw SmallSQLException.create(Language.CUSTOM_MESSAGE, "Invalid value of property pagesize:" + pageSize);
+        }
+        if (!SlottedPages.isValidBlockSize(tablePageSize)) {
+            throw SmallSQLException.create(Language.CUSTOM_MESSAGE, "Invalid value of property pagesize:" + pageSize);
+        }
+        writeAheadLog = "true".equals(props.getProperty("wal"));
+        String interval = props.getProperty("syncinterval");
+        try {
+            syncInterval = (interval == null) ? WriteAheadLog.DEFAULT_SYNC_INTERVAL : Integer.parseInt(interval.trim());
+        } catch (NumberFormatException e) {
+            throw SmallSQLException.create(Language.CUSTOM_MESSAGE, "Invalid value of property syncinterval:" + interval);
+        }
+        String sync = props.getProperty("sync");
+        if (sync == null || "commit".equalsIgnoreCase(sync)) {
+            syncPolicy = WriteAheadLog.SYNC_COMMIT;
+        } else if ("group".equalsIgnoreCase(sync)) {
+            syncPolicy = WriteAheadLog.SYNC_GROUP;
+        } else if ("none".equalsIgnoreCase(sync)) {
+            syncPolicy = WriteAheadLog.SYNC_NONE;
+        } else {
+            throw SmallSQLException.create(Language.CUSTOM_MESSAGE, "Invalid value of property sync:" + sync);
+        }
+        String parallel = props.getProperty("parallel");
+        try {
+            parallelThreads = (parallel == null) ? 1 : Integer.parseInt(parallel.trim());
+        } catch (NumberFormatException e) {
+            throw SmallSQLException.create(Language.CUSTOM_MESSAGE, "Invalid value of property parallel:" + parallel);
+        }
+        if (parallelThreads < 1) {
+            throw SmallSQLException.create(Language.CUSTOM_MESSAGE, "Invalid value of property parallel:" + parallel);
+        }
         boolean create = "true".equals(props.getProperty("create"));
         database = Database.getDatabase(name, this, create);
         metadata = new SSDatabaseMetaData(this);
@@ -75,6 +146,12 @@ public class SSConnection implements Connection {
      */
     SSConnection(SSConnection con) {
         readonly = con.readonly;
+        pageCacheSize = con.pageCacheSize;
+        tablePageSize = con.tablePageSize;
+        writeAheadLog = con.writeAheadLog;
+        syncInterval = con.syncInterval;
+        syncPolicy = con.syncPolicy;
+        parallelThreads = con.parallelThreads;
         database = con.database;
         metadata = con.metadata;
         log = con.log;
@@ -146,11 +223,22 @@ public class SSConnection implements Connection {
         log.println("Commit");
         testClosedConnection();
         synchronized (getMonitor()) {
+            WriteAheadLog log = (database == null || !hasWrites()) ? null : database.getWriteAheadLog();
+            long logPos = 0;
             try {
                 int count = commitPages.size();
-                for (int i = 0; i < count; i++) {
-                    TransactionStep page = (TransactionStep) commitPages.get(i);
-                    page.commit();
+                if (log != null) {
+                    log.beginCommit();
+                }
+                try {
+                    for (int i = 0; i < count; i++) {
+                        TransactionStep page = (TransactionStep) commitPages.get(i);
+                        page.commit();
+                    }
+                } finally {
+                    if (log != null) {
+                        logPos = log.endCommit();
+                    }
                 }
                 for (int i = 0; i < count; i++) {
                     TransactionStep page = (TransactionStep) commitPages.get(i);
@@ -158,6 +246,9 @@ public class SSConnection implements Connection {
                 }
                 commitPages.clear();
                 transactionTime = System.currentTimeMillis();
+                if (log != null) {
+                    log.sync(logPos, syncPolicy);
+                }
             } catch (Throwable e) {
                 rollback();
                 throw SmallSQLException.createFromException(e);
@@ -166,6 +257,19 @@ public class SSConnection implements Connection {
     }
 
 
+    /**
+     * If a step of the current transaction write to a file. A read only transaction does not wait for other commits.
+     */
+    private boolean hasWrites() {
+        for (int i = 0; i < commitPages.size(); i++) {
+            if (((TransactionStep) commitPages.get(i)).hasWrites()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+
     /**
      * Discard all changes of a file because it was deleted.
      */
@@ -200,8 +304,8 @@ public class SSConnection implements Connection {
         log.println("Rollback");
         testClosedConnection();
         synchronized (getMonitor()) {
-            int count = commitPages.size();
-            for (int i = 0; i < count; i++) {
+            // in reverse order that changes of the same data are undone from the last to the first
+            for (int i = commitPages.size() - 1; i >= 0; i--) {
                 TransactionStep page = (TransactionStep) commitPages.get(i);
                 page.rollback();
                 page.freeLock();
@@ -238,6 +342,66 @@ public class SSConnection implements Connection {
     }
 
 
+    /**
+     * Get runtime statistics of the current database like the hit and miss count of the page cache.
+     * This is a SmallSQL extension and not part of the JDBC API.
+     *
+     * @return a ResultSet with the columns TABLE_NAME, STATISTIC and VALUE
+     * @throws SQLException if the connection is not connected to a database
+     */
+    public ResultSet getStatistics() throws SQLException {
+        return metadata.getStatistics();
+    }
+
+
+    /**
+     * Load many rows with a bulk load into a table. The rows are written with a table lock in large blocks at the end
+     * of the table without row locks. This is many faster as INSERT for the initial load of a table. The rows are not
+     * part of the current transaction and can not be rolled back. If a row fails, for example with a duplicate key of a
+     * unique index, then the rows before it are loaded. The SQL command COPY use the same bulk load for CSV files.
+     * This is a SmallSQL extension and not part of the JDBC API.
+     *
+     * @param tableName   the name of the table
+     * @param columnNames the names of the columns of the values or null for all columns in the order of the table
+     * @param rows        an Iterator over Object[] with the values of one row
+     * @return the count of loaded rows
+     * @throws SQLException if the table does not exist, a value can not be converted, a unique key exists already or an
+     *                      I/O error occur
+     */
+    public long copy(String tableName, String[] columnNames, Iterator rows) throws SQLException {
+        try {
+            TableView tableView = getDatabase(false).getTableView(this, tableName);
+            if (!(tableView instanceof Table)) {
+                throw SmallSQLException.create(Language.VIEW_INSERT);
+            }
+            Strings columns = null;
+            if (columnNames != null) {
+                columns = new Strings();
+                for (int i = 0; i < columnNames.length; i++) {
+                    columns.add(columnNames[i]);
+                }
+            }
+            BulkLoad load = new BulkLoad(this, (Table) tableView, columns);
+            try {
+                while (rows.hasNext()) {
+                    load.addRow((Object[]) rows.next());
+                }
+            } catch (Throwable e) {
+                // also after an error, the rows before are loaded and need the indexes
+                try {
+                    load.finish();
+                } catch (Throwable e2) {
+                    e.addSuppressed(e2);
+                }
+                throw e;
+            }
+            return load.finish();
+        } catch (Exception e) {
+            throw SmallSQLException.createFromException(e);
+        }
+    }
+
+
     public void setReadOnly(boolean readOnly) {
         //TODO Connection ReadOnly implementing
     }
@@ -248,6 +412,51 @@ public class SSConnection implements Connection {
     }
 
 
+    /**
+     * The memory budget of the page cache in bytes. It is only used if this connection open the database.
+     * It can be set with the URL property "pagecache" in KB.
+     */
+    long getPageCacheSize() {
+        return pageCacheSize;
+    }
+
+
+    /**
+     * The block size in bytes of the slotted pages for new tables. It can be set with the URL property "pagesize"
+     * in KB. Valid values are 8, 16 and 32.
+     */
+    int getTablePageSize() {
+        return tablePageSize;
+    }
+
+
+    /**
+     * If the database should use a write-ahead log. It can be set with the URL property "wal=true". It is only used
+     * if this connection open the database.
+     */
+    boolean isWriteAheadLog() {
+        return writeAheadLog;
+    }
+
+
+    /**
+     * The interval in milliseconds of the background sync for the sync policy "group". It can be set with the URL
+     * property "syncinterval". It is only used if this connection open the database.
+     */
+    int getSyncInterval() {
+        return syncInterval;
+    }
+
+
+    /**
+     * The count of worker threads for GROUP BY and aggregate functions over large tables. It can be set with the URL
+     * property "parallel". The default is 1, the aggregation run in the thread of the statement.
+     */
+    int getParallelThreads() {
+        return parallelThreads;
+    }
+
+
     public void setCatalog(String catalog) throws SQLException {
         testClosedConnection();
         database = Database.getDatabase(catalog, this, false);
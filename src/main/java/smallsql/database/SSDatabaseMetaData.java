@@ -881,6 +881,20 @@ final class SSDatabaseMetaData implements DatabaseMetaData {
     }
 
 
+    /**
+     * @see SSConnection#getStatistics()
+     */
+    ResultSet getStatistics() throws SQLException {
+        try {
+            String[] colNames = {"TABLE_NAME", "STATISTIC", "VALUE"};
+            Object[][] data = con.getDatabase(false).getStatistics();
+            return new SSResultSet(st, Utils.createMemoryCommandSelect(con, colNames, data));
+        } catch (Exception e) {
+            throw SmallSQLException.createFromException(e);
+        }
+    }
+
+
     public boolean supportsResultSetType(int type) {
         switch (type) {
             case ResultSet.TYPE_FORWARD_ONLY:
@@ -164,7 +164,7 @@ class SSPreparedStatement extends SSStatement implements PreparedStatement {
 
     public void setAsciiStream(int parameterIndex, InputStream x, int length) throws SQLException {
         checkStatement();
-        cmd.setParamValue(parameterIndex, x, SQLTokenizer.LONGVARCHAR, length);
+        cmd.setParamValue(parameterIndex, Utils.limitStream(x, length), SQLTokenizer.LONGVARCHAR, length);
     }
 
 
@@ -177,7 +177,7 @@ class SSPreparedStatement extends SSStatement implements PreparedStatement {
 
     public void setBinaryStream(int parameterIndex, InputStream x, int length) throws SQLException {
         checkStatement();
-        cmd.setParamValue(parameterIndex, x, SQLTokenizer.LONGVARBINARY, length);
+        cmd.setParamValue(parameterIndex, Utils.limitStream(x, length), SQLTokenizer.LONGVARBINARY, length);
     }
 
 
@@ -216,7 +216,8 @@ class SSPreparedStatement extends SSStatement implements PreparedStatement {
      */
     @Override
     public void setAsciiStream(int parameterIndex, InputStream x, long length) throws SQLException {
-        throw util.generateUnsupportedOperation();
+        checkStatement();
+        cmd.setParamValue(parameterIndex, Utils.limitStream(x, length), SQLTokenizer.LONGVARCHAR);
     }
 
     /**
@@ -241,7 +242,8 @@ class SSPreparedStatement extends SSStatement implements PreparedStatement {
      */
     @Override
     public void setBinaryStream(int parameterIndex, InputStream x, long length) throws SQLException {
-        throw util.generateUnsupportedOperation();
+        checkStatement();
+        cmd.setParamValue(parameterIndex, Utils.limitStream(x, length), SQLTokenizer.LONGVARBINARY);
     }
 
     /**
@@ -268,7 +270,8 @@ class SSPreparedStatement extends SSStatement implements PreparedStatement {
      */
     @Override
     public void setCharacterStream(int parameterIndex, Reader reader, long length) throws SQLException {
-        throw util.generateUnsupportedOperation();
+        checkStatement();
+        cmd.setParamValue(parameterIndex, Utils.limitReader(reader, length), SQLTokenizer.LONGVARCHAR);
     }
 
     /**
@@ -296,7 +299,8 @@ class SSPreparedStatement extends SSStatement implements PreparedStatement {
      */
     @Override
     public void setAsciiStream(int parameterIndex, InputStream x) throws SQLException {
-        throw util.generateUnsupportedOperation();
+        checkStatement();
+        cmd.setParamValue(parameterIndex, x, SQLTokenizer.LONGVARCHAR);
     }
 
     /**
@@ -323,7 +327,8 @@ class SSPreparedStatement extends SSStatement implements PreparedStatement {
      */
     @Override
     public void setBinaryStream(int parameterIndex, InputStream x) throws SQLException {
-        throw util.generateUnsupportedOperation();
+        checkStatement();
+        cmd.setParamValue(parameterIndex, x, SQLTokenizer.LONGVARBINARY);
     }
 
     /**
@@ -353,7 +358,8 @@ class SSPreparedStatement extends SSStatement implements PreparedStatement {
      */
     @Override
     public void setCharacterStream(int parameterIndex, Reader reader) throws SQLException {
-        throw util.generateUnsupportedOperation();
+        checkStatement();
+        cmd.setParamValue(parameterIndex, reader, SQLTokenizer.LONGVARCHAR);
     }
 
     /**
@@ -381,7 +387,8 @@ class SSPreparedStatement extends SSStatement implements PreparedStatement {
      */
     @Override
     public void setNCharacterStream(int parameterIndex, Reader value) throws SQLException {
-        throw util.generateUnsupportedOperation();
+        checkStatement();
+        cmd.setParamValue(parameterIndex, value, SQLTokenizer.LONGNVARCHAR);
     }
 
     /**
@@ -407,7 +414,8 @@ class SSPreparedStatement extends SSStatement implements PreparedStatement {
      */
     @Override
     public void setClob(int parameterIndex, Reader reader) throws SQLException {
-        throw util.generateUnsupportedOperation();
+        checkStatement();
+        cmd.setParamValue(parameterIndex, reader, SQLTokenizer.CLOB);
     }
 
     /**
@@ -436,7 +444,8 @@ class SSPreparedStatement extends SSStatement implements PreparedStatement {
      */
     @Override
     public void setBlob(int parameterIndex, InputStream inputStream) throws SQLException {
-        throw util.generateUnsupportedOperation();
+        checkStatement();
+        cmd.setParamValue(parameterIndex, inputStream, SQLTokenizer.BLOB);
     }
 
     /**
@@ -463,7 +472,8 @@ class SSPreparedStatement extends SSStatement implements PreparedStatement {
      */
     @Override
     public void setNClob(int parameterIndex, Reader reader) throws SQLException {
-        throw util.generateUnsupportedOperation();
+        checkStatement();
+        cmd.setParamValue(parameterIndex, reader, SQLTokenizer.NCLOB);
     }
 
 
@@ -538,8 +548,7 @@ class SSPreparedStatement extends SSStatement implements PreparedStatement {
 
     public void setCharacterStream(int parameterIndex, Reader reader, int length) throws SQLException {
         checkStatement();
-        /**@todo: Implement this java.sql.PreparedStatement method*/
-        throw new java.lang.UnsupportedOperationException("Method setCharacterStream() not yet implemented.");
+        cmd.setParamValue(parameterIndex, Utils.limitReader(reader, length), SQLTokenizer.LONGVARCHAR, length);
     }
 
 
@@ -551,14 +560,12 @@ class SSPreparedStatement extends SSStatement implements PreparedStatement {
 
     public void setBlob(int i, Blob x) throws SQLException {
         checkStatement();
-        /**@todo: Implement this java.sql.PreparedStatement method*/
-        throw new java.lang.UnsupportedOperationException("Method setBlob() not yet implemented.");
+        cmd.setParamValue(i, x == null ? null : x.getBinaryStream(), SQLTokenizer.BLOB);
     }
 
     public void setClob(int i, Clob x) throws SQLException {
         checkStatement();
-        /**@todo: Implement this java.sql.PreparedStatement method*/
-        throw new java.lang.UnsupportedOperationException("Method setClob() not yet implemented.");
+        cmd.setParamValue(i, x == null ? null : x.getCharacterStream(), SQLTokenizer.CLOB);
     }
 
     public void setArray(int i, Array x) throws SQLException {
@@ -680,7 +687,8 @@ class SSPreparedStatement extends SSStatement implements PreparedStatement {
      */
     @Override
     public void setNCharacterStream(int parameterIndex, Reader value, long length) throws SQLException {
-        throw util.generateUnsupportedOperation();
+        checkStatement();
+        cmd.setParamValue(parameterIndex, Utils.limitReader(value, length), SQLTokenizer.LONGNVARCHAR);
     }
 
     /**
@@ -699,7 +707,8 @@ class SSPreparedStatement extends SSStatement implements PreparedStatement {
      */
     @Override
     public void setNClob(int parameterIndex, NClob value) throws SQLException {
-        throw util.generateUnsupportedOperation();
+        checkStatement();
+        cmd.setParamValue(parameterIndex, value == null ? null : value.getCharacterStream(), SQLTokenizer.NCLOB);
     }
 
     /**
@@ -723,7 +732,8 @@ class SSPreparedStatement extends SSStatement implements PreparedStatement {
      */
     @Override
     public void setClob(int parameterIndex, Reader reader, long length) throws SQLException {
-        throw util.generateUnsupportedOperation();
+        checkStatement();
+        cmd.setParamValue(parameterIndex, Utils.limitReader(reader, length), SQLTokenizer.CLOB);
     }
 
     /**
@@ -753,7 +763,8 @@ class SSPreparedStatement extends SSStatement implements PreparedStatement {
      */
     @Override
     public void setBlob(int parameterIndex, InputStream inputStream, long length) throws SQLException {
-        throw util.generateUnsupportedOperation();
+        checkStatement();
+        cmd.setParamValue(parameterIndex, Utils.limitStream(inputStream, length), SQLTokenizer.BLOB);
     }
 
     /**
@@ -780,7 +791,8 @@ class SSPreparedStatement extends SSStatement implements PreparedStatement {
      */
     @Override
     public void setNClob(int parameterIndex, Reader reader, long length) throws SQLException {
-        throw util.generateUnsupportedOperation();
+        checkStatement();
+        cmd.setParamValue(parameterIndex, Utils.limitReader(reader, length), SQLTokenizer.NCLOB);
     }
 
     /**
@@ -35,7 +35,6 @@ package smallsql.database;
 import smallsql.tools.language.Language;
 import smallsql.tools.util;
 
-import java.io.ByteArrayInputStream;
 import java.io.InputStream;
 import java.io.Reader;
 import java.math.BigDecimal;
@@ -225,7 +224,12 @@ public class SSResultSet implements ResultSet {
 
 
     public InputStream getBinaryStream(int columnIndex) throws SQLException {
-        return new ByteArrayInputStream(getBytes(columnIndex));
+        try {
+            Lob lob = getLob(columnIndex, false);
+            return lob == null ? null : lob.getInputStream(0, lob.length());
+        } catch (Exception e) {
+            throw SmallSQLException.createFromException(e);
+        }
     }
 
 
@@ -335,8 +339,12 @@ public class SSResultSet implements ResultSet {
 
 
     public Reader getCharacterStream(int columnIndex) throws SQLException {
-        /**@todo: Implement this java.sql.ResultSet.getCharacterStream method*/
-        throw SmallSQLException.create(Language.UNSUPPORTED_OPERATION, "getCharacterStream");
+        try {
+            Lob lob = getLob(columnIndex, true);
+            return lob == null ? null : lob.getReader(0, lob.length() / 2);
+        } catch (Exception e) {
+            throw SmallSQLException.createFromException(e);
+        }
     }
 
 
@@ -788,14 +796,22 @@ public class SSResultSet implements ResultSet {
 
 
     public Blob getBlob(int i) throws SQLException {
-        /**@todo: Implement this java.sql.ResultSet.getBlob method*/
-        throw SmallSQLException.create(Language.UNSUPPORTED_OPERATION, "Blob object");
+        try {
+            Lob lob = getLob(i, false);
+            return lob == null ? null : new SSBlob(lob);
+        } catch (Exception e) {
+            throw SmallSQLException.createFromException(e);
+        }
     }
 
 
     public Clob getClob(int i) throws SQLException {
-        /**@todo: Implement this java.sql.ResultSet.getClob method*/
-        throw SmallSQLException.create(Language.UNSUPPORTED_OPERATION, "Clob object");
+        try {
+            Lob lob = getLob(i, true);
+            return lob == null ? null : new SSClob(lob);
+        } catch (Exception e) {
+            throw SmallSQLException.createFromException(e);
+        }
     }
 
 
@@ -1206,6 +1222,27 @@ public class SSResultSet implements ResultSet {
      * Get the expression of a column.
      * This expression can be used to request a value of the current row.
      */
+    /**
+     * Get the value of a column as Lob. The value of a LOB column is read from the LOB file only if it is requested.
+     * Any other value is converted in memory.
+     */
+    private Lob getLob(int columnIndex, boolean isChars) throws Exception {
+        Expression expr = getValue(columnIndex);
+        Lob lob = expr.getLob();
+        if (lob == null || lob.isChars() != isChars) {
+            if (isChars) {
+                String str = expr.getString();
+                lob = str == null ? null : new Lob(str);
+            } else {
+                byte[] bytes = expr.getBytes();
+                lob = bytes == null ? null : new Lob(bytes, false);
+            }
+        }
+        wasNull = lob == null;
+        return lob;
+    }
+
+
     final private Expression getValue(int columnIndex) throws SQLException {
         if (values != null) {
             ExpressionValue value = values[metaData.getColumnIdx(columnIndex)];
@@ -0,0 +1,532 @@
+/* =============================================================
+ * SmallSQL : a free Java DBMS library for the Java(tm) platform
+ * =============================================================
+ *
+ * (C) Copyright 2004-2011, by Volker Berlin.
+ *
+ * Project Info:  http://www.smallsql.de/
+ *
+ * This library is free software; you can redistribute it and/or modify it 
+ * under the terms of the GNU Lesser General Public License as published by 
+ * the Free Software Foundation; either version 2.1 of the License, or 
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but 
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY 
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public 
+ * License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, 
+ * USA.  
+ *
+ * [Java is a trademark or registered trademark of Sun Microsystems, Inc. 
+ * in the United States and other countries.]
+ *
+ * ---------------
+ * SlottedPages.java
+ * ---------------
+ * Author: Volker Berlin
+ * 
+ */
+package smallsql.database;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import smallsql.tools.language.Language;
+
+/**
+ * The data area of a table with the slotted page format. The rows are saved in blocks with a fixed size of 8, 16 or
+ * 32 KB. A row that is larger as a block get its own block with a multiple of the block size.
+ * 
+ * The structure of a block is:
+ * 4 byte - block magic
+ * 4 byte - length of the block
+ * 4 byte - count of slots
+ * 4 byte - offset of the lowest record, the free space is between the slot directory and this offset
+ * 8 byte per slot - offset and length of the record
+ * ... free space
+ * records, added from the end of the block to the start
+ * 4 byte - length of the block, is used to find the last block of the file
+ * 
+ * The position of a row is the position of the block plus the slot number. The records are never moved inside of a
+ * block that the slot offsets are stable. A record can be rewrite in place if it is not larger as before or not larger as
+ * MIN_RECORD_SIZE. The format of a record is defined in StoreImpl.
+ * 
+ * All blocks are aligned to the block size relative to the first block.
+ * 
+ * The slots of deleted rows are reused for new rows. The blocks with reusable slots are saved in a FreeSpaceMap.
+ * A slot is only reusable after the end of the commit that has deleted it. Before, other pages of the same commit
+ * can still point to it, for example the UPDATE_POINTER of a row that was moved.
+ */
+final class SlottedPages {
+
+	private static final int BLOCK_MAGIC = 'S' << 24 | 'L' << 16 | 'O' << 8 | 'T';
+	private static final int HEADER_SIZE = 16;
+	private static final int SLOT_SIZE = 8;
+	private static final int TRAILER_SIZE = 4;
+	/** Every record reserve this size that it can be changed later to an update pointer. */
+	static final int MIN_RECORD_SIZE = 9;
+	
+	static final int DEFAULT_BLOCK_SIZE = 8192;
+	
+	private final Table table;
+	private final long firstBlock;
+	private final int blockSize;
+	
+	/** Readers from the file use the read lock, changes of blocks use the write lock. */
+	private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+	/** the position of the last block or -1 if not known yet */
+	private long lastBlockPos = -1;
+	private final FreeSpaceMap freeSpaceMap;
+	/** Positions (Long) of deleted rows that are not released with free() yet. */
+	private final HashSet pendingSlots = new HashSet();
+	
+	
+	SlottedPages(Table table, long firstBlock, int blockSize){
+		this.table = table;
+		this.firstBlock = firstBlock;
+		this.blockSize = blockSize;
+		Database database = table.database;
+		freeSpaceMap = new FreeSpaceMap( new File( Utils.createFsmFileName( database, table.name ) ), database.isReadOnly() );
+	}
+	
+	
+	/**
+	 * Check if the block size is a valid value.
+	 */
+	static boolean isValidBlockSize(int blockSize){
+		return blockSize == 8192 || blockSize == 16384 || blockSize == 32768;
+	}
+	
+	
+	int getBlockSize(){
+		return blockSize;
+	}
+	
+	
+	/**
+	 * If the file position is inside of the slotted data area of the table.
+	 */
+	boolean contains(long filePos){
+		return filePos >= firstBlock;
+	}
+	
+	
+	/**
+	 * Get the position of the block that include the row position.
+	 */
+	long getBlockPos(long rowPos){
+		return firstBlock + ((rowPos - firstBlock) / blockSize) * blockSize;
+	}
+	
+	
+	/**
+	 * Read a complete block. The returned array is shared and must not be modified.
+	 * @param blockPos the position of the block
+	 * @return the block data or null if the block is after the end of file
+	 */
+	byte[] readBlock(long blockPos) throws SQLException, IOException{
+		FileChannel raFile = table.raFile;
+		PageCache cache = table.database.getPageCache();
+		byte[] block = cache.get( raFile, blockPos );
+		if(block != null){
+			return block;
+		}
+		long stamp = cache.getWriteStamp();
+		lock.readLock().lock();
+		try{
+			if(blockPos >= raFile.size()){
+				return null;
+			}
+			block = new byte[blockSize];
+			Utils.readFully( raFile, ByteBuffer.wrap(block), blockPos );
+			if(getInt( block, 0 ) != BLOCK_MAGIC){
+				throw SmallSQLException.create(Language.TABLE_CORRUPT_PAGE, new Object[] { new Long(blockPos) });
+			}
+			int length = getBlockLength( block );
+			if(length > blockSize){
+				// a large row with its own block
+				byte[] largeBlock = new byte[length];
+				System.arraycopy( block, 0, largeBlock, 0, blockSize );
+				ByteBuffer buffer = ByteBuffer.wrap(largeBlock);
+				buffer.position( blockSize );
+				Utils.readFully( raFile, buffer, blockPos );
+				block = largeBlock;
+			}
+		}finally{
+			lock.readLock().unlock();
+		}
+		cache.put( raFile, blockPos, block, stamp );
+		return block;
+	}
+	
+	
+	/**
+	 * Write a record.
+	 * @param rowPos the position of the row or a negative value for a new row
+	 * @param record the data of the record
+	 * @return the position of the row
+	 */
+	long write(long rowPos, byte[] record) throws SQLException, IOException{
+		lock.writeLock().lock();
+		try{
+			if(rowPos < 0){
+				return insert( record );
+			}
+			long blockPos = getBlockPos( rowPos );
+			int slot = (int)(rowPos - blockPos);
+			byte[] block = readBlock( blockPos );
+			if(block == null || slot >= getSlotCount( block )){
+				throw SmallSQLException.create(Language.TABLE_CORRUPT_PAGE, new Object[] { new Long(rowPos) });
+			}
+			int recordOffset = getRecordOffset( block, slot );
+			if(record.length > Math.max( getRecordLength( block, slot ), MIN_RECORD_SIZE )){
+				throw SmallSQLException.create(Language.TABLE_CORRUPT_PAGE, new Object[] { new Long(rowPos) });
+			}
+			block = writeSlot( blockPos, block, slot, record );
+			if(record[0] == StoreImpl.DELETED){
+				// the slot can be reused after the end of the commit, see free()
+				pendingSlots.add( new Long(rowPos) );
+			}
+			return rowPos;
+		}finally{
+			lock.writeLock().unlock();
+		}
+	}
+	
+	
+	/**
+	 * Release the slot of a deleted row for reuse. This must be called after all pages of the commit that has
+	 * deleted the row are written.
+	 * @param rowPos the position of a row that was written with the status DELETED
+	 */
+	void free(long rowPos) throws SQLException, IOException{
+		lock.writeLock().lock();
+		try{
+			if(!pendingSlots.remove( new Long(rowPos) )){
+				return;
+			}
+			long blockPos = getBlockPos( rowPos );
+			byte[] block = readBlock( blockPos );
+			if(block != null){
+				updateFreeSpace( blockPos, block );
+			}
+		}finally{
+			lock.writeLock().unlock();
+		}
+	}
+	
+	
+	/**
+	 * Get the position after the last row. Rows that are added later have a larger position.
+	 */
+	long getEndPos() throws SQLException, IOException{
+		lock.writeLock().lock();
+		try{
+			long blockPos = getLastBlockPos();
+			if(blockPos < 0){
+				return firstBlock;
+			}
+			return blockPos + getSlotCount( readBlock( blockPos ) );
+		}finally{
+			lock.writeLock().unlock();
+		}
+	}
+	
+	
+	/**
+	 * Add a new record in the last block or in a new block if there is not enough free space.
+	 */
+	private long insert(byte[] record) throws SQLException, IOException{
+		int space = Math.max( record.length, MIN_RECORD_SIZE );
+		
+		// reuse the slot of a deleted row
+		int blockIdx;
+		while((blockIdx = freeSpaceMap.find( space )) >= 0){
+			long blockPos = firstBlock + (long)blockIdx * blockSize;
+			byte[] block = readBlock( blockPos );
+			if(block == null){
+				freeSpaceMap.set( blockIdx, 0 );
+				continue;
+			}
+			int slot = findReusableSlot( blockPos, block, space );
+			if(slot >= 0){
+				block = writeSlot( blockPos, block, slot, record );
+				updateFreeSpace( blockPos, block );
+				return blockPos + slot;
+			}
+			// the map was not up to date
+			updateFreeSpace( blockPos, block );
+		}
+		
+		long blockPos = getLastBlockPos();
+		if(blockPos >= 0){
+			byte[] block = readBlock( blockPos );
+			int count = getSlotCount( block );
+			int dataStart = getInt( block, 12 );
+			int recordOffset = dataStart - space;
+			if(getBlockLength( block ) == blockSize && recordOffset >= getSlotOffset( count + 1 )){
+				block = (byte[])block.clone();
+				addRecord( block, count, recordOffset, record );
+				writeRange( blockPos, block, recordOffset, record.length );
+				writeRange( blockPos, block, getSlotOffset(count), SLOT_SIZE );
+				writeRange( blockPos, block, 8, 8 );
+				table.database.getPageCache().update( table.raFile, blockPos, block, block.length );
+				return blockPos + count;
+			}
+			blockPos += getBlockLength( block );
+		}else{
+			blockPos = firstBlock;
+		}
+		
+		// create a new block
+		byte[] block = createBlock( record, space );
+		writeRange( blockPos, block, 0, block.length );
+		lastBlockPos = blockPos;
+		PageCache cache = table.database.getPageCache();
+		cache.put( table.raFile, blockPos, block, cache.getWriteStamp() );
+		return blockPos;
+	}
+	
+	
+	/**
+	 * Add many new records in new blocks after the last block. The blocks are build in memory and written with one
+	 * write as a contiguous extent. The free space of deleted rows and of the last block is not used. This is used
+	 * for a bulk load.
+	 * @param records a list of byte[] with the records
+	 */
+	void append(List records) throws SQLException, IOException{
+		lock.writeLock().lock();
+		try{
+			long blockPos = getLastBlockPos();
+			if(blockPos >= 0){
+				blockPos += getBlockLength( readBlock( blockPos ) );
+			}else{
+				blockPos = firstBlock;
+			}
+			
+			ArrayList blocks = new ArrayList();
+			int extentSize = 0;
+			byte[] block = null;
+			for(int i=0; i<records.size(); i++){
+				byte[] record = (byte[])records.get(i);
+				int space = Math.max( record.length, MIN_RECORD_SIZE );
+				if(block != null && getBlockLength( block ) == blockSize){
+					int count = getSlotCount( block );
+					int recordOffset = getInt( block, 12 ) - space;
+					if(recordOffset >= getSlotOffset( count + 1 )){
+						addRecord( block, count, recordOffset, record );
+						continue;
+					}
+				}
+				block = createBlock( record, space );
+				blocks.add( block );
+				extentSize += block.length;
+			}
+			if(block == null){
+				return;
+			}
+			
+			byte[] extent = new byte[extentSize];
+			int offset = 0;
+			for(int i=0; i<blocks.size(); i++){
+				block = (byte[])blocks.get(i);
+				System.arraycopy( block, 0, extent, offset, block.length );
+				offset += block.length;
+			}
+			Utils.writeFully( table.raFile, ByteBuffer.wrap( extent ), blockPos );
+			lastBlockPos = blockPos + extentSize - block.length;
+		}finally{
+			lock.writeLock().unlock();
+		}
+	}
+	
+	
+	/**
+	 * Create a new block with one record. A record that is larger as a block get a block with a multiple of the 
+	 * block size.
+	 */
+	private byte[] createBlock(byte[] record, int space){
+		int length = blockSize;
+		while(length < getSlotOffset(1) + space + TRAILER_SIZE){
+			length += blockSize;
+		}
+		byte[] block = new byte[length];
+		putInt( block, 0, BLOCK_MAGIC );
+		putInt( block, 4, length );
+		putInt( block, length - TRAILER_SIZE, length );
+		addRecord( block, 0, length - TRAILER_SIZE - space, record );
+		return block;
+	}
+	
+	
+	/**
+	 * Add a record with a new slot to the block. The caller must check that there is enough free space.
+	 */
+	private static void addRecord(byte[] block, int slot, int recordOffset, byte[] record){
+		System.arraycopy( record, 0, block, recordOffset, record.length );
+		putInt( block, getSlotOffset(slot), recordOffset );
+		putInt( block, getSlotOffset(slot) + 4, record.length );
+		putInt( block, 8, slot + 1 );
+		putInt( block, 12, recordOffset );
+	}
+	
+	
+	/**
+	 * Get the position of the last block from the trailer at the end of the file.
+	 * @return the position or -1 if there are no blocks
+	 */
+	private long getLastBlockPos() throws SQLException, IOException{
+		if(lastBlockPos < 0){
+			FileChannel raFile = table.raFile;
+			long size = raFile.size();
+			if(size <= firstBlock){
+				return -1;
+			}
+			ByteBuffer buffer = ByteBuffer.allocate( TRAILER_SIZE );
+			Utils.readFully( raFile, buffer, size - TRAILER_SIZE );
+			long blockPos = size - buffer.getInt(0);
+			if(blockPos < firstBlock || (blockPos - firstBlock) % blockSize != 0){
+				throw SmallSQLException.create(Language.TABLE_CORRUPT_PAGE, new Object[] { new Long(size) });
+			}
+			lastBlockPos = blockPos;
+		}
+		return lastBlockPos;
+	}
+	
+	
+	/**
+	 * Write a record in an existing slot. The record must fit into the space of the slot.
+	 * @return the new block data
+	 */
+	private byte[] writeSlot(long blockPos, byte[] block, int slot, byte[] record) throws IOException{
+		int recordOffset = getRecordOffset( block, slot );
+		block = (byte[])block.clone();
+		System.arraycopy( record, 0, block, recordOffset, record.length );
+		putInt( block, getSlotOffset(slot) + 4, record.length );
+		writeRange( blockPos, block, recordOffset, record.length );
+		writeRange( blockPos, block, getSlotOffset(slot), SLOT_SIZE );
+		table.database.getPageCache().update( table.raFile, blockPos, block, block.length );
+		return block;
+	}
+	
+	
+	/**
+	 * Save the size of the largest reusable slot of the block in the free space map.
+	 */
+	private void updateFreeSpace(long blockPos, byte[] block) throws SQLException, IOException{
+		int[] spaces = getSlotSpaces( block );
+		int max = 0;
+		for(int slot=0; slot<spaces.length; slot++){
+			if(isReusable( blockPos, block, slot )){
+				max = Math.max( max, spaces[slot] );
+			}
+		}
+		freeSpaceMap.set( (int)((blockPos - firstBlock) / blockSize), max );
+	}
+	
+	
+	/**
+	 * Find the smallest slot of a deleted row with enough space.
+	 * @return the slot number or -1 if there is no slot
+	 */
+	private int findReusableSlot(long blockPos, byte[] block, int space){
+		int[] spaces = getSlotSpaces( block );
+		int result = -1;
+		for(int slot=0; slot<spaces.length; slot++){
+			if(spaces[slot] >= space && isReusable( blockPos, block, slot ) && (result < 0 || spaces[slot] < spaces[result])){
+				result = slot;
+			}
+		}
+		return result;
+	}
+	
+	
+	/**
+	 * Calculate the space of every slot. This is the distance to the next record in the block. It can be larger as the
+	 * length of the current record.
+	 */
+	private static int[] getSlotSpaces(byte[] block){
+		int count = getSlotCount( block );
+		long[] sorted = new long[count];
+		for(int slot=0; slot<count; slot++){
+			sorted[slot] = ((long)getRecordOffset( block, slot ) << 32) | slot;
+		}
+		Arrays.sort( sorted );
+		int[] spaces = new int[count];
+		int end = getBlockLength( block ) - TRAILER_SIZE;
+		for(int i=count-1; i>=0; i--){
+			int recordOffset = (int)(sorted[i] >>> 32);
+			spaces[(int)sorted[i]] = end - recordOffset;
+			end = recordOffset;
+		}
+		return spaces;
+	}
+	
+	
+	/**
+	 * If the slot is of a deleted row and the commit of the deletion is finished.
+	 */
+	private boolean isReusable(long blockPos, byte[] block, int slot){
+		return block[ getRecordOffset( block, slot ) ] == StoreImpl.DELETED && !pendingSlots.contains( new Long(blockPos + slot) );
+	}
+	
+	
+	void close() throws IOException{
+		freeSpaceMap.close();
+	}
+	
+	
+	private void writeRange(long blockPos, byte[] block, int offset, int length) throws IOException{
+		Utils.writeFully( table.raFile, ByteBuffer.wrap( block, offset, length ).slice(), blockPos + offset );
+	}
+	
+	
+	private static int getSlotOffset(int slot){
+		return HEADER_SIZE + slot * SLOT_SIZE;
+	}
+	
+	
+	static int getBlockLength(byte[] block){
+		return getInt( block, 4 );
+	}
+	
+	
+	static int getSlotCount(byte[] block){
+		return getInt( block, 8 );
+	}
+	
+	
+	static int getRecordOffset(byte[] block, int slot){
+		return getInt( block, getSlotOffset(slot) );
+	}
+	
+	
+	static int getRecordLength(byte[] block, int slot){
+		return getInt( block, getSlotOffset(slot) + 4 );
+	}
+	
+	
+	private static int getInt(byte[] block, int offset){
+		return ((block[offset] & 0xFF) << 24) | ((block[offset+1] & 0xFF) << 16) | ((block[offset+2] & 0xFF) << 8) | (block[offset+3] & 0xFF);
+	}
+	
+	
+	private static void putInt(byte[] block, int offset, int value){
+		block[offset]   = (byte)(value >> 24);
+		block[offset+1] = (byte)(value >> 16);
+		block[offset+2] = (byte)(value >> 8);
+		block[offset+3] = (byte)(value);
+	}
+}
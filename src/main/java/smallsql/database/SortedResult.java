@@ -85,6 +85,10 @@ final class SortedResult extends RowSource {
 		rowSource.execute();
 		Index index = new Index(false);	
         lastRowOffset = -1;
+        // a PreparedStatement can be executed multiple times
+        sortedRowCount = 0;
+        insertedRows.clear();
+        row = 0;
 		while(rowSource.next()){
             lastRowOffset = rowSource.getRowPosition();
 			index.addValues( lastRowOffset, orderBy);
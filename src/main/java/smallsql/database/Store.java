@@ -64,6 +64,14 @@ abstract class Store {
 	
 	abstract String getString( int offset, int dataType) throws Exception;
 	
+	/**
+	 * Get a LOB value for streaming without reading the complete value.
+	 * @return the value or null if the value is not saved as LOB or is SQL NULL.
+	 */
+	Lob getLob( int offset, int dataType) throws Exception{
+		return null;
+	}
+	
 	
 	
 	/**
@@ -51,12 +51,10 @@ public class StoreImpl extends Store {
      * 4 byte - offset to the next page
      * 8 byte - position of an updated page
      */
-	private static final int PAGE_CONTROL_SIZE = 28;
-	private static final byte[] page_control = new byte[PAGE_CONTROL_SIZE]; 
-	private static final ByteBuffer pageControlBuffer = ByteBuffer.wrap(page_control); 
+	static final int PAGE_CONTROL_SIZE = 28;
 	private int status; // valid value are follow:
 	private static final int NORMAL = 0;
-    private static final int DELETED = 1;
+    static final int DELETED = 1;
     /**
      * Using of UPDATE_POINTER and UPDATED_PAGE
      * 	If a page are updated and the new data are larger as the old data then
@@ -66,12 +64,21 @@ public class StoreImpl extends Store {
      */
 	private static final int UPDATE_POINTER = 2;
 	private static final int UPDATED_PAGE = 3;
+	/**
+	 * Flag in the status of a record of slotted pages. The row data of the record are compressed with the LZCodec 
+	 * and follow the length of the uncompressed data.
+	 */
+	private static final int COMPRESSED = 0x10;
+	/** Smaller rows are never compressed */
+	private static final int MIN_COMPRESS_SIZE = 32;
     
     final private Table table;
     /** Data of one page */
     private byte[] page; 
     /** if the current array "page" is shared. This make sence for read only access but not if it will be write. */
     private boolean sharedPageData;
+    /** if the current array "page" is owned by the PageCache. It must be copied before any write. */
+    private boolean cachedPageData;
     private StorePage storePage;
     private long filePos; // Position in the file
     private int sizeUsed;
@@ -114,28 +121,52 @@ public class StoreImpl extends Store {
                 case SQLTokenizer.SELECT:
                 case SQLTokenizer.UPDATE:
             	case SQLTokenizer.DELETE:
+                    if(storePage.page == null && table != null && table.slottedPages != null && table.slottedPages.contains(filePos)){
+                        if(!store.readSlot(table.slottedPages)){
+                            return null;
+                        }
+                    }else
                     if(storePage.page == null){
                         FileChannel raFile = storePage.raFile;
-                        synchronized(raFile){
+                        PageCache cache = (table != null) ? table.database.getPageCache() : null;
+                        byte[] cached = (cache != null) ? cache.get(raFile, filePos) : null;
+                        if(cached != null){
+                            store.page = cached;
+                            store.sharedPageData = true;
+                            store.cachedPageData = true;
+                            store.readPageHeader();
+                        }else{
+                            long stamp = (cache != null) ? cache.getWriteStamp() : 0;
                             if(filePos >= raFile.size() - PAGE_CONTROL_SIZE){
                                 return null;
                             }
-                            raFile.position(filePos);
-                            synchronized(page_control){
-                                pageControlBuffer.position(0);
-                                raFile.read(pageControlBuffer);
-                                store.page = page_control;
-                                store.readPageHeader();
+                            // positional reads do not change the position of the channel,
+                            // that concurrent readers do not need any lock
+                            byte[] pageControl = new byte[PAGE_CONTROL_SIZE];
+                            Utils.readFully(raFile, ByteBuffer.wrap(pageControl), filePos);
+                            store.page = pageControl;
+                            store.readPageHeader();
+                            if(store.sizeUsed > PAGE_CONTROL_SIZE){
+                                store.page = new byte[store.sizeUsed];
+                                System.arraycopy(pageControl, 0, store.page, 0, PAGE_CONTROL_SIZE);
+                                ByteBuffer buffer = ByteBuffer.wrap(store.page);
+                                buffer.position(PAGE_CONTROL_SIZE);
+                                Utils.readFully(raFile, buffer, filePos);
+                            }
+                            if(cache != null){
+                                cache.put(raFile, filePos, store.page, stamp);
+                                store.sharedPageData = true;
+                                store.cachedPageData = true;
                             }
-                            store.page = new byte[store.sizeUsed];
-                            raFile.position(filePos);
-                            ByteBuffer buffer = ByteBuffer.wrap(store.page);
-                            raFile.read(buffer);
                         }
                     }else{
                         store.page = storePage.page;
                         store.sharedPageData = true;
                         store.readPageHeader();
+                        if(table != null && table.slottedPages != null && table.slottedPages.contains(filePos)){
+                            // a changed row of slotted pages, the next row is not after the end of this page 
+                            store.readNextSlot(table.slottedPages);
+                        }
                     }
                     store = store.loadUpdatedStore();
                     break;
@@ -149,6 +180,113 @@ public class StoreImpl extends Store {
     }
     
     
+    /**
+     * Load the row data from a slot of a table with slotted pages.
+     * The page control block of the page array is not filled because it is not used by the read operations.
+     * @param slottedPages the data area of the table
+     * @return false if the row position is after the end of the file
+     */
+    private boolean readSlot(SlottedPages slottedPages) throws Exception{
+        byte[] block = readNextSlot(slottedPages);
+        if(block == null){
+            return false;
+        }
+        int slot = (int)(filePos - slottedPages.getBlockPos(filePos));
+        int slotCount = SlottedPages.getSlotCount(block);
+        if(slot >= slotCount){
+            // a slot that was not used on reading of the block
+            status = DELETED;
+            sizeUsed = sizePhysical = PAGE_CONTROL_SIZE;
+            page = new byte[PAGE_CONTROL_SIZE];
+            return true;
+        }
+        int recordOffset = SlottedPages.getRecordOffset(block, slot);
+        int recordEnd = recordOffset + SlottedPages.getRecordLength(block, slot);
+        page = block;
+        offset = recordOffset;
+        status = readByte();
+        boolean isCompressed = (status & COMPRESSED) != 0;
+        status &= ~COMPRESSED;
+        if(status == UPDATE_POINTER){
+            filePosUpdated = readLong();
+        }
+        if(isCompressed){
+            int dataLength = readInt();
+            sizeUsed = sizePhysical = PAGE_CONTROL_SIZE + dataLength;
+            page = new byte[sizeUsed];
+            LZCodec.decompress(block, offset, recordEnd - offset, page, PAGE_CONTROL_SIZE, dataLength);
+            return true;
+        }
+        int dataLength = recordEnd - offset;
+        sizeUsed = sizePhysical = PAGE_CONTROL_SIZE + dataLength;
+        page = new byte[sizeUsed];
+        System.arraycopy(block, recordEnd - dataLength, page, PAGE_CONTROL_SIZE, dataLength);
+        return true;
+    }
+    
+    
+    /**
+     * Set the offset of the next row for a row of slotted pages. The next row is the next slot or the first slot 
+     * of the next block.
+     * @param slottedPages the data area of the table
+     * @return the block of the row or null if the row position is after the end of the file
+     */
+    private byte[] readNextSlot(SlottedPages slottedPages) throws Exception{
+        long blockPos = slottedPages.getBlockPos(filePos);
+        byte[] block = slottedPages.readBlock(blockPos);
+        if(block == null){
+            return null;
+        }
+        int slot = (int)(filePos - blockPos);
+        int slotCount = SlottedPages.getSlotCount(block);
+        nextPageOffset = (slot + 1 < slotCount) ? 1 : SlottedPages.getBlockLength(block) - slot;
+        return block;
+    }
+    
+    
+    /**
+     * Convert a page with a page control block into a record for slotted pages. The record include only the status,
+     * the pointer to an updated page if it is an UPDATE_POINTER and the row data.
+     * @param data the page data with page control block
+     * @param size the used size of the page
+     * @param compress true if the row data should be compressed. They are only compressed if this save space.
+     */
+    static byte[] createSlotRecord(byte[] data, int size, boolean compress){
+        StoreImpl store = new StoreImpl(null, null, SQLTokenizer.SELECT, -1);
+        store.page = data;
+        store.offset = 4; // skip the page magic
+        int status = store.readInt();
+        boolean isPointer = status == UPDATE_POINTER;
+        int dataLength = size - PAGE_CONTROL_SIZE;
+        int headerLength = 1 + (isPointer ? 8 : 0);
+        if(compress && dataLength >= MIN_COMPRESS_SIZE){
+            // the compressed data must be smaller that the length field pays off
+            byte[] packed = new byte[headerLength + dataLength];
+            int packedLength = LZCodec.compress(data, PAGE_CONTROL_SIZE, dataLength, packed, headerLength + 4, dataLength - 5);
+            if(packedLength >= 0){
+                byte[] record = new byte[headerLength + 4 + packedLength];
+                System.arraycopy(packed, 0, record, 0, record.length);
+                record[0] = (byte)(status | COMPRESSED);
+                if(isPointer){
+                    System.arraycopy(data, PAGE_CONTROL_SIZE - 8, record, 1, 8);
+                }
+                store.page = record;
+                store.offset = headerLength;
+                store.writeInt(dataLength);
+                return record;
+            }
+        }
+        byte[] record = new byte[headerLength + dataLength];
+        record[0] = (byte)status;
+        if(isPointer){
+            // the last 8 bytes of the page control block are the position of the updated page
+            System.arraycopy(data, PAGE_CONTROL_SIZE - 8, record, 1, 8);
+        }
+        System.arraycopy(data, PAGE_CONTROL_SIZE, record, record.length - dataLength, dataLength);
+        return record;
+    }
+    
+    
     /**
      * Recreate a StoreImpl from an uncommitted StorePage.
      */
@@ -240,6 +378,13 @@ public class StoreImpl extends Store {
             //SQLTokenizer.SELECT should not occur here
             default: throw new Error(""+type);
         }
+		if(cachedPageData){
+			// the page data are owned by the PageCache, we need a private copy
+			byte[] newPage = new byte[Math.max(sizeUsed, PAGE_CONTROL_SIZE)];
+			System.arraycopy( page, 0, newPage, 0, Math.min(newPage.length, page.length) );
+			page = newPage;
+			sharedPageData = cachedPageData = false;
+		}
 		offset = 0;
 		writeInt( PAGE_MAGIC ); // for repair 
 		writeInt( status);
@@ -256,8 +401,43 @@ public class StoreImpl extends Store {
             return 0;
         }
     }
-    
-    
+
+
+    /**
+     * Finish a row of a bulk load. The row is not written, it is returned that the caller can write many rows with one
+     * write. After this call the store can be reused for the next row.
+     * @param slotted true for a record of slotted pages, false for a page with a page control block
+     * @return the record or the page of the row
+     */
+    byte[] writeBulkFinish(boolean slotted){
+    	int size = offset;
+		writePageControl( page, size );
+		offset = PAGE_CONTROL_SIZE;
+		if(slotted){
+			return createSlotRecord( page, size, table.isCompressed() );
+		}
+		byte[] result = new byte[size];
+		System.arraycopy( page, 0, result, 0, size );
+		return result;
+    }
+
+
+    /**
+     * Write the page control block of a new page that is written without a StoreImpl, like the chunks of a LOB value.
+     * @param page the page, the first PAGE_CONTROL_SIZE bytes are overridden
+     * @param size the used and physical size of the page
+     */
+    static void writePageControl(byte[] page, int size){
+        ByteBuffer buffer = ByteBuffer.wrap( page );
+        buffer.putInt( 0, PAGE_MAGIC );
+        buffer.putInt( 4, NORMAL );
+        buffer.putInt( 8, size ); // sizeUsed
+        buffer.putInt( 12, size ); // sizePhysical
+        buffer.putInt( 16, 0 ); //nextPageOffset
+        buffer.putLong( 20, 0 ); // Pointer of an updated page
+    }
+
+
     /**
      * Request a write lock for the current read page. It add the resulting StorePage to the list of commits.
      * 
@@ -281,6 +461,8 @@ public class StoreImpl extends Store {
 		if(newData.offset <= sizePhysical || filePos == -1){
 			// the old page can be overwrite because it it large enough
 			page = newData.page; //newData is only a temp StoreImpl
+			sharedPageData = newData.sharedPageData;
+			cachedPageData = newData.cachedPageData;
 			offset = newData.offset;
 			if(sizePhysical < offset) sizePhysical = offset; // occur only on updates of not committed inserts (filePos == -1
 			writeFinsh(con);
@@ -291,11 +473,13 @@ public class StoreImpl extends Store {
 				// we need to create a new page and change the old page to a UPDATE_POINTER
 				((TableStorePage)newData.storePage).lockType = TableView.LOCK_INSERT;
 				filePosUpdated = newData.writeFinsh(null);
+				freeOnRollback(con, filePosUpdated);
 				status = UPDATE_POINTER;
 			}else{
 				// we need to create a new page and delete the old page
 				((TableStorePage)newData.storePage).lockType = TableView.LOCK_INSERT;
 				updatePointer.filePosUpdated = newData.writeFinsh(null);
+				freeOnRollback(con, updatePointer.filePosUpdated);
 				updatePointer.status = UPDATE_POINTER;
 				updatePointer.type = SQLTokenizer.UPDATE;
 				updatePointer.createWriteLock();
@@ -304,6 +488,7 @@ public class StoreImpl extends Store {
 				}
 				updatePointer.writeFinsh(con);
 				status = DELETED;
+				type = SQLTokenizer.DELETE; // write only the page control block of the old page
                 if(sharedPageData){
                     page = new byte[PAGE_CONTROL_SIZE];
                 }
@@ -312,6 +497,16 @@ public class StoreImpl extends Store {
 		}
 	}
     
+	/**
+	 * Register a page that was written without transaction. On a rollback the page is not referenced anymore and can be
+	 * reused. This is only possible for tables with slotted pages.
+	 */
+	private void freeOnRollback(SSConnection con, long filePos) throws SQLException{
+		if(con != null && table.slottedPages != null){
+			con.add( new FreePageOnRollback( table, filePos ) );
+		}
+	}
+    
 /*==============================================================================
 
 Write und Read Methoden
@@ -554,16 +749,18 @@ Write und Read Methoden
     }
 
     void writeLongBinary( byte[] daten ) throws Exception{
-        StoreImpl store = table.getLobStore( ((TableStorePage)storePage).con, daten.length + 4, SQLTokenizer.LONGVARBINARY);
-        store.writeInt( daten.length );
-        store.writeBytes( daten );
-        writeLong( store.writeFinsh(null) );
+        writeLongBinary( new ByteArrayInputStream( daten ) );
+    }
+
+    /**
+     * Write a binary LOB value. The stream is copied chunk by chunk into the LOB file.
+     */
+    void writeLongBinary( InputStream daten ) throws Exception{
+        writeLong( table.writeLob( daten ) );
     }
 
     byte[] readLongBinary() throws Exception{
-        long lobFilePos = readLong();
-        StoreImpl store = table.getLobStore( ((TableStorePage)storePage).con, lobFilePos, SQLTokenizer.SELECT );
-        return store.readBytes( store.readInt() );
+        return table.getLob( readLong(), false ).getBytes();
     }
 
     void writeChars(char[] daten){
@@ -586,18 +783,18 @@ Write und Read Methoden
     }
 
     void writeLongString(String daten) throws Exception{
-        char[] chars = daten.toCharArray();
-        StoreImpl store = table.getLobStore( ((TableStorePage)storePage).con, chars.length * 2L + 4, SQLTokenizer.LONGVARBINARY);
-        store.writeInt( chars.length );
-        store.writeChars( chars );
-        writeLong( store.writeFinsh(null) );
+        writeLongString( new StringReader( daten ) );
+    }
+
+    /**
+     * Write a character LOB value. The reader is copied chunk by chunk into the LOB file.
+     */
+    void writeLongString(Reader daten) throws Exception{
+        writeLong( table.writeLob( daten ) );
     }
 
     String readLongString() throws Exception{
-        long lobFilePos = readLong();
-        StoreImpl store = table.getLobStore( ((TableStorePage)storePage).con, lobFilePos, SQLTokenizer.SELECT );
-        if(store == null) throw SmallSQLException.create(Language.LOB_DELETED);
-        return new String(store.readChars( store.readInt() ) );
+        return table.getLob( readLong(), true ).getString();
     }
 	
 
@@ -770,7 +967,14 @@ Write und Read Methoden
 			case SQLTokenizer.NCLOB:
             case SQLTokenizer.LONGNVARCHAR:
             case SQLTokenizer.LONGVARCHAR:
-                    writeLongString( expr.getString() );
+                    Object charStream = getStreamValue( expr, true );
+                    if(charStream instanceof Reader){
+                        writeLongString( (Reader)charStream );
+                    }else if(charStream instanceof InputStream){
+                        writeLongString( new InputStreamReader( (InputStream)charStream, "US-ASCII" ) );
+                    }else{
+                        writeLongString( expr.getString() );
+                    }
                     break;
             case SQLTokenizer.JAVA_OBJECT:
                     // FIXME a MemoryStream can be faster because there are no additional array copy
@@ -781,7 +985,12 @@ Write und Read Methoden
                     break;
             case SQLTokenizer.LONGVARBINARY:
             case SQLTokenizer.BLOB:
-                    writeLongBinary( expr.getBytes() );
+                    Object byteStream = getStreamValue( expr, false );
+                    if(byteStream instanceof InputStream){
+                        writeLongBinary( (InputStream)byteStream );
+                    }else{
+                        writeLongBinary( expr.getBytes() );
+                    }
                     break;
             case SQLTokenizer.TIMESTAMP:
                     writeTimestamp( expr.getLong() );
@@ -813,6 +1022,26 @@ Write und Read Methoden
         }
     }
 
+
+    /**
+     * Get a stream for a LOB value that can be written without reading the complete value into memory. This is a
+     * stream parameter of a PreparedStatement or a LOB column of another table.
+     * @param isChars true for a character column
+     * @return an InputStream, a Reader or null
+     */
+    private static Object getStreamValue( Expression expr, boolean isChars ) throws Exception{
+        if(expr instanceof ExpressionValue){
+            Object value = expr.getObject();
+            return (value instanceof InputStream || value instanceof Reader) ? value : null;
+        }
+        Lob lob = expr.getLob();
+        if(lob == null || lob.isChars() != isChars){
+            return null;
+        }
+        return isChars ? (Object)lob.getReader( 0, lob.length() / 2 ) : lob.getInputStream( 0, lob.length() );
+    }
+
+
     @Override
     boolean isNull(int valueOffset){
         return page[ valueOffset ] != 0;
@@ -1415,11 +1644,11 @@ Write und Read Methoden
             case SQLTokenizer.BIT:
             case SQLTokenizer.BOOLEAN:
                     byte[] bytes = new byte[1];
-                    System.arraycopy( page, valueOffset, bytes, 0, bytes.length);
+                    System.arraycopy( page, this.offset, bytes, 0, bytes.length);
                     return bytes;
             case SQLTokenizer.SMALLINT:
                     bytes = new byte[2];
-                    System.arraycopy( page, valueOffset, bytes, 0, bytes.length);
+                    System.arraycopy( page, this.offset, bytes, 0, bytes.length);
                     return bytes;
             case SQLTokenizer.INT:
             case SQLTokenizer.REAL:
@@ -1428,7 +1657,7 @@ Write und Read Methoden
             case SQLTokenizer.DATE:
             case SQLTokenizer.SMALLDATETIME:
                     bytes = new byte[4];
-                    System.arraycopy( page, valueOffset, bytes, 0, bytes.length);
+                    System.arraycopy( page, this.offset, bytes, 0, bytes.length);
                     return bytes;
             case SQLTokenizer.BIGINT:
             case SQLTokenizer.FLOAT:
@@ -1436,7 +1665,7 @@ Write und Read Methoden
             case SQLTokenizer.MONEY:
             case SQLTokenizer.TIMESTAMP:
                     bytes = new byte[8];
-                    System.arraycopy( page, valueOffset, bytes, 0, bytes.length);
+                    System.arraycopy( page, this.offset, bytes, 0, bytes.length);
                     return bytes;
             case SQLTokenizer.NUMERIC:
             case SQLTokenizer.DECIMAL:
@@ -1457,12 +1686,34 @@ Write und Read Methoden
                     return readLongBinary();
             case SQLTokenizer.UNIQUEIDENTIFIER:
                     bytes = new byte[16];
-                    System.arraycopy( page, valueOffset, bytes, 0, bytes.length);
+                    System.arraycopy( page, this.offset, bytes, 0, bytes.length);
                     return bytes;
             default: throw new Error();
         }
     }
 
+    
+    /**
+     * It used for ResultSet.getBinaryStream(), getCharacterStream(), getBlob() and getClob()
+     */
+    @Override
+    Lob getLob(int valueOffset, int dataType) throws Exception{
+        this.offset = valueOffset;
+        if(readBoolean()) return null;
+        switch(dataType){
+			case SQLTokenizer.CLOB:
+			case SQLTokenizer.NCLOB:
+            case SQLTokenizer.LONGNVARCHAR:
+            case SQLTokenizer.LONGVARCHAR:
+                    return table.getLob( readLong(), true );
+            case SQLTokenizer.LONGVARBINARY:
+            case SQLTokenizer.BLOB:
+                    return table.getLob( readLong(), false );
+            default:
+                    return null;
+        }
+    }
+
     @Override
     void scanObjectOffsets( int[] offsets, int dataTypes[] ){
         offset = PAGE_CONTROL_SIZE;
@@ -1532,6 +1783,16 @@ Write und Read Methoden
 		type   = SQLTokenizer.DELETE;
 		createWriteLock();
 		writeFinsh(con);
+		if(updatePointer != null){
+			// the row was moved, the pointer must not point to the page if it is reused
+			updatePointer.status = DELETED;
+			updatePointer.type = SQLTokenizer.DELETE;
+			updatePointer.createWriteLock();
+			if(updatePointer.sharedPageData){
+				updatePointer.page = new byte[PAGE_CONTROL_SIZE];
+			}
+			updatePointer.writeFinsh(con);
+		}
 	}
 	
 	
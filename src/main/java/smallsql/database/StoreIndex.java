@@ -0,0 +1,139 @@
+/* =============================================================
+ * SmallSQL : a free Java DBMS library for the Java(tm) platform
+ * =============================================================
+ *
+ * (C) Copyright 2004-2011, by Volker Berlin.
+ *
+ * Project Info:  http://www.smallsql.de/
+ *
+ * This library is free software; you can redistribute it and/or modify it 
+ * under the terms of the GNU Lesser General Public License as published by 
+ * the Free Software Foundation; either version 2.1 of the License, or 
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but 
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY 
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public 
+ * License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, 
+ * USA.  
+ *
+ * [Java is a trademark or registered trademark of Sun Microsystems, Inc. 
+ * in the United States and other countries.]
+ *
+ * ---------------
+ * StoreIndex.java
+ * ---------------
+ * Author: Volker Berlin
+ * 
+ */
+package smallsql.database;
+
+import java.sql.SQLException;
+
+import smallsql.tools.language.Language;
+
+/**
+ * A Store with the values of a row that are read from an index instead of the table. It includes only the
+ * values of the columns that are covered by the index, the values of all other columns are null.
+ * 
+ * @see IndexScan
+ */
+final class StoreIndex extends Store {
+
+	private final IndexDescription index;
+	/** The position in the entry for every table column, see IndexDescription.getEntryIdx() */
+	private final int[] entryIdxs;
+	/** The digits of the index entry of the row. */
+	private final char[][] entry;
+	/** The values in the order of the table columns. A value is created on the first access. */
+	private final Expression[] values;
+	
+	
+	StoreIndex(IndexDescription index, int[] entryIdxs, char[][] entry){
+		this.index = index;
+		this.entryIdxs = entryIdxs;
+		this.entry = entry;
+		this.values = new Expression[entryIdxs.length];
+	}
+	
+	
+	private Expression getValue(int offset){
+		Expression value = values[offset];
+		if(value == null){
+			value = values[offset] = index.getEntryValue( entry, entryIdxs[offset] );
+		}
+		return value;
+	}
+	
+	
+	final boolean isNull(int offset) throws Exception{
+		return getValue( offset ).isNull();
+	}
+
+	final boolean getBoolean(int offset, int dataType) throws Exception{
+		return getValue( offset ).getBoolean();
+	}
+
+	final byte[] getBytes(int offset, int dataType) throws Exception{
+		return getValue( offset ).getBytes();
+	}
+
+	final double getDouble(int offset, int dataType) throws Exception{
+		return getValue( offset ).getDouble();
+	}
+
+	final float getFloat(int offset, int dataType) throws Exception{
+		return getValue( offset ).getFloat();
+	}
+
+	final int getInt(int offset, int dataType) throws Exception{
+		return getValue( offset ).getInt();
+	}
+
+	final long getLong(int offset, int dataType) throws Exception{
+		return getValue( offset ).getLong();
+	}
+
+	final long getMoney(int offset, int dataType) throws Exception{
+		return getValue( offset ).getMoney();
+	}
+
+	final MutableNumeric getNumeric(int offset, int dataType) throws Exception{
+		return getValue( offset ).getNumeric();
+	}
+
+	final Object getObject(int offset, int dataType) throws Exception{
+		return getValue( offset ).getObject();
+	}
+
+	final String getString(int offset, int dataType) throws Exception{
+		return getValue( offset ).getString();
+	}
+	
+
+	final boolean isValidPage(){
+		return true;
+	}
+
+	final void scanObjectOffsets(int[] offsets, int[] dataTypes){
+		for(int i=0; i<offsets.length; i++){
+			offsets[i] = i;
+		}
+	}
+
+	final int getUsedSize(){
+		return 0;
+	}
+
+	final long getNextPagePos(){
+		return -1;
+	}
+
+	final void deleteRow(SSConnection con) throws SQLException{
+		throw SmallSQLException.create(Language.ROWSOURCE_READONLY);
+	}
+}
@@ -60,6 +60,12 @@ class StorePage extends TransactionStep{
 	}
 
 
+	@Override
+	boolean hasWrites(){
+		return raFile != null && page != null;
+	}
+
+
 	@Override
     long commit() throws SQLException{
 		try{
@@ -68,13 +74,15 @@ class StorePage extends TransactionStep{
 			if(raFile != null && page != null){
 				// if new page then append at end of file
 			    ByteBuffer buffer = ByteBuffer.wrap( page, 0, pageSize );
-			    synchronized(raFile){
-    				if(fileOffset < 0){
-    					fileOffset = raFile.size();
-    				}
-				    raFile.position(fileOffset);
-				    raFile.write(buffer);
-				}
+			    if(fileOffset < 0){
+			        // the size of the file and the write must be atomic
+			        synchronized(raFile){
+			            fileOffset = raFile.size();
+			            Utils.writeFully( raFile, buffer, fileOffset );
+			        }
+			    }else{
+			        Utils.writeFully( raFile, buffer, fileOffset );
+			    }
 				//raFile.getFD().sync();
 			}
 			return fileOffset;
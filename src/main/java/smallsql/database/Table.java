@@ -45,11 +45,22 @@ import smallsql.tools.language.Language;
 class Table extends TableView{
 	
 	private static final int INDEX = 1;
+	private static final int PAGE_FORMAT = 2;
+	private static final int PAGE_COMPRESSION = 3;
+	
+	static final int COMPRESSION_NONE = 0;
+	static final int COMPRESSION_LZ = 1;
 
     final Database database;
     FileChannel raFile; // file handle of the table
 	private Lobs lobs; // file handle of lob data for this table
     long firstPage; // offset of the first page
+    /** The data area of the table if the rows are saved in slotted pages, null for the old format with one page per row */
+    SlottedPages slottedPages;
+    /** Count of committed page writes. It is used to detect concurrent changes while the table is compacted. */
+    volatile long modCount;
+    /** The codec for the rows and the LOB chunks, COMPRESSION_NONE or COMPRESSION_LZ */
+    int compression;
 
 	final private HashMap locks = new HashMap();
 	private SSConnection tabLockConnection; // if set then it is the Connection with a LOCK_TAB
@@ -83,41 +94,60 @@ class Table extends TableView{
 		
 		// read additional informations
 		int type;
+		int blockSize = 0;
 		while((type = store.readInt()) != 0){
 			int offsetInPage = store.getCurrentOffsetInPage();
 			int size = store.readInt();
 			switch(type){
 				case INDEX:
-					indexes.add( IndexDescription.load( database, this, store) );
+					indexes.add( IndexDescription.load( database, this, store, offsetInPage + size ) );
+					break;
+				case PAGE_FORMAT:
+					blockSize = store.readInt();
+					break;
+				case PAGE_COMPRESSION:
+					compression = store.readInt();
+					if(compression != COMPRESSION_NONE && compression != COMPRESSION_LZ){
+						throw SmallSQLException.create(Language.TABLE_FILE_INVALID, getFile(database));
+					}
 					break;
 			}
 			store.setCurrentOffsetInPage(offsetInPage + size);
 		}
 		
 		firstPage = store.getNextPagePos();
+		if(tableFormatVersion >= TABLE_VIEW_SLOTTED_VERSION){
+			if(!SlottedPages.isValidBlockSize(blockSize)){
+				throw SmallSQLException.create(Language.TABLE_FILE_INVALID, getFile(database));
+			}
+			slottedPages = new SlottedPages( this, firstPage, blockSize );
+		}
+		indexes.rebuild( con, this );
     }
     
 
     /**
      * Constructor for creating of new tables.
      */
-    Table(Database database, SSConnection con, String name, Columns columns, IndexDescriptions indexes, ForeignKeys foreignKeys) throws Exception{
-        this(database, con, name, columns, null, indexes, foreignKeys);
+    Table(Database database, SSConnection con, String name, Columns columns, IndexDescriptions indexes, ForeignKeys foreignKeys, int compression) throws Exception{
+        this(database, con, name, columns, null, indexes, foreignKeys, compression);
     }
     
     /**
      * Constructor for alter an existing tables.
      */
-    Table(Database database, SSConnection con, String name, Columns columns, IndexDescriptions existIndexes, IndexDescriptions newIndexes, ForeignKeys foreignKeys) throws Exception{
+    Table(Database database, SSConnection con, String name, Columns columns, IndexDescriptions existIndexes, IndexDescriptions newIndexes, ForeignKeys foreignKeys, int compression) throws Exception{
         super( name, columns );
         this.database = database;
         this.references = foreignKeys;
+        this.compression = compression;
         newIndexes.create(con, database, this);
         if(existIndexes == null){
             this.indexes = newIndexes;
         }else{
-            this.indexes = existIndexes;
-            existIndexes.add(newIndexes);
+            // the rows get new positions, only the index files are shared with the old table
+            this.indexes = existIndexes.copy(database, this);
+            this.indexes.add(newIndexes);
         }
         
         write(con);
@@ -142,8 +172,67 @@ class Table extends TableView{
 	 * Drop the Table. This method is static that the file does not need to load and also corrupt files can be dropped.
 	 */ 
     static void drop(Database database, String name) throws Exception{
+        Strings indexNames = readIndexNames( database, name );
         boolean ok = new File( Utils.createTableViewFileName( database, name ) ).delete();
         if(!ok) throw SmallSQLException.create(Language.TABLE_CANT_DROP, name);
+        FreeSpaceMap.drop( database, name );
+        for(int i=0; i<indexNames.size(); i++){
+            IndexDescription.getFile( database, indexNames.get(i) ).delete();
+        }
+    }
+    
+    
+    /**
+     * Read the names of the indexes from the header of a table file that is not loaded. If the file is corrupt 
+     * then only the names before the damaged part are returned.
+     */
+    private static Strings readIndexNames(Database database, String name){
+        Strings indexNames = new Strings();
+        FileChannel raFile = null;
+        try{
+            raFile = Utils.openRaFile( new File( Utils.createTableViewFileName( database, name ) ), true );
+            ByteBuffer buffer = ByteBuffer.allocate(8);
+            raFile.read(buffer);
+            buffer.position(0);
+            int magic   = buffer.getInt();
+            int version = buffer.getInt();
+            if(magic != MAGIC_TABLE){
+                return indexNames;
+            }
+            StorePage storePage = new StorePage( null, -1, raFile, 8);
+            StoreImpl store = StoreImpl.createStore( null, storePage, SQLTokenizer.SELECT, 8);
+            if(store == null){
+                return indexNames;
+            }
+            int count = store.readInt();
+            for(int i=0; i<count; i++){
+                store.readColumn(version);
+            }
+            int type;
+            while((type = store.readInt()) != 0){
+                int offsetInPage = store.getCurrentOffsetInPage();
+                int size = store.readInt();
+                if(type == INDEX){
+                    store.readInt(); // constraint type
+                    count = store.readInt();
+                    for(int c=0; c<count; c++){
+                        store.readString();
+                    }
+                    indexNames.add( store.readString() );
+                }
+                store.setCurrentOffsetInPage(offsetInPage + size);
+            }
+        }catch(Throwable e){
+            DriverManager.println(e.toString());
+        }finally{
+            if(raFile != null)
+                try{
+                    raFile.close();
+                }catch(Exception e2){
+                    DriverManager.println(e2.toString());
+                }
+        }
+        return indexNames;
     }
     
     
@@ -165,6 +254,7 @@ class Table extends TableView{
 			indexes.drop(database);
 		boolean ok = getFile(database).delete();
 		if(!ok) throw SmallSQLException.create(Language.TABLE_CANT_DROP, name);
+		FreeSpaceMap.drop( database, name );
     }
     
 
@@ -175,6 +265,9 @@ class Table extends TableView{
     void close() throws Exception{
         if(indexes != null)
             indexes.close();
+        database.getPageCache().remove(raFile);
+        if(slottedPages != null)
+            slottedPages.close();
         raFile.close();
         raFile = null;
         if( lobs != null ){
@@ -210,10 +303,22 @@ class Table extends TableView{
 			store.writeInt( offsetEnd - offsetStart);
 			store.setCurrentOffsetInPage( offsetEnd );
 		}
+		// write the block size of the slotted pages
+		int blockSize = con.getTablePageSize();
+		store.writeInt( PAGE_FORMAT );
+		store.writeInt( 8 );
+		store.writeInt( blockSize );
+		if(compression != COMPRESSION_NONE){
+			store.writeInt( PAGE_COMPRESSION );
+			store.writeInt( 8 );
+			store.writeInt( compression );
+		}
+		
 		store.writeInt( 0 ); // no more additional informations
 		
 		store.writeFinsh(null); //The connection parameter is null because the table header is written immediately.
         firstPage = store.getNextPagePos();
+        slottedPages = new SlottedPages( this, firstPage, blockSize );
     }
     
 
@@ -221,7 +326,7 @@ class Table extends TableView{
     void writeMagic(FileChannel raFile) throws Exception{
         ByteBuffer buffer = ByteBuffer.allocate(8);
         buffer.putInt(MAGIC_TABLE);
-        buffer.putInt(TABLE_VIEW_VERSION);
+        buffer.putInt(isCompressed() ? TABLE_VIEW_COMPRESSED_VERSION : TABLE_VIEW_VERSION);
         buffer.position(0);
         raFile.write(buffer);
 	}
@@ -266,11 +371,52 @@ class Table extends TableView{
 	}
         
 
-	StoreImpl getLobStore(SSConnection con, long filePos, int pageOperation) throws Exception{
+	/**
+	 * If the rows and LOB chunks of this table are compressed.
+	 */
+	final boolean isCompressed(){
+		return compression != COMPRESSION_NONE;
+	}
+
+
+	/**
+	 * Get the codec constant for the name of a COMPRESSION option.
+	 * @throws SQLException if the name is unknown
+	 */
+	static int getCompression(String name) throws SQLException{
+		if("NONE".equalsIgnoreCase( name )){
+			return COMPRESSION_NONE;
+		}
+		if("LZ".equalsIgnoreCase( name )){
+			return COMPRESSION_LZ;
+		}
+		throw SmallSQLException.create(Language.CUSTOM_MESSAGE, "Unknown compression: " + name);
+	}
+
+
+	/**
+	 * Write a LOB value into the LOB file of this table.
+	 * @param source an InputStream for binary values or a Reader for character values
+	 * @return the position of the value in the LOB file
+	 */
+	long writeLob(Object source) throws Exception{
+		return getLobs().write( source );
+	}
+
+
+	/**
+	 * Get a LOB value of this table for reading.
+	 */
+	Lob getLob(long filePos, boolean isChars) throws Exception{
+		return getLobs().getLob( filePos, isChars );
+	}
+
+
+	private synchronized Lobs getLobs() throws Exception{
 		if(lobs == null){
 			lobs = new Lobs( this );
 		}
-		return lobs.getStore( con, filePos, pageOperation );
+		return lobs;
 	}
     
 
@@ -284,6 +430,31 @@ class Table extends TableView{
     }
 
 
+    /**
+     * Return the file offset after the last committed row. Rows that are committed later have a larger offset.
+     */
+    final long getEndPos() throws Exception{
+        if(slottedPages != null){
+            return slottedPages.getEndPos();
+        }
+        return raFile.size();
+    }
+
+
+    /**
+     * Return the size of the table file and the lob file in bytes.
+     */
+    final long getFileSize() throws Exception{
+        long size = raFile.size();
+        if(lobs != null){
+            size += lobs.raFile.size();
+        }else{
+            size += new File( Utils.createLobFileName( database, name ) ).length();
+        }
+        return size;
+    }
+
+
     /**
      * Return a list of Links to not commited rows. The list include only the rows that are visible for 
      * the current isolation level.
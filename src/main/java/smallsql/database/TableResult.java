@@ -33,6 +33,7 @@
 package smallsql.database;
 
 import java.sql.*;
+import java.util.Collections;
 import java.util.List;
 
 
@@ -51,6 +52,10 @@ final class TableResult extends TableViewResult{
      * The max fileOffset at open the ResultSet. Rows that are commited later are not not counted.
      */
     private long maxFileOffset;
+    /**
+     * The position of the first row if the scan is limited to a range of the file, else 0.
+     */
+    private long rangeStart;
     
 	TableResult(Table table){
 		this.table = table;
@@ -83,9 +88,32 @@ final class TableResult extends TableViewResult{
     final void execute() throws Exception{
 		insertStorePages = table.getInserts(con);
 		firstOwnInsert = 0x4000000000000000L | insertStorePages.size();
-		maxFileOffset = table.raFile.size();
+		maxFileOffset = table.getEndPos();
         beforeFirst();
 	}
+	
+	
+	/**
+	 * Limit the scan to the committed rows between two block positions. The inserts of the connection are not
+	 * included. It is used from the workers of a parallel aggregation, see GroupWorker. 
+	 * @param startPos the position of the first block of the range
+	 * @param endPos the position after the last row of the range
+	 */
+	final void setRange(long startPos, long endPos){
+		insertStorePages = Collections.EMPTY_LIST;
+		firstOwnInsert = 0x4000000000000000L;
+		rangeStart = startPos;
+		maxFileOffset = endPos;
+		beforeFirst();
+	}
+	
+	
+	/**
+	 * Get the count of the inserts of the connection and of this result.
+	 */
+	final int getInsertCount(){
+		return insertStorePages.size();
+	}
 
 /*==============================================================================
 
@@ -102,7 +130,16 @@ final class TableResult extends TableViewResult{
     
 	@Override
     final void deleteRow() throws SQLException{
-		store.deleteRow(con); 
+		IndexDescriptions indexes = table.indexes;
+		try{
+			Expressions[] oldKeys = (indexes.size() > 0) ? indexes.getKeys( store, offsets, dataTypes ) : null;
+			store.deleteRow(con); 
+			if(oldKeys != null){
+				indexes.changeRow( con, filePos, getInsertLink(), oldKeys, null );
+			}
+		}catch(Exception e){
+			throw SmallSQLException.createFromException(e);
+		}
 		store = new StoreNull(store.getNextPagePos());
 	}
 	
@@ -116,6 +153,8 @@ final class TableResult extends TableViewResult{
 		int count = tableColumns.size();
 			
 		StoreImpl newStore = table.getStoreTemp(con);
+		IndexDescriptions indexes = table.indexes;
+		Expressions[] oldKeys = (indexes.size() > 0) ? indexes.getKeys( store, offsets, dataTypes ) : null;
 		
 		// the write lock only prevent access from other connections 
 		// but not access from other threads from the same connection
@@ -134,6 +173,9 @@ final class TableResult extends TableViewResult{
     		}
     		((StoreImpl)this.store).updateFinsh(con, newStore);
 		}
+		if(oldKeys != null){
+			indexes.changeRow( con, filePos, getInsertLink(), oldKeys, indexes.getKeys( table, newStore ) );
+		}
 	}
     
 
@@ -152,8 +194,28 @@ final class TableResult extends TableViewResult{
 						
 		}
 		store.writeFinsh( con );
+		table.indexes.insertRow( con, table, store );
 		insertStorePages.add(store.getLink());
 	}
+	
+	
+	/**
+	 * Returns the link of the current row if it is from the list of inserts, else null.
+	 */
+	final private StorePageLink getInsertLink(){
+		if(filePos >= 0x4000000000000000L){
+			return (StorePageLink)insertStorePages.get( (int)(filePos & 0x3FFFFFFFFFFFFFFFL) );
+		}
+		return null;
+	}
+	
+	
+	/**
+	 * Read the keys of all indexes of the table from the current row.
+	 */
+	final Expressions[] getIndexKeys() throws Exception{
+		return table.indexes.getKeys( store, offsets, dataTypes );
+	}
 
 
 /*==============================================================================
@@ -179,6 +241,11 @@ final class TableResult extends TableViewResult{
     	if(filePos >= 0x4000000000000000L){
     		store = ((StorePageLink)insertStorePages.get( (int)(filePos & 0x3FFFFFFFFFFFFFFFL) )).getStore( table, con, lock);
     	}else{
+    		if(isOwnCommittedInsert()){
+    			// the row is also in the list of inserts, it can occur if the slot of a deleted row was reused
+    			store = new StoreNull(filePos + 1);
+    			return false;
+    		}
     		store = (filePos < maxFileOffset) ? table.getStore( con, filePos, lock ) : null;
 			if(store == null){
 				if(insertStorePages.size() > 0){			
@@ -202,6 +269,20 @@ final class TableResult extends TableViewResult{
     }
     
     
+    /**
+     * If the current filePos is a row that was inserted with this ResultSet and is already committed.
+     */
+    final private boolean isOwnCommittedInsert(){
+    	for(int i=0; i<insertStorePages.size(); i++){
+    		StorePageLink link = (StorePageLink)insertStorePages.get(i);
+    		if(link.page == null && link.filePos == filePos){
+    			return true;
+    		}
+    	}
+    	return false;
+    }
+    
+    
     /**
      * Move to the next valid row. A valid row is a normal row or an pointer to an updated row value.
      * A invalid row is a deleted row or an updated value that is reference by an update pointer. 
@@ -227,12 +308,28 @@ final class TableResult extends TableViewResult{
 
 	@Override
     final boolean first() throws Exception{
-		filePos = table.getFirstPage();
+		filePos = getFirstFilePos();
 		row = 1;
 		return moveToValidRow();
 	}
 	
 	
+	/**
+	 * Returns the link of a row from the list of inserts or null if idx is after the last insert.
+	 */
+	final StorePageLink getInsertLink(int idx){
+		if(idx >= insertStorePages.size()){
+			return null;
+		}
+		return (StorePageLink)insertStorePages.get( idx );
+	}
+	
+	
+	final private long getFirstFilePos(){
+		return (rangeStart > 0) ? rangeStart : table.getFirstPage();
+	}
+	
+	
 	/**
 	 * A negative filePos means no more rows.<p>
 	 * A value larger 0x4000000000000000L means a row that was inserted in this ResultSet.<p>
@@ -243,7 +340,7 @@ final class TableResult extends TableViewResult{
 	final private void setNextFilePos(){
 		if(filePos < 0) return; // end of rows
 		if(store == Store.NOROW)
-			 filePos = table.getFirstPage(); // can point at the end of file
+			 filePos = getFirstFilePos(); // can point at the end of file
 		else
 		if(filePos >= 0x4000000000000000L){
 			filePos++;
@@ -264,6 +361,57 @@ final class TableResult extends TableViewResult{
     }
     
     
+    /**
+     * Move to a row that was found with an index. The row is skipped if it is not visible for this result.
+     * @param rowPosition a position of a committed row
+     * @return true if the row is valid
+     */
+    final boolean moveToIndexRow(long rowPosition) throws Exception{
+    	if(rowPosition >= maxFileOffset){
+    		// committed after the start of this result
+    		return false;
+    	}
+    	filePos = rowPosition;
+    	// moveToRow() continue with the inserts if there is no row in the file
+    	return moveToRow() && filePos == rowPosition;
+    }
+    
+    
+    /**
+     * Move to a row that was found with an index and read the values from the index instead of the table.
+     * @param rowPosition a position of a committed row
+     * @param store the values of the row
+     * @return true if the row is valid
+     */
+    final boolean moveToIndexRow(long rowPosition, Store store) throws Exception{
+    	filePos = rowPosition;
+    	if(rowPosition >= maxFileOffset || isOwnCommittedInsert()){
+    		this.store = new StoreNull(rowPosition + 1);
+    		return false;
+    	}
+    	this.store = store;
+    	store.scanObjectOffsets( offsets, dataTypes );
+    	return true;
+    }
+    
+    
+    /**
+     * Move to a row from the list of inserts. This are the not committed inserts of the connection and the 
+     * inserts of this result.
+     * @param idx the index in the list of inserts
+     * @return true if the row is valid
+     */
+    final boolean moveToInsertRow(int idx) throws Exception{
+    	if(idx >= insertStorePages.size()){
+    		filePos = -1;
+    		noRow();
+    		return false;
+    	}
+    	filePos = 0x4000000000000000L | idx;
+    	return moveToRow();
+    }
+    
+    
 	@Override
     final void afterLast(){
 		filePos = -1;
@@ -391,6 +539,11 @@ final class TableResult extends TableViewResult{
         return store.getBytes( offsets[colIdx], dataTypes[colIdx] );
     }
 
+	@Override
+    final Lob getLob( int colIdx ) throws Exception{
+        return store.getLob( offsets[colIdx], dataTypes[colIdx] );
+    }
+
 	@Override
     final int getDataType( int colIdx ){
         return dataTypes[colIdx];
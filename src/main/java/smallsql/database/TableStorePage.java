@@ -32,6 +32,7 @@
  */
 package smallsql.database;
 
+import java.nio.channels.FileChannel;
 import java.sql.*;
 
 public class TableStorePage extends StorePage{
@@ -41,6 +42,8 @@ public class TableStorePage extends StorePage{
 	int lockType;
 	SSConnection con;
 	TableStorePage nextLock;
+	/** If the commit has deleted a row of slotted pages, its slot is released after the commit. */
+	private boolean isSlotDeleted;
 
 
 	TableStorePage(SSConnection con, Table table, int lockType, long fileOffset){
@@ -56,6 +59,15 @@ public class TableStorePage extends StorePage{
     }
 
 
+    @Override
+    boolean hasWrites(){
+        if(nextLock != null){
+            return nextLock.hasWrites();
+        }
+        return lockType != TableView.LOCK_READ && super.hasWrites();
+    }
+    
+    
     /**
      * Returns the final position of the page back.
      */
@@ -63,17 +75,50 @@ public class TableStorePage extends StorePage{
 		if(nextLock != null){
 			// save only the last version of this page
 			fileOffset = nextLock.commit();
+			isSlotDeleted = nextLock.isSlotDeleted;
 			nextLock = null;
 			rollback();
 			return fileOffset;
 		}
     	if(lockType == TableView.LOCK_READ)
     		return fileOffset;
-    	return super.commit();
+    	SlottedPages slottedPages = table.slottedPages;
+    	if(slottedPages != null && lockType != TableView.LOCK_TAB && (fileOffset < 0 || slottedPages.contains(fileOffset))){
+    		// rsFile == null --> rollback()
+    		// page == null --> only a write lock, no data
+    		if(raFile != null && page != null){
+    			table.modCount++;
+    			try{
+    				byte[] record = StoreImpl.createSlotRecord( page, pageSize, table.isCompressed() );
+    				fileOffset = slottedPages.write( fileOffset, record );
+    				isSlotDeleted = record[0] == StoreImpl.DELETED;
+    			}catch(Exception e){
+    				throw SmallSQLException.createFromException(e);
+    			}
+    		}
+    		return fileOffset;
+    	}
+    	FileChannel file = raFile;
+    	long pos = super.commit();
+    	if(file != null && page != null){
+    		table.modCount++;
+    		// hold the PageCache coherent with the file
+    		table.database.getPageCache().update( file, pos, page, pageSize );
+    	}
+    	return pos;
     }
 
     
     final void freeLock(){
     	table.freeLock(this);
+    	if(isSlotDeleted){
+    		isSlotDeleted = false;
+    		try{
+    			table.slottedPages.free( fileOffset );
+    		}catch(Exception e){
+    			// the commit is already finished, without the free space map entry the slot is only not reused
+    			con.log.println( e.toString() );
+    		}
+    	}
     }
 }
\ No newline at end of file
@@ -48,7 +48,14 @@ abstract class TableView {
 
 	static final int MAGIC_TABLE = 'S' << 24 | 'Q' << 16 | 'L' << 8 | 'T';
 	static final int MAGIC_VIEW  = 'S' << 24 | 'Q' << 16 | 'L' << 8 | 'V';
-	static final int TABLE_VIEW_VERSION = 2;
+	static final int TABLE_VIEW_VERSION = 3;
+	/** The first version with slotted pages for the rows */
+	static final int TABLE_VIEW_SLOTTED_VERSION = 3;
+	/** 
+	 * The version of tables with compressed rows and LOB chunks. Only these tables are written with it, that older 
+	 * versions can read all other files.
+	 */
+	static final int TABLE_VIEW_COMPRESSED_VERSION = 4;
 	static final int TABLE_VIEW_OLD_VERSION = 1;
 	
 	final String name;
@@ -82,7 +89,7 @@ abstract class TableView {
 			File file = new File( fileName );
 			if(!file.exists())
 				throw SmallSQLException.create(Language.TABLE_OR_VIEW_MISSING, name);
-			raFile = Utils.openRaFile( file, database.isReadOnly() );
+			raFile = database.openFile( file );
 			ByteBuffer buffer = ByteBuffer.allocate(8);
 			raFile.read(buffer);
 			buffer.position(0);
@@ -95,7 +102,7 @@ abstract class TableView {
 				default:
 					throw SmallSQLException.create(Language.TABLE_OR_VIEW_FILE_INVALID, fileName);
 			}
-			if(version > TABLE_VIEW_VERSION)
+			if(version > TABLE_VIEW_COMPRESSED_VERSION)
 				throw SmallSQLException.create(Language.FILE_TOONEW, new Object[] { new Integer(version), fileName });
 			if(version < TABLE_VIEW_OLD_VERSION)
 				throw SmallSQLException.create(Language.FILE_TOOOLD, new Object[] { new Integer(version), fileName });
@@ -140,7 +147,7 @@ abstract class TableView {
 		File file = getFile( database );
 		boolean ok = file.createNewFile();
 		if(!ok) throw SmallSQLException.create(Language.TABLE_EXISTENT, name);
-		FileChannel raFile = Utils.openRaFile( file, database.isReadOnly() );
+		FileChannel raFile = database.openFile( file );
 		con.add(new CreateFile(file, raFile, con, database));
 		writeMagic(raFile);
 		return raFile;
@@ -0,0 +1,375 @@
+/* =============================================================
+ * SmallSQL : a free Java DBMS library for the Java(tm) platform
+ * =============================================================
+ *
+ * (C) Copyright 2004-2011, by Volker Berlin.
+ *
+ * Project Info:  http://www.smallsql.de/
+ *
+ * This library is free software; you can redistribute it and/or modify it 
+ * under the terms of the GNU Lesser General Public License as published by 
+ * the Free Software Foundation; either version 2.1 of the License, or 
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but 
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY 
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public 
+ * License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, 
+ * USA.  
+ *
+ * [Java is a trademark or registered trademark of Sun Microsystems, Inc. 
+ * in the United States and other countries.]
+ *
+ * ---------------
+ * TopResult.java
+ * ---------------
+ * Author: Volker Berlin
+ * 
+ */
+package smallsql.database;
+
+import smallsql.tools.language.Language;
+
+/**
+ * Is used to implements the ORDER BY clause together with TOP, LIMIT, OFFSET or Statement.setMaxRows().
+ * Only the first rows of the sorted result are needed. Instead of a sorted index of all rows like
+ * SortedResult the rows are read in a bounded heap. The root of the heap is the last row of the current
+ * top rows. A new row is only added if it is before the root, then the root is removed.
+ * The memory is limited to OFFSET + LIMIT rows.
+ * <p>
+ * The values of the ORDER BY are compared with the digits of the index, see Index.createKey().
+ * That the order is identical to SortedResult. Rows with equal values are sorted by its row position.
+ * <p>
+ * Without ORDER BY only the rows of the OFFSET are skipped.
+ * Rows that are inserted in the ResultSet are not added to the result. 
+ * 
+ * @author Volker Berlin
+ */
+final class TopResult extends RowSource {
+
+	final private CommandSelect cmd;
+	final private RowSource rowSource;
+	/**
+	 * The ORDER BY expressions or null if there is only an OFFSET.
+	 */
+	final private Expressions orderBy;
+	/**
+	 * The sort direction of every ORDER BY expression.
+	 */
+	final private boolean[] desc;
+	/**
+	 * The row positions of the result in the sorted order.
+	 */
+	private final LongList rows = new LongList();
+	/**
+	 * The current row number. It is used for getRow(). 0 is before the first row.
+	 */
+	private int row;
+
+
+	TopResult(CommandSelect cmd, RowSource rowSource, Expressions orderBy){
+		this.cmd = cmd;
+		this.rowSource = rowSource;
+		this.orderBy = orderBy;
+		if(orderBy != null){
+			desc = new boolean[orderBy.size()];
+			for(int i=0; i<desc.length; i++){
+				desc[i] = orderBy.get(i).getAlias() == SQLTokenizer.DESC_STR;
+			}
+		}else{
+			desc = null;
+		}
+	}
+
+
+	final boolean isScrollable(){
+		return true;
+	}
+
+
+	/**
+	 * The LIMIT and the OFFSET are read on every execute because the maxRows of a
+	 * PreparedStatement can change after the compile.
+	 */
+	final void execute() throws Exception{
+		rowSource.execute();
+		rows.clear();
+		row = 0;
+		int maxRows = cmd.getMaxRows();
+		int offset = cmd.getOffset();
+		long count = (maxRows < 0) ? Integer.MAX_VALUE : Math.min( (long)offset + maxRows, Integer.MAX_VALUE );
+		if(count == 0){
+			return;
+		}
+		if(orderBy == null){
+			while(rows.size() < count - offset && rowSource.next()){
+				if(offset > 0){
+					offset--;
+				}else{
+					rows.add( rowSource.getRowPosition() );
+				}
+			}
+			return;
+		}
+
+		Entry[] heap = new Entry[(int)Math.min( count, 64 )];
+		int size = 0;
+		while(rowSource.next()){
+			char[][] key = createKey();
+			if(size < count){
+				if(size == heap.length){
+					Entry[] temp = new Entry[(int)Math.min( count, (long)size * 2 )];
+					System.arraycopy(heap, 0, temp, 0, size);
+					heap = temp;
+				}
+				heap[size] = new Entry( key, rowSource.getRowPosition() );
+				siftUp( heap, size++ );
+			}else if(compareKeys( key, heap[0].key ) < 0){
+				// the row position is only requested for rows in the heap
+				heap[0] = new Entry( key, rowSource.getRowPosition() );
+				siftDown( heap, 0, size );
+			}
+		}
+
+		// heap sort, the largest entry is moved to the end
+		for(int i=size-1; i>0; i--){
+			Entry temp = heap[0];
+			heap[0] = heap[i];
+			heap[i] = temp;
+			siftDown( heap, 0, i );
+		}
+		for(int i=offset; i<size; i++){
+			rows.add( heap[i].rowPosition );
+		}
+	}
+
+
+	/**
+	 * Create the digits of all ORDER BY expressions for the current row.
+	 */
+	private char[][] createKey() throws Exception{
+		char[][] key = new char[desc.length][];
+		for(int i=0; i<key.length; i++){
+			key[i] = Index.createKey( orderBy.get(i) );
+		}
+		return key;
+	}
+
+
+	/**
+	 * Compare the values of two rows in the order of the ORDER BY clause.
+	 */
+	private int compareKeys(char[][] key1, char[][] key2){
+		for(int i=0; i<key1.length; i++){
+			int result = Index.compare( key1[i], key1[i].length, key2[i] );
+			if(result != 0){
+				return desc[i] ? -result : result;
+			}
+		}
+		return 0;
+	}
+
+
+	private int compare(Entry entry1, Entry entry2){
+		int result = compareKeys( entry1.key, entry2.key );
+		if(result != 0){
+			return result;
+		}
+		return entry1.rowPosition < entry2.rowPosition ? -1 : (entry1.rowPosition == entry2.rowPosition ? 0 : 1);
+	}
+
+
+	/**
+	 * Move the entry at the position up until its parent is not lesser. The heap is a max heap.
+	 */
+	private void siftUp(Entry[] heap, int idx){
+		Entry entry = heap[idx];
+		while(idx > 0){
+			int parent = (idx - 1) >> 1;
+			if(compare( heap[parent], entry ) >= 0){
+				break;
+			}
+			heap[idx] = heap[parent];
+			idx = parent;
+		}
+		heap[idx] = entry;
+	}
+
+
+	/**
+	 * Move the entry at the position down until no child is greater.
+	 */
+	private void siftDown(Entry[] heap, int idx, int size){
+		Entry entry = heap[idx];
+		while(true){
+			int child = (idx << 1) + 1;
+			if(child >= size){
+				break;
+			}
+			if(child + 1 < size && compare( heap[child + 1], heap[child] ) > 0){
+				child++;
+			}
+			if(compare( entry, heap[child] ) >= 0){
+				break;
+			}
+			heap[idx] = heap[child];
+			idx = child;
+		}
+		heap[idx] = entry;
+	}
+
+
+	final boolean isBeforeFirst(){
+		return row == 0;
+	}
+
+
+	final boolean isFirst(){
+		return row == 1 && rows.size() > 0;
+	}
+
+
+	void beforeFirst() throws Exception{
+		rowSource.noRow();
+		row = 0;
+	}
+
+
+	boolean first() throws Exception{
+		beforeFirst();
+		return next();
+	}
+
+
+	boolean previous() throws Exception{
+		return moveTo( Math.min( row, rows.size() + 1 ) - 1 );
+	}
+
+
+	boolean next() throws Exception{
+		return moveTo( row + 1 );
+	}
+
+
+	boolean last() throws Exception{
+		return moveTo( rows.size() );
+	}
+
+
+	final boolean isLast(){
+		return row > 0 && row == rows.size();
+	}
+
+
+	final boolean isAfterLast(){
+		return row > rows.size() || rows.size() == 0;
+	}
+
+
+	void afterLast(){
+		rowSource.noRow();
+		row = rows.size() + 1;
+	}
+
+
+	boolean absolute(int newRow) throws Exception{
+		if(newRow == 0) throw SmallSQLException.create(Language.ROW_0_ABSOLUTE);
+		if(newRow < 0){
+			newRow += rows.size() + 1;
+			if(newRow < 1){
+				// the position is before the first row
+				newRow = 0;
+			}
+		}
+		return moveTo( newRow );
+	}
+
+
+	boolean relative(int rowCount) throws Exception{
+		if(rowCount == 0) return row != 0 && row <= rows.size();
+		return moveTo( Math.max( 0, Math.min( row, rows.size() + 1 ) + rowCount ) );
+	}
+
+
+	/**
+	 * Set the current row. Values lesser 1 are before the first row, values larger as the row count are after
+	 * the last row.
+	 * @return true if the new row is valid
+	 */
+	private boolean moveTo(int newRow) throws Exception{
+		if(newRow <= 0){
+			beforeFirst();
+			return false;
+		}
+		if(newRow > rows.size()){
+			afterLast();
+			return false;
+		}
+		row = newRow;
+		rowSource.setRowPosition( rows.get( newRow - 1 ) );
+		return true;
+	}
+
+
+	int getRow(){
+		return row > rows.size() ? 0 : row;
+	}
+
+
+	final long getRowPosition(){
+		return rowSource.getRowPosition();
+	}
+
+
+	final void setRowPosition(long rowPosition) throws Exception{
+		rowSource.setRowPosition(rowPosition);
+	}
+
+
+	final boolean rowInserted(){
+		return rowSource.rowInserted();
+	}
+
+
+	final boolean rowDeleted(){
+		return rowSource.rowDeleted();
+	}
+
+
+	void nullRow(){
+		rowSource.nullRow();
+		row = 0;
+	}
+
+
+	void noRow(){
+		rowSource.noRow();
+		row = 0;
+	}
+
+
+	/**
+	 * @inheritDoc
+	 */
+	boolean isExpressionsFromThisRowSource(Expressions columns){
+		return rowSource.isExpressionsFromThisRowSource(columns);
+	}
+
+
+	/**
+	 * A row in the heap with the digits of its ORDER BY values.
+	 */
+	private static final class Entry{
+		final char[][] key;
+		final long rowPosition;
+
+		Entry(char[][] key, long rowPosition){
+			this.key = key;
+			this.rowPosition = rowPosition;
+		}
+	}
+}
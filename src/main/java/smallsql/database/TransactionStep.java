@@ -55,5 +55,12 @@ abstract class TransactionStep{
     abstract void rollback() throws SQLException;
     
     void freeLock(){/* default nothing*/}
+    
+    /**
+     * If the commit of this step can write to a file. A commit without writes does not need the log.
+     */
+    boolean hasWrites(){
+        return true;
+    }
 
 }
@@ -215,6 +215,11 @@ final class UnionAll extends DataSource {
 
 
 	final void setRowPosition(long rowPosition) throws Exception {
+		if(rowPosition == -1){
+			// the null side of an outer join, see JoinScroll.nullRow()
+			currentDS.setRowPosition( -1 );
+			return;
+		}
 		int bitCount = getBitCount();
 		int mask = 0xFFFFFFFF >>> (32 - bitCount);
 		dataSourceIdx = (int)rowPosition & mask;
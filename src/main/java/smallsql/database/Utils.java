@@ -32,9 +32,16 @@
  */
 package smallsql.database;
 
+import java.io.EOFException;
 import java.io.File;
 import java.io.FileNotFoundException;
+import java.io.FilterInputStream;
+import java.io.FilterReader;
+import java.io.IOException;
+import java.io.InputStream;
 import java.io.RandomAccessFile;
+import java.io.Reader;
+import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
 import java.nio.channels.FileLock;
 import java.sql.SQLException;
@@ -43,8 +50,10 @@ import smallsql.tools.language.Language;
 class Utils {
 
 	static final String MASTER_FILENAME = "smallsql.master";
+	static final String LOG_FILENAME = "smallsql.wal";
 	static final String TABLE_VIEW_EXTENTION = ".sdb";
 	private static final String LOB_EXTENTION = ".lob";
+	private static final String FSM_EXTENTION = ".fsm";
 	static final String IDX_EXTENTION = ".idx";
 	private static final Integer[] integerCache = new Integer[260];
 	private static final Short[]   shortCache   = new Short[260];
@@ -68,6 +77,10 @@ class Utils {
 		return database.getName() + '/' + name + IDX_EXTENTION;
 	}
 
+	static String createFsmFileName(Database database, String name){
+		return database.getName() + '/' + name + FSM_EXTENTION;
+	}
+
 	static boolean like(String value, String pattern){
 		if(value == null || pattern == null) return false;
 		if(pattern.length() == 0) return true;
@@ -446,6 +459,150 @@ class Utils {
     }
     
     
+    /**
+     * Read the remaining bytes of the buffer with positional reads. The position of the channel is not changed.
+     * @param raFile the file to read
+     * @param buffer the buffer, the position of the buffer is also the offset relative to filePos
+     * @param filePos the file position of the buffer start
+     * @throws IOException if an I/O error occurs or the end of file is reached
+     */
+    static final void readFully( FileChannel raFile, ByteBuffer buffer, long filePos ) throws IOException{
+        while(buffer.hasRemaining()){
+            if(raFile.read( buffer, filePos + buffer.position() ) < 0){
+                throw new EOFException();
+            }
+        }
+    }
+    
+    
+    /**
+     * Write the remaining bytes of the buffer with positional writes. The position of the channel is not changed.
+     * @param raFile the file to write
+     * @param buffer the buffer, the position of the buffer is also the offset relative to filePos
+     * @param filePos the file position of the buffer start
+     * @throws IOException if an I/O error occurs
+     */
+    static final void writeFully( FileChannel raFile, ByteBuffer buffer, long filePos ) throws IOException{
+        while(buffer.hasRemaining()){
+            raFile.write( buffer, filePos + buffer.position() );
+        }
+    }
+    
+    
+    /**
+     * Limit a stream to the first bytes. The stream of a PreparedStatement parameter with a length can be longer.
+     * @param in the stream or null
+     * @param length the count of bytes that can be read
+     * @return a stream that ends after length bytes or null
+     */
+    static final InputStream limitStream( InputStream in, final long length ){
+        if(in == null){
+            return null;
+        }
+        return new FilterInputStream(in){
+            private long remaining = Math.max( 0, length );
+            
+            @Override
+            public int read() throws IOException{
+                if(remaining <= 0){
+                    return -1;
+                }
+                int b = in.read();
+                if(b >= 0){
+                    remaining--;
+                }
+                return b;
+            }
+            
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException{
+                if(remaining <= 0){
+                    return -1;
+                }
+                int count = in.read( b, off, (int)Math.min( len, remaining ) );
+                if(count > 0){
+                    remaining -= count;
+                }
+                return count;
+            }
+            
+            @Override
+            public long skip(long n) throws IOException{
+                long count = in.skip( Math.min( n, remaining ) );
+                remaining -= count;
+                return count;
+            }
+            
+            @Override
+            public int available() throws IOException{
+                return (int)Math.min( in.available(), remaining );
+            }
+            
+            @Override
+            public boolean markSupported(){
+                return false;
+            }
+        };
+    }
+    
+    
+    /**
+     * Limit a reader to the first characters like limitStream().
+     * @param reader the reader or null
+     * @param length the count of characters that can be read
+     * @return a reader that ends after length characters or null
+     */
+    static final Reader limitReader( Reader reader, final long length ){
+        if(reader == null){
+            return null;
+        }
+        return new FilterReader(reader){
+            private long remaining = Math.max( 0, length );
+            
+            @Override
+            public int read() throws IOException{
+                if(remaining <= 0){
+                    return -1;
+                }
+                int c = in.read();
+                if(c >= 0){
+                    remaining--;
+                }
+                return c;
+            }
+            
+            @Override
+            public int read(char[] cbuf, int off, int len) throws IOException{
+                if(remaining <= 0){
+                    return -1;
+                }
+                int count = in.read( cbuf, off, (int)Math.min( len, remaining ) );
+                if(count > 0){
+                    remaining -= count;
+                }
+                return count;
+            }
+            
+            @Override
+            public long skip(long n) throws IOException{
+                long count = in.skip( Math.min( n, remaining ) );
+                remaining -= count;
+                return count;
+            }
+            
+            @Override
+            public boolean ready() throws IOException{
+                return remaining > 0 && in.ready();
+            }
+            
+            @Override
+            public boolean markSupported(){
+                return false;
+            }
+        };
+    }
+    
+    
     /**
      * Get all the ExpressionName objects that are part of the tree.
      * If it only a constant expression then a empty list is return.
@@ -468,7 +625,7 @@ class Utils {
         Expression[] params = tree.getParams();
         if(params != null){
             for(int i=0; i<params.length; i++){
-                getExpressionNameFromTree( list, tree );
+                getExpressionNameFromTree( list, params[i] );
             }
         }
     }
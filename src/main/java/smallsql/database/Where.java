@@ -50,6 +50,11 @@ class Where extends RowSource {
 		return rowSource;
 	}
 	
+	
+	Expression getWhere(){
+		return where;
+	}
+	
 	/**
 	 * Verify if the valid row of the underlying RowSource (Variable join)
 	 * is valid for the current ResultSet.
@@ -132,6 +137,13 @@ class Where extends RowSource {
 
 
 	final void afterLast() throws Exception {
+		if(!rowSource.isScrollable()){
+			// there is no way back, it is not needed to read the remaining rows
+			if(isCurrentRow) row++;
+			isCurrentRow = false;
+			rowSource.afterLast();
+			return;
+		}
 		while(next()){/* scroll after the end */}
 	}
 	
@@ -0,0 +1,623 @@
+/* =============================================================
+ * SmallSQL : a free Java DBMS library for the Java(tm) platform
+ * =============================================================
+ *
+ * (C) Copyright 2004-2011, by Volker Berlin.
+ *
+ * Project Info:  http://www.smallsql.de/
+ *
+ * This library is free software; you can redistribute it and/or modify it 
+ * under the terms of the GNU Lesser General Public License as published by 
+ * the Free Software Foundation; either version 2.1 of the License, or 
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but 
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY 
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public 
+ * License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, 
+ * USA.  
+ *
+ * [Java is a trademark or registered trademark of Sun Microsystems, Inc. 
+ * in the United States and other countries.]
+ *
+ * ---------------
+ * WriteAheadLog.java
+ * ---------------
+ * Author: Volker Berlin
+ * 
+ */
+package smallsql.database;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.zip.CRC32;
+
+/**
+ * A sequential redo log of one Database. If the log is enabled then the table and lob files are opened as
+ * LoggedFileChannel. A write to such a file is only saved in memory and appended to the log. The changed data are 
+ * written to the table files on the next checkpoint. 
+ * 
+ * All writes of one SSConnection.commit() are appended as one unit at the end of the commit. A unit is only replayed
+ * if it was written completely. That a crash in the middle of a commit can not leave half a transaction on disk. 
+ * The commits of all connections are serialized. A write outside of a commit, like a relocated record, a new lob 
+ * or the table header, is added to the unit of the running commit if there is one, else it is queued immediately. 
+ * Both happen under the same monitor and a LoggedFileChannel append a change to the log before another thread can 
+ * change the same bytes. That the order of the units is the order of the writes in memory.
+ * 
+ * The units are not written by every commit self. They are queued and the first commit that need it writes all 
+ * queued units of all connections with one gathering write. Commits that arrive together are synced with one 
+ * force (group commit).
+ * 
+ * The sync policy is set per connection:
+ * <li>SYNC_NONE - the log is not synced, a crash of the operating system can lose the last commits
+ * <li>SYNC_COMMIT - every commit wait until the log is synced
+ * <li>SYNC_GROUP - the log is synced in the background after the sync interval
+ * 
+ * On startup of the database the log is replayed.
+ */
+final class WriteAheadLog implements Runnable {
+
+	static final int SYNC_NONE   = 0;
+	static final int SYNC_COMMIT = 1;
+	static final int SYNC_GROUP  = 2;
+	
+	/** The default interval for SYNC_GROUP in milliseconds */
+	static final int DEFAULT_SYNC_INTERVAL = 10;
+	
+	/** The size of log and not written changes after which a checkpoint is done. */
+	private static final long CHECKPOINT_SIZE = 4096 * 1024;
+	
+	private static final int MAGIC = 'S' << 24 | 'W' << 16 | 'A' << 8 | 'L';
+	private static final int VERSION = 1;
+	private static final int HEADER_SIZE = 8;
+
+	private final File file;
+	private final FileChannel logFile;
+	private final int syncInterval;
+	/** All open LoggedFileChannel of this database */
+	private final ArrayList channels = new ArrayList();
+	/** The unit of the commit that the current thread is running */
+	private final ThreadLocal currentUnit = new ThreadLocal();
+	/** Serialize the commits */
+	private final Object commitMonitor = new Object();
+	/** The writers hold the read lock, a checkpoint the write lock */
+	private final ReentrantReadWriteLock checkpointLock = new ReentrantReadWriteLock();
+	private final Object syncMonitor = new Object();
+	/** there is a thread between beginCommit() and endCommit(), guarded by commitMonitor */
+	private boolean commitRunning;
+	/** the unit of the running commit, the writes outside of a commit are added to it, guarded by commitMonitor */
+	private Unit runningUnit;
+	/** the units (ByteBuffer) that are not written to the log, guarded by itself */
+	private final ArrayList queue = new ArrayList();
+	
+	/** 
+	 * The log sequence number (LSN) is the count of all queued bytes since the log was opened. It is not reset on 
+	 * a checkpoint. The LSN after the last queued unit, guarded by queue.
+	 */
+	private long queuedLsn;
+	/** the LSN up to which the units are written to the log file, guarded by logFile */
+	private long writtenLsn;
+	/** the LSN up to which the log is synced, guarded by syncMonitor */
+	private long syncedLsn;
+	/** the end of the log file, guarded by logFile */
+	private long writePos;
+	private volatile boolean groupSyncPending;
+	private long dirtySize;
+	private long unitCount;
+	private long writeCount;
+	private long syncCount;
+	private long checkpointCount;
+	private volatile boolean closed;
+	/** the failure of the background thread that was not reported to a commit yet */
+	private volatile Throwable error;
+	private final Thread thread;
+
+	
+	/**
+	 * Open the log of a database. A existing log must be recovered before.
+	 * @param directory the directory of the database
+	 * @param syncInterval the interval of the background sync for SYNC_GROUP in milliseconds
+	 */
+	WriteAheadLog(File directory, int syncInterval) throws IOException{
+		this.file = new File( directory, Utils.LOG_FILENAME );
+		this.syncInterval = Math.max( 1, syncInterval );
+		logFile = new RandomAccessFile( file, "rw" ).getChannel();
+		logFile.truncate( 0 );
+		ByteBuffer buffer = ByteBuffer.allocate( HEADER_SIZE );
+		buffer.putInt( MAGIC );
+		buffer.putInt( VERSION );
+		buffer.flip();
+		Utils.writeFully( logFile, buffer, 0 );
+		logFile.force( false );
+		writePos = HEADER_SIZE;
+		thread = new Thread( this, "SmallSQL log writer " + directory.getName() );
+		thread.setDaemon( true );
+		thread.start();
+	}
+	
+	
+	/**
+	 * Wrap a table or lob file that all writes are logged.
+	 */
+	FileChannel wrap(FileChannel raFile, File file) throws IOException{
+		LoggedFileChannel channel = new LoggedFileChannel( this, raFile, file.getName() );
+		synchronized(channels){
+			channels.add( channel );
+		}
+		return channel;
+	}
+	
+	
+	/**
+	 * Start the commit of a connection. All writes of the current thread are collected until endCommit().
+	 */
+	void beginCommit(){
+		Unit unit = (Unit)currentUnit.get();
+		if(unit != null){
+			unit.depth++;
+			return;
+		}
+		checkpointLock.readLock().lock();
+		unit = new Unit();
+		synchronized(commitMonitor){
+			while(commitRunning){
+				try{
+					commitMonitor.wait();
+				}catch(InterruptedException e){
+					Thread.currentThread().interrupt();
+				}
+			}
+			commitRunning = true;
+			runningUnit = unit;
+		}
+		currentUnit.set( unit );
+	}
+	
+	
+	/**
+	 * Queue all collected writes of the commit for the log. This is also called if the commit fails because the 
+	 * already written pages are visible for all connections.
+	 * @return the LSN that must be written and synced to make this commit durable
+	 */
+	long endCommit() throws IOException{
+		Unit unit = (Unit)currentUnit.get();
+		if(unit.depth > 0){
+			unit.depth--;
+			return 0;
+		}
+		try{
+			synchronized(commitMonitor){
+				try{
+					return enqueue( unit );
+				}finally{
+					runningUnit = null;
+					commitRunning = false;
+					commitMonitor.notify();
+				}
+			}
+		}finally{
+			currentUnit.set( null );
+			checkpointLock.readLock().unlock();
+		}
+	}
+	
+	
+	/**
+	 * Make a commit durable depending on the sync policy of the connection.
+	 * @param lsn the return value of endCommit()
+	 * @param syncPolicy one of the SYNC_XXX constants
+	 */
+	void sync(long lsn, int syncPolicy) throws IOException{
+		checkError();
+		switch(syncPolicy){
+		case SYNC_COMMIT:
+			sync( lsn );
+			break;
+		case SYNC_GROUP:
+			groupSyncPending = true;
+			write( lsn );
+			break;
+		default:
+			write( lsn );
+		}
+	}
+	
+	
+	/**
+	 * Write and sync the log up to the given LSN. If another thread is syncing then we wait for it. Then all units
+	 * that was queued in the meantime are written and synced together.
+	 */
+	private void sync(long lsn) throws IOException{
+		synchronized(syncMonitor){
+			if(syncedLsn >= lsn){
+				return;
+			}
+			long newLsn = write( lsn );
+			logFile.force( false );
+			syncedLsn = newLsn;
+			synchronized(this){
+				syncCount++;
+			}
+		}
+	}
+	
+	
+	/**
+	 * Write all queued units if the given LSN is not written already. 
+	 * @return the LSN up to which the log is written
+	 */
+	private long write(long lsn) throws IOException{
+		synchronized(logFile){
+			if(writtenLsn >= lsn){
+				return writtenLsn;
+			}
+			ByteBuffer[] buffers;
+			synchronized(queue){
+				buffers = new ByteBuffer[queue.size()];
+				queue.toArray( buffers );
+				queue.clear();
+				writtenLsn = queuedLsn;
+			}
+			long size = 0;
+			for(int i=0; i<buffers.length; i++){
+				size += buffers[i].remaining();
+			}
+			// one gathering write for all units
+			logFile.position( writePos );
+			long written = 0;
+			while(written < size){
+				written += logFile.write( buffers );
+			}
+			writePos += size;
+			synchronized(this){
+				writeCount++;
+			}
+			return writtenLsn;
+		}
+	}
+	
+	
+	/**
+	 * Is called from the LoggedFileChannel after the data are saved in the memory. The caller must hold the read lock
+	 * of the checkpoint with enterWrite() and the lock of the changed memory.
+	 */
+	void write(LoggedFileChannel channel, long filePos, byte[] data) throws IOException{
+		long lsn;
+		synchronized(commitMonitor){
+			if(runningUnit != null){
+				// also a write outside of a commit, it can change the same page header as the running commit
+				runningUnit.add( channel.getFileName(), filePos, data );
+				return;
+			}
+			// a write outside of a commit like a new lob or the table header is logged immediately
+			Unit unit = new Unit();
+			unit.add( channel.getFileName(), filePos, data );
+			lsn = enqueue( unit );
+		}
+		write( lsn );
+	}
+	
+	
+	/**
+	 * A writer need to call this before it change the memory of a LoggedFileChannel. It prevent a checkpoint between 
+	 * the change in memory and the append to the log.
+	 */
+	void enterWrite(){
+		checkpointLock.readLock().lock();
+	}
+	
+	
+	void exitWrite(){
+		checkpointLock.readLock().unlock();
+	}
+	
+	
+	/**
+	 * Count the memory of not written changes.
+	 */
+	synchronized void addDirtySize(long size){
+		dirtySize += size;
+	}
+	
+	
+	/**
+	 * Add a unit to the queue of not written units. The caller must hold the read lock of the checkpoint.
+	 * @return the LSN after the unit
+	 */
+	private long enqueue(Unit unit){
+		if(unit.count == 0){
+			synchronized(queue){
+				return queuedLsn;
+			}
+		}
+		byte[] data = unit.toByteArray();
+		CRC32 crc = new CRC32();
+		crc.update( data, 0, data.length );
+		ByteBuffer buffer = ByteBuffer.allocate( data.length + 12 );
+		buffer.putInt( data.length );
+		buffer.put( data );
+		buffer.putLong( crc.getValue() );
+		buffer.flip();
+		synchronized(this){
+			unitCount++;
+		}
+		synchronized(queue){
+			queue.add( buffer );
+			queuedLsn += buffer.limit();
+			return queuedLsn;
+		}
+	}
+	
+	
+	/**
+	 * Write all changes to the table files and truncate the log.
+	 * @param wait if false and a writer is running then the checkpoint is skipped 
+	 * @return true if the checkpoint was done
+	 */
+	boolean checkpoint(boolean wait) throws IOException{
+		if(checkpointLock.getReadHoldCount() > 0){
+			// the current thread is inside a commit, we would wait for our self
+			return false;
+		}
+		// tryLock does not block new readers, this prevent dead locks with the locks of the writers
+		while(!checkpointLock.writeLock().tryLock()){
+			if(!wait){
+				return false;
+			}
+			try{
+				Thread.sleep( 1 );
+			}catch(InterruptedException e){
+				Thread.currentThread().interrupt();
+				return false;
+			}
+		}
+		try{
+			synchronized(channels){
+				for(int i=0; i<channels.size(); i++){
+					((LoggedFileChannel)channels.get(i)).flush();
+				}
+			}
+			// the queued units are not needed anymore, all changes are in the table files now
+			synchronized(syncMonitor){
+				synchronized(logFile){
+					synchronized(queue){
+						queue.clear();
+						writtenLsn = queuedLsn;
+					}
+					logFile.truncate( HEADER_SIZE );
+					logFile.force( false );
+					writePos = HEADER_SIZE;
+					syncedLsn = writtenLsn;
+				}
+			}
+			synchronized(this){
+				dirtySize = 0;
+				checkpointCount++;
+			}
+			return true;
+		}finally{
+			checkpointLock.writeLock().unlock();
+		}
+	}
+	
+	
+	/**
+	 * Is called if a LoggedFileChannel is closed. The log can not include changes of closed files else a new file with
+	 * the same name will be overridden on recovery.
+	 */
+	void close(LoggedFileChannel channel) throws IOException{
+		if(channel.isDirty() && !checkpoint(true)){
+			channel.flush();
+		}
+		synchronized(channels){
+			channels.remove( channel );
+		}
+	}
+	
+	
+	/**
+	 * Close the log on close of the database. All changes are written to the table files and the log is deleted.
+	 */
+	void close() throws IOException{
+		closed = true;
+		thread.interrupt();
+		checkpoint(true);
+		logFile.close();
+		file.delete();
+	}
+	
+	
+	/**
+	 * The background thread for the SYNC_GROUP and the checkpoints.
+	 */
+	public void run(){
+		while(!closed){
+			try{
+				Thread.sleep( syncInterval );
+				if(groupSyncPending){
+					groupSyncPending = false;
+					long lsn;
+					synchronized(queue){
+						lsn = queuedLsn;
+					}
+					sync( lsn );
+				}
+				long size;
+				synchronized(this){
+					size = dirtySize;
+				}
+				synchronized(logFile){
+					size = Math.max( size, writePos );
+				}
+				if(size > CHECKPOINT_SIZE){
+					checkpoint(false);
+				}
+			}catch(InterruptedException e){
+				// closed
+			}catch(Throwable e){
+				if(!closed){
+					error = e;
+				}
+			}
+		}
+	}
+	
+	
+	/**
+	 * Throw the failure of the background thread. A failed group sync or checkpoint is reported only once to the next 
+	 * commit. The next sync or checkpoint will retry it because the synced LSN and the dirty size are not changed.
+	 */
+	private void checkError() throws IOException{
+		Throwable e = error;
+		if(e == null){
+			return;
+		}
+		error = null;
+		if(e instanceof IOException){
+			throw (IOException)e;
+		}
+		throw new IOException( "Write ahead log failed: " + e, e );
+	}
+	
+	
+	/**
+	 * The count of units of commits and other writes.
+	 */
+	synchronized long getUnitCount(){
+		return unitCount;
+	}
+	
+	
+	/**
+	 * The count of writes to the log file. One write include all units that was queued.
+	 */
+	synchronized long getWriteCount(){
+		return writeCount;
+	}
+	
+	
+	synchronized long getSyncCount(){
+		return syncCount;
+	}
+	
+	
+	synchronized long getCheckpointCount(){
+		return checkpointCount;
+	}
+	
+	
+	long getSize(){
+		synchronized(logFile){
+			return writePos;
+		}
+	}
+	
+	
+	/**
+	 * Replay a log that was not closed correctly. This must be called before any table of the database is opened.
+	 * @param directory the directory of the database
+	 * @return true if a log was found
+	 */
+	static boolean recover(File directory) throws IOException{
+		File file = new File( directory, Utils.LOG_FILENAME );
+		if(!file.exists()){
+			return false;
+		}
+		HashMap files = new HashMap();
+		RandomAccessFile log = new RandomAccessFile( file, "r" );
+		try{
+			long length = log.length();
+			// if the header was not written completely then there can not be any data
+			long pos = HEADER_SIZE;
+			if(length < HEADER_SIZE || log.readInt() != MAGIC || log.readInt() != VERSION){
+				pos = length;
+			}
+			while(pos + 4 <= length){
+				int size = log.readInt();
+				if(size <= 0 || pos + 12 + size > length){
+					break; // a unit that was not written completely
+				}
+				byte[] data = new byte[size];
+				log.readFully( data );
+				CRC32 crc = new CRC32();
+				crc.update( data, 0, size );
+				if(log.readLong() != crc.getValue()){
+					break;
+				}
+				replay( directory, files, data );
+				pos += 12 + size;
+			}
+		}finally{
+			log.close();
+			Iterator iterator = files.values().iterator();
+			while(iterator.hasNext()){
+				Object raFile = iterator.next();
+				if(raFile instanceof FileChannel){
+					((FileChannel)raFile).force( false );
+					((FileChannel)raFile).close();
+				}
+			}
+		}
+		file.delete();
+		return true;
+	}
+	
+	
+	private static void replay(File directory, HashMap files, byte[] data) throws IOException{
+		DataInputStream input = new DataInputStream( new ByteArrayInputStream( data ) );
+		while(input.available() > 0){
+			String fileName = input.readUTF();
+			long filePos = input.readLong();
+			byte[] bytes = new byte[input.readInt()];
+			input.readFully( bytes );
+			Object raFile = files.get( fileName );
+			if(raFile == null){
+				File tableFile = new File( directory, fileName );
+				// a file that was deleted after the log was written, is not restored
+				raFile = tableFile.exists() ? (Object)new RandomAccessFile( tableFile, "rw" ).getChannel() : Boolean.FALSE;
+				files.put( fileName, raFile );
+			}
+			if(raFile instanceof FileChannel){
+				Utils.writeFully( (FileChannel)raFile, ByteBuffer.wrap( bytes ), filePos );
+			}
+		}
+	}
+	
+	
+	/**
+	 * The collected writes of one commit.
+	 */
+	private static final class Unit{
+		private final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+		private final DataOutputStream output = new DataOutputStream( buffer );
+		int count;
+		int depth;
+		
+		void add(String fileName, long filePos, byte[] data) throws IOException{
+			output.writeUTF( fileName );
+			output.writeLong( filePos );
+			output.writeInt( data.length );
+			output.write( data );
+			count++;
+		}
+		
+		byte[] toByteArray(){
+			return buffer.toByteArray();
+		}
+	}
+}
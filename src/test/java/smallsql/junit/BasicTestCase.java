@@ -33,7 +33,9 @@
 package smallsql.junit;
 
 import smallsql.basicTestFrame;
+import smallsql.database.SSConnection;
 
+import java.io.File;
 import java.io.PrintWriter;
 import java.io.StringWriter;
 import java.math.BigDecimal;
@@ -191,6 +193,74 @@ public class BasicTestCase {
     }
 
 
+    /**
+     * Return the values of the first column as comma separated string.
+     */
+    static String selectColumn(Statement st, String sql) throws Exception {
+        ResultSet rs = st.executeQuery(sql);
+        StringBuffer buffer = new StringBuffer();
+        while (rs.next()) {
+            buffer.append(rs.getString(1)).append(',');
+        }
+        return buffer.toString();
+    }
+
+
+    /**
+     * Return all values of the result with a comma after every value and a line break after every row.
+     */
+    static String selectRows(Statement st, String sql) throws Exception {
+        ResultSet rs = st.executeQuery(sql);
+        int count = rs.getMetaData().getColumnCount();
+        StringBuffer buffer = new StringBuffer();
+        while (rs.next()) {
+            for (int i = 1; i <= count; i++) {
+                buffer.append(rs.getString(i)).append(',');
+            }
+            buffer.append('\n');
+        }
+        return buffer.toString();
+    }
+
+
+    /**
+     * Return the value of a statistic of the database from SSConnection.getStatistics().
+     */
+    static long getStatistic(Connection con, String name) throws Exception {
+        return getStatistic(con, null, name);
+    }
+
+
+    /**
+     * Return the value of a statistic of a table or of the database if the table name is null.
+     */
+    static long getStatistic(Connection con, String tableName, String name) throws Exception {
+        ResultSet rs = ((SSConnection) con).getStatistics();
+        while (rs.next()) {
+            String rsTableName = rs.getString("TABLE_NAME");
+            if ((tableName == null ? rsTableName == null : tableName.equals(rsTableName)) && name.equals(rs.getString("STATISTIC"))) {
+                return rs.getLong("VALUE");
+            }
+        }
+        fail("Statistic not found:" + name);
+        return 0;
+    }
+
+
+    /**
+     * Delete a database directory with all files.
+     */
+    static void deleteDirectory(File dir) {
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (int i = 0; i < files.length; i++) {
+                files[i].delete();
+            }
+        }
+        dir.delete();
+    }
+
+
     /**
      * Identical to the Implementation from Utils.string2boolean
      */
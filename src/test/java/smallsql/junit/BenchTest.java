@@ -86,6 +86,8 @@ public class BenchTest
             test_UpdateRowsPrepareSP( con );
             test_UpdateRowsPrepareBatch( con );
             test_Scroll_getXXX( con );
+            test_OrderByRows( con );
+            test_DistinctRows( con );
             test_UpdateLargeBinary( con );
             test_UpdateLargeBinaryWithSP( con );
         }catch(Exception e){
@@ -684,6 +686,74 @@ public class BenchTest
     
 
     
+    /**
+      *  13. Test
+      *  Sort all rows with ORDER BY on columns without an index.
+      */  
+    static void test_OrderByRows(Connection con){
+        System.out.println();
+        System.out.println( "Test sort rows with ORDER BY: " + rowCount + " rows");
+        
+        try{
+            Statement st = con.createStatement();
+            long time = -System.currentTimeMillis();
+            ResultSet rs = st.executeQuery("SELECT i, vc FROM " + tableName + " ORDER BY i DESC, vc");
+            int count = 0;
+            while(rs.next()){
+                count++;
+            }
+            time += System.currentTimeMillis();
+            if (count != rowCount){
+                System.out.println( "  Failed: Only " + count + " rows were found.");
+            }else{
+                System.out.println( "  Test time: " + time + " ms");
+            }
+            st.close();
+        }catch(Exception e){
+            System.out.println("  Failed:"+e);
+        }finally{
+            System.out.println();
+            System.out.println("===================================================================");
+        }
+    }
+     
+    
+
+    
+    /**
+      *  14. Test
+      *  Remove duplicated rows with DISTINCT.
+      */  
+    static void test_DistinctRows(Connection con){
+        System.out.println();
+        System.out.println( "Test remove duplicated rows with DISTINCT: " + rowCount + " rows");
+        
+        try{
+            Statement st = con.createStatement();
+            long time = -System.currentTimeMillis();
+            ResultSet rs = st.executeQuery("SELECT DISTINCT pr, i FROM " + tableName);
+            int count = 0;
+            while(rs.next()){
+                count++;
+            }
+            time += System.currentTimeMillis();
+            if (count != rowCount){
+                System.out.println( "  Failed: Only " + count + " rows were found.");
+            }else{
+                System.out.println( "  Test time: " + time + " ms");
+            }
+            st.close();
+        }catch(Exception e){
+            System.out.println("  Failed:"+e);
+        }finally{
+            System.out.println();
+            System.out.println("===================================================================");
+        }
+    }
+     
+    
+
+    
     /**
       *  Create a new Table for testing
       */  
@@ -0,0 +1,127 @@
+/* =============================================================
+ * SmallSQL : a free Java DBMS library for the Java(tm) platform
+ * =============================================================
+ *
+ * (C) Copyright 2004-2011, by Volker Berlin.
+ *
+ * Project Info:  http://www.smallsql.de/
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 2.1 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public
+ * License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301,
+ * USA.
+ *
+ * [Java is a trademark or registered trademark of Sun Microsystems, Inc.
+ * in the United States and other countries.]
+ *
+ * ---------------
+ * TestCopy.java
+ * ---------------
+ * Author: Volker Berlin
+ *
+ */
+package smallsql.junit;
+
+import smallsql.basicTestFrame;
+import smallsql.database.SSConnection;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.Writer;
+import java.sql.*;
+import java.util.Arrays;
+
+import static smallsql.junit.JunitTestExtended.*;
+
+/**
+ * Tests of the bulk load with COPY and SSConnection.copy().
+ */
+public class TestCopy extends BasicTestCase {
+
+    public void testCopy() throws Exception {
+        Connection con = basicTestFrame.getConnection();
+        File file = File.createTempFile("smallsql", ".csv");
+        try {
+            con.createStatement().execute("Create Table TestCopy (i counter, n int, v varchar(20), d float)");
+            Writer writer = new FileWriter(file);
+            writer.write("n;v;d\r\n");
+            for (int i = 0; i < 1000; i++) {
+                writer.write(i + ";\"a;\"\"" + i + "\"\"\";" + i + ".5\r\n");
+            }
+            writer.write(";;\n");
+            writer.close();
+
+            Statement st = con.createStatement();
+            st.execute("COPY TestCopy(n, v, d) FROM '" + file.getPath() + "' DELIMITER ';' HEADER");
+            assertEquals(1001, st.getUpdateCount(), "Update Count");
+            assertEqualsRsValue(new Integer(1001), "Select count(*) from TestCopy");
+            assertEqualsRsValue(new Integer(1000), "Select count(n) from TestCopy");
+            assertEqualsRsValue("a;\"7\"", "Select v from TestCopy Where n=7");
+            assertEqualsRsValue(new Double(7.5), "Select d from TestCopy Where n=7");
+            assertEqualsRsValue(new Integer(1001), "Select max(i) from TestCopy");
+
+            Object[][] rows = { { new Integer(1), "x" }, { new Integer(2), null } };
+            long count = ((SSConnection) con).copy("TestCopy", new String[] { "n", "v" }, Arrays.asList(rows).iterator());
+            assertEquals(2, count, "Row Count");
+            assertEqualsRsValue(new Integer(1003), "Select count(*) from TestCopy");
+
+            // the bulk loaded rows can be changed like all other rows
+            st.execute("Update TestCopy Set v='y' Where n < 500");
+            st.execute("Insert Into TestCopy(n) Values(5000)");
+            assertEqualsRsValue(new Integer(502), "Select count(*) from TestCopy Where v='y'");
+            assertEqualsRsValue(new Integer(1004), "Select max(i) from TestCopy");
+        } finally {
+            file.delete();
+            dropTable(con, "TestCopy");
+        }
+    }
+
+
+    public void testCopyDuplicateKey() throws Exception {
+        Connection con = basicTestFrame.getConnection();
+        File file = File.createTempFile("smallsql", ".csv");
+        try {
+            Statement st = con.createStatement();
+            st.execute("Create Table TestCopy (n int primary key)");
+            st.execute("Insert Into TestCopy(n) Values(0)");
+            Writer writer = new FileWriter(file);
+            writer.write("1\n2\n2\n3\n");
+            writer.close();
+            try {
+                st.execute("COPY TestCopy(n) FROM '" + file.getPath() + "'");
+                fail("Duplicate key expected");
+            } catch (SQLException ex) {
+                // the rows before the duplicate key are loaded
+                assertTrue(ex.getMessage().indexOf("Duplicate Key") >= 0, ex.getMessage());
+            }
+            assertEquals("0,1,2,", selectColumn(st, "Select n From TestCopy"));
+            assertEquals("0,1,2,", selectColumn(st, "Select n From TestCopy Order By n"));
+            assertEqualsRsValue(new Integer(1), "Select count(*) From TestCopy Where n = 2");
+
+            Object[][] rows = { { new Integer(3) }, { new Integer(1) } };
+            try {
+                ((SSConnection) con).copy("TestCopy", null, Arrays.asList(rows).iterator());
+                fail("Duplicate key expected");
+            } catch (SQLException ex) {
+                // the key exists already in the table
+                assertTrue(ex.getMessage().indexOf("Duplicate Key") >= 0, ex.getMessage());
+            }
+            assertEquals("0,1,2,3,", selectColumn(st, "Select n From TestCopy Order By n"));
+            st.execute("Insert Into TestCopy(n) Values(4)");
+            assertRowCount(5, "Select * From TestCopy");
+        } finally {
+            file.delete();
+            dropTable(con, "TestCopy");
+        }
+    }
+}
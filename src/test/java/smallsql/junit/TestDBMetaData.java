@@ -33,6 +33,7 @@
 package smallsql.junit;
 
 import smallsql.basicTestFrame;
+import smallsql.database.SSConnection;
 
 import java.sql.*;
 import java.text.DecimalFormat;
@@ -312,4 +313,47 @@ public class TestDBMetaData extends BasicTestCase {
     }
 
 
+    public void testGetStatistics() throws Exception {
+        Connection con = basicTestFrame.getConnection();
+        int isolation = con.getTransactionIsolation();
+        boolean autoCommit = con.getAutoCommit();
+        try {
+            // COMPACT needs a table lock without serialize locks of previous selects
+            con.setTransactionIsolation(Connection.TRANSACTION_READ_COMMITTED);
+            con.setAutoCommit(true);
+            dropTable(con, "tblStatistics");
+            Statement st = con.createStatement();
+            st.execute("create table tblStatistics(id int, v varchar(60))");
+            st.execute("insert into tblStatistics(id, v) values(1, 'abc')");
+            st.execute("insert into tblStatistics(id, v) values(2, 'def')");
+
+            long hits = getStatistic(con, "PAGE_CACHE_HITS");
+            assertRowCount(2, "select * from tblStatistics");
+            assertRowCount(2, "select * from tblStatistics");
+            assertTrue("cache hits", getStatistic(con, "PAGE_CACHE_HITS") > hits);
+
+            // the cache must be coherent with updates of the rows
+            st.execute("update tblStatistics set v='a much longer value than before' where id=1");
+            st.execute("update tblStatistics set v='x' where id=2");
+            assertEqualsRsValue("a much longer value than before", "select v from tblStatistics where id=1");
+            assertEqualsRsValue("x", "select v from tblStatistics where id=2");
+            st.execute("delete from tblStatistics where id=2");
+            assertRowCount(1, "select * from tblStatistics");
+
+            // a compaction add rows for the table
+            st.execute("compact table tblStatistics");
+            assertEquals(1, getStatistic(con, "tblStatistics", "COMPACT_ROWS_COPIED"));
+
+            ResultSet rs = ((SSConnection) con).getStatistics();
+            String[] colNames = {"TABLE_NAME", "STATISTIC", "VALUE"};
+            int[] colTypes = {Types.VARCHAR, Types.VARCHAR, Types.BIGINT};
+            assertRSMetaData(rs, colNames, colTypes);
+        } finally {
+            dropTable(con, "tblStatistics");
+            con.setAutoCommit(autoCommit);
+            con.setTransactionIsolation(isolation);
+        }
+    }
+
+
 }
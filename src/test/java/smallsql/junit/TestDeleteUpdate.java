@@ -145,6 +145,182 @@ public class TestDeleteUpdate extends BasicTestCase {
     }
 
 
+    public void testUpdateManyPages() throws Exception {
+        Connection con = basicTestFrame.getConnection();
+        dropTable(con, "testUpdate");
+        Statement st = con.createStatement();
+        st.execute("create table testUpdate(id int, value varchar(20000))");
+        for (int i = 0; i < 1000; i++) {
+            st.execute("Insert into testUpdate Values(" + i + ",'" + i + "')");
+        }
+        // a row that is larger as one page
+        StringBuffer large = new StringBuffer();
+        for (int i = 0; i < 12000; i++) {
+            large.append((char) ('a' + i % 26));
+        }
+        st.execute("Insert into testUpdate Values(1000,'" + large + "')");
+        st.execute("Insert into testUpdate Values(1001,'after')");
+        assertRowCount(1002, "Select * from testUpdate");
+        assertEqualsRsValue(large.toString(), "Select value from testUpdate Where id=1000");
+
+        // larger values need to move the row
+        assertEquals(100, st.executeUpdate("update testUpdate set value=value + ' with a larger value' Where id<100"));
+        assertEqualsRsValue("7 with a larger value", "Select value from testUpdate Where id=7");
+        assertEquals(100, st.executeUpdate("update testUpdate set value=value + ' and again' Where id<100"));
+        assertEqualsRsValue("7 with a larger value and again", "Select value from testUpdate Where id=7");
+        assertRowCount(1002, "Select * from testUpdate");
+
+        assertEquals(500, st.executeUpdate("delete from testUpdate Where id>=500 and id<1000"));
+        assertRowCount(502, "Select * from testUpdate");
+        assertEqualsRsValue("after", "Select value from testUpdate Where id=1001");
+
+        dropTable(con, "testUpdate");
+    }
+
+
+    public void testDeleteMovedRow() throws Exception {
+        Connection con = basicTestFrame.getConnection();
+        dropTable(con, "testUpdate");
+        Statement st = con.createStatement();
+        st.execute("create table testUpdate(id int, value varchar(200), n int)");
+        st.execute("Insert into testUpdate Values(1, 'a', 1)");
+        // the larger value move the row, the old position is only a pointer
+        st.execute("update testUpdate set value='" + repeat('b', 150) + "' Where id=1");
+        st.execute("delete from testUpdate Where id=1");
+        // the new row can reuse the slot of the deleted row but not the pointer to it
+        st.execute("Insert into testUpdate Values(2, 'c', 2)");
+        assertRowCount(1, "Select * from testUpdate");
+        assertEqualsRsValue(new Integer(2), "Select id from testUpdate");
+        dropTable(con, "testUpdate");
+    }
+
+
+    public void testDeleteAndInsertInTransaction() throws Exception {
+        Connection con = basicTestFrame.getConnection();
+        dropTable(con, "testUpdate");
+        Statement st = con.createStatement();
+        st.execute("create table testUpdate(id int, value varchar(200), n int)");
+        st.execute("Insert into testUpdate Values(1, '" + repeat('a', 46) + "', 1)");
+        st.execute("Insert into testUpdate Values(3, 'c', 3)");
+        con.setAutoCommit(false);
+        try {
+            st.execute("update testUpdate set value='" + repeat('c', 150) + "' Where id=3");
+            st.execute("Insert into testUpdate Values(2, 'b', 2)");
+            st.execute("delete from testUpdate Where id=1");
+            // the slot of the deleted row must not be reused for the new row before the commit is finished
+            st.execute("update testUpdate set value='" + repeat('b', 43) + "' Where id=2");
+            con.commit();
+        } finally {
+            con.setAutoCommit(true);
+        }
+        assertRowCount(2, "Select * from testUpdate");
+        assertEqualsRsValue(repeat('b', 43), "Select value from testUpdate Where id=2");
+        assertEqualsRsValue(repeat('c', 150), "Select value from testUpdate Where id=3");
+        dropTable(con, "testUpdate");
+    }
+
+
+    private static String repeat(char ch, int count) {
+        StringBuffer buffer = new StringBuffer();
+        for (int i = 0; i < count; i++) {
+            buffer.append(ch);
+        }
+        return buffer.toString();
+    }
+
+
+    public void testCompact() throws Exception {
+        Connection con = basicTestFrame.getConnection();
+        int isolation = con.getTransactionIsolation();
+        boolean autoCommit = con.getAutoCommit();
+        try {
+            // COMPACT needs a table lock without serialize locks of previous selects
+            con.setTransactionIsolation(Connection.TRANSACTION_READ_COMMITTED);
+            con.setAutoCommit(true);
+            dropTable(con, "testCompact");
+            Statement st = con.createStatement();
+            st.execute("create table testCompact(id counter, value varchar(200), text longvarchar)");
+            for (int i = 0; i < 300; i++) {
+                st.execute("Insert into testCompact(value, text) Values('" + i + "', 'lob " + i + "')");
+            }
+            // create UPDATE_POINTER, deleted rows and garbage in the lob file
+            assertEquals(100, st.executeUpdate("update testCompact set value=value + ' with a larger value', text=text + ' updated' Where id<=100"));
+            assertEquals(150, st.executeUpdate("delete from testCompact Where id>150"));
+
+            st.execute("compact table testCompact");
+            assertRowCount(150, "Select * from testCompact");
+            assertEqualsRsValue("7 with a larger value", "Select value from testCompact Where id=8");
+            assertEqualsRsValue("lob 7 updated", "Select text from testCompact Where id=8");
+            assertEqualsRsValue("lob 120", "Select text from testCompact Where id=121");
+            assertEquals(100, getStatistic(con, "testCompact", "COMPACT_PROGRESS"));
+            assertEquals(150, getStatistic(con, "testCompact", "COMPACT_ROWS_COPIED"));
+            assertTrue(getStatistic(con, "testCompact", "COMPACT_RECLAIMED_BYTES") > 0, "reclaimed bytes");
+
+            // the identity counter must not restart after the compaction
+            st.execute("Insert into testCompact(value) Values('new')");
+            assertEqualsRsValue(new Integer(301), "Select id from testCompact Where value='new'");
+
+            st.execute("vacuum testCompact");
+            assertRowCount(151, "Select * from testCompact");
+            st.execute("vacuum");
+            assertRowCount(151, "Select * from testCompact");
+        } finally {
+            dropTable(con, "testCompact");
+            con.setAutoCommit(autoCommit);
+            con.setTransactionIsolation(isolation);
+        }
+    }
+
+
+    public void testCompactWithConcurrentInserts() throws Throwable {
+        Connection con = basicTestFrame.getConnection();
+        int isolation = con.getTransactionIsolation();
+        boolean autoCommit = con.getAutoCommit();
+        final Connection con2 = basicTestFrame.createConnection();
+        try {
+            // COMPACT needs a table lock without serialize locks of previous selects
+            con.setTransactionIsolation(Connection.TRANSACTION_READ_COMMITTED);
+            con.setAutoCommit(true);
+            con2.setTransactionIsolation(Connection.TRANSACTION_READ_COMMITTED);
+            dropTable(con, "testCompactInsert");
+            Statement st = con.createStatement();
+            st.execute("create table testCompactInsert(id counter, value varchar(200))");
+            for (int i = 0; i < 300; i++) {
+                st.execute("Insert into testCompactInsert(value) Values('" + i + "')");
+            }
+            st.execute("delete from testCompactInsert Where id<=100");
+
+            // the other connection write while the rows are copied without the table lock
+            final Throwable[] error = new Throwable[1];
+            Thread thread = new Thread(new Runnable() {
+                public void run() {
+                    try {
+                        Statement st2 = con2.createStatement();
+                        for (int i = 0; i < 100; i++) {
+                            st2.execute("Insert into testCompactInsert(value) Values('new " + i + "')");
+                        }
+                    } catch (Throwable e) {
+                        error[0] = e;
+                    }
+                }
+            });
+            thread.start();
+            st.execute("compact table testCompactInsert");
+            thread.join();
+            if (error[0] != null) {
+                throw error[0];
+            }
+            assertRowCount(300, "Select * from testCompactInsert");
+            assertRowCount(100, "Select * from testCompactInsert Where value Like 'new %'");
+        } finally {
+            con2.close();
+            dropTable(con, "testCompactInsert");
+            con.setAutoCommit(autoCommit);
+            con.setTransactionIsolation(isolation);
+        }
+    }
+
+
     public void testUpdateMultiTables() throws Exception {
         Connection con = basicTestFrame.getConnection();
         dropTable(con, "testUpdate1");
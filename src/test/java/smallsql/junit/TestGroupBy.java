@@ -380,4 +380,106 @@ public class TestGroupBy extends BasicTestCase {
         assertEqualsRsValue(new Integer(0), "Select count(*) FROM " + table1);
     }
 
+
+    public void testGroupByNegativeZero() throws Exception {
+        Connection con = basicTestFrame.getConnection();
+        try {
+            Statement st = con.createStatement();
+            st.execute("Create Table TestGroupZero (i int, d double, r real)");
+            st.execute("Insert Into TestGroupZero(i, d, r) Values(1, 0.0, -0.0)");
+            st.execute("Insert Into TestGroupZero(i, d, r) Values(2, -0.0, 0.0)");
+            st.execute("Insert Into TestGroupZero(i, d, r) Values(3, 1, 1)");
+            st.execute("Insert Into TestGroupZero(i, d, r) Values(4, -0.0, 1)");
+
+            // -0.0 is equals to 0.0 and is part of the same group
+            assertEquals("3,1,", selectColumn(st, "Select count(*) From TestGroupZero Group By d Order By 1 Desc"));
+            assertEquals("2,2,", selectColumn(st, "Select count(*) From TestGroupZero Group By r"));
+            assertEquals("2,1,1,", selectColumn(st, "Select count(*) From TestGroupZero Group By d, r Order By 1 Desc"));
+        } finally {
+            dropTable(con, "TestGroupZero");
+        }
+    }
+
+
+    public void testGroupByManyGroups() throws Exception {
+        Connection con = basicTestFrame.getConnection();
+        try {
+            Statement st = con.createStatement();
+            st.execute("Create Table TestGroups (i int, g int, s varchar(20))");
+            PreparedStatement pr = con.prepareStatement("Insert Into TestGroups(i, g, s) Values(?, ?, ?)");
+            for (int i = 0; i < 6000; i++) {
+                pr.setInt(1, i);
+                if (i % 2000 == 0) {
+                    pr.setNull(2, Types.INTEGER);
+                } else {
+                    pr.setInt(2, i % 2000);
+                }
+                pr.setString(3, (i % 2 == 0 ? "ab" : "AB") + (i % 5));
+                pr.execute();
+            }
+            assertRowCount(2000, st.executeQuery("Select g, count(*) From TestGroups Group By g"));
+            assertEquals("3,", selectColumn(st, "Select count(*) From TestGroups Group By g Having g Is Null"));
+            assertEquals("3,", selectColumn(st, "Select count(*) From TestGroups Group By g Having g = 1999"));
+            // the strings are compared case insensitive
+            assertEquals("1200,1200,1200,1200,1200,", selectColumn(st, "Select count(*) From TestGroups Group By s"));
+            assertEquals("3597000,", selectColumn(st, "Select Sum(i) From TestGroups Group By s Having s = 'AB0'"));
+            assertRowCount(2000, st.executeQuery("Select s, g, count(*) From TestGroups Group By s, g"));
+        } finally {
+            dropTable(con, "TestGroups");
+        }
+    }
+
+
+    public void testParallelAggregation() throws Exception {
+        Connection con = basicTestFrame.getConnection();
+        Connection parallelCon = basicTestFrame.createConnection("?parallel=4", null);
+        int isolation = con.getTransactionIsolation();
+        boolean autoCommit = con.getAutoCommit();
+        try {
+            // the inserts need no table lock without serialize locks of previous selects
+            con.setTransactionIsolation(Connection.TRANSACTION_READ_COMMITTED);
+            Statement st = con.createStatement();
+            st.execute("Create Table TestParallel (i int, g int, s varchar(20), d decimal(12,2), m money)");
+            con.setAutoCommit(false);
+            PreparedStatement pr = con.prepareStatement("Insert Into TestParallel(i, g, s, d, m) Values(?, ?, ?, ?, ?)");
+            for (int i = 0; i < 30000; i++) {
+                pr.setInt(1, i);
+                if (i % 97 == 0) {
+                    pr.setNull(2, Types.INTEGER);
+                } else {
+                    pr.setInt(2, i % 300);
+                }
+                pr.setString(3, "s" + (i % 41));
+                pr.setBigDecimal(4, new BigDecimal(i).movePointLeft(2));
+                pr.setBigDecimal(5, new BigDecimal(i % 500).movePointLeft(1));
+                pr.execute();
+            }
+            con.commit();
+            st.execute("Delete From TestParallel Where i % 13 = 0");
+            con.commit();
+            con.setAutoCommit(true);
+
+            Statement parallelSt = parallelCon.createStatement();
+            String[] queries = {
+                    "Select g, count(*), Sum(i), Sum(d), Sum(m), Min(s), Max(s), Avg(d) From TestParallel Group By g Order By g",
+                    "Select s, count(g), Max(i) From TestParallel Where i > 1000 And g Is Not Null Group By s Order By s",
+                    "Select count(*), Sum(d), Min(m), Max(i) From TestParallel Where s Like 's1%'" };
+            for (int q = 0; q < queries.length; q++) {
+                assertEquals(selectRows(st, queries[q]), selectRows(parallelSt, queries[q]));
+            }
+
+            // the not committed inserts of the connection are not in the blocks of the table
+            parallelCon.setAutoCommit(false);
+            parallelSt.execute("Insert Into TestParallel(i, g, s, d, m) Values(-1, 5, 'new', 1, 2)");
+            assertEquals("27693,", selectColumn(parallelSt, "Select count(*) From TestParallel"));
+            assertEquals("93,", selectColumn(parallelSt, "Select count(*) From TestParallel Where g = 5"));
+            parallelCon.rollback();
+        } finally {
+            parallelCon.close();
+            con.setAutoCommit(autoCommit);
+            con.setTransactionIsolation(isolation);
+            dropTable(con, "TestParallel");
+        }
+    }
+
 }
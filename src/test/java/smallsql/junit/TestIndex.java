@@ -0,0 +1,608 @@
+/* =============================================================
+ * SmallSQL : a free Java DBMS library for the Java(tm) platform
+ * =============================================================
+ *
+ * (C) Copyright 2004-2011, by Volker Berlin.
+ *
+ * Project Info:  http://www.smallsql.de/
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 2.1 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public
+ * License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301,
+ * USA.
+ *
+ * [Java is a trademark or registered trademark of Sun Microsystems, Inc.
+ * in the United States and other countries.]
+ *
+ * ---------------
+ * TestIndex.java
+ * ---------------
+ * Author: Volker Berlin
+ *
+ */
+package smallsql.junit;
+
+import smallsql.basicTestFrame;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.sql.*;
+import java.util.Arrays;
+
+import static smallsql.junit.JunitTestExtended.*;
+
+/**
+ * Tests of the table indexes: maintenance, seeks, range scans and the index files.
+ */
+public class TestIndex extends BasicTestCase {
+
+    public void testIndexMaintenance() throws Exception {
+        Connection con = basicTestFrame.getConnection();
+        try {
+            // CREATE INDEX needs a table lock without serialize locks of previous selects
+            con.setTransactionIsolation(Connection.TRANSACTION_READ_COMMITTED);
+            Statement st = con.createStatement();
+            st.execute("Create Table TestIndex (i int primary key, u varchar(20) unique, v int)");
+            PreparedStatement pr = con.prepareStatement("Insert Into TestIndex(i, u, v) Values(?, ?, ?)");
+            for (int i = 0; i < 300; i++) {
+                pr.setInt(1, i);
+                pr.setString(2, i % 3 == 0 ? null : "u" + i);
+                pr.setInt(3, i % 10);
+                pr.execute();
+            }
+            assertDuplicateKey(st, "Insert Into TestIndex(i, u, v) Values(7, 'x', 0)");
+            assertDuplicateKey(st, "Insert Into TestIndex(i, u, v) Values(1000, 'u7', 0)");
+            // NULL values are not part of a unique index
+            st.execute("Insert Into TestIndex(i, u, v) Values(1000, null, 0)");
+
+            // changed and deleted keys are free for new rows
+            st.execute("Update TestIndex Set i = i + 2000 Where i < 100");
+            st.execute("Delete From TestIndex Where u = 'u101'");
+            st.execute("Insert Into TestIndex(i, u, v) Values(7, 'u101', 0)");
+            assertDuplicateKey(st, "Update TestIndex Set i = 2009 Where i = 2008");
+            assertEqualsRsValue(new Integer(2008), "Select i From TestIndex Where u = 'u8'");
+
+            // a rollback restores the old keys
+            con.setAutoCommit(false);
+            st.execute("Delete From TestIndex Where i = 2010");
+            st.execute("Insert Into TestIndex(i, u, v) Values(3000, 'w', 0)");
+            con.rollback();
+            con.setAutoCommit(true);
+            assertDuplicateKey(st, "Insert Into TestIndex(i, u, v) Values(2010, 'y', 0)");
+            assertDuplicateKey(st, "Insert Into TestIndex(i, u, v) Values(3000, 'u11', 0)");
+            st.execute("Insert Into TestIndex(i, u, v) Values(3000, 'w', 0)");
+
+            st.execute("Create Index TestIndexV On TestIndex(v, u)");
+            st.execute("Create Unique Index TestIndexU On TestIndex(u, v)");
+            assertDuplicateKey(st, "Insert Into TestIndex(i, u, v) Values(3001, 'u11', 1)");
+            try {
+                st.execute("Create Unique Index TestIndexV2 On TestIndex(v)");
+                fail("Duplicate values in the unique index");
+            } catch (SQLException ex) {
+                // expected
+            }
+            assertEqualsRsValue(new Integer(302), "Select count(*) From TestIndex");
+        } finally {
+            con.setAutoCommit(true);
+            dropTable(con, "TestIndex");
+        }
+    }
+
+
+    public void testIndexSeek() throws Exception {
+        Connection con = basicTestFrame.getConnection();
+        try {
+            Statement st = con.createStatement();
+            st.execute("Create Table TestSeek (i int primary key, v varchar(20), c char(10), b bigint)");
+            st.execute("Create Index TestSeekCB On TestSeek(c, b)");
+            st.execute("Create Index TestSeekV On TestSeek(v)");
+            PreparedStatement pr = con.prepareStatement("Insert Into TestSeek(i, v, c, b) Values(?, ?, ?, ?)");
+            for (int i = 0; i < 1000; i++) {
+                pr.setInt(1, i);
+                pr.setString(2, "Value" + (i % 100));
+                pr.setString(3, "c" + (i % 10));
+                pr.setLong(4, i % 7);
+                pr.execute();
+            }
+            assertEqualsRsValue(new Integer(1), "Select count(*) From TestSeek Where i = 5");
+            assertEqualsRsValue(new Integer(1), "Select count(*) From TestSeek Where 5.0 = i");
+            assertEqualsRsValue(new Integer(0), "Select count(*) From TestSeek Where i = 5.5");
+            assertEqualsRsValue(new Integer(0), "Select count(*) From TestSeek Where i = null");
+            assertEqualsRsValue(new Integer(10), "Select count(*) From TestSeek Where v = 'VALUE7'");
+            assertEqualsRsValue(new Integer(11), "Select count(*) From TestSeek Where v = 'Value7' Or i = 8");
+            assertEqualsRsValue(new Integer(15), "Select count(*) From TestSeek Where b = 3 And c = 'c3'");
+            assertEqualsRsValue(new Integer(1), "Select count(*) From TestSeek Where b = 3 And c = 'c3' And i < 10");
+
+            // the data type of a parameter can change between executions
+            PreparedStatement pr2 = con.prepareStatement("Select v From TestSeek Where i = ?");
+            pr2.setInt(1, 123);
+            assertRowCount(1, pr2.executeQuery());
+            pr2.setString(1, "124");
+            ResultSet rs = pr2.executeQuery();
+            assertTrue(rs.next(), "next");
+            assertEquals("Value24", rs.getString(1));
+
+            assertEquals(1, st.executeUpdate("Update TestSeek Set i = 5000 Where i = 5"));
+            assertEqualsRsValue(new Integer(0), "Select count(*) From TestSeek Where i = 5");
+            assertEquals(10, st.executeUpdate("Delete From TestSeek Where v = 'Value9'"));
+            assertEqualsRsValue(new Integer(0), "Select count(*) From TestSeek Where v = 'Value9'");
+
+            // not committed rows of the own connection
+            con.setAutoCommit(false);
+            st.execute("Insert Into TestSeek(i, v, c, b) Values(-1, 'new', 'c1', 1)");
+            st.execute("Update TestSeek Set v = 'new' Where i = 20");
+            assertEqualsRsValue(new Integer(2), "Select count(*) From TestSeek Where v = 'new'");
+            con.rollback();
+            assertEqualsRsValue(new Integer(0), "Select count(*) From TestSeek Where v = 'new'");
+        } finally {
+            con.setAutoCommit(true);
+            dropTable(con, "TestSeek");
+        }
+    }
+
+
+    public void testIndexSeekNegativeZero() throws Exception {
+        Connection con = basicTestFrame.getConnection();
+        try {
+            Statement st = con.createStatement();
+            st.execute("Create Table TestSeekZero (i int, d double, r real, h float)");
+            st.execute("Create Index TestSeekZeroDR On TestSeekZero(d, r)");
+            st.execute("Create Index TestSeekZeroH On TestSeekZero(h) Using Hash");
+            st.execute("Insert Into TestSeekZero(i, d, r, h) Values(1, 0.0, 0.0, 0.0)");
+            st.execute("Insert Into TestSeekZero(i, d, r, h) Values(2, -0.0, -0.0, -0.0)");
+            st.execute("Insert Into TestSeekZero(i, d, r, h) Values(3, -0.0, 1, 1)");
+
+            // -0.0 is equals to 0.0, a seek with both values finds all rows
+            assertEquals("1,2,3,", selectColumn(st, "Select i From TestSeekZero Where d = 0 Order By i"));
+            assertEquals("1,2,3,", selectColumn(st, "Select i From TestSeekZero Where d = -0.0 Order By i"));
+            assertEquals("1,2,", selectColumn(st, "Select i From TestSeekZero Where d = 0 And r = 0 Order By i"));
+            assertEquals("1,2,", selectColumn(st, "Select i From TestSeekZero Where d = -0.0 And r <= 0 Order By i"));
+            assertEquals("1,2,", selectColumn(st, "Select i From TestSeekZero Where h = 0 Order By i"));
+            assertEquals("1,2,", selectColumn(st, "Select i From TestSeekZero Where h = -0.0 Order By i"));
+        } finally {
+            dropTable(con, "TestSeekZero");
+        }
+    }
+
+
+    public void testIndexUniqueNegativeZero() throws Exception {
+        Connection con = basicTestFrame.getConnection();
+        try {
+            Statement st = con.createStatement();
+            st.execute("Create Table TestUniqueZero (d double primary key, r real unique, h float)");
+            st.execute("Create Unique Index TestUniqueZeroH On TestUniqueZero(h) Using Hash");
+            st.execute("Insert Into TestUniqueZero(d, r, h) Values(0.0, 0.0, 0.0)");
+
+            // -0.0 is equals to 0.0 and gets the same index key
+            assertDuplicateKey(st, "Insert Into TestUniqueZero(d, r, h) Values(-0.0, 1, 1)");
+            assertDuplicateKey(st, "Insert Into TestUniqueZero(d, r, h) Values(1, -0.0, 1)");
+            assertDuplicateKey(st, "Insert Into TestUniqueZero(d, r, h) Values(1, 1, -0.0)");
+            st.execute("Insert Into TestUniqueZero(d, r, h) Values(-1, -1, -1)");
+            assertDuplicateKey(st, "Update TestUniqueZero Set d = -0.0 Where d = -1");
+            assertEquals("-1.0,0.0,", selectColumn(st, "Select d From TestUniqueZero Order By d"));
+            assertEquals("0.0,", selectColumn(st, "Select d From TestUniqueZero Where d = -0.0"));
+            assertEquals("-1.0,", selectColumn(st, "Select d From TestUniqueZero Where d < -0.0"));
+            assertEquals("-1.0,0.0,", selectColumn(st, "Select d From TestUniqueZero Where d <= 0 Order By d"));
+        } finally {
+            dropTable(con, "TestUniqueZero");
+        }
+    }
+
+
+    public void testIndexBinaryKeys() throws Exception {
+        Connection con = basicTestFrame.getConnection();
+        try {
+            Statement st = con.createStatement();
+            st.execute("Create Table TestBinaryKey (b blob primary key, l longvarbinary, m image)");
+            st.execute("Create Index TestBinaryKeyL On TestBinaryKey(l)");
+            st.execute("Create Index TestBinaryKeyM On TestBinaryKey(m) Using Hash");
+            PreparedStatement pr = con.prepareStatement("Insert Into TestBinaryKey(b, l, m) Values(?, ?, ?)");
+            for (int i = 0; i < 100; i++) {
+                byte[] bytes = { 12, 45, (byte) i };
+                pr.setBytes(1, bytes);
+                pr.setBytes(2, bytes);
+                pr.setBytes(3, bytes);
+                pr.execute();
+            }
+            st.execute("Insert Into TestBinaryKey(b, l, m) Values(0x0102, null, null)");
+            assertDuplicateKey(st, "Insert Into TestBinaryKey(b, l, m) Values(0x0c2d07, null, null)");
+
+            assertRowCount(1, st.executeQuery("Select * From TestBinaryKey Where b = 0x0c2d07"));
+            assertRowCount(1, st.executeQuery("Select * From TestBinaryKey Where l = 0x0c2d07"));
+            assertRowCount(1, st.executeQuery("Select * From TestBinaryKey Where m = 0x0c2d07"));
+            st.execute("Update TestBinaryKey Set b = 0x0c2d07ff Where b = 0x0c2d07");
+            assertRowCount(0, st.executeQuery("Select * From TestBinaryKey Where b = 0x0c2d07"));
+            assertRowCount(101, st.executeQuery("Select * From TestBinaryKey"));
+        } finally {
+            dropTable(con, "TestBinaryKey");
+        }
+    }
+
+
+    public void testIndexRange() throws Exception {
+        Connection con = basicTestFrame.getConnection();
+        try {
+            Statement st = con.createStatement();
+            st.execute("Create Table TestRange (i int primary key, v varchar(20), c char(10), b bigint, d double)");
+            st.execute("Create Index TestRangeCB On TestRange(c, b)");
+            st.execute("Create Index TestRangeV On TestRange(v)");
+            st.execute("Create Index TestRangeD On TestRange(d)");
+            PreparedStatement pr = con.prepareStatement("Insert Into TestRange(i, v, c, b, d) Values(?, ?, ?, ?, ?)");
+            for (int i = 0; i < 1000; i++) {
+                pr.setInt(1, i);
+                pr.setString(2, "Value" + (i % 100));
+                pr.setString(3, "c" + (i % 10));
+                pr.setLong(4, i % 7);
+                pr.setDouble(5, (i - 500) / 4.0);
+                pr.execute();
+            }
+            assertEqualsRsValue(new Integer(9), "Select count(*) From TestRange Where i > 990");
+            assertEqualsRsValue(new Integer(10), "Select count(*) From TestRange Where i >= 990");
+            assertEqualsRsValue(new Integer(9), "Select count(*) From TestRange Where 990 < i");
+            assertEqualsRsValue(new Integer(10), "Select count(*) From TestRange Where i Between 10 And 19");
+            assertEqualsRsValue(new Integer(0), "Select count(*) From TestRange Where i Between 19 And 10");
+            assertEqualsRsValue(new Integer(3), "Select count(*) From TestRange Where i > 2.5 And i <= 5");
+            assertEqualsRsValue(new Integer(6), "Select count(*) From TestRange Where i <= 5.5");
+            assertEqualsRsValue(new Integer(0), "Select count(*) From TestRange Where i > 3000000000");
+            assertEqualsRsValue(new Integer(0), "Select count(*) From TestRange Where i > null");
+
+            assertEqualsRsValue(new Integer(110), "Select count(*) From TestRange Where v Like 'value1%'");
+            assertEqualsRsValue(new Integer(100), "Select count(*) From TestRange Where v Like 'Value1_'");
+            assertEqualsRsValue(new Integer(20), "Select count(*) From TestRange Where v >= 'Value98'");
+            assertEqualsRsValue(new Integer(30), "Select count(*) From TestRange Where v Between 'Value1' And 'VALUE11'");
+
+            assertEqualsRsValue(new Integer(29), "Select count(*) From TestRange Where c = 'c3' And b > 4");
+            assertEqualsRsValue(new Integer(100), "Select count(*) From TestRange Where c Like 'c1%'");
+            assertEqualsRsValue(new Integer(100), "Select count(*) From TestRange Where c > 'c8'");
+
+            assertEqualsRsValue(new Integer(500), "Select count(*) From TestRange Where d >= 0");
+            assertEqualsRsValue(new Integer(500), "Select count(*) From TestRange Where d < -0.0");
+            assertEqualsRsValue(new Integer(9), "Select count(*) From TestRange Where d Between -1 And 1");
+
+            // not committed rows of the own connection
+            con.setAutoCommit(false);
+            st.execute("Insert Into TestRange(i, v, c, b, d) Values(-5, 'new', 'c1', 1, 0)");
+            assertEqualsRsValue(new Integer(1), "Select count(*) From TestRange Where i < 0");
+            assertEqualsRsValue(new Integer(1), "Select count(*) From TestRange Where v Like 'ne%'");
+            con.rollback();
+            assertEqualsRsValue(new Integer(0), "Select count(*) From TestRange Where i < 0");
+        } finally {
+            con.setAutoCommit(true);
+            dropTable(con, "TestRange");
+        }
+    }
+
+
+    public void testIndexFile() throws Exception {
+        File dir = new File("indexTestDb");
+        deleteDirectory(dir);
+        String url = "jdbc:smallsql:" + dir.getPath();
+        Connection con = DriverManager.getConnection(url + "?create=true");
+        try {
+            Statement st = con.createStatement();
+            st.execute("Create Table TestFile (i int primary key, v varchar(9000), b bigint)");
+            st.execute("Create Index TestFileVB On TestFile(v, b)");
+            st.execute("Create Index TestFileB On TestFile(b) Using Hash");
+            PreparedStatement pr = con.prepareStatement("Insert Into TestFile(i, v, b) Values(?, ?, ?)");
+            for (int i = 0; i < 3000; i++) {
+                pr.setInt(1, i);
+                pr.setString(2, i % 100 == 5 ? null : "Value" + (i % 300));
+                pr.setLong(3, i % 7);
+                pr.execute();
+            }
+            // a key that is larger as an index page
+            char[] large = new char[8000];
+            Arrays.fill(large, 'x');
+            st.execute("Insert Into TestFile(i, v, b) Values(5000, '" + new String(large) + "', 1)");
+        } finally {
+            con.close();
+        }
+
+        // the values are read from the index file
+        con = DriverManager.getConnection(url);
+        try {
+            Statement st = con.createStatement();
+            assertEquals("1234,", selectColumn(st, "Select i From TestFile Where i = 1234"));
+            assertEquals("2998,2999,5000,", selectColumn(st, "Select i From TestFile Where i > 2997 Order By i"));
+            assertRowCount(10, st.executeQuery("Select * From TestFile Where v = 'Value12'"));
+            assertRowCount(5, st.executeQuery("Select * From TestFile Where v = 'Value12' And b Between 2 And 4"));
+            assertRowCount(1100, st.executeQuery("Select * From TestFile Where v Like 'value1%'"));
+            assertRowCount(1, st.executeQuery("Select * From TestFile Where v > 'x'"));
+            assertRowCount(429, st.executeQuery("Select * From TestFile Where b = 3"));
+
+            // the changes are written to the pages of the index file, full pages are split
+            st.execute("Update TestFile Set v = 'Value12' Where i = 0");
+            st.execute("Delete From TestFile Where i = 1234");
+            assertRowCount(11, st.executeQuery("Select * From TestFile Where v = 'Value12'"));
+            PreparedStatement pr = con.prepareStatement("Insert Into TestFile(i, v, b) Values(?, ?, ?)");
+            for (int i = 6000; i < 9000; i++) {
+                pr.setInt(1, i);
+                pr.setString(2, "Value" + (i % 300));
+                pr.setLong(3, i % 7);
+                pr.execute();
+            }
+            st.execute("Delete From TestFile Where i >= 1000 And i < 2000");
+            assertRowCount(18, st.executeQuery("Select * From TestFile Where v = 'Value12'"));
+            assertRowCount(1782, st.executeQuery("Select * From TestFile Where v Like 'value1%'"));
+            assertEquals("8999,", selectColumn(st, "Select i From TestFile Where i > 8998"));
+            assertRowCount(715, st.executeQuery("Select * From TestFile Where b = 3"));
+            assertDuplicateKey(st, "Insert Into TestFile(i, v, b) Values(6000, 'a', 1)");
+        } finally {
+            con.close();
+        }
+
+        con = DriverManager.getConnection(url);
+        try {
+            Statement st = con.createStatement();
+            assertEquals("", selectColumn(st, "Select i From TestFile Where i = 1234"));
+            assertEquals("", selectColumn(st, "Select i From TestFile Where i = 1500"));
+            assertRowCount(18, st.executeQuery("Select * From TestFile Where v = 'Value12'"));
+            assertRowCount(1782, st.executeQuery("Select * From TestFile Where v Like 'value1%'"));
+            assertRowCount(1, st.executeQuery("Select * From TestFile Where v > 'x'"));
+            assertRowCount(715, st.executeQuery("Select * From TestFile Where b = 3"));
+            assertDuplicateKey(st, "Insert Into TestFile(i, v, b) Values(5000, 'a', 1)");
+        } finally {
+            con.close();
+        }
+        deleteDirectory(dir);
+    }
+
+
+    public void testIndexDuplicateKeysOfOldTables() throws Exception {
+        File dir = new File("indexDuplicateTestDb");
+        deleteDirectory(dir);
+        String url = "jdbc:smallsql:" + dir.getPath();
+        Connection con = DriverManager.getConnection(url + "?create=true");
+        try {
+            Statement st = con.createStatement();
+            st.execute("Create Table TestDup (i int, v varchar(20))");
+            st.execute("Create Index TestDupI On TestDup(i)");
+            st.execute("Insert Into TestDup(i, v) Values(1, 'a')");
+            st.execute("Insert Into TestDup(i, v) Values(1, 'b')");
+            st.execute("Insert Into TestDup(i, v) Values(2, 'c')");
+        } finally {
+            con.close();
+        }
+        // a table from a time without a maintained index: a unique index with duplicate keys in an old index file
+        setUniqueIndex(new File(dir, "TestDup.sdb"));
+        RandomAccessFile raFile = new RandomAccessFile(new File(dir, "TestDupI.idx"), "rw");
+        raFile.seek(4);
+        raFile.writeInt(1);
+        raFile.close();
+
+        con = DriverManager.getConnection(url);
+        try {
+            Statement st = con.createStatement();
+            ResultSet rs = con.getMetaData().getIndexInfo(null, null, "TestDup", true, false);
+            assertTrue(rs.next(), "unique index");
+
+            // the index can not include all rows and is not used
+            assertRowCount(3, st.executeQuery("Select * From TestDup"));
+            assertEquals("a,b,", selectColumn(st, "Select v From TestDup Where i = 1 Order By v"));
+            assertEquals("a,b,c,", selectColumn(st, "Select v From TestDup Where i >= 1 Order By i, v"));
+            st.execute("Delete From TestDup Where v = 'b'");
+        } finally {
+            con.close();
+        }
+
+        // without the duplicate key the index is rebuild
+        con = DriverManager.getConnection(url);
+        try {
+            Statement st = con.createStatement();
+            assertEquals("a,", selectColumn(st, "Select v From TestDup Where i = 1"));
+            assertDuplicateKey(st, "Insert Into TestDup(i, v) Values(2, 'd')");
+        } finally {
+            con.close();
+        }
+        deleteDirectory(dir);
+    }
+
+
+    public void testIndexDropNotLoadedTable() throws Exception {
+        File dir = new File("indexDropTestDb");
+        deleteDirectory(dir);
+        String url = "jdbc:smallsql:" + dir.getPath();
+        Connection con = DriverManager.getConnection(url + "?create=true");
+        try {
+            Statement st = con.createStatement();
+            st.execute("Create Table TestDrop (i int primary key, v varchar(20))");
+            st.execute("Create Index TestDropV On TestDrop(v) Using Hash");
+            st.execute("Insert Into TestDrop(i, v) Values(1, 'a')");
+        } finally {
+            con.close();
+        }
+
+        // the table was not used since the connect, the index files must be deleted without loading the table
+        con = DriverManager.getConnection(url);
+        try {
+            Statement st = con.createStatement();
+            st.execute("Drop Table TestDrop");
+            String[] files = dir.list();
+            for (int i = 0; i < files.length; i++) {
+                assertFalse(files[i].toLowerCase().endsWith(".idx"), files[i]);
+            }
+            st.execute("Create Table TestDrop (i int primary key, v varchar(20))");
+            st.execute("Create Index TestDropV On TestDrop(v) Using Hash");
+            st.execute("Insert Into TestDrop(i, v) Values(1, 'b')");
+            assertEquals("b,", selectColumn(st, "Select v From TestDrop Where v = 'b'"));
+        } finally {
+            con.close();
+        }
+        deleteDirectory(dir);
+    }
+
+
+    public void testIndexInclude() throws Exception {
+        Connection con = basicTestFrame.getConnection();
+        try {
+            Statement st = con.createStatement();
+            st.execute("Create Table TestInclude (i int, k int, v varchar(20), m money, other varchar(20))");
+            st.execute("Create Index TestIncludeK On TestInclude(k) Include (v, m)");
+            PreparedStatement pr = con.prepareStatement("Insert Into TestInclude(i, k, v, m, other) Values(?, ?, ?, ?, ?)");
+            for (int i = 0; i < 100; i++) {
+                pr.setInt(1, i);
+                pr.setInt(2, i % 10);
+                pr.setString(3, i % 7 == 0 ? null : "Value" + i);
+                pr.setBigDecimal(4, new java.math.BigDecimal(i + ".25"));
+                pr.setString(5, "x" + i);
+                pr.execute();
+            }
+            assertEquals("Value3,Value13,Value23,Value33,Value43,Value53,null,Value73,Value83,Value93,",
+                    selectColumn(st, "Select v From TestInclude Where k = 3"));
+            assertEquals("30,", selectColumn(st, "Select Count(*) From TestInclude Where k Between 2 And 4"));
+            assertEquals("45.2500,", selectColumn(st, "Select Max(m) From TestInclude Where k < 6 And v Like 'Value4%'"));
+            assertEquals("x3,x13,", selectColumn(st, "Select other From TestInclude Where k = 3 And i < 20"));
+
+            st.execute("Update TestInclude Set v = 'Changed' Where i = 13");
+            assertEquals("Value3,Changed,", selectColumn(st, "Select v From TestInclude Where k = 3 And m < 20"));
+
+            // not committed changes of the own connection
+            con.setAutoCommit(false);
+            st.execute("Update TestInclude Set v = 'Other' Where i = 3");
+            assertEquals("Other,Changed,", selectColumn(st, "Select v From TestInclude Where k = 3 And m < 20"));
+            con.rollback();
+            assertEquals("Value3,Changed,", selectColumn(st, "Select v From TestInclude Where k = 3 And m < 20"));
+            con.setAutoCommit(true);
+
+            // an updatable ResultSet read the rows
+            Statement st2 = con.createStatement(ResultSet.TYPE_SCROLL_INSENSITIVE, ResultSet.CONCUR_UPDATABLE);
+            ResultSet rs = st2.executeQuery("Select v From TestInclude Where k = 3 And m < 10");
+            assertTrue(rs.next());
+            rs.updateString(1, "Updated");
+            rs.updateRow();
+            assertEquals("Updated,", selectColumn(st, "Select v From TestInclude Where k = 3 And m < 10"));
+
+            try {
+                st.execute("Create Index TestIncludeX On TestInclude(k) Include (xyz)");
+                fail("Unknown include column");
+            } catch (SQLException ex) {
+                assertSQLException("01000", 0, ex);
+            }
+        } finally {
+            con.setAutoCommit(true);
+            dropTable(con, "TestInclude");
+        }
+    }
+
+
+    public void testHashIndex() throws Exception {
+        Connection con = basicTestFrame.getConnection();
+        try {
+            Statement st = con.createStatement();
+            st.execute("Create Table TestHash (i int, v varchar(20), u int)");
+            st.execute("Create Index TestHashV On TestHash(v) Using Hash");
+            st.execute("Create Unique Index TestHashU On TestHash(u) Using Hash");
+            PreparedStatement pr = con.prepareStatement("Insert Into TestHash(i, v, u) Values(?, ?, ?)");
+            for (int i = 0; i < 1000; i++) {
+                pr.setInt(1, i);
+                pr.setString(2, "v" + (i % 100));
+                if (i % 10 == 0) {
+                    pr.setNull(3, Types.INTEGER);
+                } else {
+                    pr.setInt(3, i);
+                }
+                pr.execute();
+            }
+            assertRowCount(10, st.executeQuery("Select * From TestHash Where v = 'v7'"));
+            assertRowCount(10, st.executeQuery("Select * From TestHash Where v = 'V7'"));
+            assertEquals("77,", selectColumn(st, "Select i From TestHash Where u = 77"));
+            assertRowCount(0, st.executeQuery("Select * From TestHash Where u = 70"));
+            // a range can not use a hash index
+            assertRowCount(90, st.executeQuery("Select * From TestHash Where u >= 100 And u < 200"));
+            assertEquals("0,100,200,", selectColumn(st, "Select Top 3 i From TestHash Order By v, i"));
+            assertDuplicateKey(st, "Insert Into TestHash(i, v, u) Values(2000, 'x', 77)");
+
+            con.setAutoCommit(false);
+            st.execute("Update TestHash Set v = 'new' Where i = 7");
+            assertEquals("7,", selectColumn(st, "Select i From TestHash Where v = 'new'"));
+            con.rollback();
+            assertRowCount(0, st.executeQuery("Select * From TestHash Where v = 'new'"));
+            con.setAutoCommit(true);
+
+            DatabaseMetaData md = con.getMetaData();
+            ResultSet rs = md.getIndexInfo(null, null, "TestHash", false, false);
+            assertTrue(rs.next());
+            assertEquals(DatabaseMetaData.tableIndexHashed, rs.getShort("TYPE"));
+        } finally {
+            con.setAutoCommit(true);
+            dropTable(con, "TestHash");
+        }
+    }
+
+
+    public void testIndexAndOr() throws Exception {
+        Connection con = basicTestFrame.getConnection();
+        try {
+            Statement st = con.createStatement();
+            st.execute("Create Table TestAndOr (i int, a int, b varchar(20), c int)");
+            st.execute("Create Index TestAndOrA On TestAndOr(a)");
+            st.execute("Create Index TestAndOrB On TestAndOr(b) Using Hash");
+            PreparedStatement pr = con.prepareStatement("Insert Into TestAndOr(i, a, b, c) Values(?, ?, ?, ?)");
+            for (int i = 0; i < 3000; i++) {
+                pr.setInt(1, i);
+                pr.setInt(2, i % 7);
+                pr.setString(3, "b" + (i % 11));
+                pr.setInt(4, i % 13);
+                pr.execute();
+            }
+            assertRowCount(39, st.executeQuery("Select * From TestAndOr Where a = 3 And b = 'b3'"));
+            assertEquals("3,80,157,", selectColumn(st, "Select Top 3 i From TestAndOr Where b = 'b3' And a = 3 Order By i"));
+            assertRowCount(663, st.executeQuery("Select * From TestAndOr Where a = 3 Or b = 'b3'"));
+            assertRowCount(857, st.executeQuery("Select * From TestAndOr Where a = 3 Or a >= 6"));
+            assertRowCount(78, st.executeQuery("Select * From TestAndOr Where (a = 3 And b = 'b3') Or (a = 5 And b = 'b4')"));
+            // c has no index, all rows must be scanned
+            assertRowCount(627, st.executeQuery("Select * From TestAndOr Where a = 3 Or c = 5"));
+
+            con.setAutoCommit(false);
+            st.execute("Update TestAndOr Set b = 'new' Where i = 3");
+            assertRowCount(38, st.executeQuery("Select * From TestAndOr Where a = 3 And b = 'b3'"));
+            assertRowCount(663, st.executeQuery("Select * From TestAndOr Where a = 3 Or b = 'b3'"));
+            con.rollback();
+        } finally {
+            con.setAutoCommit(true);
+            dropTable(con, "TestAndOr");
+        }
+    }
+
+
+    /**
+     * Change the type of the first index description with one column in a table file from INDEX to UNIQUE.
+     * The description starts with the type (SQLTokenizer.INDEX = 238) and the count of columns.
+     */
+    private static void setUniqueIndex(File file) throws Exception {
+        RandomAccessFile raFile = new RandomAccessFile(file, "rw");
+        try {
+            for (long pos = 0; pos + 8 <= raFile.length(); pos++) {
+                raFile.seek(pos);
+                if (raFile.readInt() == 238 && raFile.readInt() == 1) {
+                    raFile.seek(pos);
+                    raFile.writeInt(254); // SQLTokenizer.UNIQUE
+                    return;
+                }
+            }
+            fail("Index description not found in " + file);
+        } finally {
+            raFile.close();
+        }
+    }
+
+
+    private static void assertDuplicateKey(Statement st, String sql) throws Exception {
+        try {
+            st.execute(sql);
+            fail("Duplicate Key expected for: " + sql);
+        } catch (SQLException ex) {
+            assertTrue(ex.getMessage().indexOf("Duplicate Key") >= 0, ex.getMessage());
+        }
+    }
+}
@@ -37,6 +37,7 @@ import smallsql.basicTestFrame;
 import java.math.BigDecimal;
 import java.sql.*;
 
+import static smallsql.junit.JunitTestExtended.assertEquals;
 import static smallsql.junit.JunitTestExtended.assertFalse;
 
 public class TestJoins extends BasicTestCase {
@@ -90,6 +91,11 @@ public class TestJoins extends BasicTestCase {
     };
 
 
+    public TestJoins() {
+        super();
+    }
+
+
     TestJoins(TestValue testValue) {
         super(testValue.dataType);
         this.testValue = testValue;
@@ -110,11 +116,18 @@ public class TestJoins extends BasicTestCase {
 
     public void setUp() throws Exception {
         clear();
+        if (testValue == null) {
+            return; // the tests without a data type create its own tables
+        }
         Connection con = basicTestFrame.getConnection();
         Statement st = con.createStatement();
-        st.execute("create table " + table + "(a " + testValue.dataType + " PRIMARY KEY, b " + testValue.dataType + ")");
-        st.execute("create table " + table2 + "(c " + testValue.dataType + " PRIMARY KEY, d " + testValue.dataType + ")");
-        st.execute("create table " + table3 + "(c " + testValue.dataType + " PRIMARY KEY, d " + testValue.dataType + ")");
+        // the values of the join columns are not unique, a PRIMARY KEY would reject the rows of insertValues()
+        st.execute("create table " + table + "(a " + testValue.dataType + ", b " + testValue.dataType + ")");
+        st.execute("create table " + table2 + "(c " + testValue.dataType + ", d " + testValue.dataType + ")");
+        st.execute("create table " + table3 + "(c " + testValue.dataType + ", d " + testValue.dataType + ")");
+        st.execute("create index " + table + "_a on " + table + "(a)");
+        st.execute("create index " + table2 + "_c on " + table2 + "(c)");
+        st.execute("create index " + table3 + "_c on " + table3 + "(c)");
         st.close();
         con.close();
         con = basicTestFrame.getConnection();
@@ -194,6 +207,166 @@ public class TestJoins extends BasicTestCase {
         st.close();
     }
 
+
+    public void testOuterJoinOrderBy() throws Exception {
+        Connection con = basicTestFrame.getConnection();
+        try {
+            Statement st = con.createStatement();
+            st.execute("Create Table TestOuterA (id int)");
+            st.execute("Create Table TestOuterB (id int)");
+            st.execute("Create Table TestOuterC (id int)");
+            st.execute("Insert Into TestOuterA(id) Values(2)");
+            st.execute("Insert Into TestOuterA(id) Values(4)");
+            st.execute("Insert Into TestOuterA(id) Values(1)");
+            st.execute("Insert Into TestOuterB(id) Values(1)");
+            st.execute("Insert Into TestOuterB(id) Values(3)");
+            st.execute("Insert Into TestOuterC(id) Values(1)");
+            st.execute("Insert Into TestOuterC(id) Values(3)");
+
+            // the sort restores the rows from its row position, the null side must not return the last row
+            String from = " From TestOuterA a Left Join TestOuterB b On a.id = b.id";
+            assertEquals("1,1,\n2,null,\n4,null,\n", selectRows(st, "Select a.id, b.id" + from + " Order By a.id"));
+            assertEquals("4,null,\n2,null,\n", selectRows(st, "Select Top 2 a.id, b.id" + from + " Order By a.id Desc"));
+            assertEquals("1,1,\n2,null,\n4,null,\n", selectRows(st, "Select a.id, b.id" + from + " And a.id > 0 Order By a.id"));
+            assertEquals("1,1,\nnull,3,\n", selectRows(st, "Select a.id, b.id From TestOuterA a Right Join TestOuterB b On a.id = b.id Order By b.id"));
+            assertEquals("null,3,\n1,1,\n2,null,\n4,null,\n", selectRows(st, "Select a.id, b.id From TestOuterA a Full Join TestOuterB b On a.id = b.id Order By a.id, b.id"));
+            assertEquals("1,1,1,\n2,null,null,\n4,null,null,\n", selectRows(st,
+                    "Select a.id, b.id, c.id From TestOuterA a Left Join (TestOuterB b Inner Join TestOuterC c On b.id = c.id) On a.id = b.id Order By a.id"));
+        } finally {
+            dropTable(con, "TestOuterA");
+            dropTable(con, "TestOuterB");
+            dropTable(con, "TestOuterC");
+        }
+    }
+
+
+    public void testHashJoinNegativeZero() throws Exception {
+        Connection con = basicTestFrame.getConnection();
+        try {
+            Statement st = con.createStatement();
+            st.execute("Create Table TestZeroA (id int, f double)");
+            st.execute("Create Table TestZeroB (id int, g real)");
+            st.execute("Insert Into TestZeroA(id, f) Values(1, -0.0)");
+            st.execute("Insert Into TestZeroA(id, f) Values(2, 0.0)");
+            st.execute("Insert Into TestZeroA(id, f) Values(3, 1)");
+            st.execute("Insert Into TestZeroB(id, g) Values(1, 0.0)");
+            st.execute("Insert Into TestZeroB(id, g) Values(2, -0.0)");
+
+            // -0.0 is equals to 0.0
+            String from = " From TestZeroA a Left Join TestZeroB b On a.f = b.g";
+            assertEquals("1,1,\n1,2,\n2,1,\n2,2,\n3,null,\n", selectRows(st, "Select a.id, b.id" + from + " Order By a.id, b.id"));
+            assertEquals("1,1,\n1,2,\n2,1,\n2,2,\n3,null,\n", selectRows(st, "Select a.id, b.id" + from + " And a.id > 0 Order By a.id, b.id"));
+            assertEquals("4,", selectColumn(st, "Select count(*) From TestZeroA a Inner Join TestZeroB b On a.f = b.g"));
+        } finally {
+            dropTable(con, "TestZeroA");
+            dropTable(con, "TestZeroB");
+        }
+    }
+
+
+    public void testOuterMergeJoinOrderBy() throws Exception {
+        Connection con = basicTestFrame.getConnection();
+        try {
+            Statement st = con.createStatement();
+            st.execute("Create Table TestOuterPkA (id int primary key)");
+            st.execute("Create Table TestOuterPkB (id int primary key)");
+            st.execute("Insert Into TestOuterPkA(id) Values(2)");
+            st.execute("Insert Into TestOuterPkA(id) Values(4)");
+            st.execute("Insert Into TestOuterPkA(id) Values(1)");
+            st.execute("Insert Into TestOuterPkB(id) Values(1)");
+            st.execute("Insert Into TestOuterPkB(id) Values(3)");
+
+            String from = " From TestOuterPkA a Left Join TestOuterPkB b On a.id = b.id";
+            assertEquals("1,1,\n2,null,\n4,null,\n", selectRows(st, "Select a.id, b.id" + from + " Order By a.id"));
+            assertEquals("4,null,\n2,null,\n", selectRows(st, "Select Top 2 a.id, b.id" + from + " Order By a.id Desc"));
+            assertEquals("1,1,\nnull,3,\n", selectRows(st, "Select a.id, b.id From TestOuterPkA a Right Join TestOuterPkB b On a.id = b.id Order By b.id"));
+            assertEquals("null,3,\n1,1,\n2,null,\n4,null,\n", selectRows(st, "Select a.id, b.id From TestOuterPkA a Full Join TestOuterPkB b On a.id = b.id Order By a.id, b.id"));
+        } finally {
+            dropTable(con, "TestOuterPkA");
+            dropTable(con, "TestOuterPkB");
+        }
+    }
+
+
+    public void testHashJoin() throws Exception {
+        Connection con = basicTestFrame.getConnection();
+        try {
+            Statement st = con.createStatement();
+            st.execute("Create Table TestJoinA (x int, y int)");
+            st.execute("Create Table TestJoinB (x bigint, y int)");
+            st.execute("Insert Into TestJoinA(x, y) Values(1, 10)");
+            st.execute("Insert Into TestJoinA(x, y) Values(2, 20)");
+            st.execute("Insert Into TestJoinA(x, y) Values(2, 5)");
+            st.execute("Insert Into TestJoinA(x, y) Values(3, 30)");
+            st.execute("Insert Into TestJoinA(x, y) Values(null, 40)");
+            st.execute("Insert Into TestJoinB(x, y) Values(1, 5)");
+            st.execute("Insert Into TestJoinB(x, y) Values(2, 10)");
+            st.execute("Insert Into TestJoinB(x, y) Values(2, 30)");
+            st.execute("Insert Into TestJoinB(x, y) Values(4, 1)");
+            st.execute("Insert Into TestJoinB(x, y) Values(null, 0)");
+
+            // int and bigint columns
+            assertEquals("5,", selectColumn(st, "Select count(*) From TestJoinA a Inner Join TestJoinB b On a.x = b.x"));
+            assertEquals("7,", selectColumn(st, "Select count(*) From TestJoinA a Left Join TestJoinB b On a.x = b.x"));
+            assertEquals("9,", selectColumn(st, "Select count(*) From TestJoinA a Full Join TestJoinB b On a.x = b.x"));
+
+            // equals condition with a further predicate
+            String on = " On a.x = b.x And a.y > b.y";
+            assertEquals("10,20,", selectColumn(st, "Select a.y From TestJoinA a Inner Join TestJoinB b" + on + " Order By a.y"));
+            assertEquals("5,", selectColumn(st, "Select count(*) From TestJoinA a Left Join TestJoinB b" + on));
+            assertEquals("3,", selectColumn(st, "Select count(*) From TestJoinA a Left Join TestJoinB b" + on + " Where b.y Is Null"));
+            assertEquals("5,", selectColumn(st, "Select count(*) From TestJoinA a Right Join TestJoinB b" + on));
+            assertEquals("0,1,30,", selectColumn(st, "Select b.y From TestJoinA a Right Join TestJoinB b" + on + " Where a.y Is Null Order By b.y"));
+            assertEquals("8,", selectColumn(st, "Select count(*) From TestJoinA a Full Join TestJoinB b" + on));
+            assertEquals("3,", selectColumn(st, "Select count(*) From TestJoinA a Full Join TestJoinB b" + on + " Where a.y Is Null"));
+            assertEquals("3,", selectColumn(st, "Select count(*) From TestJoinA a Full Join TestJoinB b" + on + " Where b.y Is Null"));
+        } finally {
+            dropTable(con, "TestJoinA");
+            dropTable(con, "TestJoinB");
+        }
+    }
+
+
+    public void testMergeJoin() throws Exception {
+        Connection con = basicTestFrame.getConnection();
+        try {
+            Statement st = con.createStatement();
+            st.execute("Create Table TestMergeA (x int primary key, t int)");
+            st.execute("Create Index TestMergeAt On TestMergeA(t)");
+            st.execute("Create Table TestMergeB (x int primary key, lo int, hi int)");
+            st.execute("Create Index TestMergeBlo On TestMergeB(lo)");
+            st.execute("Insert Into TestMergeA(x, t) Values(1, 5)");
+            st.execute("Insert Into TestMergeA(x, t) Values(2, 15)");
+            st.execute("Insert Into TestMergeA(x, t) Values(3, 25)");
+            st.execute("Insert Into TestMergeA(x, t) Values(4, null)");
+            st.execute("Insert Into TestMergeA(x, t) Values(null, 35)");
+            st.execute("Insert Into TestMergeB(x, lo, hi) Values(2, 0, 10)");
+            st.execute("Insert Into TestMergeB(x, lo, hi) Values(3, 10, 20)");
+            st.execute("Insert Into TestMergeB(x, lo, hi) Values(5, 20, 30)");
+            st.execute("Insert Into TestMergeB(x, lo, hi) Values(6, null, 40)");
+            st.execute("Insert Into TestMergeB(x, lo, hi) Values(7, 100, 110)");
+
+            // both primary keys
+            assertEquals("2,3,", selectColumn(st, "Select a.x From TestMergeA a Inner Join TestMergeB b On a.x = b.x Order By a.x"));
+            assertEquals("5,", selectColumn(st, "Select count(*) From TestMergeA a Left Join TestMergeB b On a.x = b.x"));
+            assertEquals("8,", selectColumn(st, "Select count(*) From TestMergeA a Full Join TestMergeB b On a.x = b.x"));
+
+            // a range with the index on the low value
+            String on = " On a.t Between b.lo And b.hi";
+            assertEquals("2,3,5,", selectColumn(st, "Select b.x From TestMergeA a Inner Join TestMergeB b" + on + " Order By b.x"));
+            assertEquals("5,", selectColumn(st, "Select count(*) From TestMergeA a Left Join TestMergeB b" + on));
+            assertEquals("7,", selectColumn(st, "Select count(*) From TestMergeA a Full Join TestMergeB b" + on));
+            assertEquals("6,7,", selectColumn(st, "Select b.x From TestMergeA a Full Join TestMergeB b" + on + " Where a.x Is Null And a.t Is Null Order By b.x"));
+            on += " And a.x + 1 = b.x";
+            assertEquals("2,", selectColumn(st, "Select count(*) From TestMergeA a Inner Join TestMergeB b" + on));
+            assertEquals("8,", selectColumn(st, "Select count(*) From TestMergeA a Full Join TestMergeB b" + on));
+        } finally {
+            dropTable(con, "TestMergeA");
+            dropTable(con, "TestMergeB");
+        }
+    }
+
+
     private static TestValue a(String dataType, Object small, Object large) {
         TestValue value = new TestValue();
         value.dataType = dataType;
@@ -202,6 +375,67 @@ public class TestJoins extends BasicTestCase {
         return value;
     }
 
+    public void testJoinIndex() throws Exception {
+        Connection con = basicTestFrame.getConnection();
+        try {
+            Statement st = con.createStatement();
+            st.execute("Create Table TestJoinA (k int, v varchar(20), g bigint)");
+            st.execute("Create Table TestJoinB (i int primary key, v varchar(20), g int)");
+            st.execute("Create Index TestJoinBV On TestJoinB(v)");
+            PreparedStatement pr = con.prepareStatement("Insert Into TestJoinB(i, v, g) Values(?, ?, ?)");
+            for (int i = 0; i < 1000; i++) {
+                pr.setInt(1, i);
+                pr.setString(2, i % 97 == 0 ? null : "v" + (i % 50));
+                pr.setInt(3, i % 10);
+                pr.execute();
+            }
+            st.execute("Insert Into TestJoinA(k, v, g) Values(3, 'v3', 3)");
+            st.execute("Insert Into TestJoinA(k, v, g) Values(97, 'v47', 6)");
+            st.execute("Insert Into TestJoinA(k, v, g) Values(5000, 'x', 0)");
+            st.execute("Insert Into TestJoinA(k, v, g) Values(null, null, null)");
+
+            assertEquals("3,97,", selectColumn(st, "Select b.i From TestJoinA a Join TestJoinB b On a.k = b.i Order By 1"));
+            assertEquals("3,97,", selectColumn(st, "Select b.i From TestJoinA a Join TestJoinB b On b.i = a.k Order By 1"));
+            assertRowCount(39, st.executeQuery("Select * From TestJoinA a Join TestJoinB b On a.v = b.v"));
+            assertRowCount(20, st.executeQuery("Select * From TestJoinA a Join TestJoinB b On a.v = b.v And a.g = b.g"));
+            assertRowCount(4, st.executeQuery("Select * From TestJoinA a Left Join TestJoinB b On a.k = b.i"));
+
+            // not committed rows of the own connection
+            con.setAutoCommit(false);
+            st.execute("Insert Into TestJoinB(i, v, g) Values(5000, 'x', 0)");
+            st.execute("Update TestJoinB Set v = 'v3' Where i = 97");
+            assertEquals("3,97,5000,", selectColumn(st, "Select b.i From TestJoinA a Join TestJoinB b On a.k = b.i Order By 1"));
+            assertRowCount(41, st.executeQuery("Select * From TestJoinA a Join TestJoinB b On a.v = b.v"));
+            con.rollback();
+            assertRowCount(39, st.executeQuery("Select * From TestJoinA a Join TestJoinB b On a.v = b.v"));
+        } finally {
+            con.setAutoCommit(true);
+            dropTable(con, "TestJoinA");
+            dropTable(con, "TestJoinB");
+        }
+    }
+
+
+    public void testJoinIndexUniqueIdentifier() throws Exception {
+        Connection con = basicTestFrame.getConnection();
+        try {
+            Statement st = con.createStatement();
+            st.execute("Create Table TestJoinUA (a uniqueidentifier, n int)");
+            st.execute("Create Table TestJoinUB (b uniqueidentifier, n int)");
+            st.execute("Create Index TestJoinUBB On TestJoinUB(b)");
+            st.execute("Insert Into TestJoinUA(a, n) Values('12345678-3445-3445-3445-1234567890ab', 1)");
+            st.execute("Insert Into TestJoinUA(a, n) Values('12345679-3445-3445-3445-1234567890ab', 2)");
+            st.execute("Insert Into TestJoinUB(b, n) Values('12345678-3445-3445-3445-1234567890ab', 3)");
+
+            // the probe read the 16 bytes of the value without the null flag of the row
+            assertEquals("1,3,\n", selectRows(st, "Select a.n, b.n From TestJoinUA a Join TestJoinUB b On a.a = b.b"));
+        } finally {
+            dropTable(con, "TestJoinUA");
+            dropTable(con, "TestJoinUB");
+        }
+    }
+
+
     private static class TestValue {
         String dataType;
         Object small;
@@ -821,4 +821,65 @@ public class TestOrderBy extends BasicTestCase {
     }
 
 
+    public void testIndexOrder() throws Exception {
+        Connection con = basicTestFrame.getConnection();
+        try {
+            Statement st = con.createStatement();
+            st.execute("Create Table TestOrder (i int primary key, v varchar(20), b bigint)");
+            st.execute("Create Index TestOrderVB On TestOrder(v, b)");
+            int[] values = { 5, 3, -1, 8, 0, 2 };
+            for (int i = 0; i < values.length; i++) {
+                st.execute("Insert Into TestOrder(i, v, b) Values(" + values[i] + ", 'v" + (values[i] % 2) + "', " + i + ")");
+            }
+            st.execute("Insert Into TestOrder(i, v, b) Values(null, null, 6)");
+            assertEquals("null,-1,0,2,3,5,8,", selectColumn(st, "Select i From TestOrder Order By i"));
+            assertEquals("8,5,3,2,0,-1,null,", selectColumn(st, "Select i From TestOrder Order By i Desc"));
+            assertEquals("8,5,", selectColumn(st, "Select Top 2 i From TestOrder Order By i Desc"));
+            assertEquals("null,0,2,8,", selectColumn(st, "Select i From TestOrder Where b > 2 Order By i"));
+            assertEquals("1,0,5,4,3,2,6,", selectColumn(st, "Select b From TestOrder Order By v Desc, b Desc"));
+            assertEquals("6,2,5,4,3,1,0,", selectColumn(st, "Select b From TestOrder Order By v, b Desc"));
+
+            // not committed rows of the own connection
+            con.setAutoCommit(false);
+            st.execute("Insert Into TestOrder(i, v, b) Values(4, 'v0', 7)");
+            st.execute("Update TestOrder Set i = null Where i = 3");
+            assertEquals("null,null,-1,0,2,4,5,8,", selectColumn(st, "Select i From TestOrder Order By i"));
+            assertEquals("8,5,4,2,0,-1,null,null,", selectColumn(st, "Select i From TestOrder Order By i Desc"));
+            con.rollback();
+            assertEquals("null,-1,0,2,3,5,8,", selectColumn(st, "Select i From TestOrder Order By i"));
+        } finally {
+            con.setAutoCommit(true);
+            dropTable(con, "TestOrder");
+        }
+    }
+
+
+    public void testTopN() throws Exception {
+        Connection con = basicTestFrame.getConnection();
+        try {
+            Statement st = con.createStatement();
+            st.execute("Create Table TestTopN (x int, v varchar(10))");
+            st.execute("Insert Into TestTopN(x, v) Values(1, 'c')");
+            st.execute("Insert Into TestTopN(x, v) Values(2, null)");
+            st.execute("Insert Into TestTopN(x, v) Values(3, 'a')");
+            st.execute("Insert Into TestTopN(x, v) Values(4, 'B')");
+            st.execute("Insert Into TestTopN(x, v) Values(5, 'a')");
+            st.execute("Insert Into TestTopN(x, v) Values(6, 'd')");
+            st.execute("Insert Into TestTopN(x, v) Values(7, 'c')");
+
+            assertEquals("2,3,5,", selectColumn(st, "Select Top 3 x From TestTopN Order By v"));
+            assertEquals("6,1,7,4,", selectColumn(st, "Select x From TestTopN Order By v Desc Limit 4"));
+            assertEquals("4,1,7,", selectColumn(st, "Select x From TestTopN Order By v, x Limit 3 Offset 3"));
+            assertEquals("3,2,", selectColumn(st, "Select x From TestTopN Order By v Desc, x Desc Limit 10 Offset 5"));
+            assertEquals("", selectColumn(st, "Select x From TestTopN Order By v Limit 3 Offset 7"));
+            assertEquals("3,4,", selectColumn(st, "Select x From TestTopN Limit 2 Offset 2"));
+
+            st.setMaxRows(2);
+            assertEquals("6,1,", selectColumn(st, "Select x From TestTopN Order By v Desc"));
+            assertEquals("7,1,", selectColumn(st, "Select x From TestTopN Order By v Desc, x Desc Limit 5 Offset 1"));
+        } finally {
+            dropTable(con, "TestTopN");
+        }
+    }
+
 }
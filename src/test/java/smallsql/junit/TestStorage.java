@@ -0,0 +1,242 @@
+/* =============================================================
+ * SmallSQL : a free Java DBMS library for the Java(tm) platform
+ * =============================================================
+ *
+ * (C) Copyright 2004-2011, by Volker Berlin.
+ *
+ * Project Info:  http://www.smallsql.de/
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 2.1 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public
+ * License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301,
+ * USA.
+ *
+ * [Java is a trademark or registered trademark of Sun Microsystems, Inc.
+ * in the United States and other countries.]
+ *
+ * ---------------
+ * TestStorage.java
+ * ---------------
+ * Author: Volker Berlin
+ *
+ */
+package smallsql.junit;
+
+import smallsql.basicTestFrame;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.InputStream;
+import java.io.Reader;
+import java.io.StringReader;
+import java.sql.*;
+import java.util.Arrays;
+
+import static smallsql.junit.JunitTestExtended.*;
+
+/**
+ * Tests of the storage of LOB values and the compression of the table files.
+ */
+public class TestStorage extends BasicTestCase {
+
+    public void testLobStream() throws Exception {
+        Connection con = basicTestFrame.getConnection();
+        try {
+            con.createStatement().execute("Create Table TestLob (i int, b longvarbinary, c longvarchar)");
+            // larger as one chunk of the LOB file
+            byte[] bytes = new byte[200000];
+            StringBuffer buffer = new StringBuffer();
+            for (int i = 0; i < bytes.length; i++) {
+                bytes[i] = (byte) (i * 31);
+                buffer.append((char) ('a' + i % 26));
+            }
+            buffer.append('\u20AC');
+            String text = buffer.toString();
+
+            PreparedStatement pr = con.prepareStatement("Insert Into TestLob(i, b, c) Values(?, ?, ?)");
+            pr.setInt(1, 1);
+            pr.setBinaryStream(2, new ByteArrayInputStream(bytes));
+            pr.setCharacterStream(3, new StringReader(text));
+            pr.execute();
+            pr.setInt(1, 2);
+            pr.setBytes(2, new byte[] { 1, 2, 3 });
+            pr.setString(3, "abc");
+            pr.execute();
+            pr.setInt(1, 3);
+            pr.setNull(2, Types.LONGVARBINARY);
+            pr.setNull(3, Types.LONGVARCHAR);
+            pr.execute();
+            pr.close();
+            // copy the LOB values to new rows
+            con.createStatement().execute("Insert Into TestLob Select i+10, b, c From TestLob Where i=1");
+
+            ResultSet rs = con.createStatement().executeQuery("Select i, b, c From TestLob Order By i");
+            for (int row = 0; row < 2; row++) {
+                assertTrue(rs.next(), "next");
+                assertTrue(Arrays.equals(bytes, readAll(rs.getBinaryStream(2))), "getBinaryStream");
+                assertEquals(text, readAll(rs.getCharacterStream(3)));
+                Blob blob = rs.getBlob(2);
+                assertEquals(bytes.length, blob.length(), "Blob length");
+                assertEquals(bytes[150000], blob.getBytes(150001, 10)[0], "Blob getBytes");
+                Clob clob = rs.getClob(3);
+                assertEquals(text.length(), clob.length(), "Clob length");
+                assertEquals(text.substring(199990), clob.getSubString(199991, 100));
+                assertTrue(Arrays.equals(bytes, rs.getBytes(2)), "getBytes");
+                assertEquals(text, rs.getString(3));
+                if (row == 0) {
+                    assertTrue(rs.next(), "next");
+                    assertTrue(Arrays.equals(new byte[] { 1, 2, 3 }, readAll(rs.getBlob(2).getBinaryStream())), "small Blob");
+                    assertEquals("abc", rs.getClob(3).getSubString(1, 3));
+                    assertTrue(rs.next(), "next");
+                    assertNull(rs.getBlob(2), "null Blob");
+                    assertTrue(rs.wasNull(), "wasNull");
+                    assertNull(rs.getCharacterStream(3), "null Reader");
+                }
+            }
+            assertFalse(rs.next(), "next");
+        } finally {
+            dropTable(con, "TestLob");
+        }
+    }
+
+
+    public void testLobStreamLength() throws Exception {
+        Connection con = basicTestFrame.getConnection();
+        try {
+            con.createStatement().execute("Create Table TestLobLength (i int, b longvarbinary, c longvarchar, bl blob, cl clob, ncl nclob)");
+            byte[] bytes = { 1, 2, 3, 4, 5, 6, 7, 8 };
+            String text = "abcdefgh";
+
+            // only the first length bytes or characters of a longer stream are read
+            PreparedStatement pr = con.prepareStatement("Insert Into TestLobLength(i, b, c, bl, cl, ncl) Values(?, ?, ?, ?, ?, ?)");
+            pr.setInt(1, 1);
+            pr.setBinaryStream(2, new ByteArrayInputStream(bytes), 3);
+            pr.setCharacterStream(3, new StringReader(text), 3);
+            pr.setBlob(4, new ByteArrayInputStream(bytes), 3L);
+            pr.setClob(5, new StringReader(text), 3L);
+            pr.setNClob(6, new StringReader(text), 3L);
+            pr.execute();
+            pr.setInt(1, 2);
+            pr.setBinaryStream(2, new ByteArrayInputStream(bytes), 3L);
+            pr.setCharacterStream(3, new StringReader(text), 3L);
+            pr.setBinaryStream(4, new ByteArrayInputStream(bytes), 3L);
+            pr.setAsciiStream(5, new ByteArrayInputStream(text.getBytes("US-ASCII")), 3L);
+            pr.setNCharacterStream(6, new StringReader(text), 3L);
+            pr.execute();
+            pr.setInt(1, 3);
+            pr.setBinaryStream(2, new ByteArrayInputStream(bytes), 3);
+            pr.setAsciiStream(3, new ByteArrayInputStream(text.getBytes("US-ASCII")), 3);
+            pr.setBinaryStream(4, new ByteArrayInputStream(bytes), 0L);
+            pr.setCharacterStream(5, new StringReader(text), 0L);
+            pr.setClob(6, new StringReader(text), 3L);
+            pr.execute();
+            pr.close();
+
+            ResultSet rs = con.createStatement().executeQuery("Select i, b, c, bl, cl, ncl From TestLobLength Order By i");
+            for (int row = 1; row <= 3; row++) {
+                assertTrue(rs.next(), "next");
+                assertTrue(Arrays.equals(new byte[] { 1, 2, 3 }, rs.getBytes(2)), "longvarbinary");
+                assertEquals("abc", rs.getString(3));
+                if (row < 3) {
+                    assertTrue(Arrays.equals(new byte[] { 1, 2, 3 }, rs.getBytes(4)), "blob");
+                    assertEquals("abc", rs.getString(5));
+                } else {
+                    assertEquals(0, rs.getBytes(4).length, "empty blob");
+                    assertEquals("", rs.getString(5));
+                }
+                assertEquals("abc", rs.getString(6));
+            }
+            assertFalse(rs.next(), "next");
+        } finally {
+            dropTable(con, "TestLobLength");
+        }
+    }
+
+
+    public void testCompression() throws Exception {
+        Connection con = basicTestFrame.getConnection();
+        try {
+            // ALTER TABLE and COMPACT need a table lock without serialize locks of previous selects
+            con.setTransactionIsolation(Connection.TRANSACTION_READ_COMMITTED);
+            Statement st = con.createStatement();
+            st.execute("Create Table TestRaw (i int, c char(100), v varchar(200), l longvarchar)");
+            st.execute("Create Table TestLZ (i int, c char(100), v varchar(200), l longvarchar) With (Compression = LZ)");
+            StringBuffer buffer = new StringBuffer();
+            while (buffer.length() < 100000) {
+                buffer.append("The quick brown fox jumps over the lazy dog ").append(buffer.length()).append(". ");
+            }
+            String text = buffer.toString();
+            PreparedStatement pr1 = con.prepareStatement("Insert Into TestRaw(i, c, v, l) Values(?, ?, ?, ?)");
+            PreparedStatement pr2 = con.prepareStatement("Insert Into TestLZ(i, c, v, l) Values(?, ?, ?, ?)");
+            for (int i = 0; i < 500; i++) {
+                for (int p = 0; p < 2; p++) {
+                    PreparedStatement pr = p == 0 ? pr1 : pr2;
+                    pr.setInt(1, i);
+                    pr.setString(2, "name " + i);
+                    pr.setString(3, "street " + i + " in the city of customer " + i);
+                    pr.setString(4, i % 100 == 0 ? text : null);
+                    pr.execute();
+                }
+            }
+            long raw = new File(basicTestFrame.CATALOG, "TestRaw.sdb").length() + new File(basicTestFrame.CATALOG, "TestRaw.lob").length();
+            long lz = new File(basicTestFrame.CATALOG, "TestLZ.sdb").length() + new File(basicTestFrame.CATALOG, "TestLZ.lob").length();
+            assertTrue(lz * 2 < raw, "compressed size " + lz + " of " + raw);
+
+            st.execute("Update TestLZ Set v = v + ' with a larger value' Where i < 100");
+            st.execute("Delete From TestLZ Where i >= 400");
+            assertEqualsRsValue(new Integer(400), "Select count(*) From TestLZ");
+            assertEqualsRsValue("name 7", "Select RTrim(c) From TestLZ Where i = 7");
+            assertEqualsRsValue("street 7 in the city of customer 7 with a larger value", "Select v From TestLZ Where i = 7");
+            assertEqualsRsValue("street 207 in the city of customer 207", "Select v From TestLZ Where i = 207");
+            assertEqualsRsValue(text, "Select l From TestLZ Where i = 300");
+            ResultSet rs = st.executeQuery("Select l From TestLZ Where i = 300");
+            assertTrue(rs.next(), "next");
+            assertEquals(text.substring(70000, 70100), rs.getClob(1).getSubString(70001, 100));
+            rs.close();
+
+            // the compression is hold on rebuilding of the table
+            st.execute("Alter Table TestLZ Add x int");
+            st.execute("Compact Table TestLZ");
+            assertEqualsRsValue(new Integer(400), "Select count(*) From TestLZ");
+            assertEqualsRsValue(text, "Select l From TestLZ Where i = 200");
+            lz = new File(basicTestFrame.CATALOG, "TestLZ.sdb").length();
+            assertTrue(lz * 2 < new File(basicTestFrame.CATALOG, "TestRaw.sdb").length(), "compressed size after compact " + lz);
+        } finally {
+            dropTable(con, "TestRaw");
+            dropTable(con, "TestLZ");
+        }
+    }
+
+
+    private static byte[] readAll(InputStream in) throws Exception {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        int count;
+        while ((count = in.read(buffer)) > 0) {
+            baos.write(buffer, 0, count);
+        }
+        return baos.toByteArray();
+    }
+
+
+    private static String readAll(Reader reader) throws Exception {
+        StringBuffer buffer = new StringBuffer();
+        char[] chars = new char[4096];
+        int count;
+        while ((count = reader.read(chars)) > 0) {
+            buffer.append(chars, 0, count);
+        }
+        return buffer.toString();
+    }
+}
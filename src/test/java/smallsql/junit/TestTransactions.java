@@ -35,6 +35,7 @@ package smallsql.junit;
 
 import smallsql.basicTestFrame;
 
+import java.io.File;
 import java.sql.*;
 
 import static smallsql.junit.JunitTestExtended.*;
@@ -525,4 +526,382 @@ public class TestTransactions extends BasicTestCase {
     }
 
 
+    public void testReuseOfDeletedRows() throws Exception {
+        Connection con = basicTestFrame.getConnection();
+        try {
+            Statement st = con.createStatement();
+            st.execute("Create Table transactions (i int, v varchar(100))");
+            for (int i = 0; i < 1000; i++) {
+                st.execute("Insert Into transactions(i, v) Values(" + i + ",'qwert" + i + "')");
+            }
+            File file = new File(basicTestFrame.CATALOG, "transactions.sdb");
+            long size = file.length();
+
+            // deleted rows are reused after the commit
+            for (int round = 0; round < 5; round++) {
+                assertEquals(500, st.executeUpdate("Delete From transactions Where i >= 500"));
+                for (int i = 500; i < 1000; i++) {
+                    st.execute("Insert Into transactions(i, v) Values(" + i + ",'asdfg" + i + "')");
+                }
+            }
+            assertRowCount(1000, "Select * from transactions");
+            assertEquals("File size", size, file.length());
+
+            // the new location of an updated row is reused after a rollback
+            con.setAutoCommit(false);
+            st.execute("Update transactions Set v = v + ' with a larger value' Where i < 100");
+            con.rollback();
+            con.setAutoCommit(true);
+            long sizeRollback = file.length();
+            st.execute("Update transactions Set v = v + ' with a larger value' Where i < 100");
+            assertEquals("File size", sizeRollback, file.length());
+            assertRowCount(1000, "Select * from transactions");
+            assertEqualsRsValue("qwert7 with a larger value", "Select v from transactions Where i = 7");
+        } finally {
+            dropTable(con, "transactions");
+        }
+    }
+
+
+    public void testScanOwnChanges() throws Exception {
+        Connection con = basicTestFrame.getConnection();
+        try {
+            Statement st = con.createStatement();
+            st.execute("Create Table transactions (i int, v varchar(100))");
+            for (int i = 0; i < 1000; i++) {
+                st.execute("Insert Into transactions(i, v) Values(" + i + ",'qwert" + i + "')");
+            }
+
+            // a scan must read the rows after a not committed change in the same block
+            con.setAutoCommit(false);
+            st.execute("Update transactions Set i = i + 1000 Where i = 7");
+            assertRowCount(1000, "Select * from transactions");
+            st.execute("Update transactions Set v = v + ' with a larger value' Where i = 8");
+            assertRowCount(1000, "Select * from transactions");
+            assertEquals(1, st.executeUpdate("Delete From transactions Where i = 9"));
+            assertRowCount(999, "Select * from transactions");
+            con.rollback();
+            assertRowCount(1000, "Select * from transactions");
+        } finally {
+            con.setAutoCommit(true);
+            dropTable(con, "transactions");
+        }
+    }
+
+
+    public void testIndexWithChangesOfOtherConnection() throws Exception {
+        Connection con1 = basicTestFrame.getConnection();
+        Connection con2 = basicTestFrame.createConnection();
+        try {
+            Statement st1 = con1.createStatement();
+            st1.execute("Create Table transactions (i int primary key, n int)");
+            st1.execute("Create Index transactions_n On transactions(n)");
+            st1.execute("Create Table transactions2 (i int primary key)");
+            for (int i = 1; i <= 5; i++) {
+                st1.execute("Insert Into transactions(i, n) Values(" + i + "," + (i * 10) + ")");
+                st1.execute("Insert Into transactions2(i) Values(" + i + ")");
+            }
+
+            con1.setAutoCommit(false);
+            st1.execute("Update transactions Set i = 10, n = 100 Where i = 3");
+            st1.execute("Update transactions2 Set i = 10 Where i = 3");
+
+            // the old keys of the not committed changes are not in the indexes, 
+            // a reader must wait for the lock like a reader without an index
+            Statement st2 = con2.createStatement();
+            String[] sqls = {"Select i From transactions Where i = 3",
+                    "Select i From transactions Where n Between 25 And 35",
+                    "Select count(*) From transactions t1 Inner Join transactions2 t2 On t1.i = t2.i"};
+            for (int i = 0; i < sqls.length; i++) {
+                try {
+                    ResultSet rs = st2.executeQuery(sqls[i]);
+                    fail("Row of a not committed change was not locked, found: " + rs.next());
+                } catch (SQLException ex) {
+                    assertSQLException("01000", 0, ex);
+                }
+            }
+
+            // read uncommitted can use the index like a scan
+            con2.setTransactionIsolation(Connection.TRANSACTION_READ_UNCOMMITTED);
+            assertEquals("", selectColumn(st2, sqls[0]));
+            assertEquals("10,", selectColumn(st2, "Select i From transactions Where n = 100"));
+            assertEquals("5,", selectColumn(st2, sqls[2]));
+
+            con1.commit();
+            con2.setTransactionIsolation(Connection.TRANSACTION_READ_COMMITTED);
+            assertEquals("", selectColumn(st2, sqls[0]));
+            assertEquals("10,", selectColumn(st2, "Select i From transactions Where i = 10"));
+            assertEquals("5,", selectColumn(st2, sqls[2]));
+        } finally {
+            con2.close();
+            con1.setAutoCommit(true);
+            dropTable(con1, "transactions");
+            dropTable(con1, "transactions2");
+        }
+    }
+
+
+    public void testUniqueKeyOfNotCommittedChange() throws Exception {
+        Connection con1 = basicTestFrame.getConnection();
+        Connection con2 = basicTestFrame.createConnection();
+        int isolation = con1.getTransactionIsolation();
+        try {
+            // the insert of con2 must not wait for read locks of con1
+            con1.setTransactionIsolation(Connection.TRANSACTION_READ_COMMITTED);
+            Statement st1 = con1.createStatement();
+            st1.execute("Create Table transactions (i int primary key, n int)");
+            for (int i = 1; i <= 5; i++) {
+                st1.execute("Insert Into transactions(i, n) Values(" + i + "," + i + ")");
+            }
+            Statement st2 = con2.createStatement();
+            con1.setAutoCommit(false);
+
+            // the old key is reserved until the commit, the rollback can add it again
+            st1.execute("Delete From transactions Where i = 3");
+            assertInsertDuplicateKey(st2, "Insert Into transactions(i, n) Values(3, 33)");
+            con1.rollback();
+            assertEquals("1:1,2:2,3:3,4:4,5:5,", selectRows(st1));
+
+            st1.execute("Update transactions Set i = 30, n = 30 Where i = 3");
+            assertInsertDuplicateKey(st2, "Insert Into transactions(i, n) Values(3, 33)");
+            con1.rollback();
+            assertEquals("1:1,2:2,3:3,4:4,5:5,", selectRows(st1));
+
+            // the own connection can use the key again
+            st1.execute("Update transactions Set i = 30 Where i = 3");
+            st1.execute("Update transactions Set i = 3 Where i = 30");
+            st1.execute("Delete From transactions Where i = 4");
+            st1.execute("Insert Into transactions(i, n) Values(4, 44)");
+            con1.rollback();
+            assertEquals("1:1,2:2,3:3,4:4,5:5,", selectRows(st1));
+
+            // after the commit the key is free
+            st1.execute("Delete From transactions Where i = 3");
+            con1.commit();
+            st2.execute("Insert Into transactions(i, n) Values(3, 33)");
+            assertEquals("1:1,2:2,3:33,4:4,5:5,", selectRows(st1));
+        } finally {
+            con2.close();
+            con1.setAutoCommit(true);
+            con1.setTransactionIsolation(isolation);
+            dropTable(con1, "transactions");
+        }
+    }
+
+
+    private static void assertInsertDuplicateKey(Statement st, String sql) throws Exception {
+        try {
+            st.execute(sql);
+            fail("Duplicate Key expected for: " + sql);
+        } catch (SQLException ex) {
+            assertTrue(ex.getMessage().indexOf("Duplicate Key") >= 0, ex.getMessage());
+        }
+    }
+
+
+    private static String selectRows(Statement st) throws Exception {
+        ResultSet rs = st.executeQuery("Select i, n From transactions Order By i");
+        StringBuffer buf = new StringBuffer();
+        while (rs.next()) {
+            buf.append(rs.getInt(1)).append(':').append(rs.getInt(2)).append(',');
+        }
+        return buf.toString();
+    }
+
+
+    public void testWriteAheadLog() throws Exception {
+        File dir = new File("walTestDb");
+        File copy = new File("walTestDbCopy");
+        deleteDirectory(dir);
+        deleteDirectory(copy);
+        Connection con = DriverManager.getConnection("jdbc:smallsql:" + dir.getPath() + "?create=true;wal=true;sync=commit");
+        try {
+            Statement st = con.createStatement();
+            st.execute("Create Table walTest (i int, v varchar(100), t longvarchar)");
+            for (int i = 0; i < 100; i++) {
+                st.execute("Insert Into walTest(i, v, t) Values(" + i + ",'qwert" + i + "','lob" + i + "')");
+            }
+            st.execute("Update walTest Set v = v + ' with a larger value' Where i < 10");
+            assertEquals(10, st.executeUpdate("Delete From walTest Where i >= 90"));
+            con.setAutoCommit(false);
+            st.execute("Insert Into walTest(i, v) Values(1000, 'not committed')");
+
+            // the table files include not all changes, a copy of the files is like a crash
+            copyFiles(dir, copy);
+            assertTrue(new File(copy, "smallsql.wal").length() > 8, "log size");
+        } finally {
+            con.close();
+        }
+        assertFalse(new File(dir, "smallsql.wal").exists(), "log after close");
+
+        // open the copy replay the log
+        con = DriverManager.getConnection("jdbc:smallsql:" + copy.getPath());
+        try {
+            Statement st = con.createStatement();
+            ResultSet rs = st.executeQuery("Select count(*) From walTest");
+            assertTrue(rs.next());
+            assertEquals(90, rs.getInt(1));
+            rs = st.executeQuery("Select v, t From walTest Where i = 7");
+            assertTrue(rs.next());
+            assertEquals("qwert7 with a larger value", rs.getString(1));
+            assertEquals("lob7", rs.getString(2));
+        } finally {
+            con.close();
+        }
+        deleteDirectory(dir);
+        deleteDirectory(copy);
+    }
+
+
+    public void testWriteAheadLogRelocatingUpdate() throws Throwable {
+        File dir = new File("walRelocTestDb");
+        File copy = new File("walRelocTestDbCopy");
+        deleteDirectory(dir);
+        deleteDirectory(copy);
+        final String url = "jdbc:smallsql:" + dir.getPath();
+        final int rowCount = 300;
+        Connection con = DriverManager.getConnection(url + "?create=true;wal=true;sync=none");
+        String expected;
+        try {
+            Statement st = con.createStatement();
+            st.execute("Create Table walReloc (i int, v varchar(1000))");
+            for (int i = 0; i < rowCount; i++) {
+                st.execute("Insert Into walReloc(i, v) Values(" + i + ", 'v" + i + "')");
+            }
+
+            // the relocated rows of the updates are written outside of a commit to the same blocks 
+            // like the inserts of the commits of the other connection
+            final Throwable[] throwable = new Throwable[1];
+            Thread[] threads = new Thread[2];
+            for (int t = 0; t < threads.length; t++) {
+                final boolean isUpdate = t == 0;
+                threads[t] = new Thread(new Runnable() {
+                    public void run() {
+                        try {
+                            Connection con2 = DriverManager.getConnection(url);
+                            try {
+                                PreparedStatement pr = isUpdate 
+                                        ? con2.prepareStatement("Update walReloc Set v = v + ? Where i = ?")
+                                        : con2.prepareStatement("Insert Into walReloc(v, i) Values(?, ?)");
+                                // the inserts are committed in groups that the commits are longer
+                                con2.setAutoCommit(isUpdate);
+                                StringBuffer value = new StringBuffer();
+                                for (int i = 0; i < rowCount; i++) {
+                                    value.setLength(0);
+                                    for (int k = 0; k < i % 10 + 1; k++) {
+                                        value.append(" a larger value");
+                                    }
+                                    pr.setString(1, value.toString());
+                                    pr.setInt(2, isUpdate ? i : rowCount + i);
+                                    pr.execute();
+                                    if (!isUpdate && i % 20 == 19) {
+                                        con2.commit();
+                                    }
+                                }
+                                con2.commit();
+                            } finally {
+                                con2.close();
+                            }
+                        } catch (Throwable ex) {
+                            throwable[0] = ex;
+                        }
+                    }
+                });
+                threads[t].start();
+            }
+            for (int t = 0; t < threads.length; t++) {
+                threads[t].join();
+            }
+            if (throwable[0] != null) {
+                throw throwable[0];
+            }
+            expected = selectColumn(st, "Select i From walReloc Order By i") + selectColumn(st, "Select v From walReloc Order By i");
+            assertEquals(String.valueOf(2 * rowCount) + ",", selectColumn(st, "Select count(*) From walReloc"));
+
+            // the table files include not all changes, a copy of the files is like a crash
+            copyFiles(dir, copy);
+        } finally {
+            con.close();
+        }
+
+        // the replay of the log must write the blocks in the order of the changes
+        con = DriverManager.getConnection("jdbc:smallsql:" + copy.getPath());
+        try {
+            Statement st = con.createStatement();
+            assertEquals(expected, selectColumn(st, "Select i From walReloc Order By i") + selectColumn(st, "Select v From walReloc Order By i"));
+        } finally {
+            con.close();
+        }
+        deleteDirectory(dir);
+        deleteDirectory(copy);
+    }
+
+
+    private static void copyFiles(File dir, File copy) throws Exception {
+        copy.mkdir();
+        File[] files = dir.listFiles();
+        for (int i = 0; i < files.length; i++) {
+            java.nio.file.Files.copy(files[i].toPath(), new File(copy, files[i].getName()).toPath());
+        }
+    }
+
+
+    public void testGroupCommit() throws Throwable {
+        File dir = new File("walGroupTestDb");
+        deleteDirectory(dir);
+        final String url = "jdbc:smallsql:" + dir.getPath();
+        final int threadCount = 8;
+        final int commitCount = 100;
+        Connection con = DriverManager.getConnection(url + "?create=true;wal=true;sync=commit");
+        try {
+            Statement st = con.createStatement();
+            for (int t = 0; t < threadCount; t++) {
+                st.execute("Create Table walGroup" + t + " (i int)");
+            }
+            long units = getStatistic(con, "LOG_UNITS");
+            long writes = getStatistic(con, "LOG_WRITES");
+
+            // every thread commits with its own connection, the commits that arrive together are written together
+            final Throwable[] throwable = new Throwable[1];
+            Thread[] threads = new Thread[threadCount];
+            for (int t = 0; t < threadCount; t++) {
+                final String table = "walGroup" + t;
+                threads[t] = new Thread(new Runnable() {
+                    public void run() {
+                        try {
+                            Connection con2 = DriverManager.getConnection(url);
+                            try {
+                                PreparedStatement pr = con2.prepareStatement("Insert Into " + table + "(i) Values(?)");
+                                for (int i = 0; i < commitCount; i++) {
+                                    pr.setInt(1, i);
+                                    pr.execute();
+                                }
+                            } finally {
+                                con2.close();
+                            }
+                        } catch (Throwable ex) {
+                            throwable[0] = ex;
+                        }
+                    }
+                });
+                threads[t].start();
+            }
+            for (int t = 0; t < threadCount; t++) {
+                threads[t].join();
+            }
+            if (throwable[0] != null) {
+                throw throwable[0];
+            }
+            units = getStatistic(con, "LOG_UNITS") - units;
+            writes = getStatistic(con, "LOG_WRITES") - writes;
+            assertTrue(units >= threadCount * commitCount, "log units");
+            assertTrue(writes < units, "log writes " + writes + " of units " + units);
+            for (int t = 0; t < threadCount; t++) {
+                assertEquals(String.valueOf(commitCount) + ",", selectColumn(st, "Select count(*) From walGroup" + t));
+            }
+        } finally {
+            con.close();
+        }
+        deleteDirectory(dir);
+    }
 }